@@ -366,7 +366,7 @@ public class FastLZ4j
 
                 len += 3;
 
-                if (!((outputPos + len) < outputBuffer.length))
+                if (!((outputPos + len) <= outputBuffer.length))
                 {
                     return 0;
                 }
@@ -387,7 +387,7 @@ public class FastLZ4j
                     return 0;
                 }
 
-                if (!((inputPos + ctrlCode) <= inputBuffer.length))
+                if (!((inputPos + ctrlCode) <= compressedLen))
                 {
                     return 0;
                 }
@@ -577,7 +577,7 @@ public class FastLZ4j
                     return 0;
                 }
 
-                if (!((inputPos + ctrlCode) <= inputBuffer.length))
+                if (!((inputPos + ctrlCode) <= compressedLen))
                 {
                     return 0;
                 }
@@ -587,7 +587,7 @@ public class FastLZ4j
                 outputPos += ctrlCode;
             }
 
-            if (inputPos >= inputBuffer.length)
+            if (inputPos >= compressedLen)
                 break;
 
             ctrlCode = inputBuffer[inputPos] & 0xFF;
@@ -0,0 +1,384 @@
+package org.hpccsystems.commons.network;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.NoSuchAlgorithmException;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Provides the SSLContext shared by the TLS connections to HPCC Systems services, IE: the row service and ESP.
+ *
+ * A TLS session negotiated by one connection is cached by the SSLContext and resumed by later connections to the same
+ * host and port, avoiding the cost of a full handshake. Sessions are only shared by connections created from the same
+ * SSLContext, so all connections should use the context, or socket factory, provided here.
+ *
+ * Defaults to the JVM default SSLContext, so a context installed with SSLContext.setDefault is used. While the default
+ * context is used HTTPS connections keep the default HttpsURLConnection socket factory. The session cache settings are
+ * not applied to the JVM default context, as it is shared with other TLS clients in the process.
+ *
+ * setUseDedicatedContext opts in to a dedicated TLS context using the default key and trust managers, which are
+ * configured by the standard javax.net.ssl system properties, and the session cache settings. A custom context, IE: with
+ * a different trust store, can be provided with setSSLContext. Both are also used for HTTPS connections.
+ *
+ * TLS 1.3 session ticket resumption is not configured here, as it is controlled by the JVM wide
+ * jdk.tls.client.enableSessionTicketExtension system property, supported by Java 13+ and recent Java 11 updates. It is
+ * read when the JDK TLS implementation is initialized, so it should be set on the command line, IE:
+ * -Djdk.tls.client.enableSessionTicketExtension=true.
+ */
+public class SharedSSLContext
+{
+    private static final Logger log = LogManager.getLogger(SharedSSLContext.class);
+
+    // Session cache settings left at the context defaults
+    public static final int    USE_CONTEXT_DEFAULT = -1;
+
+    // JVM wide, read by the JDK TLS implementation when it is initialized. Not set by this class, see the class comment
+    public static final String SESSION_TICKET_PROPERTY = "jdk.tls.client.enableSessionTicketExtension";
+
+    // Bound to the sessions negotiated by startHandshake, the bound values are kept when a session is resumed
+    private static final String NEGOTIATED_SESSION_KEY = SharedSSLContext.class.getName() + ".negotiated";
+
+    private static final SharedSSLContext instance = new SharedSSLContext();
+
+    private SSLContext         customContext = null;
+    private boolean            useDedicatedContext = false;
+    private SSLContext         dedicatedContext = null;
+    private int                sessionCacheSize = USE_CONTEXT_DEFAULT;
+    private int                sessionTimeoutSeconds = USE_CONTEXT_DEFAULT;
+
+    private long               numFullHandshakes = 0;
+    private long               numResumedHandshakes = 0;
+    private long               handshakeTimeNS = 0;
+
+    /**
+     * Returns the context shared by all TLS connections in the process.
+     *
+     * @return the shared context
+     */
+    public static SharedSSLContext getInstance()
+    {
+        return instance;
+    }
+
+    SharedSSLContext()
+    {
+    }
+
+    /**
+     * Returns the shared SSLContext: the custom context if one has been set, the dedicated context if enabled, otherwise
+     * the JVM default SSLContext.
+     *
+     * @return the SSLContext
+     * @throws IOException
+     *             if the SSLContext cannot be created
+     */
+    public synchronized SSLContext getSSLContext() throws IOException
+    {
+        if (customContext != null)
+        {
+            return customContext;
+        }
+
+        if (useDedicatedContext)
+        {
+            if (dedicatedContext == null)
+            {
+                try
+                {
+                    TrustManagerFactory trustManagerFactory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                    trustManagerFactory.init((KeyStore) null);
+
+                    SSLContext context = SSLContext.getInstance("TLS");
+                    context.init(createDefaultKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+                    dedicatedContext = context;
+                }
+                catch (GeneralSecurityException e)
+                {
+                    throw new IOException("Unable to create the dedicated SSLContext: " + e.getMessage(), e);
+                }
+                configureSessionContext(dedicatedContext);
+            }
+            return dedicatedContext;
+        }
+
+        // Looked up on each call, so a default installed later with SSLContext.setDefault is used
+        try
+        {
+            return SSLContext.getDefault();
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IOException("Unable to create the default SSLContext: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Sets the SSLContext used by all subsequent TLS connections. The session cache settings are applied to the context.
+     *
+     * @param context
+     *            the SSLContext, null to stop using a custom context
+     */
+    public synchronized void setSSLContext(SSLContext context)
+    {
+        this.customContext = context;
+        if (customContext != null)
+        {
+            configureSessionContext(customContext);
+        }
+    }
+
+    /**
+     * Enables a dedicated TLS context, created with the default key and trust managers, instead of the JVM default
+     * SSLContext. Unlike the JVM default context the session cache settings are applied to the dedicated context.
+     * A custom context set with setSSLContext takes precedence.
+     *
+     * @param useDedicatedContext
+     *            true to use a dedicated context, false to use the JVM default SSLContext
+     */
+    public synchronized void setUseDedicatedContext(boolean useDedicatedContext)
+    {
+        this.useDedicatedContext = useDedicatedContext;
+    }
+
+    /**
+     * @return true if a dedicated TLS context is used instead of the JVM default SSLContext
+     */
+    public synchronized boolean getUseDedicatedContext()
+    {
+        return useDedicatedContext;
+    }
+
+    /**
+     * Is the JVM default SSLContext used? If so HTTPS connections should keep the default HttpsURLConnection socket
+     * factory, which may have been replaced by the application.
+     *
+     * @return true if neither a custom nor a dedicated context is used
+     */
+    public synchronized boolean isUsingDefaultContext()
+    {
+        return customContext == null && !useDedicatedContext;
+    }
+
+    /**
+     * Returns a socket factory using the shared SSLContext.
+     *
+     * @return the socket factory
+     * @throws IOException
+     *             if the default SSLContext cannot be created
+     */
+    public SSLSocketFactory getSocketFactory() throws IOException
+    {
+        return getSSLContext().getSocketFactory();
+    }
+
+    /**
+     * Sets the maximum number of cached TLS sessions of the custom or dedicated context.
+     *
+     * @param size
+     *            the number of sessions, 0 for no limit
+     */
+    public synchronized void setSessionCacheSize(int size)
+    {
+        if (size < 0)
+        {
+            throw new IllegalArgumentException("Invalid session cache size: " + size + " must be 0 or greater");
+        }
+
+        this.sessionCacheSize = size;
+        configureSessionContexts();
+    }
+
+    /**
+     * @return the maximum number of cached TLS sessions, USE_CONTEXT_DEFAULT if not set
+     */
+    public synchronized int getSessionCacheSize()
+    {
+        return sessionCacheSize;
+    }
+
+    /**
+     * Sets how long a cached TLS session of the custom or dedicated context can be resumed.
+     *
+     * @param timeoutSeconds
+     *            the session timeout in seconds, 0 for no limit
+     */
+    public synchronized void setSessionTimeoutSeconds(int timeoutSeconds)
+    {
+        if (timeoutSeconds < 0)
+        {
+            throw new IllegalArgumentException("Invalid session timeout: " + timeoutSeconds + " must be 0 or greater");
+        }
+
+        this.sessionTimeoutSeconds = timeoutSeconds;
+        configureSessionContexts();
+    }
+
+    /**
+     * @return how long a cached TLS session can be resumed in seconds, USE_CONTEXT_DEFAULT if not set
+     */
+    public synchronized int getSessionTimeoutSeconds()
+    {
+        return sessionTimeoutSeconds;
+    }
+
+    /**
+     * Performs the TLS handshake on a connected socket and records whether the session was resumed.
+     *
+     * @param socket
+     *            the connected socket
+     * @return true if a cached session was resumed, false if a full handshake was performed
+     * @throws IOException
+     *             if the handshake fails
+     */
+    public boolean startHandshake(SSLSocket socket) throws IOException
+    {
+        long startNS = System.nanoTime();
+        socket.startHandshake();
+        long elapsedNS = System.nanoTime() - startNS;
+
+        return recordHandshake(socket.getSession(), elapsedNS);
+    }
+
+    /**
+     * Records a completed handshake. Sessions negotiated by a full handshake are marked with a bound value, which is
+     * kept when the session is resumed. TLS 1.2 resumes the same session, while TLS 1.3 resumes into a new session with
+     * a new ID that keeps the bound values of the original.
+     *
+     * @param session
+     *            the session of the completed handshake
+     * @param elapsedNS
+     *            the handshake time in nanoseconds
+     * @return true if the session was resumed
+     */
+    boolean recordHandshake(SSLSession session, long elapsedNS)
+    {
+        boolean isResumed = session.getValue(NEGOTIATED_SESSION_KEY) != null;
+        if (!isResumed)
+        {
+            session.putValue(NEGOTIATED_SESSION_KEY, Boolean.TRUE);
+        }
+
+        synchronized (this)
+        {
+            handshakeTimeNS += elapsedNS;
+            if (isResumed)
+            {
+                numResumedHandshakes++;
+            }
+            else
+            {
+                numFullHandshakes++;
+            }
+        }
+
+        log.debug("SSL handshake successful, session " + (isResumed ? "resumed" : "negotiated") + " in " + (elapsedNS / 1000000.0) + "ms");
+        return isResumed;
+    }
+
+    /**
+     * @return the number of handshakes that negotiated a new session
+     */
+    public synchronized long getNumFullHandshakes()
+    {
+        return numFullHandshakes;
+    }
+
+    /**
+     * @return the number of handshakes that resumed a cached session
+     */
+    public synchronized long getNumResumedHandshakes()
+    {
+        return numResumedHandshakes;
+    }
+
+    /**
+     * @return the total time spent in handshakes in nanoseconds
+     */
+    public synchronized long getHandshakeTimeNS()
+    {
+        return handshakeTimeNS;
+    }
+
+    /**
+     * Creates the key managers for the key store named by the javax.net.ssl.keyStore system properties, the same key
+     * store used by the JVM default SSLContext. A key store of NONE is loaded without a file, IE: a PKCS11 token.
+     *
+     * @return the key managers, null if no key store is configured
+     */
+    private static KeyManager[] createDefaultKeyManagers() throws GeneralSecurityException, IOException
+    {
+        String keyStorePath = System.getProperty("javax.net.ssl.keyStore", "");
+        if (keyStorePath.isEmpty())
+        {
+            return null;
+        }
+
+        String keyStorePassword = System.getProperty("javax.net.ssl.keyStorePassword");
+        char[] password = (keyStorePassword != null) ? keyStorePassword.toCharArray() : null;
+
+        String keyStoreType = System.getProperty("javax.net.ssl.keyStoreType", KeyStore.getDefaultType());
+        String keyStoreProvider = System.getProperty("javax.net.ssl.keyStoreProvider", "");
+        KeyStore keyStore = keyStoreProvider.isEmpty() ? KeyStore.getInstance(keyStoreType) : KeyStore.getInstance(keyStoreType, keyStoreProvider);
+        if (keyStorePath.equals("NONE"))
+        {
+            keyStore.load(null, password);
+        }
+        else
+        {
+            try (InputStream input = new FileInputStream(keyStorePath))
+            {
+                keyStore.load(input, password);
+            }
+        }
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+        return keyManagerFactory.getKeyManagers();
+    }
+
+    private void configureSessionContexts()
+    {
+        if (customContext != null)
+        {
+            configureSessionContext(customContext);
+        }
+
+        if (dedicatedContext != null)
+        {
+            configureSessionContext(dedicatedContext);
+        }
+    }
+
+    private void configureSessionContext(SSLContext sslContext)
+    {
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext == null)
+        {
+            return;
+        }
+
+        if (sessionCacheSize != USE_CONTEXT_DEFAULT)
+        {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+        }
+
+        if (sessionTimeoutSeconds != USE_CONTEXT_DEFAULT)
+        {
+            sessionContext.setSessionTimeout(sessionTimeoutSeconds);
+        }
+    }
+}
@@ -68,6 +68,32 @@ public class FastLZ4jTests
         Assert.assertTrue(Arrays.equals(longInput, decompressed));
     }
 
+    @Test
+    public void testOversizedBufferDecompression() throws Exception
+    {
+        // Decompression should be bounded by the compressed length, not the size of the buffers, so they can be reused
+        int numShortLens = (65536 / shortInput.length) + 1;
+        byte[] longInput = new byte[numShortLens * shortInput.length];
+        for (int i = 0; i < numShortLens; i++)
+        {
+            System.arraycopy(shortInput, 0, longInput, i*shortInput.length, shortInput.length);
+        }
+
+        byte[][] inputs = { shortInput, longInput };
+        for (byte[] input : inputs)
+        {
+            byte[] compressed = new byte[input.length * 2];
+            Arrays.fill(compressed, (byte) 0x7F);
+            int compressedLen = FastLZ4j.compress(input, compressed);
+
+            byte[] decompressed = new byte[input.length * 2];
+            int decompressedLen = FastLZ4j.decompress(compressed, compressedLen, decompressed);
+
+            Assert.assertEquals(input.length, decompressedLen);
+            Assert.assertTrue(Arrays.equals(input, Arrays.copyOf(decompressed, decompressedLen)));
+        }
+    }
+
     @Test
     public void testStreamingDecompression() throws Exception
     {
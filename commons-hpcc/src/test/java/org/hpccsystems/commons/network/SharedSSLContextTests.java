@@ -0,0 +1,153 @@
+package org.hpccsystems.commons.network;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(org.hpccsystems.commons.annotations.BaseTests.class)
+public class SharedSSLContextTests
+{
+    @Test
+    public void testDefaultContext() throws Exception
+    {
+        SharedSSLContext shared = new SharedSSLContext();
+        Assert.assertSame(SSLContext.getDefault(), shared.getSSLContext());
+        Assert.assertTrue(shared.isUsingDefaultContext());
+        Assert.assertNotNull(shared.getSocketFactory());
+        Assert.assertEquals(SharedSSLContext.USE_CONTEXT_DEFAULT, shared.getSessionCacheSize());
+        Assert.assertEquals(SharedSSLContext.USE_CONTEXT_DEFAULT, shared.getSessionTimeoutSeconds());
+
+        // A default installed by the application is used
+        SSLContext previousDefault = SSLContext.getDefault();
+        SSLContext installed = SSLContext.getInstance("TLS");
+        installed.init(null, null, null);
+        SSLContext.setDefault(installed);
+        try
+        {
+            Assert.assertSame(installed, shared.getSSLContext());
+        }
+        finally
+        {
+            SSLContext.setDefault(previousDefault);
+        }
+    }
+
+    @Test
+    public void testDedicatedContext() throws Exception
+    {
+        int defaultCacheSize = SSLContext.getDefault().getClientSessionContext().getSessionCacheSize();
+        int cacheSize = defaultCacheSize + 7;
+
+        // Session cache settings don't apply to the JVM default context
+        SharedSSLContext shared = new SharedSSLContext();
+        shared.setSessionCacheSize(cacheSize);
+        Assert.assertSame(SSLContext.getDefault(), shared.getSSLContext());
+        Assert.assertEquals(defaultCacheSize, SSLContext.getDefault().getClientSessionContext().getSessionCacheSize());
+
+        // The dedicated context is opt in and has the session cache settings applied
+        shared.setUseDedicatedContext(true);
+        SSLContext dedicated = shared.getSSLContext();
+        Assert.assertFalse(shared.isUsingDefaultContext());
+        Assert.assertNotSame(SSLContext.getDefault(), dedicated);
+        Assert.assertEquals("TLS", dedicated.getProtocol());
+        Assert.assertSame(dedicated, shared.getSSLContext());
+        Assert.assertEquals(cacheSize, dedicated.getClientSessionContext().getSessionCacheSize());
+        Assert.assertEquals(defaultCacheSize, SSLContext.getDefault().getClientSessionContext().getSessionCacheSize());
+
+        // A custom context takes precedence
+        SSLContext custom = SSLContext.getInstance("TLS");
+        custom.init(null, null, null);
+        shared.setSSLContext(custom);
+        Assert.assertSame(custom, shared.getSSLContext());
+        shared.setSSLContext(null);
+        Assert.assertSame(dedicated, shared.getSSLContext());
+
+        shared.setUseDedicatedContext(false);
+        Assert.assertSame(SSLContext.getDefault(), shared.getSSLContext());
+        Assert.assertTrue(shared.isUsingDefaultContext());
+    }
+
+    private static SSLSession createSession(final long creationTime, final Map<String, Object> values)
+    {
+        return (SSLSession) Proxy.newProxyInstance(SSLSession.class.getClassLoader(), new Class<?>[] { SSLSession.class },
+            (proxy, method, args) ->
+            {
+                switch (method.getName())
+                {
+                    case "getCreationTime":
+                        return creationTime;
+                    case "getValue":
+                        return values.get(args[0]);
+                    case "putValue":
+                        return values.put((String) args[0], args[1]);
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    @Test
+    public void testHandshakeResumption() throws Exception
+    {
+        SharedSSLContext shared = new SharedSSLContext();
+        long now = System.currentTimeMillis();
+
+        // Full handshakes completed within the same millisecond are not counted as resumed
+        Map<String, Object> firstValues = new HashMap<String, Object>();
+        Assert.assertFalse(shared.recordHandshake(createSession(now, firstValues), 1000));
+        Assert.assertFalse(shared.recordHandshake(createSession(now, new HashMap<String, Object>()), 1000));
+
+        // A TLS 1.2 resumption returns the same session
+        SSLSession first = createSession(now, firstValues);
+        Assert.assertTrue(shared.recordHandshake(first, 1000));
+
+        // A TLS 1.3 resumption returns a new session that keeps the bound values of the original
+        Assert.assertTrue(shared.recordHandshake(createSession(now - 5000, new HashMap<String, Object>(firstValues)), 1000));
+
+        Assert.assertEquals(2, shared.getNumFullHandshakes());
+        Assert.assertEquals(2, shared.getNumResumedHandshakes());
+        Assert.assertEquals(4000, shared.getHandshakeTimeNS());
+    }
+
+    @Test
+    public void testSessionCacheSettings() throws Exception
+    {
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, null, null);
+
+        SharedSSLContext shared = new SharedSSLContext();
+        shared.setSessionCacheSize(128);
+        shared.setSSLContext(context);
+
+        Assert.assertSame(context, shared.getSSLContext());
+        Assert.assertEquals(128, context.getClientSessionContext().getSessionCacheSize());
+
+        // Settings are applied to the current context
+        shared.setSessionTimeoutSeconds(600);
+        Assert.assertEquals(600, context.getClientSessionContext().getSessionTimeout());
+
+        try
+        {
+            shared.setSessionCacheSize(-5);
+            Assert.fail("Expected an exception for an invalid session cache size");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try
+        {
+            shared.setSessionTimeoutSeconds(-5);
+            Assert.fail("Expected an exception for an invalid session timeout");
+        }
+        catch (IllegalArgumentException e) {}
+
+        Assert.assertEquals(128, shared.getSessionCacheSize());
+        Assert.assertEquals(600, shared.getSessionTimeoutSeconds());
+    }
+}
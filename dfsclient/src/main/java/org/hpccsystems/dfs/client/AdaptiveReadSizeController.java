@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+/**
+ * Chooses the size of row service read requests (the replyLimit) from the measured performance of previous requests.
+ *
+ * Each completed request provides a round trip time sample, the time between sending the request and receiving the
+ * start of the response, and a throughput sample, the bytes in the response over the time spent receiving it.
+ * With a single request outstanding the connection is idle for a round trip between requests. To keep the
+ * connection busy the read size targets a multiple of the bandwidth-delay product (BDP) of the connection.
+ *
+ * When requests are pipelined a request waits behind the responses sent before it, so only the idle time before its
+ * response is observable. In this case the round trip time is the part not covered by the requests in flight,
+ * and the read size is grown until the idle time is covered.
+ *
+ * The read size is only grown while the consumer is waiting on data, IE: the network is the bottleneck. When the
+ * prefetch side spends most of a request waiting for buffer space the consumer is the bottleneck, and the read size is
+ * reduced, as larger requests only increase memory usage and latency.
+ */
+class AdaptiveReadSizeController
+{
+    public static final int     MIN_READ_SIZE_KB = 64;
+    public static final int     MAX_READ_SIZE_KB = CircularByteBuffer.MAX_BUFFER_SIZE / 1024;
+
+    // Weight of new samples in the throughput and round trip time moving averages
+    private static final double SAMPLE_WEIGHT = 0.25;
+
+    // With a single request in flight a read size of N * BDP keeps the connection busy N / (N + 1) of the time
+    private static final int    TARGET_BDP_MULTIPLE = 4;
+
+    // The fraction of a request spent waiting for buffer space before the consumer is considered the bottleneck
+    private static final double CONSUMER_BOUND_STALL_FRACTION = 0.5;
+
+    // Avoids changing the read size in response to small fluctuations in the estimates
+    private static final double MIN_CHANGE_FRACTION = 0.25;
+
+    private final int           minReadSizeKB;
+    private final int           maxReadSizeKB;
+    private final int           numOutstandingRequests;
+    private int                 readSizeKB;
+
+    private double              throughputBytesPerNS = 0.0;
+    private double              roundTripTimeNS = 0.0;
+    private int                 numSamples = 0;
+
+    private int                 numIncreases = 0;
+    private int                 numDecreases = 0;
+
+    /**
+     * Instantiates a new controller.
+     *
+     * @param initialReadSizeKB
+     *            the read size used until the first adjustment
+     * @param minReadSizeKB
+     *            the minimum read size
+     * @param maxReadSizeKB
+     *            the maximum read size
+     * @param numOutstandingRequests
+     *            the number of requests kept in flight
+     */
+    AdaptiveReadSizeController(int initialReadSizeKB, int minReadSizeKB, int maxReadSizeKB, int numOutstandingRequests)
+    {
+        this.minReadSizeKB = Math.max(1, minReadSizeKB);
+        this.maxReadSizeKB = Math.max(this.minReadSizeKB, maxReadSizeKB);
+        this.numOutstandingRequests = Math.max(1, numOutstandingRequests);
+        this.readSizeKB = Math.min(this.maxReadSizeKB, Math.max(this.minReadSizeKB, initialReadSizeKB));
+    }
+
+    /**
+     * Updates the estimates with a completed request and adjusts the read size.
+     *
+     * @param requestSentNS
+     *            the time the request was sent, or the end of the previous response if later
+     * @param responseStartNS
+     *            the time the start of the response was received
+     * @param responseEndNS
+     *            the time the end of the response was received
+     * @param bytesRead
+     *            the number of bytes in the response
+     * @param producerStallNS
+     *            the time spent waiting for read buffer space while the request was outstanding
+     * @param consumerStallNS
+     *            the time the consumer spent waiting for data while the request was outstanding
+     * @return true if the read size changed
+     */
+    boolean onRequestComplete(long requestSentNS, long responseStartNS, long responseEndNS, long bytesRead,
+                              long producerStallNS, long consumerStallNS)
+    {
+        long roundTripNS = responseStartNS - requestSentNS;
+        long requestNS = responseEndNS - requestSentNS;
+        if (bytesRead <= 0 || roundTripNS < 0 || responseEndNS < responseStartNS)
+        {
+            return false;
+        }
+
+        // While the prefetch side waits for buffer space the response queues up in the socket, and is then read faster than
+        // the network delivers it. The start of the response may also have been read late, so only use requests without waits
+        if (producerStallNS <= 0)
+        {
+            long transferNS = Math.max(1, responseEndNS - responseStartNS);
+            double sampleThroughput = bytesRead / (double) transferNS;
+
+            if (numSamples == 0)
+            {
+                throughputBytesPerNS = sampleThroughput;
+                roundTripTimeNS = roundTripNS;
+            }
+            else
+            {
+                throughputBytesPerNS += SAMPLE_WEIGHT * (sampleThroughput - throughputBytesPerNS);
+                roundTripTimeNS += SAMPLE_WEIGHT * (roundTripNS - roundTripTimeNS);
+            }
+            numSamples++;
+        }
+
+        int targetKB = readSizeKB;
+        boolean isConsumerBound = producerStallNS > requestNS * CONSUMER_BOUND_STALL_FRACTION && consumerStallNS < producerStallNS;
+        if (isConsumerBound)
+        {
+            targetKB = readSizeKB / 2;
+        }
+        else if (numSamples == 0)
+        {
+            return false;
+        }
+        else if (numOutstandingRequests > 1)
+        {
+            // The round trip time is the idle time between responses, grow the read size to cover it across the requests in flight
+            long idleTargetKB = readSizeKB + (long) Math.ceil(getBandwidthDelayProduct() * TARGET_BDP_MULTIPLE / (1024.0 * numOutstandingRequests));
+            if (idleTargetKB > readSizeKB && consumerStallNS > 0)
+            {
+                targetKB = (int) Math.min(idleTargetKB, readSizeKB * 2L);
+            }
+        }
+        else
+        {
+            long bdpTargetKB = (long) Math.ceil(getBandwidthDelayProduct() * TARGET_BDP_MULTIPLE / 1024.0);
+            if (bdpTargetKB > readSizeKB && consumerStallNS > 0)
+            {
+                // Limit growth per request, a single sample can overestimate the BDP
+                targetKB = (int) Math.min(bdpTargetKB, readSizeKB * 2L);
+            }
+            else if (bdpTargetKB < readSizeKB * (1.0 - MIN_CHANGE_FRACTION))
+            {
+                targetKB = (int) bdpTargetKB;
+            }
+        }
+
+        targetKB = Math.min(maxReadSizeKB, Math.max(minReadSizeKB, targetKB));
+        if (targetKB == readSizeKB)
+        {
+            return false;
+        }
+
+        if (isConsumerBound == false && Math.abs(targetKB - readSizeKB) < readSizeKB * MIN_CHANGE_FRACTION)
+        {
+            return false;
+        }
+
+        if (targetKB > readSizeKB)
+        {
+            numIncreases++;
+        }
+        else
+        {
+            numDecreases++;
+        }
+
+        readSizeKB = targetKB;
+        return true;
+    }
+
+    /**
+     * Returns the current read size.
+     *
+     * @return the read size in KB
+     */
+    int getReadSizeKB()
+    {
+        return readSizeKB;
+    }
+
+    /**
+     * Returns the estimated bandwidth-delay product of the connection.
+     *
+     * @return the bandwidth-delay product in bytes
+     */
+    long getBandwidthDelayProduct()
+    {
+        return (long) (throughputBytesPerNS * roundTripTimeNS);
+    }
+
+    /**
+     * Returns the estimated throughput of the connection.
+     *
+     * @return the throughput in bytes per second
+     */
+    double getThroughput()
+    {
+        return throughputBytesPerNS * 1e9;
+    }
+
+    /**
+     * Returns the estimated round trip time of a request.
+     *
+     * @return the round trip time in nanoseconds
+     */
+    double getRoundTripTimeNS()
+    {
+        return roundTripTimeNS;
+    }
+
+    /**
+     * Returns the number of times the read size has been increased.
+     *
+     * @return the number of increases
+     */
+    int getNumIncreases()
+    {
+        return numIncreases;
+    }
+
+    /**
+     * Returns the number of times the read size has been decreased.
+     *
+     * @return the number of decreases
+     */
+    int getNumDecreases()
+    {
+        return numDecreases;
+    }
+}
@@ -16,11 +16,14 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.security.InvalidParameterException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import io.opentelemetry.api.trace.Span;
@@ -29,6 +32,7 @@ import io.opentelemetry.api.trace.StatusCode;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.ecl.FieldType;
 import org.hpccsystems.commons.ecl.HpccSrcType;
 import org.hpccsystems.commons.errors.HpccFileException;
 import org.hpccsystems.commons.errors.UnparsableContentException;
@@ -36,13 +40,26 @@ import org.hpccsystems.commons.utils.Utils;
 
 class CountingInputStream extends InputStream
 {
-    long        streamPos   = 0;
-    long        markPos     = 0;
-    InputStream inputStream = null;
+    // Limits how much of the source stream's buffer is held by a window before the consumed bytes are released
+    static final int              MAX_WINDOW_SIZE = 64 * 1024;
+
+    long                   streamPos   = 0;
+    long                   markPos     = 0;
+    InputStream            inputStream = null;
+
+    // When the source stream supports it data is decoded directly from a window into the stream's buffer.
+    // Bytes consumed from the window are only skipped in the source stream when the window is released.
+    IByteBufferInputStream byteBufferSource = null;
+    private ByteBuffer     window = null;
+    private int            windowReleasePos = 0;
 
     CountingInputStream(InputStream is)
     {
         this.inputStream = is;
+        if (is instanceof IByteBufferInputStream)
+        {
+            this.byteBufferSource = (IByteBufferInputStream) is;
+        }
     }
 
     long getStreamPosition()
@@ -50,18 +67,120 @@ class CountingInputStream extends InputStream
         return streamPos;
     }
 
+    /**
+     * Returns a window containing at least len bytes starting at the current stream position, or null if the
+     * bytes are not contiguous in the source stream's buffer and need to be read from the stream instead.
+     * Bytes read from the window must be consumed with {@link #advanceWindow(int)}.
+     */
+    ByteBuffer getWindow(int len) throws IOException
+    {
+        if (window != null && window.remaining() >= len)
+        {
+            return window;
+        }
+
+        if (byteBufferSource == null)
+        {
+            return null;
+        }
+
+        releaseWindow();
+
+        ByteBuffer newWindow = byteBufferSource.getReadableByteBuffer(Math.max(len, MAX_WINDOW_SIZE));
+        if (newWindow == null || newWindow.remaining() < len)
+        {
+            return null;
+        }
+
+        window = newWindow;
+        windowReleasePos = newWindow.position();
+        return window;
+    }
+
+    void advanceWindow(int len)
+    {
+        window.position(window.position() + len);
+        streamPos += len;
+    }
+
+    /**
+     * Copies len bytes from the window if they are contiguous in the source stream's buffer.
+     *
+     * @return true if the bytes were copied, false if they need to be read from the stream instead
+     */
+    boolean readFromWindow(byte[] b, int off, int len) throws IOException
+    {
+        ByteBuffer w = getWindow(len);
+        if (w == null)
+        {
+            return false;
+        }
+
+        w.get(b, off, len);
+        streamPos += len;
+        return true;
+    }
+
+    /**
+     * Skips the bytes consumed from the window in the source stream, handing the space back to the stream.
+     */
+    void releaseWindow() throws IOException
+    {
+        if (window == null)
+        {
+            return;
+        }
+
+        long bytesToSkip = window.position() - windowReleasePos;
+        window = null;
+        while (bytesToSkip > 0)
+        {
+            long bytesSkipped = this.inputStream.skip(bytesToSkip);
+            if (bytesSkipped <= 0)
+            {
+                throw new IOException("Unable to release " + bytesToSkip + " bytes read from the input stream buffer");
+            }
+            bytesToSkip -= bytesSkipped;
+        }
+    }
+
+    /**
+     * Drops the window without skipping the consumed bytes in the source stream, used when the source stream is repositioned.
+     */
+    void discardWindow()
+    {
+        window = null;
+    }
+
     public int available() throws IOException
     {
+        if (window != null && window.hasRemaining())
+        {
+            return window.remaining();
+        }
+
+        releaseWindow();
         return this.inputStream.available();
     }
 
     public void close() throws IOException
     {
+        window = null;
         this.inputStream.close();
     }
 
     public void mark(int readlimit)
     {
+        try
+        {
+            releaseWindow();
+        }
+        catch (IOException e)
+        {
+            // InputStream.mark can't throw, the error will be encountered again on the next read
+            window = null;
+        }
+
         this.markPos = streamPos;
         this.inputStream.mark(readlimit);
     }
@@ -74,6 +193,7 @@ class CountingInputStream extends InputStream
     // Returns next byte [0-255] -1 on EOS
     public int read() throws IOException
     {
+        releaseWindow();
         int ret = this.inputStream.read();
         if (ret > -1)
         {
@@ -86,18 +206,13 @@ class CountingInputStream extends InputStream
     // Returns -1 on EOS
     public int read(byte[] b) throws IOException
     {
-        int ret = this.inputStream.read(b);
-        if (ret > 0)
-        {
-            streamPos += ret;
-        }
-
-        return ret;
+        return read(b, 0, b.length);
     }
 
     // Returns -1 on EOS
     public int read(byte[] b, int off, int len) throws IOException
     {
+        releaseWindow();
         int ret = this.inputStream.read(b, off, len);
         if (ret > 0)
         {
@@ -109,12 +224,14 @@ class CountingInputStream extends InputStream
 
     public void reset() throws IOException
     {
+        releaseWindow();
         this.streamPos = markPos;
         this.inputStream.reset();
     }
 
     public long skip(long n) throws IOException
     {
+        releaseWindow();
         long ret = this.inputStream.skip(n);
         streamPos += ret;
 
@@ -122,6 +239,88 @@ class CountingInputStream extends InputStream
     }
 }
 
+/**
+ * Reads the bytes of a field of a record view from the view's buffer.
+ */
+class RecordViewInputStream extends InputStream implements IByteBufferInputStream
+{
+    private byte[] buffer  = null;
+    private int    pos     = 0;
+    private int    end     = 0;
+    private int    markPos = 0;
+
+    void setRange(byte[] buffer, int start, int end)
+    {
+        this.buffer = buffer;
+        this.pos = start;
+        this.end = end;
+        this.markPos = start;
+    }
+
+    public ByteBuffer getReadableByteBuffer(int maxLength)
+    {
+        if (pos >= end)
+        {
+            return null;
+        }
+        return ByteBuffer.wrap(buffer, pos, Math.min(end - pos, maxLength));
+    }
+
+    public int available()
+    {
+        return end - pos;
+    }
+
+    public boolean markSupported()
+    {
+        return true;
+    }
+
+    public void mark(int readlimit)
+    {
+        markPos = pos;
+    }
+
+    public void reset()
+    {
+        pos = markPos;
+    }
+
+    public int read()
+    {
+        if (pos >= end)
+        {
+            return -1;
+        }
+        return buffer[pos++] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len)
+    {
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        if (pos >= end)
+        {
+            return -1;
+        }
+
+        int bytesToRead = Math.min(len, end - pos);
+        System.arraycopy(buffer, pos, b, off, bytesToRead);
+        pos += bytesToRead;
+        return bytesToRead;
+    }
+
+    public long skip(long n)
+    {
+        long bytesToSkip = Math.max(0, Math.min(n, end - pos));
+        pos += (int) bytesToSkip;
+        return bytesToSkip;
+    }
+}
+
 /**
  * Deserializes data from the provided InputStream and constructs records via the provided IRecordBuilder.
  *
@@ -130,12 +329,13 @@ class CountingInputStream extends InputStream
 public class BinaryRecordReader implements IRecordReader
 {
     protected IRecordBuilder     rootRecordBuilder;
-    private CountingInputStream  inputStream;
+    CountingInputStream          inputStream;
     private FieldDef             rootRecordDefinition;
     protected boolean            defaultLE;
     private long                 streamPosAfterLastRecord = 0;
     private boolean              isIndex = false;
     private boolean              useDecimalForUnsigned8 = false;
+    private boolean              useUnscaledDecimals = false;
 
     public static final int      NO_STRING_PROCESSING = 0;
     public static final int      TRIM_STRINGS = 1;
@@ -162,7 +362,48 @@ public class BinaryRecordReader implements IRecordReader
     private int                  readStalls = 0;
     private long                 recordCount = 0;
 
-    private byte[]               scratchBuffer = new byte[BUFFER_GROW_SIZE];
+    // The input stream, scratch buffer, fixed record and string range are also used by the ColumnarBatchDecoder and
+    // RecordViewScanner compiled for this reader
+    byte[]                       scratchBuffer = new byte[BUFFER_GROW_SIZE];
+    private ByteBuffer           scratchBufferView = null;
+
+    // The region holding the current fixed length record, either a window into the input stream's buffer or the scratch buffer
+    byte[]                       fixedRecordData = null;
+    ByteBuffer                   fixedRecordBuffer = null;
+    private boolean              isFixedRecordInWindow = false;
+
+    // The range of the last string read into the scratch buffer, [start, end)
+    final int[]                  stringRange = new int[2];
+
+    // Holds the elements of SET OF INTEGER fields passed to IRecordBuilder.setLongArrayFieldValue()
+    private long[]               longArrayBuffer = new long[0];
+
+    // Decoder plan for the root record definition, compiled in initialize() and whenever a setting used by the decoders changes
+    private boolean              useDecoderPlan = true;
+    private RecordDecoder        rootRecordDecoder = null;
+
+    // Decoder plan for reading into a ColumnarBatch, compiled on first use
+    private ColumnarBatchDecoder rootColumnDecoder = null;
+
+    // Record views are returned when the root record builder is an HPCCRecordViewBuilder. The bytes of each record are
+    // copied into a buffer by recordViewScanner, and fields are decoded on demand by recordViewFieldReader.
+    private HPCCRecordView       recordView = null;
+    private RecordViewScanner    recordViewScanner = null;
+    private BinaryRecordReader   recordViewFieldReader = null;
+
+    // Set on the readers that decode the fields of record views
+    private RecordViewInputStream viewInputStream = null;
+    private FieldDecoder[]       viewFieldDecoders = null;
+
+    // Records are filtered by recordPredicate before they are constructed. Each record is scanned by the record view
+    // scanner, the predicate is evaluated on the bytes of its fields, and only matching records are decoded by
+    // predicateRecordReader or returned as record views. hasNext() reads ahead to the next matching record.
+    private RecordPredicate      recordPredicate = null;
+    private FieldDef             predicateRecordDefinition = null;
+    private RecordPredicateEvaluator predicateEvaluator = null;
+    private BinaryRecordReader   predicateRecordReader = null;
+    private Object               pendingRecord = null;
+    private long                 filteredRecordCount = 0;
 
     private static final Charset sbcSet              = Charset.forName("ISO-8859-1");
     private static final Charset utf8Set             = Charset.forName("UTF-8");
@@ -176,14 +417,24 @@ public class BinaryRecordReader implements IRecordReader
                                                          100000000000L, 1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L };
     private static final int[]   signMap             = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, +1, -1, +1, -1, +1, +1 };
 
+    // Value of the two decimal digits packed into each byte, indexed by the unsigned byte value
+    private static final int[]   bcdByteValues       = new int[256];
+    static
+    {
+        for (int i = 0; i < bcdByteValues.length; i++)
+        {
+            bcdByteValues[i] = ((i >> 4) & 0x0f) * 10 + (i & 0x0f);
+        }
+    }
+
     private static final int     SLEEP_TIME_WARN_MS  = 100;
     private static final int     SHORT_SLEEP_MS      = 1;
     private static final int     MASK_32_LOWER_HALF  = 0xffff;
-    private static final int     BUFFER_GROW_SIZE    = 8192;
+    static final int             BUFFER_GROW_SIZE    = 8192;
     private static final int     OPTIMIZED_STRING_READ_AHEAD = 32;
 
     // Max java UTF16 string length
-    private static final int     MAX_STRING_LENGTH = 1073741823;
+    static final int             MAX_STRING_LENGTH = 1073741823;
 
     // DO NOT CHANGE THESE VALUES. HERE FOR CODE READABILITY ONLY
     private static final int     QSTR_COMPRESSED_CHUNK_LEN = 3;
@@ -258,6 +509,34 @@ public class BinaryRecordReader implements IRecordReader
         startNewRecordBatchSpan();
     }
 
+    /**
+     * Creates a reader that decodes the fields of the record views created by parent, with the settings of parent.
+     *
+     * @param parent the reader creating record views
+     * @param recordDef the record definition of the record views
+     * @param recordBuilder the record builder, provides the child record builders used when decoding child records and datasets
+     */
+    private BinaryRecordReader(BinaryRecordReader parent, FieldDef recordDef, IRecordBuilder recordBuilder)
+    {
+        this.viewInputStream = new RecordViewInputStream();
+        this.inputStream = new CountingInputStream(this.viewInputStream);
+        this.defaultLE = parent.defaultLE;
+        this.messages = parent.messages;
+        this.useDecimalForUnsigned8 = parent.useDecimalForUnsigned8;
+        this.useUnscaledDecimals = parent.useUnscaledDecimals;
+        this.shouldTrimStrings = parent.shouldTrimStrings;
+        this.shouldTrimFixedLenStrings = parent.shouldTrimFixedLenStrings;
+        this.convertEmptyStringsToNull = parent.convertEmptyStringsToNull;
+        this.rootRecordDefinition = recordDef;
+        this.rootRecordBuilder = recordBuilder;
+
+        this.viewFieldDecoders = new FieldDecoder[this.rootRecordDefinition.getNumDefs()];
+        for (int fieldIndex = 0; fieldIndex < this.viewFieldDecoders.length; fieldIndex++)
+        {
+            this.viewFieldDecoders[fieldIndex] = compileFieldDecoder(this.rootRecordDefinition.getDef(fieldIndex), fieldIndex);
+        }
+    }
+
     /**
      * Set the record batch size in KB.
      * 
@@ -323,6 +602,8 @@ public class BinaryRecordReader implements IRecordReader
         {
             throw new Exception("Error initializing BinaryRecordReader. IRecordBuilder provided a null record definition.");
         }
+
+        compileDecoderPlan();
     }
 
     /**
@@ -333,6 +614,7 @@ public class BinaryRecordReader implements IRecordReader
     public void setUseDecimalForUnsigned8(boolean useDecimal)
     {
         useDecimalForUnsigned8 = useDecimal;
+        compileDecoderPlan();
     }
 
     /**
@@ -345,6 +627,30 @@ public class BinaryRecordReader implements IRecordReader
         return useDecimalForUnsigned8;
     }
 
+    /**
+     * Determines if decimals with at most 18 digits should be decoded into an unscaled long and the scale of the field
+     * instead of through BigInteger arithmetic. Record builders that support primitive field values receive
+     * the unscaled long, @see org.hpccsystems.dfs.client.IRecordBuilder#setUnscaledDecimalFieldValue(int, long, int),
+     * other record builders receive a BigDecimal created from it. Wider decimals are always decoded as BigDecimals.
+     *
+     * @param useUnscaled use unscaled decimals
+     */
+    public void setUseUnscaledDecimals(boolean useUnscaled)
+    {
+        useUnscaledDecimals = useUnscaled;
+        compileDecoderPlan();
+    }
+
+    /**
+     * Returns whether decimals with at most 18 digits are decoded into unscaled longs.
+     *
+     * @return use unscaled decimals
+     */
+    public boolean getUseUnscaledDecimals()
+    {
+        return useUnscaledDecimals;
+    }
+
     /**
      * Should be set if this record reader is reading an index file.
      *
@@ -365,6 +671,7 @@ public class BinaryRecordReader implements IRecordReader
         shouldTrimStrings = (flags & TRIM_STRINGS) != 0;
         shouldTrimFixedLenStrings = (flags & TRIM_FIXED_LEN_STRINGS) != 0;
         convertEmptyStringsToNull = (flags & CONVERT_EMPTY_STRINGS_TO_NULL) != 0;
+        compileDecoderPlan();
     }
 
     /**
@@ -381,6 +688,120 @@ public class BinaryRecordReader implements IRecordReader
         return flags;
     }
 
+    /**
+     * Determines if records are decoded with a decoder plan compiled from the record definition,
+     * or by interpreting the record definition for each record. Decoder plans are used by default.
+     *
+     * @param useDecoderPlan use decoder plan
+     */
+    void setUseDecoderPlan(boolean useDecoderPlan)
+    {
+        this.useDecoderPlan = useDecoderPlan;
+        compileDecoderPlan();
+    }
+
+    /**
+     * Sets a predicate that records must match to be returned, null to return every record.
+     * Must be called after initialize() and before the first record is read.
+     *
+     * @see org.hpccsystems.dfs.client.BinaryRecordReader#setRecordPredicate(RecordPredicate, FieldDef)
+     *
+     * @param predicate
+     *            the predicate, on fields of the record definition of the record builder
+     * @throws HpccFileException
+     *             if the predicate cannot be evaluated on the record definition
+     */
+    public void setRecordPredicate(RecordPredicate predicate) throws HpccFileException
+    {
+        setRecordPredicate(predicate, this.rootRecordDefinition);
+    }
+
+    /**
+     * Sets a predicate that records must match to be returned, null to return every record.
+     * Must be called after initialize() and before the first record is read.
+     *
+     * The predicate is evaluated on the bytes of each record, records that do not match are skipped without
+     * being constructed, and only the fields that are tested are decoded. Integer, real and boolean fields
+     * are compared without decoding, as are strings when no string processing flags are set and the
+     * string is single byte or variable length UTF8.
+     *
+     * The predicate can test fields that are not part of the records returned: the stream then contains records of
+     * readRecordDefinition, the fields of the record builder followed by the additional fields,
+     * @see org.hpccsystems.dfs.client.RecordPredicate#getReadRecordDefinition(FieldDef, FieldDef).
+     * Record predicates are not supported when decoding columnar batches.
+     *
+     * @param predicate
+     *            the predicate, on fields of readRecordDefinition
+     * @param readRecordDefinition
+     *            the record definition of the records in the stream
+     * @throws HpccFileException
+     *             if the predicate cannot be evaluated on the record definition
+     */
+    public void setRecordPredicate(RecordPredicate predicate, FieldDef readRecordDefinition) throws HpccFileException
+    {
+        if (this.rootRecordDefinition == null)
+        {
+            throw new HpccFileException("BinaryRecordReader.setRecordPredicate(): RecordReader must be initialized before setting a record predicate.");
+        }
+
+        if (readRecordDefinition == null)
+        {
+            readRecordDefinition = this.rootRecordDefinition;
+        }
+
+        if (readRecordDefinition.getNumDefs() < this.rootRecordDefinition.getNumDefs())
+        {
+            throw new HpccFileException("BinaryRecordReader.setRecordPredicate(): The read record definition must start with the fields of the record builder.");
+        }
+
+        for (int fieldIndex = 0; fieldIndex < this.rootRecordDefinition.getNumDefs(); fieldIndex++)
+        {
+            String fieldName = this.rootRecordDefinition.getDef(fieldIndex).getFieldName();
+            if (!fieldName.equals(readRecordDefinition.getDef(fieldIndex).getFieldName()))
+            {
+                throw new HpccFileException("BinaryRecordReader.setRecordPredicate(): The read record definition must start with the fields of the record builder, "
+                                            + "expected field: " + fieldName + " found: " + readRecordDefinition.getDef(fieldIndex).getFieldName());
+            }
+        }
+
+        RecordPredicate previousPredicate = this.recordPredicate;
+        FieldDef previousRecordDefinition = this.predicateRecordDefinition;
+
+        this.recordPredicate = predicate;
+        this.predicateRecordDefinition = (predicate != null) ? readRecordDefinition : null;
+        try
+        {
+            compileDecoderPlan();
+        }
+        catch (IllegalArgumentException e)
+        {
+            this.recordPredicate = previousPredicate;
+            this.predicateRecordDefinition = previousRecordDefinition;
+            compileDecoderPlan();
+            throw new HpccFileException("BinaryRecordReader.setRecordPredicate(): Unable to compile record predicate: " + predicate + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the predicate records must match to be returned.
+     *
+     * @return the predicate, null if every record is returned
+     */
+    public RecordPredicate getRecordPredicate()
+    {
+        return this.recordPredicate;
+    }
+
+    /**
+     * Returns the number of records that were skipped because they did not match the record predicate.
+     *
+     * @return the number of records filtered
+     */
+    public long getFilteredRecordCount()
+    {
+        return this.filteredRecordCount;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -393,6 +814,16 @@ public class BinaryRecordReader implements IRecordReader
             throw new HpccFileException("BinaryRecordReader.hasNext(): RecordReader must be initialized before being used. rootRecordBuilder is null, hasNext() failed.");
         }
 
+        if (this.predicateEvaluator != null)
+        {
+            return hasNextMatchingRecord();
+        }
+
+        return hasNextRecord();
+    }
+
+    private boolean hasNextRecord() throws HpccFileException
+    {
         int nextByte = -1;
         try
         {
@@ -431,61 +862,275 @@ public class BinaryRecordReader implements IRecordReader
         return hasNextRecord;
     }
 
-    /*
-     * (non-Javadoc)
-     *
-     * @see org.hpccsystems.spark.thor.IRecordReader#getNext()
+    /**
+     * Reads ahead to the next record that matches the record predicate, and decodes it into pendingRecord.
      */
-    public Object getNext() throws HpccFileException
+    private boolean hasNextMatchingRecord() throws HpccFileException
     {
-        long start = 0;
-        if (this.recordBuilderSpan != null)
+        if (this.pendingRecord != null)
         {
-            start = System.nanoTime();
-            this.externalProcessingTimeNS += (start - lastRecordTimeNS);
+            return true;
         }
 
-        if (this.rootRecordBuilder == null)
+        while (hasNextRecord())
         {
-            throw new HpccFileException("BinaryRecordReader.getNext(): RecordReader must be initialized before being used, rootRecordBuilder is null.");
+            try
+            {
+                this.recordViewScanner.scan();
+                byte[] recordViewBuffer = this.recordViewScanner.getBuffer();
+                int[] recordViewOffsets = this.recordViewScanner.getOffsets();
+                if (this.predicateEvaluator.evaluate(recordViewBuffer, this.recordViewScanner.getByteBuffer(), recordViewOffsets) != RecordPredicateEvaluator.TRUE)
+                {
+                    this.filteredRecordCount++;
+                    continue;
+                }
+
+                if (this.predicateRecordReader != null)
+                {
+                    this.pendingRecord = this.predicateRecordReader.decodeRecordView(recordViewBuffer,
+                                                                                     recordViewOffsets[this.rootRecordDefinition.getNumDefs()]);
+                }
+                else
+                {
+                    this.recordView.attach(recordViewBuffer, recordViewOffsets, this.recordViewFieldReader);
+                    this.pendingRecord = this.recordView;
+                }
+            }
+            catch (HpccFileException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                throw new HpccFileException("BinaryRecordReader.hasNext(): Failed to parse next record: " + e.getMessage(), e);
+            }
+
+            if (this.pendingRecord == null)
+            {
+                throw new HpccFileException("BinaryRecordReader.hasNext(): RecordContent not found, or invalid record structure. Check logs for more information.");
+            }
+            return true;
         }
 
-        if (!this.hasNext()) throw new NoSuchElementException("No next record!");
+        // Every record has been returned or filtered
+        this.streamPosAfterLastRecord = this.inputStream.getStreamPosition();
+        return false;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hpccsystems.spark.thor.IRecordReader#getNext()
+     */
+    public Object getNext() throws HpccFileException
+    {
+        long start = startRecord();
 
         Object record = null;
         try
         {
-            record = parseRecord(this.rootRecordDefinition, this.rootRecordBuilder, this.defaultLE);
-
-            if (record == null)
-            {
-                throw new HpccFileException("BinaryRecordReader.getNext(): RecordContent not found, or invalid record structure. Check logs for more information.");
-            }
-
+            record = decodeRecord();
         }
         catch (Exception e)
         {
             throw new HpccFileException("BinaryRecordReader.getNext(): Failed to parse next record: " + e.getMessage(), e);
         }
-            
-        this.streamPosAfterLastRecord = this.inputStream.getStreamPosition();
 
-        if (this.recordBuilderSpan != null)
-        {
-            long end = System.nanoTime();
-            this.recordDeserialTimeNS += (end - start);
-            this.lastRecordTimeNS = end;
-        }
+        finishRecord(start);
+        return record;
+    }
 
-        this.recordCount++;
+    /**
+     * Decodes up to maxRecords records into the provided list. The end of stream check is done once per batch,
+     * the following records are decoded while the input stream has buffered data, so fewer than maxRecords
+     * records may be returned before the end of the stream. The stream position after the last record and
+     * the record building span are updated once per batch.
+     *
+     * Record builders that reuse records, IE: @see org.hpccsystems.dfs.client.HPCCMutableRecordBuilder, add the
+     * same record to the list for every row and should be read with getNext() instead. Record views are reused by
+     * the reader, so a copy of each view is added to the list, @see org.hpccsystems.dfs.client.HPCCRecordView#copy().
+     *
+     * If decoding fails the records decoded before the failure remain in the list and the stream position
+     * after the last record refers to the last complete record.
+     *
+     * @param records
+     *            the list the records are added to
+     * @param maxRecords
+     *            the maximum number of records to decode
+     * @return the number of records added, 0 at the end of the stream
+     * @throws HpccFileException
+     *             the hpcc file exception
+     */
+    public int getNextBatch(List<Object> records, int maxRecords) throws HpccFileException
+    {
+        if (maxRecords <= 0 || !this.hasNext())
+        {
+            return 0;
+        }
+
+        long start = startRecordTimer();
+
+        int numRecords = 0;
+        long streamPosAfterRecord = this.streamPosAfterLastRecord;
+        try
+        {
+            do
+            {
+                Object record = decodeRecord();
+
+                // The record view is attached to the next record when it is read, including the read ahead by the record predicate
+                if (record == this.recordView)
+                {
+                    record = this.recordView.copy();
+                }
+                records.add(record);
+                streamPosAfterRecord = this.inputStream.getStreamPosition();
+                numRecords++;
+            } while (numRecords < maxRecords && hasBufferedRecord());
+
+            // Records read ahead by the record predicate that did not match are part of the batch
+            if (this.predicateEvaluator != null && this.pendingRecord == null)
+            {
+                streamPosAfterRecord = this.inputStream.getStreamPosition();
+            }
+        }
+        catch (Exception e)
+        {
+            throw new HpccFileException("BinaryRecordReader.getNextBatch(): Failed to parse next record: " + e.getMessage(), e);
+        }
+        finally
+        {
+            finishRecords(start, streamPosAfterRecord, numRecords);
+        }
+
+        return numRecords;
+    }
+
+    private boolean hasBufferedRecord() throws IOException, HpccFileException
+    {
+        if (this.predicateEvaluator != null)
+        {
+            return this.pendingRecord != null || (this.inputStream.available() > 0 && hasNextMatchingRecord());
+        }
+        return this.inputStream.available() > 0;
+    }
+
+    private Object decodeRecord() throws Exception
+    {
+        Object record = null;
+        if (this.predicateEvaluator != null)
+        {
+            // Decoded by hasNext()
+            record = this.pendingRecord;
+            this.pendingRecord = null;
+        }
+        else if (this.recordView != null)
+        {
+            record = scanRecordView();
+        }
+        else if (this.rootRecordDecoder != null)
+        {
+            record = this.rootRecordDecoder.decode(this.rootRecordBuilder);
+        }
+        else
+        {
+            record = parseRecord(this.rootRecordDefinition, this.rootRecordBuilder, this.defaultLE);
+        }
+
+        if (record == null)
+        {
+            throw new HpccFileException("BinaryRecordReader.getNext(): RecordContent not found, or invalid record structure. Check logs for more information.");
+        }
+
+        return record;
+    }
+
+    /**
+     * Decodes the next record into a row of a columnar batch, without constructing a record object.
+     *
+     * @param batch
+     *            the batch, created from the record definition of this reader
+     * @throws HpccFileException
+     *             the hpcc file exception
+     */
+    void getNext(ColumnarBatch batch) throws HpccFileException
+    {
+        if (this.recordPredicate != null)
+        {
+            throw new HpccFileException("BinaryRecordReader.getNext(): Record predicates are not supported when decoding columnar batches.");
+        }
+
+        long start = startRecord();
+
+        if (batch.getRecordDefinition() != this.rootRecordDefinition)
+        {
+            throw new HpccFileException("BinaryRecordReader.getNext(): ColumnarBatch was not created from the record definition of this reader.");
+        }
+
+        try
+        {
+            if (this.rootColumnDecoder == null)
+            {
+                this.rootColumnDecoder = new ColumnarBatchDecoder(this, this.rootRecordDefinition);
+            }
+            this.rootColumnDecoder.decode(batch.getRootColumn());
+        }
+        catch (Exception e)
+        {
+            throw new HpccFileException("BinaryRecordReader.getNext(): Failed to parse next record: " + e.getMessage(), e);
+        }
+
+        finishRecord(start);
+    }
+
+    private long startRecord() throws HpccFileException
+    {
+        long start = startRecordTimer();
+
+        if (this.rootRecordBuilder == null)
+        {
+            throw new HpccFileException("BinaryRecordReader.getNext(): RecordReader must be initialized before being used, rootRecordBuilder is null.");
+        }
+
+        if (!this.hasNext()) throw new NoSuchElementException("No next record!");
+
+        return start;
+    }
+
+    private long startRecordTimer()
+    {
+        long start = 0;
+        if (this.recordBuilderSpan != null)
+        {
+            start = System.nanoTime();
+            this.externalProcessingTimeNS += (start - lastRecordTimeNS);
+        }
+        return start;
+    }
+
+    private void finishRecord(long start)
+    {
+        finishRecords(start, this.inputStream.getStreamPosition(), 1);
+    }
+
+    private void finishRecords(long start, long streamPosAfterRecords, int numRecords)
+    {
+        this.streamPosAfterLastRecord = streamPosAfterRecords;
+
+        if (this.recordBuilderSpan != null)
+        {
+            long end = System.nanoTime();
+            this.recordDeserialTimeNS += (end - start);
+            this.lastRecordTimeNS = end;
+        }
+
+        this.recordCount += numRecords;
 
         long recordBatchByteLen = this.streamPosAfterLastRecord - this.recordBatchStreamPos;
         if (recordBatchByteLen >= this.recordBatchSize)
         {
             startNewRecordBatchSpan();
         }
-
-        return record;
     }
 
     /**
@@ -564,7 +1209,12 @@ public class BinaryRecordReader implements IRecordReader
                 BigDecimal decValue = null;
 
                 dataLen = (int) fd.getDataLen();
-                if (fd.isUnsigned())
+                if (useUnscaledDecimals && ColumnVector.hasUnscaledDecimals(fd))
+                {
+                    readIntoScratchBuffer(0, dataLen);
+                    decValue = BigDecimal.valueOf(decodeUnscaledDecimal(this.scratchBuffer, 0, dataLen, fd.isUnsigned() == false), fd.getScale());
+                }
+                else if (fd.isUnsigned())
                 {
                     decValue = getUnsignedDecimal(fd.getPrecision(), fd.getScale(), (int) fd.getDataLen());
                 }
@@ -587,22 +1237,7 @@ public class BinaryRecordReader implements IRecordReader
                     dataLen = (int) getInt(4, isLittleEndian);
                 }
 
-                byte[] bytes = new byte[dataLen];
-
-                int bytesConsumed = 0;
-                while (bytesConsumed < dataLen)
-                {
-                    int bytesRead = this.inputStream.read(bytes,bytesConsumed,dataLen-bytesConsumed);
-                    if (bytesRead < 0)
-                    {
-                        IOException e = new IOException("Error, Unexpected EOS while constructing binary value.");
-                        throw e;
-                    }
-
-                    bytesConsumed += bytesRead;
-                }
-
-                fieldValue = bytes;
+                fieldValue = getBytes(dataLen);
                 break;
             case BOOLEAN:
                 // fixed length for each boolean value specified by type def
@@ -835,42 +1470,1054 @@ public class BinaryRecordReader implements IRecordReader
                                 throw new UnparsableContentException("Recieved null child IRecordBulder for field:" + fd.getFieldName());
                             }
 
-                            long setEndPos = this.inputStream.getStreamPosition() + dataLen;
-                            while (this.inputStream.getStreamPosition() < setEndPos)
-                            {
-                                ws.add(parseRecord(childFd, childRecordBuilder, isLittleEndian));
-                            }
-                            break;
-                        }
-                        default:
-                            String msg = "Dataset unhandled child type: " + childFd.getFieldType();
-                            throw new UnparsableContentException(msg);
+                            long setEndPos = this.inputStream.getStreamPosition() + dataLen;
+                            while (this.inputStream.getStreamPosition() < setEndPos)
+                            {
+                                ws.add(parseRecord(childFd, childRecordBuilder, isLittleEndian));
+                            }
+                            break;
+                        }
+                        default:
+                            String msg = "Dataset unhandled child type: " + childFd.getFieldType();
+                            throw new UnparsableContentException(msg);
+                    }
+
+                    fieldValue = ws;
+                    break;
+                }
+                default:
+                    String msg = "Unhandled type: " + fd.getFieldType();
+                    throw new UnparsableContentException(msg);
+            }
+
+            try
+            {
+                recordBuilder.setFieldValue(fieldIndex, fieldValue);
+            }
+            catch (Exception e)
+            {
+                throw new UnparsableContentException("Unable to set field value for field: " + fd.getFieldName() + " with error: " + e.getMessage());
+            }
+        }
+        try
+        {
+            return recordBuilder.finalizeRecord();
+        }
+        catch (Exception e)
+        {
+            throw new UnparsableContentException("Unable to finalize record with error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes a single field. Field decoders are compiled once per record definition with the length, byte order,
+     * character set and string processing flags of the field already resolved.
+     */
+    private interface FieldDecoder
+    {
+        /**
+         * Decodes the next field value from the input stream.
+         *
+         * @param recordBuilder
+         *            the builder of the record containing the field, used to find the builders of child records
+         * @return the field value
+         * @throws UnparsableContentException
+         *             the unparsable content exception
+         * @throws IOException
+         *             Signals that an I/O exception has occurred.
+         */
+        Object decode(IRecordBuilder recordBuilder) throws UnparsableContentException, IOException;
+    }
+
+    /**
+     * Decodes a field of a record with a fixed length from its offset within the record.
+     */
+    private interface FixedFieldDecoder
+    {
+        /**
+         * Decodes a field value.
+         *
+         * @param data
+         *            the array containing the record
+         * @param buffer
+         *            a buffer wrapping the array, with the same indexes as the array
+         * @param pos
+         *            the index of the field in the array
+         * @return the field value
+         */
+        Object decode(byte[] data, ByteBuffer buffer, int pos);
+    }
+
+    /**
+     * Decodes an integer, real, boolean, unscaled decimal or SET OF INTEGER field and sets it on the record builder with the primitive
+     * field value setters. Only used with record builders that support primitive field values.
+     */
+    private interface PrimitiveFieldDecoder
+    {
+        void decodeInto(IRecordBuilder recordBuilder, int fieldIndex) throws UnparsableContentException, IOException, IllegalAccessException;
+    }
+
+    /**
+     * Decodes an integer, real, boolean or unscaled decimal field of a record with a fixed length and sets it on the record builder with the
+     * primitive field value setters. Only used with record builders that support primitive field values.
+     */
+    private interface FixedPrimitiveFieldDecoder
+    {
+        void decodeInto(IRecordBuilder recordBuilder, int fieldIndex, ByteBuffer buffer, int pos) throws IllegalAccessException;
+    }
+
+    /**
+     * Decodes a record with a flat array of field decoders. Child records have their own RecordDecoder.
+     */
+    private static class RecordDecoder
+    {
+        protected final FieldDef              recordDef;
+        private final FieldDecoder[]          fieldDecoders;
+        private final PrimitiveFieldDecoder[] primitiveFieldDecoders;
+
+        RecordDecoder(FieldDef recordDef, FieldDecoder[] fieldDecoders, PrimitiveFieldDecoder[] primitiveFieldDecoders)
+        {
+            this.recordDef = recordDef;
+            this.fieldDecoders = fieldDecoders;
+            this.primitiveFieldDecoders = primitiveFieldDecoders;
+        }
+
+        Object decode(IRecordBuilder recordBuilder) throws UnparsableContentException, IOException
+        {
+            try
+            {
+                recordBuilder.startRecord();
+            }
+            catch (Exception e)
+            {
+                throw new UnparsableContentException("Unable to start record with error: " + e.getMessage());
+            }
+
+            decodeFields(recordBuilder);
+
+            try
+            {
+                return recordBuilder.finalizeRecord();
+            }
+            catch (Exception e)
+            {
+                throw new UnparsableContentException("Unable to finalize record with error: " + e.getMessage());
+            }
+        }
+
+        void decodeFields(IRecordBuilder recordBuilder) throws UnparsableContentException, IOException
+        {
+            if (recordBuilder.supportsPrimitiveFieldValues())
+            {
+                for (int fieldIndex = 0; fieldIndex < fieldDecoders.length; fieldIndex++)
+                {
+                    if (primitiveFieldDecoders[fieldIndex] == null)
+                    {
+                        setFieldValue(recordBuilder, fieldIndex, fieldDecoders[fieldIndex].decode(recordBuilder));
+                        continue;
+                    }
+
+                    try
+                    {
+                        primitiveFieldDecoders[fieldIndex].decodeInto(recordBuilder, fieldIndex);
+                    }
+                    catch (IllegalAccessException e)
+                    {
+                        throw setFieldValueError(fieldIndex, e);
+                    }
+                }
+                return;
+            }
+
+            for (int fieldIndex = 0; fieldIndex < fieldDecoders.length; fieldIndex++)
+            {
+                setFieldValue(recordBuilder, fieldIndex, fieldDecoders[fieldIndex].decode(recordBuilder));
+            }
+        }
+
+        protected void setFieldValue(IRecordBuilder recordBuilder, int fieldIndex, Object fieldValue) throws UnparsableContentException
+        {
+            try
+            {
+                recordBuilder.setFieldValue(fieldIndex, fieldValue);
+            }
+            catch (Exception e)
+            {
+                throw setFieldValueError(fieldIndex, e);
+            }
+        }
+
+        protected UnparsableContentException setFieldValueError(int fieldIndex, Exception e)
+        {
+            return new UnparsableContentException("Unable to set field value for field: " + recordDef.getDef(fieldIndex).getFieldName() + " with error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decodes a record in which every field has a fixed length. The whole record is read from a single
+     * contiguous region, either the input stream's buffer or the scratch buffer, and each field is decoded
+     * from its precomputed offset.
+     */
+    private class FixedRecordDecoder extends RecordDecoder
+    {
+        private final FixedRecordLayout            layout;
+        private final FixedFieldDecoder[]          fixedFieldDecoders;
+        private final FixedPrimitiveFieldDecoder[] fixedPrimitiveFieldDecoders;
+
+        FixedRecordDecoder(FieldDef recordDef, FixedRecordLayout layout, FixedFieldDecoder[] fixedFieldDecoders,
+                           FixedPrimitiveFieldDecoder[] fixedPrimitiveFieldDecoders)
+        {
+            super(recordDef, null, null);
+            this.layout = layout;
+            this.fixedFieldDecoders = fixedFieldDecoders;
+            this.fixedPrimitiveFieldDecoders = fixedPrimitiveFieldDecoders;
+        }
+
+        @Override
+        void decodeFields(IRecordBuilder recordBuilder) throws UnparsableContentException, IOException
+        {
+            int recordPos = startFixedRecord(layout.getRecordSize());
+            if (recordBuilder.supportsPrimitiveFieldValues())
+            {
+                for (int fieldIndex = 0; fieldIndex < fixedFieldDecoders.length; fieldIndex++)
+                {
+                    int fieldPos = recordPos + layout.getFieldOffset(fieldIndex);
+                    if (fixedPrimitiveFieldDecoders[fieldIndex] == null)
+                    {
+                        setFieldValue(recordBuilder, fieldIndex, fixedFieldDecoders[fieldIndex].decode(fixedRecordData, fixedRecordBuffer, fieldPos));
+                        continue;
+                    }
+
+                    try
+                    {
+                        fixedPrimitiveFieldDecoders[fieldIndex].decodeInto(recordBuilder, fieldIndex, fixedRecordBuffer, fieldPos);
+                    }
+                    catch (IllegalAccessException e)
+                    {
+                        throw setFieldValueError(fieldIndex, e);
+                    }
+                }
+                finishFixedRecord(layout.getRecordSize());
+                return;
+            }
+
+            for (int fieldIndex = 0; fieldIndex < fixedFieldDecoders.length; fieldIndex++)
+            {
+                Object fieldValue = fixedFieldDecoders[fieldIndex].decode(fixedRecordData, fixedRecordBuffer, recordPos + layout.getFieldOffset(fieldIndex));
+                setFieldValue(recordBuilder, fieldIndex, fieldValue);
+            }
+            finishFixedRecord(layout.getRecordSize());
+        }
+    }
+
+    /**
+     * Makes a fixed length record available in fixedRecordData and fixedRecordBuffer. The record is decoded directly from
+     * the input stream's buffer when the whole record is available in it, otherwise it is copied into the scratch buffer.
+     * Fixed length records don't contain child records, so only one fixed length record is decoded at a time.
+     *
+     * @param recordSize
+     *            the record size
+     * @return the position of the record in fixedRecordData
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    int startFixedRecord(int recordSize) throws IOException
+    {
+        ByteBuffer window = inputStream.getWindow(recordSize);
+        isFixedRecordInWindow = window != null && window.hasArray() && window.arrayOffset() == 0;
+        if (isFixedRecordInWindow)
+        {
+            fixedRecordData = window.array();
+            fixedRecordBuffer = window;
+            return window.position();
+        }
+
+        readIntoScratchBuffer(0, recordSize);
+        fixedRecordData = scratchBuffer;
+        fixedRecordBuffer = getScratchBufferView();
+        return 0;
+    }
+
+    void finishFixedRecord(int recordSize)
+    {
+        if (isFixedRecordInWindow)
+        {
+            inputStream.advanceWindow(recordSize);
+        }
+
+        // Don't hold on to the input stream's buffer
+        fixedRecordData = null;
+        fixedRecordBuffer = null;
+    }
+
+    /**
+     * Compiles the decoder plan for the root record definition. Decoders capture the current reader settings,
+     * so the plan is recompiled when they change.
+     */
+    private void compileDecoderPlan()
+    {
+        this.rootColumnDecoder = null;
+        this.rootRecordDecoder = null;
+        this.recordView = null;
+
+        if (this.rootRecordDefinition == null)
+        {
+            return;
+        }
+
+        this.predicateEvaluator = null;
+        this.predicateRecordReader = null;
+
+        if (this.recordPredicate != null)
+        {
+            compileRecordPredicatePlan();
+        }
+        else if (this.rootRecordBuilder instanceof HPCCRecordViewBuilder)
+        {
+            compileRecordViewPlan(this.rootRecordDefinition);
+        }
+        else if (this.useDecoderPlan)
+        {
+            this.rootRecordDecoder = compileRecordDecoder(this.rootRecordDefinition);
+        }
+    }
+
+    private RecordDecoder compileRecordDecoder(FieldDef recordDef)
+    {
+        FixedRecordLayout layout = FixedRecordLayout.create(recordDef);
+        if (layout != null)
+        {
+            FixedFieldDecoder[] fixedFieldDecoders = new FixedFieldDecoder[layout.getNumFields()];
+            FixedPrimitiveFieldDecoder[] fixedPrimitiveFieldDecoders = new FixedPrimitiveFieldDecoder[layout.getNumFields()];
+            for (int fieldIndex = 0; fieldIndex < layout.getNumFields(); fieldIndex++)
+            {
+                fixedFieldDecoders[fieldIndex] = compileFixedFieldDecoder(layout.getFieldDef(fieldIndex), layout.getFieldSize(fieldIndex));
+                fixedPrimitiveFieldDecoders[fieldIndex] = compileFixedPrimitiveFieldDecoder(layout.getFieldDef(fieldIndex), layout.getFieldSize(fieldIndex));
+            }
+            return new FixedRecordDecoder(recordDef, layout, fixedFieldDecoders, fixedPrimitiveFieldDecoders);
+        }
+
+        FieldDecoder[] fieldDecoders = new FieldDecoder[recordDef.getNumDefs()];
+        PrimitiveFieldDecoder[] primitiveFieldDecoders = new PrimitiveFieldDecoder[recordDef.getNumDefs()];
+        for (int fieldIndex = 0; fieldIndex < recordDef.getNumDefs(); fieldIndex++)
+        {
+            fieldDecoders[fieldIndex] = compileFieldDecoder(recordDef.getDef(fieldIndex), fieldIndex);
+            primitiveFieldDecoders[fieldIndex] = compilePrimitiveFieldDecoder(recordDef.getDef(fieldIndex));
+        }
+        return new RecordDecoder(recordDef, fieldDecoders, primitiveFieldDecoders);
+    }
+
+    /**
+     * Compiles a decoder that sets an integer, real, boolean, unscaled decimal or SET OF INTEGER field with the primitive field value setters.
+     *
+     * @return the decoder, or null if the field value is an object
+     */
+    private PrimitiveFieldDecoder compilePrimitiveFieldDecoder(final FieldDef fd)
+    {
+        if (fd.isBlob() || (fd.isFixed() && fd.getDataLen() > Integer.MAX_VALUE))
+        {
+            return null;
+        }
+
+        final int dataLen = (int) fd.getDataLen();
+        final boolean isFieldLittleEndian = fd.getSourceType() == HpccSrcType.LITTLE_ENDIAN;
+        PrimitiveFieldDecoder decoder = null;
+        switch (fd.getFieldType())
+        {
+            case FILEPOS:
+            case INTEGER:
+            {
+                if (fd.isUnsigned() == false)
+                {
+                    decoder = (recordBuilder, fieldIndex) -> recordBuilder.setLongFieldValue(fieldIndex, getInt(dataLen, isFieldLittleEndian));
+                    break;
+                }
+
+                // Unsigned8 values are BigDecimals when useDecimalForUnsigned8 is set
+                if (useDecimalForUnsigned8 && dataLen == 8)
+                {
+                    return null;
+                }
+
+                final String overflowMessage = getUnsignedOverflowMessage(fd);
+                decoder = (recordBuilder, fieldIndex) ->
+                {
+                    long intValue = getUnsigned(dataLen, isFieldLittleEndian);
+                    if (intValue < 0)
+                    {
+                        messages.addMessage(overflowMessage);
+                    }
+                    recordBuilder.setLongFieldValue(fieldIndex, intValue);
+                };
+                break;
+            }
+            case REAL:
+                decoder = (recordBuilder, fieldIndex) -> recordBuilder.setDoubleFieldValue(fieldIndex, getReal(dataLen, isFieldLittleEndian));
+                break;
+            case BOOLEAN:
+                decoder = (recordBuilder, fieldIndex) -> recordBuilder.setBooleanFieldValue(fieldIndex, getInt(dataLen, isFieldLittleEndian) != 0);
+                break;
+            case DECIMAL:
+            {
+                if (useUnscaledDecimals == false || ColumnVector.hasUnscaledDecimals(fd) == false)
+                {
+                    return null;
+                }
+
+                final int scale = fd.getScale();
+                final boolean isSigned = fd.isUnsigned() == false;
+                decoder = (recordBuilder, fieldIndex) ->
+                {
+                    readIntoScratchBuffer(0, dataLen);
+                    recordBuilder.setUnscaledDecimalFieldValue(fieldIndex, decodeUnscaledDecimal(this.scratchBuffer, 0, dataLen, isSigned), scale);
+                };
+                break;
+            }
+            case SET:
+                decoder = compileLongArrayDecoder(fd);
+                if (decoder == null)
+                {
+                    return null;
+                }
+                break;
+            default:
+                return null;
+        }
+
+        final PrimitiveFieldDecoder primitiveFieldDecoder = decoder;
+        final String errorMessage = "Error while parsing field: " + fd.getFieldName() + " of type: " + fd.getFieldType() + ": ";
+        return (recordBuilder, fieldIndex) ->
+        {
+            try
+            {
+                primitiveFieldDecoder.decodeInto(recordBuilder, fieldIndex);
+            }
+            catch (IllegalAccessException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                throw new IOException(errorMessage, e);
+            }
+        };
+    }
+
+    /**
+     * Compiles a decoder for a SET OF INTEGER field that decodes all of the elements into a reused long array.
+     *
+     * @return the decoder, or null if the elements are not integers
+     */
+    private PrimitiveFieldDecoder compileLongArrayDecoder(final FieldDef fd)
+    {
+        if (fd.getNumDefs() != 1)
+        {
+            return null;
+        }
+
+        FieldDef elementFd = fd.getDef(0);
+        if (elementFd.getFieldType() != FieldType.INTEGER && elementFd.getFieldType() != FieldType.FILEPOS)
+        {
+            return null;
+        }
+
+        final int elementSize = FixedRecordLayout.getFixedFieldSize(elementFd);
+        final boolean isElementUnsigned = elementFd.isUnsigned();
+        if (elementSize <= 0 || (isElementUnsigned && useDecimalForUnsigned8 && elementSize == 8))
+        {
+            return null;
+        }
+
+        final boolean isElementLittleEndian = elementFd.getSourceType() == HpccSrcType.LITTLE_ENDIAN;
+        final String overflowMessage = getUnsignedOverflowMessage(elementFd);
+        final boolean isLittleEndian = this.defaultLE;
+        return (recordBuilder, fieldIndex) ->
+        {
+            // Sets have a preceding unused byte
+            this.inputStream.skip(1);
+
+            int dataLen = (int) getInt(4, isLittleEndian);
+            if (dataLen < 0 || dataLen % elementSize != 0)
+            {
+                throw new UnparsableContentException("Invalid set length: " + dataLen + " for element size: " + elementSize);
+            }
+
+            int numElements = dataLen / elementSize;
+            if (this.longArrayBuffer.length < numElements)
+            {
+                this.longArrayBuffer = new long[numElements];
+            }
+
+            readIntoScratchBuffer(0, dataLen);
+            ByteBuffer buffer = getScratchBufferView();
+            for (int i = 0; i < numElements; i++)
+            {
+                long value = getUnsigned(buffer, i * elementSize, elementSize, isElementLittleEndian);
+                if (isElementUnsigned == false)
+                {
+                    value = extendSign(value, elementSize);
+                }
+                else if (value < 0)
+                {
+                    messages.addMessage(overflowMessage);
+                }
+                this.longArrayBuffer[i] = value;
+            }
+
+            recordBuilder.setLongArrayFieldValue(fieldIndex, this.longArrayBuffer, numElements);
+        };
+    }
+
+    /**
+     * Compiles a decoder that sets an integer, real, boolean or unscaled decimal field of a fixed length record without boxing it.
+     *
+     * @return the decoder, or null if the field value is an object
+     */
+    private FixedPrimitiveFieldDecoder compileFixedPrimitiveFieldDecoder(final FieldDef fd, final int fieldSize)
+    {
+        final boolean isFieldLittleEndian = fd.getSourceType() == HpccSrcType.LITTLE_ENDIAN;
+        switch (fd.getFieldType())
+        {
+            case FILEPOS:
+            case INTEGER:
+            {
+                if (fd.isUnsigned() == false)
+                {
+                    return (recordBuilder, fieldIndex, buffer, pos) ->
+                        recordBuilder.setLongFieldValue(fieldIndex, extendSign(getUnsigned(buffer, pos, fieldSize, isFieldLittleEndian), fieldSize));
+                }
+
+                if (useDecimalForUnsigned8 && fieldSize == 8)
+                {
+                    return null;
+                }
+
+                final String overflowMessage = getUnsignedOverflowMessage(fd);
+                return (recordBuilder, fieldIndex, buffer, pos) ->
+                {
+                    long intValue = getUnsigned(buffer, pos, fieldSize, isFieldLittleEndian);
+                    if (intValue < 0)
+                    {
+                        messages.addMessage(overflowMessage);
+                    }
+                    recordBuilder.setLongFieldValue(fieldIndex, intValue);
+                };
+            }
+            case REAL:
+                return (recordBuilder, fieldIndex, buffer, pos) ->
+                    recordBuilder.setDoubleFieldValue(fieldIndex, getReal(buffer, pos, fieldSize, isFieldLittleEndian));
+            case BOOLEAN:
+                return (recordBuilder, fieldIndex, buffer, pos) ->
+                    recordBuilder.setBooleanFieldValue(fieldIndex, getUnsigned(buffer, pos, fieldSize, isFieldLittleEndian) != 0);
+            case DECIMAL:
+            {
+                if (useUnscaledDecimals == false || ColumnVector.hasUnscaledDecimals(fd) == false)
+                {
+                    return null;
+                }
+
+                final int scale = fd.getScale();
+                final boolean isSigned = fd.isUnsigned() == false;
+                return (recordBuilder, fieldIndex, buffer, pos) ->
+                    recordBuilder.setUnscaledDecimalFieldValue(fieldIndex, decodeUnscaledDecimal(buffer.array(), pos, fieldSize, isSigned), scale);
+            }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Compiles the decoder for a field. Definition errors are reported when a record is decoded,
+     * matching the behavior of parseRecord().
+     */
+    private FieldDecoder compileFieldDecoder(final FieldDef fd, final int fieldIndex)
+    {
+        if (fd.isBlob())
+        {
+            return compileBlobDecoder(fd);
+        }
+
+        switch (fd.getFieldType())
+        {
+            case INTEGER:
+            case FILEPOS:
+            case REAL:
+            case DECIMAL:
+            case BINARY:
+            case BOOLEAN:
+            case STRING:
+            case CHAR:
+            case VAR_STRING:
+                return wrapFlatFieldErrors(fd, compileFlatFieldDecoder(fd));
+            case RECORD:
+            {
+                final RecordDecoder childRecordDecoder = compileRecordDecoder(fd);
+                return (recordBuilder) -> childRecordDecoder.decode(getChildRecordBuilder(recordBuilder, fieldIndex, fd));
+            }
+            case SET:
+            case DATASET:
+                return compileDatasetDecoder(fd, fieldIndex);
+            default:
+                return failingDecoder("Unhandled type: " + fd.getFieldType());
+        }
+    }
+
+    private FieldDecoder compileBlobDecoder(final FieldDef fd)
+    {
+        // Only the blob file location is available, so skip it and return a default value
+        switch (fd.getFieldType())
+        {
+            case BINARY:
+                return (recordBuilder) -> { getUnsigned(8, true); return new byte[0]; };
+            case STRING:
+            case VAR_STRING:
+                return (recordBuilder) -> { getUnsigned(8, true); return ""; };
+            case SET:
+            case DATASET:
+                return (recordBuilder) -> { getUnsigned(8, true); return new ArrayList<Object>(); };
+            default:
+                return failingDecoder("Unexpected blob type: " + fd.getFieldType() + " for field: " + fd.getFieldName());
+        }
+    }
+
+    private FieldDecoder compileDatasetDecoder(final FieldDef fd, final int fieldIndex)
+    {
+        if (fd.getNumDefs() != 1)
+        {
+            return failingDecoder("Set should have a single child type." + fd.getNumDefs() + " child types found.");
+        }
+
+        FieldDef childFd = fd.getDef(0);
+        final FieldDecoder elementDecoder;
+        final boolean hasChildRecords;
+        switch (childFd.getFieldType())
+        {
+            case INTEGER:
+            case FILEPOS:
+            case REAL:
+            case DECIMAL:
+            case BINARY:
+            case BOOLEAN:
+            case STRING:
+            case CHAR:
+            case VAR_STRING:
+                elementDecoder = wrapFlatFieldErrors(fd, compileFlatFieldDecoder(childFd));
+                hasChildRecords = false;
+                break;
+            case RECORD:
+                elementDecoder = compileRecordDecoder(childFd)::decode;
+                hasChildRecords = true;
+                break;
+            default:
+                return failingDecoder("Dataset unhandled child type: " + childFd.getFieldType());
+        }
+
+        // Data layout for SETS & DATASETS are similar. Exception is SETS have a preceding unused byte.
+        final boolean isSet = fd.getFieldType() == FieldType.SET;
+        final int elementLen = (int) fd.getDataLen();
+        final boolean isLittleEndian = this.defaultLE;
+        return (recordBuilder) ->
+        {
+            if (isSet)
+            {
+                this.inputStream.skip(1);
+            }
+
+            int dataLen = (int) getInt(4, isLittleEndian);
+            int childCountGuess = 1;
+            if (elementLen > 0)
+            {
+                childCountGuess = dataLen / elementLen;
+            }
+
+            // Child records are built with the same builder, elements of flat types don't use one
+            IRecordBuilder elementBuilder = null;
+            if (hasChildRecords)
+            {
+                elementBuilder = getChildRecordBuilder(recordBuilder, fieldIndex, fd);
+            }
+
+            ArrayList<Object> ws = new ArrayList<Object>(childCountGuess);
+            long setEndPos = this.inputStream.getStreamPosition() + dataLen;
+            while (this.inputStream.getStreamPosition() < setEndPos)
+            {
+                ws.add(elementDecoder.decode(elementBuilder));
+            }
+            return ws;
+        };
+    }
+
+    private FieldDecoder compileFlatFieldDecoder(final FieldDef fd)
+    {
+        if (fd.isFixed() && fd.getDataLen() > Integer.MAX_VALUE)
+        {
+            return failingDecoder("BinaryRecordReader.parseFlatField(): Data length: " + fd.getDataLen() + " exceeds max supported length: " + Integer.MAX_VALUE);
+        }
+
+        final int dataLen = (int) fd.getDataLen();
+        final boolean isFieldLittleEndian = fd.getSourceType() == HpccSrcType.LITTLE_ENDIAN;
+        final HpccSrcType srcType = fd.getSourceType();
+
+        // Embedded field lengths are little endian
+        final boolean isLittleEndian = this.defaultLE;
+
+        switch (fd.getFieldType())
+        {
+            case FILEPOS:
+            case INTEGER:
+            {
+                if (fd.isUnsigned() == false)
+                {
+                    return (recordBuilder) -> Long.valueOf(getInt(dataLen, isFieldLittleEndian));
+                }
+
+                if (useDecimalForUnsigned8 && dataLen == 8)
+                {
+                    return (recordBuilder) -> new BigDecimal(Utils.extractUnsigned8Val(getUnsigned(dataLen, isFieldLittleEndian)));
+                }
+
+                final String overflowMessage = getUnsignedOverflowMessage(fd);
+                return (recordBuilder) ->
+                {
+                    long intValue = getUnsigned(dataLen, isFieldLittleEndian);
+                    if (intValue < 0)
+                    {
+                        messages.addMessage(overflowMessage);
+                    }
+                    return Long.valueOf(intValue);
+                };
+            }
+            case REAL:
+                return (recordBuilder) -> Double.valueOf(getReal(dataLen, isFieldLittleEndian));
+            case DECIMAL:
+            {
+                final int precision = fd.getPrecision();
+                final int scale = fd.getScale();
+                if (useUnscaledDecimals && ColumnVector.hasUnscaledDecimals(fd))
+                {
+                    final boolean isSigned = fd.isUnsigned() == false;
+                    return (recordBuilder) ->
+                    {
+                        readIntoScratchBuffer(0, dataLen);
+                        return BigDecimal.valueOf(decodeUnscaledDecimal(this.scratchBuffer, 0, dataLen, isSigned), scale);
+                    };
+                }
+
+                if (fd.isUnsigned())
+                {
+                    return (recordBuilder) -> getUnsignedDecimal(precision, scale, dataLen);
+                }
+                return (recordBuilder) -> getSignedDecimal(precision, scale, dataLen);
+            }
+            case BINARY:
+                if (fd.isFixed())
+                {
+                    return (recordBuilder) -> getBytes(dataLen);
+                }
+                return (recordBuilder) -> getBytes((int) getInt(4, isLittleEndian));
+            case BOOLEAN:
+                return (recordBuilder) -> Boolean.valueOf(getInt(dataLen, isFieldLittleEndian) != 0);
+            case CHAR:
+                return (recordBuilder) -> getString(srcType, 1, false);
+            case STRING:
+            {
+                if (fd.isFixed())
+                {
+                    if (dataLen > MAX_STRING_LENGTH)
+                    {
+                        return failingDecoder("String length exceeds maximum supported length: " + MAX_STRING_LENGTH);
+                    }
+
+                    final boolean shouldTrim = shouldTrimStrings || shouldTrimFixedLenStrings;
+                    return (recordBuilder) -> getString(srcType, dataLen, shouldTrim);
+                }
+
+                final boolean shouldTrim = shouldTrimStrings;
+                return (recordBuilder) ->
+                {
+                    int codePoints = (int) getInt(4, isLittleEndian);
+                    if (codePoints > MAX_STRING_LENGTH)
+                    {
+                        throw new UnparsableContentException("String length exceeds maximum supported length: " + MAX_STRING_LENGTH);
+                    }
+                    return getString(srcType, codePoints, shouldTrim);
+                };
+            }
+            case VAR_STRING:
+            {
+                // Var strings are null terminated. In the case of Unicode this a 2-byte null character
+                if (fd.isFixed())
+                {
+                    final boolean shouldTrim = shouldTrimStrings || shouldTrimFixedLenStrings;
+                    final int nullTerminatorLen = srcType.isUTF16() ? 2 : 1;
+                    return (recordBuilder) ->
+                    {
+                        String strValue = getString(srcType, dataLen, shouldTrim);
+                        this.inputStream.skip(nullTerminatorLen);
+                        return strValue;
+                    };
+                }
+
+                final boolean shouldTrim = shouldTrimStrings;
+                final String fieldName = fd.getFieldName();
+                return (recordBuilder) ->
+                {
+                    try
+                    {
+                        return getNullTerminatedString(srcType, shouldTrim);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new UnparsableContentException("Parsing VAR_STRING: " + fieldName + " failed with error: " + e.getMessage(), e);
+                    }
+                };
+            }
+            default:
+                return failingDecoder("Unexpected type: " + fd.getFieldType() + " for field: " + fd.getFieldName());
+        }
+    }
+
+    /**
+     * Compiles the decoder for a field with a fixed length. Must only be called for fields accepted by FixedRecordLayout.
+     */
+    private FixedFieldDecoder compileFixedFieldDecoder(final FieldDef fd, final int fieldSize)
+    {
+        final boolean isFieldLittleEndian = fd.getSourceType() == HpccSrcType.LITTLE_ENDIAN;
+
+        switch (fd.getFieldType())
+        {
+            case FILEPOS:
+            case INTEGER:
+            {
+                if (fd.isUnsigned() == false)
+                {
+                    return (data, buffer, pos) -> Long.valueOf(extendSign(getUnsigned(buffer, pos, fieldSize, isFieldLittleEndian), fieldSize));
+                }
+
+                if (useDecimalForUnsigned8 && fieldSize == 8)
+                {
+                    return (data, buffer, pos) -> new BigDecimal(Utils.extractUnsigned8Val(getUnsigned(buffer, pos, fieldSize, isFieldLittleEndian)));
+                }
+
+                final String overflowMessage = getUnsignedOverflowMessage(fd);
+                return (data, buffer, pos) ->
+                {
+                    long intValue = getUnsigned(buffer, pos, fieldSize, isFieldLittleEndian);
+                    if (intValue < 0)
+                    {
+                        messages.addMessage(overflowMessage);
                     }
+                    return Long.valueOf(intValue);
+                };
+            }
+            case REAL:
+                return (data, buffer, pos) -> Double.valueOf(getReal(buffer, pos, fieldSize, isFieldLittleEndian));
+            case BOOLEAN:
+                return (data, buffer, pos) -> Boolean.valueOf(getUnsigned(buffer, pos, fieldSize, isFieldLittleEndian) != 0);
+            case DECIMAL:
+            {
+                final int precision = fd.getPrecision();
+                final int scale = fd.getScale();
+                if (useUnscaledDecimals && ColumnVector.hasUnscaledDecimals(fd))
+                {
+                    final boolean isSigned = fd.isUnsigned() == false;
+                    return (data, buffer, pos) -> BigDecimal.valueOf(decodeUnscaledDecimal(data, pos, fieldSize, isSigned), scale);
+                }
 
-                    fieldValue = ws;
-                    break;
+                if (fd.isUnsigned())
+                {
+                    return (data, buffer, pos) -> decodeUnsignedDecimal(data, pos, precision, scale, fieldSize);
                 }
-                default:
-                    String msg = "Unhandled type: " + fd.getFieldType();
-                    throw new UnparsableContentException(msg);
+                return (data, buffer, pos) -> decodeSignedDecimal(data, pos, precision, scale, fieldSize);
+            }
+            case BINARY:
+                return (data, buffer, pos) -> Arrays.copyOfRange(data, pos, pos + fieldSize);
+            case STRING:
+            {
+                final boolean isUnicode = fd.getSourceType().isUTF16();
+                final Charset charset = (fd.getSourceType() == HpccSrcType.UTF16BE) ? utf16beSet : (isUnicode ? utf16leSet : sbcSet);
+                final boolean shouldTrim = shouldTrimStrings || shouldTrimFixedLenStrings;
+                final boolean convertToNull = convertEmptyStringsToNull;
+                if (fieldSize == 0)
+                {
+                    return (data, buffer, pos) -> "";
+                }
+
+                return (data, buffer, pos) ->
+                {
+                    int[] strRange = {pos, pos + fieldSize};
+                    if (shouldTrim)
+                    {
+                        trimString(data, isUnicode, strRange);
+                    }
+
+                    int strByteLen = strRange[1] - strRange[0];
+                    if (strByteLen == 0 && convertToNull)
+                    {
+                        return null;
+                    }
+                    return new String(data, strRange[0], strByteLen, charset);
+                };
             }
+            default:
+                throw new IllegalArgumentException("Unexpected fixed length type: " + fd.getFieldType() + " for field: " + fd.getFieldName());
+        }
+    }
+
+    private void compileRecordViewPlan(FieldDef recordDef)
+    {
+        this.recordViewScanner = new RecordViewScanner(this, recordDef);
+        this.recordViewFieldReader = new BinaryRecordReader(this, recordDef, new HPCCRecordBuilder(recordDef));
+        this.recordView = new HPCCRecordView(this.rootRecordDefinition);
+    }
+
+    /**
+     * Compiles the plan for filtering records with the record predicate. Records of the predicate record definition are
+     * scanned into the record view buffer, matching records are decoded from it by a reader with the root record builder,
+     * or returned as record views.
+     */
+    private void compileRecordPredicatePlan()
+    {
+        compileRecordViewPlan(this.predicateRecordDefinition);
+        if (!(this.rootRecordBuilder instanceof HPCCRecordViewBuilder))
+        {
+            this.predicateRecordReader = new BinaryRecordReader(this, this.rootRecordDefinition, this.rootRecordBuilder);
+            this.predicateRecordReader.rootRecordDecoder = this.predicateRecordReader.compileRecordDecoder(this.rootRecordDefinition);
+        }
+
+        this.predicateEvaluator = new RecordPredicateEvaluator(this.recordPredicate, this.predicateRecordDefinition, this.recordViewFieldReader,
+                                                               getStringProcessingFlags(), useDecimalForUnsigned8);
+    }
+
+    private HPCCRecordView scanRecordView() throws UnparsableContentException, IOException
+    {
+        this.recordViewScanner.scan();
+        this.recordView.attach(this.recordViewScanner.getBuffer(), this.recordViewScanner.getOffsets(), this.recordViewFieldReader);
+        return this.recordView;
+    }
 
+    /**
+     * Decodes a field of a record view. Must only be called on the reader created for decoding record view fields.
+     *
+     * @param fieldIndex
+     *            the field index
+     * @param buffer
+     *            the buffer containing the record
+     * @param start
+     *            the offset of the field in the buffer
+     * @param end
+     *            the offset of the end of the field in the buffer
+     * @return the field value
+     * @throws HpccFileException
+     *             the hpcc file exception
+     */
+    Object decodeRecordViewField(int fieldIndex, byte[] buffer, int start, int end) throws HpccFileException
+    {
+        try
+        {
+            this.viewInputStream.setRange(buffer, start, end);
+            this.inputStream.discardWindow();
+            return this.viewFieldDecoders[fieldIndex].decode(this.rootRecordBuilder);
+        }
+        catch (Exception e)
+        {
+            throw new HpccFileException("BinaryRecordReader: Failed to decode field: " + this.rootRecordDefinition.getDef(fieldIndex).getFieldName()
+                                        + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Decodes a record from the start of a record view buffer with the root record decoder. Must only be called on the
+     * reader created for decoding the records that match a record predicate.
+     *
+     * @param buffer
+     *            the buffer containing the record
+     * @param end
+     *            the offset of the end of the fields of the root record definition in the buffer
+     * @return the record
+     */
+    private Object decodeRecordView(byte[] buffer, int end) throws UnparsableContentException, IOException
+    {
+        this.viewInputStream.setRange(buffer, 0, end);
+        this.inputStream.discardWindow();
+        return this.rootRecordDecoder.decode(this.rootRecordBuilder);
+    }
+
+    private ByteBuffer getScratchBufferView()
+    {
+        if (this.scratchBufferView == null || this.scratchBufferView.array() != this.scratchBuffer)
+        {
+            this.scratchBufferView = ByteBuffer.wrap(this.scratchBuffer);
+        }
+        return this.scratchBufferView;
+    }
+
+    private static FieldDecoder wrapFlatFieldErrors(FieldDef fd, final FieldDecoder decoder)
+    {
+        final String errorMessage = "Error while parsing field: " + fd.getFieldName() + " of type: " + fd.getFieldType() + ": ";
+        return (recordBuilder) ->
+        {
             try
             {
-                recordBuilder.setFieldValue(fieldIndex, fieldValue);
+                return decoder.decode(recordBuilder);
             }
             catch (Exception e)
             {
-                throw new UnparsableContentException("Unable to set field value for field: " + fd.getFieldName() + " with error: " + e.getMessage());
+                throw new IOException(errorMessage, e);
             }
+        };
+    }
+
+    private static String getUnsignedOverflowMessage(FieldDef fd)
+    {
+        return "Warning: Possible unsigned overflow in column: '" + fd.getFieldName()
+                + "'. Convert values to BigInteger via org.hpccsystems.commons.utils.extractUnsigned8 if necessary, "
+                + " or call BinaryRecordReader.setUseDecimalForUnsigned8() before reading to convert unsigned8 values to BigDecimal values.";
+    }
+
+    private static FieldDecoder failingDecoder(final String msg)
+    {
+        return (recordBuilder) ->
+        {
+            throw new UnparsableContentException(msg);
+        };
+    }
+
+    private static IRecordBuilder getChildRecordBuilder(IRecordBuilder recordBuilder, int fieldIndex, FieldDef fd) throws UnparsableContentException
+    {
+        IRecordBuilder childRecordBuilder = recordBuilder.getChildRecordBuilder(fieldIndex);
+        if (childRecordBuilder == null)
+        {
+            throw new UnparsableContentException("Recieved null child IRecordBulder for field:" + fd.getFieldName());
         }
-        try
+        return childRecordBuilder;
+    }
+
+    private byte[] getBytes(int dataLen) throws IOException
+    {
+        byte[] bytes = new byte[dataLen];
+        readFully(bytes, 0, dataLen);
+        return bytes;
+    }
+
+    void readFully(byte[] bytes, int offset, int dataLen) throws IOException
+    {
+        int bytesConsumed = 0;
+        if (this.inputStream.readFromWindow(bytes, offset, dataLen))
         {
-            return recordBuilder.finalizeRecord();
+            bytesConsumed = dataLen;
         }
-        catch (Exception e)
+
+        while (bytesConsumed < dataLen)
         {
-            throw new UnparsableContentException("Unable to finalize record with error: " + e.getMessage());
+            int bytesRead = this.inputStream.read(bytes,offset+bytesConsumed,dataLen-bytesConsumed);
+            if (bytesRead < 0)
+            {
+                IOException e = new IOException("Error, Unexpected EOS while constructing binary value.");
+                throw e;
+            }
+
+            bytesConsumed += bytesRead;
         }
     }
 
@@ -882,11 +2529,16 @@ public class BinaryRecordReader implements IRecordReader
         }
     }
 
-    private void readIntoScratchBuffer(int offset, int dataLen) throws IOException
+    void readIntoScratchBuffer(int offset, int dataLen) throws IOException
     {
         int requiredCapacity = offset + dataLen;
         ensureScratchBufferCapacity(requiredCapacity);
 
+        if (this.inputStream.readFromWindow(this.scratchBuffer, offset, dataLen))
+        {
+            return;
+        }
+
         int totalSleepTimeMS = 0;
 
         int position = offset;
@@ -933,11 +2585,22 @@ public class BinaryRecordReader implements IRecordReader
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    private long getInt(int len, boolean little_endian) throws IOException
+    long getInt(int len, boolean little_endian) throws IOException
     {
-        long v = getUnsigned(len, little_endian);
+        return extendSign(getUnsigned(len, little_endian), len);
+    }
 
-        // Make the value negative if it should have been by extending sign bit
+    /**
+     * Make the value negative if it should have been by extending sign bit.
+     *
+     * @param v
+     *            the unsigned value
+     * @param len
+     *            the length of the value, 1 to 8 bytes
+     * @return the signed value
+     */
+    static long extendSign(long v, int len)
+    {
         long negMask = (0x80L << (len - 1) * 8);
         if ((v & negMask) != 0)
         {
@@ -961,8 +2624,16 @@ public class BinaryRecordReader implements IRecordReader
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    private long getUnsigned(int len, boolean little_endian) throws IOException
+    long getUnsigned(int len, boolean little_endian) throws IOException
     {
+        ByteBuffer window = this.inputStream.getWindow(len);
+        if (window != null)
+        {
+            long v = getUnsigned(window, window.position(), len, little_endian);
+            this.inputStream.advanceWindow(len);
+            return v;
+        }
+
         readIntoScratchBuffer(0, len);
         long v = 0;
         for (int i = 0; i < len; i++)
@@ -973,6 +2644,45 @@ public class BinaryRecordReader implements IRecordReader
         return v;
     }
 
+    /**
+     * Get an unsigned int from a position in a buffer without consuming it.
+     *
+     * @param buffer
+     *            the buffer
+     * @param pos
+     *            the position of the first byte in the buffer
+     * @param len
+     *            the length, 1 to 8 bytes
+     * @param little_endian
+     *            true if the value is little endian
+     * @return the integer extracted as a long
+     */
+    static long getUnsigned(ByteBuffer buffer, int pos, int len, boolean little_endian)
+    {
+        buffer.order(little_endian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        switch (len)
+        {
+            case 1:
+                return buffer.get(pos) & 0xffL;
+            case 2:
+                return buffer.getShort(pos) & 0xffffL;
+            case 4:
+                return buffer.getInt(pos) & 0xffffffffL;
+            case 8:
+                return buffer.getLong(pos);
+            default:
+            {
+                long v = 0;
+                for (int i = 0; i < len; i++)
+                {
+                    int idx = ((little_endian) ? len - 1 - i : i);
+                    v = (v << 8) | ((long) (buffer.get(pos + idx) & 0xff));
+                }
+                return v;
+            }
+        }
+    }
+
     /**
      * Get a real from the byte array.
      *
@@ -984,8 +2694,16 @@ public class BinaryRecordReader implements IRecordReader
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    private double getReal(int len, boolean little_endian) throws IOException
+    double getReal(int len, boolean little_endian) throws IOException
     {
+        ByteBuffer window = this.inputStream.getWindow(len);
+        if (window != null && (len == 4 || len == 8))
+        {
+            double u = getReal(window, window.position(), len, little_endian);
+            this.inputStream.advanceWindow(len);
+            return u;
+        }
+
         readIntoScratchBuffer(0, len);
 
         double u = 0;
@@ -1012,6 +2730,25 @@ public class BinaryRecordReader implements IRecordReader
         return u;
     }
 
+    /**
+     * Get a real from a position in a buffer without consuming it.
+     *
+     * @param buffer
+     *            the buffer
+     * @param pos
+     *            the position of the first byte in the buffer
+     * @param len
+     *            the length, 4 or 8
+     * @param little_endian
+     *            true if the value is little endian
+     * @return the extracted real as a double
+     */
+    static double getReal(ByteBuffer buffer, int pos, int len, boolean little_endian)
+    {
+        buffer.order(little_endian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        return (len == 4) ? buffer.getFloat(pos) : buffer.getDouble(pos);
+    }
+
     /**
      * Get a unsigned decimal from the byte array.
      *
@@ -1025,10 +2762,29 @@ public class BinaryRecordReader implements IRecordReader
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    private BigDecimal getUnsignedDecimal(int numDigits, int precision, int dataLen) throws IOException
+    BigDecimal getUnsignedDecimal(int numDigits, int precision, int dataLen) throws IOException
     {
         readIntoScratchBuffer(0, dataLen);
+        return decodeUnsignedDecimal(this.scratchBuffer, 0, numDigits, precision, dataLen);
+    }
 
+    /**
+     * Decode an unsigned decimal from a byte array.
+     *
+     * @param data
+     *            the byte array
+     * @param offset
+     *            the offset of the decimal in the byte array
+     * @param numDigits
+     *            the num digits
+     * @param precision
+     *            the precision
+     * @param dataLen
+     *            the data len
+     * @return BigDecimal
+     */
+    static BigDecimal decodeUnsignedDecimal(byte[] data, int offset, int numDigits, int precision, int dataLen)
+    {
         BigDecimal ret = new BigDecimal(0);
 
         int idx = 0;
@@ -1055,8 +2811,8 @@ public class BinaryRecordReader implements IRecordReader
 
             for (int j = 0; j < numToConsume; j++, idx++)
             {
-                value += powTable[15 - (j * 2 + 0)] * ((this.scratchBuffer[idx] >> 4) & 0x0f);
-                value += powTable[15 - (j * 2 + 1)] * (this.scratchBuffer[idx] & 0x0f);
+                value += powTable[15 - (j * 2 + 0)] * ((data[offset + idx] >> 4) & 0x0f);
+                value += powTable[15 - (j * 2 + 1)] * (data[offset + idx] & 0x0f);
             }
 
             int scale = (curDigit - precision) - 15;
@@ -1080,15 +2836,34 @@ public class BinaryRecordReader implements IRecordReader
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    private BigDecimal getSignedDecimal(int numDigits, int precision, int dataLen) throws IOException
+    BigDecimal getSignedDecimal(int numDigits, int precision, int dataLen) throws IOException
     {
         readIntoScratchBuffer(0, dataLen);
+        return decodeSignedDecimal(this.scratchBuffer, 0, numDigits, precision, dataLen);
+    }
 
+    /**
+     * Decode a decimal from a byte array.
+     *
+     * @param data
+     *            the byte array
+     * @param offset
+     *            the offset of the decimal in the byte array
+     * @param numDigits
+     *            the num digits
+     * @param precision
+     *            the precision
+     * @param dataLen
+     *            the data len
+     * @return BigDecimal
+     */
+    static BigDecimal decodeSignedDecimal(byte[] data, int offset, int numDigits, int precision, int dataLen)
+    {
         final int zeroDigit = 32;
         int lsb = zeroDigit - precision;
         int msb = lsb + numDigits;
 
-        byte lastByte = this.scratchBuffer[dataLen - 1];
+        byte lastByte = data[offset + dataLen - 1];
         long signMul = 1;
         if (signMap[lastByte & 0x0f] == -1)
         {
@@ -1113,7 +2888,7 @@ public class BinaryRecordReader implements IRecordReader
         // the lower nibble is used
         if (msb == 32)
         {
-            value = powTable[15] * this.scratchBuffer[idx] & 0xf;
+            value = powTable[15] * data[offset + idx] & 0xf;
             value *= signMul;
 
             int scale = (curDigit - precision) - 15;
@@ -1136,8 +2911,8 @@ public class BinaryRecordReader implements IRecordReader
 
             for (int j = 0; j < numToConsume; j++, idx++)
             {
-                value += powTable[15 - (j * 2 + 0)] * ((this.scratchBuffer[idx] >> 4) & 0x0f);
-                value += powTable[15 - (j * 2 + 1)] * (this.scratchBuffer[idx] & 0x0f);
+                value += powTable[15 - (j * 2 + 0)] * ((data[offset + idx] >> 4) & 0x0f);
+                value += powTable[15 - (j * 2 + 1)] * (data[offset + idx] & 0x0f);
             }
 
             value *= signMul;
@@ -1152,12 +2927,50 @@ public class BinaryRecordReader implements IRecordReader
     }
 
     /**
-     * Trims the string within the scratch buffer by modifying the provided string range
+     * Decode a decimal with at most 18 digits from a byte array as an unscaled long.
+     *
+     * @param data
+     *            the byte array
+     * @param offset
+     *            the offset of the decimal in the byte array
+     * @param dataLen
+     *            the data len
+     * @param isSigned
+     *            true if the last nibble of the decimal is a sign
+     * @return the unscaled value
+     */
+    static long decodeUnscaledDecimal(byte[] data, int offset, int dataLen, boolean isSigned)
+    {
+        int numDigitBytes = isSigned ? dataLen - 1 : dataLen;
+
+        long value = 0;
+        for (int i = 0; i < numDigitBytes; i++)
+        {
+            value = value * 100 + bcdByteValues[data[offset + i] & 0xff];
+        }
+
+        if (isSigned)
+        {
+            // Lower nibble of the last byte contains the sign
+            byte lastByte = data[offset + dataLen - 1];
+            value = value * 10 + ((lastByte >> 4) & 0x0f);
+            if (signMap[lastByte & 0x0f] == -1)
+            {
+                value = -value;
+            }
+        }
+
+        return value;
+    }
+
+    /**
+     * Trims the string within a buffer by modifying the provided string range
      *
+     * @param buffer the buffer containing the string
      * @param isUnicode is the string unicode
-     * @param range array with starting and ending byte of string within the scratch buffer
+     * @param range array with starting and ending byte of string within the buffer
     */
-    private void trimStringInScratchBuffer(boolean isUnicode, int[] range)
+    static void trimString(byte[] buffer, boolean isUnicode, int[] range)
     {
         if (isUnicode)
         {
@@ -1165,7 +2978,7 @@ public class BinaryRecordReader implements IRecordReader
             {
                 // Need to create a 16bit codepoint from two signed bytes. Mask with 0xFF to get unsigned values,
                 // shift upper byte by 8 and OR with lower byte to get the expected 16bit codepoint
-                int codePoint = (this.scratchBuffer[range[0]] & 0xFF) | ((this.scratchBuffer[range[0]+1] & 0xFF) << 8);
+                int codePoint = (buffer[range[0]] & 0xFF) | ((buffer[range[0]+1] & 0xFF) << 8);
                 if (!Character.isWhitespace(codePoint))
                 {
                     break;
@@ -1178,7 +2991,7 @@ public class BinaryRecordReader implements IRecordReader
             {
                 // Need to create a 16bit codepoint from two signed bytes. Mask with 0xFF to get unsigned values,
                 // shift upper byte by 8 and OR with lower byte to get the expected 16bit codepoint
-                int codePoint = (this.scratchBuffer[range[1]-2] & 0xFF) | ((this.scratchBuffer[range[1]-1] & 0xFF) << 8);
+                int codePoint = (buffer[range[1]-2] & 0xFF) | ((buffer[range[1]-1] & 0xFF) << 8);
 
                 // Need to check against EOS (0x0) in trim fixed len strings correctly
                 if (!Character.isWhitespace(codePoint) && codePoint != 0x0)
@@ -1193,7 +3006,7 @@ public class BinaryRecordReader implements IRecordReader
         {
             while (range[0] < range[1])
             {
-                int codePoint = (this.scratchBuffer[range[0]] & 0xFF);
+                int codePoint = (buffer[range[0]] & 0xFF);
                 if (!Character.isWhitespace(codePoint))
                 {
                     break;
@@ -1205,7 +3018,7 @@ public class BinaryRecordReader implements IRecordReader
             while (range[1] > range[0])
             {
                 // Need to check against EOS (0x0) in trim fixed len strings correctly
-                int codePoint = (this.scratchBuffer[range[1]-1] & 0xFF);
+                int codePoint = (buffer[range[1]-1] & 0xFF);
                 if (!Character.isWhitespace(codePoint) && codePoint != 0x0)
                 {
                     break;
@@ -1243,6 +3056,34 @@ public class BinaryRecordReader implements IRecordReader
                 throw new IOException("Unsupported source type for null terminated string: " + stype);
         }
 
+        readNullTerminatedString(stype, shouldTrim);
+
+        int strByteLen = stringRange[1] - stringRange[0];
+        if (strByteLen == 0 && convertEmptyStringsToNull)
+        {
+            return null;
+        }
+
+        return new String(scratchBuffer,stringRange[0],strByteLen,charset);
+    }
+
+    /**
+     * Reads a null terminated string into the scratch buffer, the string is left in stringRange.
+     *
+     * @param stype
+     *            the stype
+     * @param shouldTrim
+     *            should the string be trimmed
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    void readNullTerminatedString(HpccSrcType stype, boolean shouldTrim) throws IOException
+    {
+        if (stype != HpccSrcType.SINGLE_BYTE_CHAR && stype.isUTF16() == false)
+        {
+            throw new IOException("Unsupported source type for null terminated string: " + stype);
+        }
+
         // Read OPTIMIZED_STRING_READ_AHEAD bytes at a time until we find the end of the string
         int eosLocation = -1;
         int strByteLen = 0;
@@ -1326,20 +3167,13 @@ public class BinaryRecordReader implements IRecordReader
             }
         }
 
-        int[] strRange = {0, strByteLen};
+        stringRange[0] = 0;
+        stringRange[1] = strByteLen;
         if (shouldTrim)
         {
             boolean isUnicode = (stype == HpccSrcType.UTF16BE || stype == HpccSrcType.UTF16LE);
-            trimStringInScratchBuffer(isUnicode, strRange);
-        }
-
-        strByteLen = strRange[1] - strRange[0];
-        if (strByteLen == 0 && convertEmptyStringsToNull)
-        {
-            return null;
+            trimString(this.scratchBuffer, isUnicode, stringRange);
         }
-
-        return new String(scratchBuffer,strRange[0],strByteLen,charset);
     }
 
     /**
@@ -1382,6 +3216,31 @@ public class BinaryRecordReader implements IRecordReader
             return new String(this.scratchBuffer, 0, 0, charset);
         }
 
+        readString(styp, codePoints, shouldTrim);
+
+        int strByteLen = stringRange[1] - stringRange[0];
+        if (strByteLen == 0 && convertEmptyStringsToNull)
+        {
+            return null;
+        }
+
+        return new String(scratchBuffer,stringRange[0],strByteLen,charset);
+    }
+
+    /**
+     * Reads a string into the scratch buffer, the string is left in stringRange.
+     *
+     * @param styp
+     *            the source type in the byte array
+     * @param codePoints
+     *            the code points, must be greater than 0
+     * @param shouldTrim
+     *            should the string be trimmed
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    void readString(HpccSrcType styp, int codePoints, boolean shouldTrim) throws IOException
+    {
         int strByteLen = 0;
         ensureScratchBufferCapacity(codePoints * 2);
         switch (styp)
@@ -1521,20 +3380,13 @@ public class BinaryRecordReader implements IRecordReader
                 throw new IOException("Unknown source type");
         }
 
-        int[] strRange = {0, strByteLen};
+        stringRange[0] = 0;
+        stringRange[1] = strByteLen;
         if (shouldTrim)
         {
             boolean isUnicode = (styp == HpccSrcType.UTF16BE || styp == HpccSrcType.UTF16LE);
-            trimStringInScratchBuffer(isUnicode, strRange);
-        }
-
-        strByteLen = strRange[1] - strRange[0];
-        if (strByteLen == 0 && convertEmptyStringsToNull)
-        {
-            return null;
+            trimString(this.scratchBuffer, isUnicode, stringRange);
         }
-
-        return new String(scratchBuffer,strRange[0],strByteLen,charset);
     }
 
     /**
@@ -1548,7 +3400,7 @@ public class BinaryRecordReader implements IRecordReader
      * @throws IOException
      *             Signals that an I/O exception has occurred.
      */
-    private int getLenFromCodePoints(HpccSrcType styp, int cp) throws IOException
+    int getLenFromCodePoints(HpccSrcType styp, int cp) throws IOException
     {
         int bytes = 0;
         switch (styp)
@@ -30,6 +30,9 @@ import java.util.List;
 import java.util.ArrayList;
 
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Serializes records into the provided OutputStream utilizing the provided IRecordAccessor to access record data.
@@ -54,13 +57,47 @@ public class BinaryRecordWriter implements IRecordWriter
 
     private static final byte    NULL_TERMINATOR = '\0';
 
+    // Only the lowest 18 digits of an unscaled decimal can be written
+    private static final long    MAX_UNSCALED_DECIMAL_MODULUS = 1000000000000000000L;
+
+    // Two decimal digits packed into a byte, indexed by their value
+    private static final byte[]  bcdDigitPairs = new byte[100];
+    static
+    {
+        for (int i = 0; i < bcdDigitPairs.length; i++)
+        {
+            bcdDigitPairs[i] = (byte) (((i / 10) << 4) | (i % 10));
+        }
+    }
+
     private byte[]              scratchBuffer       = new byte[SCRATCH_BUFFER_SIZE];
 
     private OutputStream        outputStream        = null;
     private ByteBuffer          buffer              = null;
+
+    // Buffers borrowed from the BufferPool, returned by finalize
+    private boolean             useBufferPool       = false;
+    private ArrayList<byte[]>   pooledBuffers       = new ArrayList<byte[]>();
     private long                bytesWritten        = 0;
     private IRecordAccessor     rootRecordAccessor  = null;
 
+    // Layouts of records in which every field has a fixed length, by record accessor. Null for other records
+    private FixedRecordLayout   rootFixedRecordLayout = null;
+    private final IdentityHashMap<IRecordAccessor, FixedRecordLayout> fixedRecordLayouts = new IdentityHashMap<IRecordAccessor, FixedRecordLayout>();
+
+    // Async flush state. Records are encoded into one buffer while a sender thread writes the other to the output stream.
+    // sendBuffer, spareBuffer & senderExit are guarded by sendLock
+    private boolean             asyncFlushEnabled   = false;
+    private ByteBuffer          spareBuffer         = null;
+    private ByteBuffer          sendBuffer          = null;
+    private boolean             senderExit          = false;
+    private final ReentrantLock sendLock            = new ReentrantLock();
+    private final Condition     sendStateChanged    = sendLock.newCondition();
+    private Thread              senderThread        = null;
+    private volatile Exception  asyncFlushException = null;
+    private long                flushWaitTimeNS     = 0;
+    private volatile long       sendTimeNS          = 0;
+
     private StreamOperationMessages  messages = new StreamOperationMessages();
 
     public String getStreamMessages()
@@ -97,13 +134,80 @@ public class BinaryRecordWriter implements IRecordWriter
      *             the exception
      */
     public BinaryRecordWriter(OutputStream output, ByteOrder byteOrder) throws Exception
+    {
+        this(output, byteOrder, false);
+    }
+
+    /**
+     * Instantiates a new binary record writer.
+     *
+     * @param output
+     *            the output
+     * @param byteOrder
+     *            the byte order
+     * @param useBufferPool
+     *            borrow the internal buffers from the BufferPool, they are returned by finalize
+     * @throws Exception
+     *             the exception
+     */
+    public BinaryRecordWriter(OutputStream output, ByteOrder byteOrder, boolean useBufferPool) throws Exception
     {
         this.outputStream = output;
+        this.useBufferPool = useBufferPool;
 
-        this.buffer = ByteBuffer.allocate(BinaryRecordWriter.DefaultBufferSizeKB * 1024);
+        this.buffer = allocateBuffer(BinaryRecordWriter.DefaultBufferSizeKB * 1024);
         this.buffer.order(byteOrder);
     }
 
+    /**
+     * Enables asynchronous flushing. When the internal buffer fills up it is handed off to a sender thread
+     * that writes it to the output stream, while records continue to be encoded into a second buffer.
+     * If the sender has not finished with the previous buffer the caller blocks, so at most two buffers are in use.
+     *
+     * Errors from the sender thread are thrown on the next write, flush or finalize. Must be called before writing records.
+     */
+    public void enableAsyncFlush()
+    {
+        if (this.asyncFlushEnabled)
+        {
+            return;
+        }
+
+        this.spareBuffer = allocateBuffer(this.buffer.capacity());
+        this.spareBuffer.order(this.buffer.order());
+        this.asyncFlushEnabled = true;
+    }
+
+    /**
+     * Is asynchronous flushing enabled?
+     *
+     * @return true if enabled
+     */
+    public boolean isAsyncFlushEnabled()
+    {
+        return this.asyncFlushEnabled;
+    }
+
+    /**
+     * Returns the time in nanoseconds the writing thread spent waiting on the async sender thread.
+     *
+     * @return the flush wait time in nanoseconds
+     */
+    public long getFlushWaitTimeNS()
+    {
+        return this.flushWaitTimeNS;
+    }
+
+    /**
+     * Returns the time in nanoseconds spent writing buffers to the output stream on the async sender thread.
+     *
+     * @return the send time in nanoseconds
+     */
+    public long getSendTimeNS()
+    {
+        return this.sendTimeNS;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -112,6 +216,39 @@ public class BinaryRecordWriter implements IRecordWriter
     public void initialize(IRecordAccessor recordAccessor)
     {
         this.rootRecordAccessor = recordAccessor;
+        this.fixedRecordLayouts.clear();
+        this.rootFixedRecordLayout = getFixedRecordLayout(recordAccessor);
+    }
+
+    /**
+     * Returns the layout of the records provided by a record accessor if every field has a fixed length.
+     *
+     * @param recordAccessor
+     *            the record accessor
+     * @return the layout, or null if the record has variable length fields
+     */
+    private FixedRecordLayout getFixedRecordLayout(IRecordAccessor recordAccessor)
+    {
+        if (this.fixedRecordLayouts.containsKey(recordAccessor))
+        {
+            return this.fixedRecordLayouts.get(recordAccessor);
+        }
+
+        FieldDef[] fieldDefs = new FieldDef[recordAccessor.getNumFields()];
+        for (int i = 0; i < fieldDefs.length; i++)
+        {
+            fieldDefs[i] = recordAccessor.getFieldDefinition(i);
+        }
+
+        // Records that don't fit in the buffer are written field by field
+        FixedRecordLayout layout = FixedRecordLayout.create(fieldDefs);
+        if (layout != null && layout.getRecordSize() > this.buffer.capacity())
+        {
+            layout = null;
+        }
+
+        this.fixedRecordLayouts.put(recordAccessor, layout);
+        return layout;
     }
 
     /**
@@ -124,6 +261,12 @@ public class BinaryRecordWriter implements IRecordWriter
      */
     public void writeRecord(Object record) throws Exception
     {
+        if (this.rootFixedRecordLayout != null)
+        {
+            writeFixedRecord(this.rootRecordAccessor, this.rootFixedRecordLayout, record);
+            return;
+        }
+
         writeRecord(this.rootRecordAccessor, record);
     }
 
@@ -139,17 +282,43 @@ public class BinaryRecordWriter implements IRecordWriter
      */
     private void writeRecord(IRecordAccessor recordAccessor, Object record) throws Exception
     {
+        FixedRecordLayout fixedRecordLayout = getFixedRecordLayout(recordAccessor);
+        if (fixedRecordLayout != null)
+        {
+            writeFixedRecord(recordAccessor, fixedRecordLayout, record);
+            return;
+        }
+
         // If we have less than 32 bytes left in the buffer flush to the channel
         // Note: variable length fields still need to check remaining capacity
         if (this.buffer.remaining() <= 32)
         {
-            this.flush();
+            this.flushBuffer();
         }
 
         recordAccessor.setRecord(record);
+        boolean usePrimitiveFieldValues = recordAccessor.supportsPrimitiveFieldValues();
         for (int i = 0; i < recordAccessor.getNumFields(); i++)
         {
             FieldDef fd = recordAccessor.getFieldDefinition(i);
+            if (usePrimitiveFieldValues)
+            {
+                if (this.buffer.remaining() <= 32)
+                {
+                    this.flushBuffer();
+                }
+
+                if (writePrimitiveFieldValue(fd, recordAccessor, i))
+                {
+                    continue;
+                }
+
+                if (fd.getFieldType() == FieldType.SET && writeLongArrayFieldValue(fd, recordAccessor, i))
+                {
+                    continue;
+                }
+            }
+
             Object fieldValue = recordAccessor.getFieldValue(i);
             switch (fd.getFieldType())
             {
@@ -200,6 +369,47 @@ public class BinaryRecordWriter implements IRecordWriter
         }
     }
 
+    /**
+     * Write a record in which every field has a fixed length. The record size is known up front,
+     * so a single capacity check is needed for the whole record rather than one per field.
+     *
+     * @param recordAccessor
+     *            the record accessor
+     * @param layout
+     *            the layout of the record
+     * @param record
+     *            the record
+     * @throws Exception
+     *             the exception
+     */
+    private void writeFixedRecord(IRecordAccessor recordAccessor, FixedRecordLayout layout, Object record) throws Exception
+    {
+        if (this.buffer.remaining() < layout.getRecordSize())
+        {
+            this.flushBuffer();
+        }
+
+        recordAccessor.setRecord(record);
+        boolean usePrimitiveFieldValues = recordAccessor.supportsPrimitiveFieldValues();
+        for (int i = 0; i < layout.getNumFields(); i++)
+        {
+            FieldDef fd = layout.getFieldDef(i);
+            if (usePrimitiveFieldValues && writePrimitiveFieldValue(fd, recordAccessor, i))
+            {
+                continue;
+            }
+
+            try
+            {
+                writeFieldValue(fd, recordAccessor.getFieldValue(i));
+            }
+            catch (Exception e)
+            {
+                throw new Exception("Error while writing field: " + fd.getFieldName() + " of type: " + fd.getFieldType() + ": ", e);
+            }
+        }
+    }
+
     /**
      * flush
      * Flush buffered data to InputStream. This is a blocking operation.
@@ -209,12 +419,197 @@ public class BinaryRecordWriter implements IRecordWriter
      */
     public void flush() throws Exception
     {
-        byte[] data = this.buffer.array();
+        this.flushBuffer();
+
+        if (this.asyncFlushEnabled)
+        {
+            waitForAsyncFlush();
+        }
+    }
+
+    /**
+     * Writes the internal buffer to the output stream, or hands it off to the sender thread when async flushing is enabled.
+     *
+     * @throws Exception
+     *             the exception
+     */
+    private void flushBuffer() throws Exception
+    {
+        if (this.asyncFlushEnabled == false)
+        {
+            byte[] data = this.buffer.array();
+            int dataLen = this.buffer.position();
+            this.outputStream.write(data, 0, dataLen);
+            this.bytesWritten += dataLen;
+
+            this.buffer.clear();
+            return;
+        }
+
         int dataLen = this.buffer.position();
-        this.outputStream.write(data, 0, dataLen);
+        if (dataLen == 0)
+        {
+            throwIfAsyncFlushFailed();
+            return;
+        }
+
+        // Wait for the sender to finish with the previous buffer, then swap
+        waitForAsyncFlush();
+        sendLock.lock();
+        try
+        {
+            this.sendBuffer = this.buffer;
+            this.buffer = this.spareBuffer;
+            this.spareBuffer = null;
+            sendStateChanged.signalAll();
+        }
+        finally
+        {
+            sendLock.unlock();
+        }
         this.bytesWritten += dataLen;
 
-        this.buffer.clear();
+        if (this.senderThread == null)
+        {
+            startSender();
+        }
+    }
+
+    private void throwIfAsyncFlushFailed() throws Exception
+    {
+        Exception e = this.asyncFlushException;
+        if (e != null)
+        {
+            throw new Exception("BinaryRecordWriter: Error while flushing buffer to output stream: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Blocks until the sender thread has finished writing the buffer it was handed.
+     */
+    private void waitForAsyncFlush() throws Exception
+    {
+        long waitStart = System.nanoTime();
+        sendLock.lock();
+        try
+        {
+            while (this.sendBuffer != null && this.asyncFlushException == null)
+            {
+                sendStateChanged.await();
+            }
+        }
+        finally
+        {
+            sendLock.unlock();
+        }
+        this.flushWaitTimeNS += System.nanoTime() - waitStart;
+
+        throwIfAsyncFlushFailed();
+    }
+
+    private void startSender()
+    {
+        Runnable senderTask = new Runnable()
+        {
+            public void run()
+            {
+                sendBuffers();
+            }
+        };
+
+        this.senderThread = DFSThreadFactory.newThread(senderTask, "BinaryRecordWriter-Sender");
+        this.senderThread.setDaemon(true);
+        this.senderThread.start();
+    }
+
+    private void stopSender() throws Exception
+    {
+        if (this.senderThread == null)
+        {
+            return;
+        }
+
+        sendLock.lock();
+        try
+        {
+            this.senderExit = true;
+            sendStateChanged.signalAll();
+        }
+        finally
+        {
+            sendLock.unlock();
+        }
+
+        this.senderThread.join();
+        this.senderThread = null;
+    }
+
+    /**
+     * Writes buffers handed off by flushBuffer to the output stream. Runs on the sender thread.
+     */
+    private void sendBuffers()
+    {
+        while (true)
+        {
+            ByteBuffer toSend = null;
+            sendLock.lock();
+            try
+            {
+                while (this.sendBuffer == null && this.senderExit == false)
+                {
+                    try
+                    {
+                        sendStateChanged.await();
+                    }
+                    catch (InterruptedException e) {/*We don't care about waking early*/}
+                }
+
+                if (this.sendBuffer == null)
+                {
+                    return;
+                }
+                toSend = this.sendBuffer;
+            }
+            finally
+            {
+                sendLock.unlock();
+            }
+
+            try
+            {
+                long sendStart = System.nanoTime();
+                this.outputStream.write(toSend.array(), 0, toSend.position());
+                this.sendTimeNS += System.nanoTime() - sendStart;
+                toSend.clear();
+            }
+            catch (Exception e)
+            {
+                log.error("BinaryRecordWriter: Error while flushing buffer to output stream: " + e.getMessage());
+                sendLock.lock();
+                try
+                {
+                    this.asyncFlushException = e;
+                    sendStateChanged.signalAll();
+                }
+                finally
+                {
+                    sendLock.unlock();
+                }
+                return;
+            }
+
+            sendLock.lock();
+            try
+            {
+                this.spareBuffer = toSend;
+                this.sendBuffer = null;
+                sendStateChanged.signalAll();
+            }
+            finally
+            {
+                sendLock.unlock();
+            }
+        }
     }
 
     /**
@@ -248,10 +643,56 @@ public class BinaryRecordWriter implements IRecordWriter
      */
     public void finalize() throws Exception
     {
-        this.flush();
+        try
+        {
+            this.flush();
+        }
+        finally
+        {
+            try
+            {
+                stopSender();
+            }
+            finally
+            {
+                releasePooledBuffers();
+            }
+        }
         this.outputStream.close();
     }
 
+    private ByteBuffer allocateBuffer(int size)
+    {
+        if (this.useBufferPool == false)
+        {
+            return ByteBuffer.allocate(size);
+        }
+
+        byte[] pooledBuffer = BufferPool.getInstance().borrow(size);
+        this.pooledBuffers.add(pooledBuffer);
+        return ByteBuffer.wrap(pooledBuffer);
+    }
+
+    /**
+     * Returns the borrowed buffers to the BufferPool. The writer can't be used afterwards.
+     */
+    private void releasePooledBuffers()
+    {
+        if (this.pooledBuffers.isEmpty())
+        {
+            return;
+        }
+
+        for (byte[] pooledBuffer : this.pooledBuffers)
+        {
+            BufferPool.getInstance().release(pooledBuffer);
+        }
+        this.pooledBuffers.clear();
+
+        // finalize may be called again by the garbage collector, the buffers must not be flushed after they have been returned
+        this.buffer.clear();
+    }
+
     /**
      * getTotalBytesWritten Returns the total bytes written thus far. This will not match the bytes written to the
      * ByteChannel until finialize is called.
@@ -273,16 +714,31 @@ public class BinaryRecordWriter implements IRecordWriter
      * @throws Exception
      *             the exception
      */
-    @SuppressWarnings("unchecked")
     private void writeField(FieldDef fd, Object fieldValue) throws Exception
     {
         // If we have less than 32 bytes left in the buffer flush to the channel
         // Note: variable length fields still need to check remaining capacity
         if (this.buffer.remaining() <= 32)
         {
-            this.flush();
+            this.flushBuffer();
         }
 
+        writeFieldValue(fd, fieldValue);
+    }
+
+    /**
+     * Write a field value without checking the remaining buffer capacity first.
+     *
+     * @param fd
+     *            the fd
+     * @param fieldValue
+     *            the field value
+     * @throws Exception
+     *             the exception
+     */
+    @SuppressWarnings("unchecked")
+    private void writeFieldValue(FieldDef fd, Object fieldValue) throws Exception
+    {
         switch (fd.getFieldType())
         {
             case BINARY:
@@ -370,38 +826,7 @@ public class BinaryRecordWriter implements IRecordWriter
                     throw new Exception("Unsupported integer type: " + fieldValue.getClass().getName() + " for field " + fd.getFieldName());
                 }
 
-                if (fd.getDataLen() == 1)
-                {
-                    this.buffer.put(value.byteValue());
-                }
-                else if (fd.getDataLen() == 2)
-                {
-                    this.buffer.putShort(value.shortValue());
-                }
-                else if (fd.getDataLen() == 4)
-                {
-                    this.buffer.putInt(value.intValue());
-                }
-                else if (fd.getDataLen() == 8)
-                {
-                    this.buffer.putLong(value);
-                }
-                else if (fd.getDataLen() < 8 && fd.getDataLen() > 0)
-                {
-                    long lastByteIdx = fd.getDataLen() -1;
-                    for (int i = 0; i < lastByteIdx; i++)
-                    {
-                        this.buffer.put((byte) ((value >> (i*8)) & 0xFF));
-                    }
-
-                    long signBit = value < 0 ? 0x80L : 0;
-                    this.buffer.put((byte) (((value >> (lastByteIdx*8)) & 0xFF) | signBit));
-                }
-                else
-                {
-                    throw new Exception("Unsupported integer length: " + fd.getDataLen() + " for field: " + fd.getFieldName());
-                }
-
+                writeInteger(fd, value);
                 break;
             }
             case DECIMAL:
@@ -448,18 +873,7 @@ public class BinaryRecordWriter implements IRecordWriter
                     value = ((Byte) fieldValue).doubleValue();
                 }
 
-                if (fd.getDataLen() == 4)
-                {
-                    this.buffer.putFloat(value.floatValue());
-                }
-                else if (fd.getDataLen() == 8)
-                {
-                    this.buffer.putDouble(value);
-                }
-                else
-                {
-                    throw new Exception("Unsupported real length: " + fd.getDataLen() + " for field: " + fd.getFieldName());
-                }
+                writeReal(fd, value);
                 break;
             }
             case CHAR:
@@ -693,9 +1107,30 @@ public class BinaryRecordWriter implements IRecordWriter
                     throw new Exception("Error writing list. Expected List, got: " + fieldValue.getClass().getName());
                 }
 
+                // Elements with a fixed length don't need to be inspected
+                FieldDef elementFd = fd.getDef(0);
+                long elementSize = -1;
+                if (elementFd.getFieldType() == FieldType.RECORD)
+                {
+                    FixedRecordLayout elementLayout = getFixedRecordLayout(recordAccessor);
+                    if (elementLayout != null)
+                    {
+                        elementSize = elementLayout.getRecordSize();
+                    }
+                }
+                else
+                {
+                    elementSize = FixedRecordLayout.getFixedFieldSize(elementFd);
+                }
+
+                if (elementSize >= 0)
+                {
+                    return dataLen + elementSize * listValue.size();
+                }
+
                 for (Object o : listValue)
                 {
-                    dataLen += calculateFieldSize(fd.getDef(0), recordAccessor, o);
+                    dataLen += calculateFieldSize(elementFd, recordAccessor, o);
                 }
                 return dataLen;
             }
@@ -845,6 +1280,170 @@ public class BinaryRecordWriter implements IRecordWriter
         }
     }
 
+    /**
+     * Write an integer value.
+     *
+     * @param fd
+     *            the fd
+     * @param value
+     *            the value
+     * @throws Exception
+     *             the exception
+     */
+    private void writeInteger(FieldDef fd, long value) throws Exception
+    {
+        if (fd.getDataLen() == 1)
+        {
+            this.buffer.put((byte) value);
+        }
+        else if (fd.getDataLen() == 2)
+        {
+            this.buffer.putShort((short) value);
+        }
+        else if (fd.getDataLen() == 4)
+        {
+            this.buffer.putInt((int) value);
+        }
+        else if (fd.getDataLen() == 8)
+        {
+            this.buffer.putLong(value);
+        }
+        else if (fd.getDataLen() < 8 && fd.getDataLen() > 0)
+        {
+            long lastByteIdx = fd.getDataLen() -1;
+            for (int i = 0; i < lastByteIdx; i++)
+            {
+                this.buffer.put((byte) ((value >> (i*8)) & 0xFF));
+            }
+
+            long signBit = value < 0 ? 0x80L : 0;
+            this.buffer.put((byte) (((value >> (lastByteIdx*8)) & 0xFF) | signBit));
+        }
+        else
+        {
+            throw new Exception("Unsupported integer length: " + fd.getDataLen() + " for field: " + fd.getFieldName());
+        }
+    }
+
+    /**
+     * Write a real value.
+     *
+     * @param fd
+     *            the fd
+     * @param value
+     *            the value
+     * @throws Exception
+     *             the exception
+     */
+    private void writeReal(FieldDef fd, double value) throws Exception
+    {
+        if (fd.getDataLen() == 4)
+        {
+            this.buffer.putFloat((float) value);
+        }
+        else if (fd.getDataLen() == 8)
+        {
+            this.buffer.putDouble(value);
+        }
+        else
+        {
+            throw new Exception("Unsupported real length: " + fd.getDataLen() + " for field: " + fd.getFieldName());
+        }
+    }
+
+    /**
+     * Write an integer, real, boolean or decimal field with the primitive field value getters of the record accessor.
+     *
+     * @param fd
+     *            the fd
+     * @param recordAccessor
+     *            the record accessor, which supports primitive field values
+     * @param index
+     *            the field index
+     * @return true if the field was written, false if the field type doesn't have a primitive value
+     * @throws Exception
+     *             the exception
+     */
+    private boolean writePrimitiveFieldValue(FieldDef fd, IRecordAccessor recordAccessor, int index) throws Exception
+    {
+        if (fd.isBlob())
+        {
+            return false;
+        }
+
+        try
+        {
+            switch (fd.getFieldType())
+            {
+                case INTEGER:
+                case FILEPOS:
+                    writeInteger(fd, recordAccessor.getLongFieldValue(index));
+                    return true;
+                case REAL:
+                    writeReal(fd, recordAccessor.getDoubleFieldValue(index));
+                    return true;
+                case BOOLEAN:
+                    this.buffer.put(recordAccessor.getBooleanFieldValue(index) ? (byte) 1 : (byte) 0);
+                    return true;
+                case DECIMAL:
+                    if (ColumnVector.hasUnscaledDecimals(fd) == false)
+                    {
+                        return false;
+                    }
+                    writeUnscaledDecimal(fd, recordAccessor.getUnscaledDecimalFieldValue(index, fd.getScale()));
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        catch (Exception e)
+        {
+            throw new Exception("Error while writing field: " + fd.getFieldName() + " of type: " + fd.getFieldType() + ": ", e);
+        }
+    }
+
+    /**
+     * Write a SET OF INTEGER field with the primitive field value getters of the record accessor.
+     *
+     * @param fd
+     *            the fd
+     * @param recordAccessor
+     *            the record accessor, which supports primitive field values
+     * @param index
+     *            the field index
+     * @return true if the field was written, false if the set elements are not integers
+     * @throws Exception
+     *             the exception
+     */
+    private boolean writeLongArrayFieldValue(FieldDef fd, IRecordAccessor recordAccessor, int index) throws Exception
+    {
+        FieldDef elementFd = fd.getDef(0);
+        int elementSize = FixedRecordLayout.getFixedFieldSize(elementFd);
+        if ((elementFd.getFieldType() != FieldType.INTEGER && elementFd.getFieldType() != FieldType.FILEPOS) || elementSize <= 0)
+        {
+            return false;
+        }
+
+        long[] values = recordAccessor.getLongArrayFieldValue(index);
+        if (this.buffer.remaining() <= 32)
+        {
+            this.flushBuffer();
+        }
+
+        // Sets have a preceding unused byte
+        this.buffer.put((byte) 0);
+        writeUnsigned((long) values.length * elementSize);
+        for (long value : values)
+        {
+            if (this.buffer.remaining() <= 32)
+            {
+                this.flushBuffer();
+            }
+            writeInteger(elementFd, value);
+        }
+        return true;
+    }
+
     /**
      * Write list.
      *
@@ -911,6 +1510,16 @@ public class BinaryRecordWriter implements IRecordWriter
      */
     private void writeDecimal(FieldDef fd, BigDecimal decimalValue)
     {
+        if (ColumnVector.hasUnscaledDecimals(fd))
+        {
+            BigInteger unscaledValue = decimalValue.scaleByPowerOfTen(fd.getScale()).toBigIntegerExact();
+            if (unscaledValue.bitLength() < 64)
+            {
+                writeUnscaledDecimal(fd, unscaledValue.longValue());
+                return;
+            }
+        }
+
         int dataLen = (int) fd.getDataLen();
         for (int i = 0; i < dataLen; i++)
         {
@@ -975,6 +1584,56 @@ public class BinaryRecordWriter implements IRecordWriter
         this.buffer.put(this.scratchBuffer, 0, dataLen);
     }
 
+    /**
+     * Write a decimal with at most 18 digits from its unscaled value. Digits are written two at a time,
+     * matching the output of writeDecimal() without BigInteger arithmetic.
+     *
+     * @param fd
+     *            the fd
+     * @param unscaledValue
+     *            the decimal value * 10^scale
+     */
+    private void writeUnscaledDecimal(FieldDef fd, long unscaledValue)
+    {
+        int dataLen = (int) fd.getDataLen();
+        for (int i = 0; i < dataLen; i++)
+        {
+            this.scratchBuffer[i] = 0;
+        }
+
+        boolean isUnsigned = fd.isUnsigned();
+        long remaining = unscaledValue % MAX_UNSCALED_DECIMAL_MODULUS;
+        if (remaining < 0)
+        {
+            remaining = isUnsigned ? 0 : -remaining;
+        }
+
+        int desiredPrecision = fd.getPrecision();
+        int currentDigit = 0;
+        int byteOffset = dataLen - 1;
+        if (isUnsigned == false)
+        {
+            // The first digit shares the last byte with the sign
+            byte signValue = unscaledValue < 0 ? BinaryRecordWriter.NegativeSignValue : BinaryRecordWriter.PositiveSignValue;
+            this.scratchBuffer[byteOffset--] = (byte) (((remaining % 10) << 4) | signValue);
+            remaining /= 10;
+            currentDigit++;
+        }
+
+        for (; currentDigit + 1 < desiredPrecision; currentDigit += 2)
+        {
+            this.scratchBuffer[byteOffset--] = bcdDigitPairs[(int) (remaining % 100)];
+            remaining /= 100;
+        }
+
+        if (currentDigit < desiredPrecision)
+        {
+            this.scratchBuffer[byteOffset] = (byte) (remaining % 10);
+        }
+
+        this.buffer.put(this.scratchBuffer, 0, dataLen);
+    }
+
     /**
      * Write unsigned.
      *
@@ -1036,7 +1695,7 @@ public class BinaryRecordWriter implements IRecordWriter
 
             if (this.buffer.remaining() <= 32)
             {
-                this.flush();
+                this.flushBuffer();
             }
 
         }
@@ -0,0 +1,366 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A pool of the large byte arrays used as stream buffers, so short lived streams reuse buffers instead of allocating
+ * arrays that are promoted straight to the old generation.
+ *
+ * Buffers are pooled in power of two size classes from MIN_POOLED_SIZE to MAX_POOLED_SIZE, other sizes are allocated
+ * and released as normal. A stream borrows its buffers when it is opened and releases them when it is closed, a buffer
+ * must not be used after it has been released. The pool retains at most getMaxPooledBytes of idle buffers.
+ *
+ * With leak detection enabled, the default when debug logging is enabled, buffers that are garbage collected without
+ * being released are logged along with the stack trace of the borrow.
+ */
+public class BufferPool
+{
+    private static final Logger log = LogManager.getLogger(BufferPool.class);
+
+    public static final int  MIN_POOLED_SIZE = 64 * 1024;
+    public static final int  MAX_POOLED_SIZE = CircularByteBuffer.MAX_BUFFER_SIZE;
+    public static final long DEFAULT_MAX_POOLED_BYTES = 128L * 1024 * 1024;
+
+    private static final BufferPool instance = new BufferPool();
+
+    /**
+     * Tracks a borrowed buffer, enqueued when the buffer is garbage collected.
+     */
+    private static final class LeakTracker extends WeakReference<byte[]>
+    {
+        private final int       identityHash;
+        private final Throwable borrowTrace;
+
+        LeakTracker(byte[] buffer, ReferenceQueue<byte[]> queue)
+        {
+            super(buffer, queue);
+            this.identityHash = System.identityHashCode(buffer);
+            this.borrowTrace = new Throwable("Buffer of size " + buffer.length + " borrowed");
+        }
+    }
+
+    private final ArrayDeque<byte[]>[]                 sizeClasses;
+    private long                                       maxPooledBytes = DEFAULT_MAX_POOLED_BYTES;
+    private long                                       pooledBytes = 0;
+
+    private volatile boolean                           isLeakDetectionEnabled = log.isDebugEnabled();
+    private final HashMap<Integer, List<LeakTracker>>  borrowedBuffers = new HashMap<Integer, List<LeakTracker>>();
+    private final ReferenceQueue<byte[]>               collectedBuffers = new ReferenceQueue<byte[]>();
+
+    private long                                       numAllocations = 0;
+    private long                                       numAllocationsAvoided = 0;
+    private long                                       numLeaks = 0;
+
+    /**
+     * Returns the pool shared by all streams in the process.
+     *
+     * @return the pool
+     */
+    public static BufferPool getInstance()
+    {
+        return instance;
+    }
+
+    @SuppressWarnings("unchecked")
+    BufferPool()
+    {
+        int numSizeClasses = Integer.numberOfTrailingZeros(MAX_POOLED_SIZE) - Integer.numberOfTrailingZeros(MIN_POOLED_SIZE) + 1;
+        sizeClasses = new ArrayDeque[numSizeClasses];
+        for (int i = 0; i < numSizeClasses; i++)
+        {
+            sizeClasses[i] = new ArrayDeque<byte[]>();
+        }
+    }
+
+    /**
+     * Sets the maximum memory retained by idle buffers. Buffers released beyond the limit are left to the garbage collector.
+     *
+     * @param maxBytes
+     *            the limit in bytes
+     */
+    public synchronized void setMaxPooledBytes(long maxBytes)
+    {
+        this.maxPooledBytes = Math.max(0, maxBytes);
+        while (pooledBytes > maxPooledBytes && evictLargest())
+        {
+        }
+    }
+
+    /**
+     * @return the maximum memory retained by idle buffers in bytes
+     */
+    public synchronized long getMaxPooledBytes()
+    {
+        return maxPooledBytes;
+    }
+
+    /**
+     * Enables or disables tracking of borrowed buffers that are never released. Tracking records the stack trace of each
+     * borrow, so is intended for debugging.
+     *
+     * @param enable
+     *            true to enable leak detection
+     */
+    public void setLeakDetectionEnabled(boolean enable)
+    {
+        this.isLeakDetectionEnabled = enable;
+    }
+
+    /**
+     * @return true if leak detection is enabled
+     */
+    public boolean isLeakDetectionEnabled()
+    {
+        return isLeakDetectionEnabled;
+    }
+
+    /**
+     * Borrows a buffer of exactly the requested size, reusing a released buffer if one is available.
+     *
+     * @param size
+     *            the buffer size
+     * @return the buffer, its contents are undefined
+     */
+    byte[] borrow(int size)
+    {
+        int sizeClass = getSizeClass(size);
+        if (sizeClass < 0)
+        {
+            return new byte[size];
+        }
+
+        byte[] buffer = null;
+        synchronized (this)
+        {
+            buffer = sizeClasses[sizeClass].pollFirst();
+            if (buffer != null)
+            {
+                pooledBytes -= size;
+                numAllocationsAvoided++;
+            }
+            else
+            {
+                numAllocations++;
+            }
+        }
+
+        if (buffer == null)
+        {
+            buffer = new byte[size];
+        }
+
+        if (isLeakDetectionEnabled)
+        {
+            trackBorrow(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a borrowed buffer to the pool. The buffer must not be used after it has been released.
+     *
+     * @param buffer
+     *            the buffer
+     */
+    void release(byte[] buffer)
+    {
+        int sizeClass = getSizeClass(buffer.length);
+        if (sizeClass < 0)
+        {
+            return;
+        }
+
+        if (isLeakDetectionEnabled && untrackBorrow(buffer) == false)
+        {
+            log.error("BufferPool: Released a buffer of size " + buffer.length + " that was not borrowed or was already released");
+            return;
+        }
+
+        synchronized (this)
+        {
+            if (pooledBytes + buffer.length > maxPooledBytes)
+            {
+                return;
+            }
+
+            sizeClasses[sizeClass].addFirst(buffer);
+            pooledBytes += buffer.length;
+        }
+    }
+
+    /**
+     * Stops tracking a borrowed buffer that will not be released, IE: because it may still be in use when its owner is closed.
+     *
+     * @param buffer
+     *            the buffer
+     */
+    void discard(byte[] buffer)
+    {
+        if (isLeakDetectionEnabled && getSizeClass(buffer.length) >= 0)
+        {
+            untrackBorrow(buffer);
+        }
+    }
+
+    /**
+     * Releases all idle buffers to the garbage collector.
+     */
+    public synchronized void clear()
+    {
+        for (ArrayDeque<byte[]> sizeClass : sizeClasses)
+        {
+            sizeClass.clear();
+        }
+        pooledBytes = 0;
+    }
+
+    /**
+     * @return the memory retained by idle buffers in bytes
+     */
+    public synchronized long getPooledBytes()
+    {
+        return pooledBytes;
+    }
+
+    /**
+     * @return the number of pooled size buffers that had to be allocated
+     */
+    public synchronized long getNumAllocations()
+    {
+        return numAllocations;
+    }
+
+    /**
+     * @return the number of borrows that reused a released buffer
+     */
+    public synchronized long getNumAllocationsAvoided()
+    {
+        return numAllocationsAvoided;
+    }
+
+    /**
+     * @return the number of borrowed buffers garbage collected without being released, only counted with leak detection enabled
+     */
+    public long getNumLeaks()
+    {
+        synchronized (borrowedBuffers)
+        {
+            detectLeaks();
+            return numLeaks;
+        }
+    }
+
+    /**
+     * @return the index of the size class of the buffer size, or -1 if buffers of the size are not pooled
+     */
+    private static int getSizeClass(int size)
+    {
+        if (size < MIN_POOLED_SIZE || size > MAX_POOLED_SIZE || Integer.bitCount(size) != 1)
+        {
+            return -1;
+        }
+
+        return Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(MIN_POOLED_SIZE);
+    }
+
+    private boolean evictLargest()
+    {
+        for (int i = sizeClasses.length - 1; i >= 0; i--)
+        {
+            byte[] buffer = sizeClasses[i].pollFirst();
+            if (buffer != null)
+            {
+                pooledBytes -= buffer.length;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void trackBorrow(byte[] buffer)
+    {
+        LeakTracker tracker = new LeakTracker(buffer, collectedBuffers);
+        synchronized (borrowedBuffers)
+        {
+            detectLeaks();
+            borrowedBuffers.computeIfAbsent(tracker.identityHash, key -> new ArrayList<LeakTracker>(1)).add(tracker);
+        }
+    }
+
+    /**
+     * @return true if the buffer was being tracked
+     */
+    private boolean untrackBorrow(byte[] buffer)
+    {
+        int identityHash = System.identityHashCode(buffer);
+        synchronized (borrowedBuffers)
+        {
+            List<LeakTracker> trackers = borrowedBuffers.get(identityHash);
+            if (trackers == null)
+            {
+                return false;
+            }
+
+            for (int i = 0; i < trackers.size(); i++)
+            {
+                if (trackers.get(i).get() == buffer)
+                {
+                    trackers.remove(i);
+                    if (trackers.isEmpty())
+                    {
+                        borrowedBuffers.remove(identityHash);
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Reports the tracked buffers that have been garbage collected. Must hold the borrowedBuffers lock.
+     */
+    private void detectLeaks()
+    {
+        LeakTracker tracker = null;
+        while ((tracker = (LeakTracker) collectedBuffers.poll()) != null)
+        {
+            List<LeakTracker> trackers = borrowedBuffers.get(tracker.identityHash);
+            if (trackers == null || trackers.remove(tracker) == false)
+            {
+                continue;
+            }
+
+            if (trackers.isEmpty())
+            {
+                borrowedBuffers.remove(tracker.identityHash);
+            }
+
+            numLeaks++;
+            log.error("BufferPool: A buffer was garbage collected without being released, streams must be closed to reuse their buffers", tracker.borrowTrace);
+        }
+    }
+}
@@ -13,6 +13,26 @@
 
 package org.hpccsystems.dfs.client;
 
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A single producer / single consumer circular byte buffer.
+ *
+ * One thread may write to the buffer while another thread reads from it without any locking. Positions in the
+ * buffer are tracked with monotonically increasing cursors: the producer publishes the write cursor after the bytes
+ * have been written, and the consumer publishes the retain cursor, the start of the bytes still in use, after the
+ * bytes have been read. Each side only writes its own state, so the free space seen by the producer and the bytes
+ * available to the consumer can only ever be underestimated.
+ *
+ * Producer methods: {@link #add}, {@link #getContiguousFreeSpace}, {@link #getWriteOffset}, {@link #getInternalBuffer},
+ * {@link #incrementWriteOffset} and {@link #resize}.
+ *
+ * Consumer methods: {@link #read()}, {@link #read(byte[], int, int)}, {@link #skip}, {@link #mark}, {@link #reset},
+ * {@link #getContiguousBytesAvailable}, {@link #getReadOffset}, {@link #getReadableBuffer} and {@link #incrementReadOffset}.
+ *
+ * The remaining methods may be called from either side. Callers are responsible for blocking when the buffer is
+ * full or empty, and for the happens-before ordering when either role is handed to a different thread.
+ */
 public class CircularByteBuffer
 {
     // Previous testing found that increasing read size beyond 16MB did not improve performance.
@@ -20,12 +40,43 @@ public class CircularByteBuffer
     // sense to go beyond 16MB for the buffer size
     public static final int MAX_BUFFER_SIZE = 16 * 1024 * 1024;
 
-    private final byte[] buffer;
-    private int readPos = 0;
+    private static final AtomicLongFieldUpdater<CircularByteBuffer> READ_CURSOR = AtomicLongFieldUpdater.newUpdater(CircularByteBuffer.class, "readCursor");
+    private static final AtomicLongFieldUpdater<CircularByteBuffer> RETAIN_CURSOR = AtomicLongFieldUpdater.newUpdater(CircularByteBuffer.class, "retainCursor");
+
+    /**
+     * The internal buffer and the cursor stored at index 0 of the buffer. Replaced as a whole on resize so that
+     * the consumer always sees a consistent buffer and origin.
+     */
+    private static final class Storage
+    {
+        final byte[] data;
+        final long   origin;
+
+        Storage(byte[] data, long origin)
+        {
+            this.data = data;
+            this.origin = origin;
+        }
+
+        int indexOf(long cursor)
+        {
+            return (int) ((cursor - origin) % data.length);
+        }
+    }
+
+    // Only replaced by the producer, and always before any bytes are written to the new buffer
+    private volatile Storage storage;
+
+    // Producer state, writeCursor is a full volatile write so that a waiting consumer can't be missed, see RowServiceInputStream
+    private volatile long writeCursor = 0;
     private int writePos = 0;
-    private int markPos = -1;
-    private int bytesReadAfterMark = 0;
-    private int currentNumberOfBytes = 0;
+
+    // Consumer state. The cursors are published with ordered writes, this is the hot path of every read
+    private volatile long readCursor = 0;
+    private volatile long retainCursor = 0;
+    private long markCursor = -1;
+    private Storage readStorage;
+    private int readPos = 0;
 
     /**
      * Instantiates a new circular byte buffer.
@@ -34,6 +85,24 @@ public class CircularByteBuffer
      * @throws IllegalArgumentException if buffer size is less than or equal to 0
      */
     public CircularByteBuffer(int bufferSize) throws IllegalArgumentException
+    {
+        this(new byte[validateBufferSize(bufferSize)]);
+    }
+
+    /**
+     * Instantiates a new circular byte buffer using the provided array, IE: a buffer borrowed from a BufferPool.
+     * 
+     * @param buffer the internal buffer, its length is the buffer size. The initial contents are ignored
+     * @throws IllegalArgumentException if buffer length is less than or equal to 0 or greater than the max buffer size
+     */
+    public CircularByteBuffer(byte[] buffer) throws IllegalArgumentException
+    {
+        validateBufferSize(buffer.length);
+        storage = new Storage(buffer, 0);
+        readStorage = storage;
+    }
+
+    private static int validateBufferSize(int bufferSize) throws IllegalArgumentException
     {
         if (bufferSize <= 0)
         {
@@ -44,8 +113,7 @@ public class CircularByteBuffer
         {
             throw new IllegalArgumentException("Buffer size must be less than " + MAX_BUFFER_SIZE);
         }
-
-        buffer = new byte[bufferSize];
+        return bufferSize;
     }
 
     /**
@@ -55,8 +123,9 @@ public class CircularByteBuffer
      */
     public int getBytesAvailable()
     {
-        // We only adjust for the mark internally and when providing information about available space
-        return currentNumberOfBytes;
+        // Read the consumer cursor first, the write cursor only increases so the result is never negative
+        long rCursor = readCursor;
+        return (int) (writeCursor - rCursor);
     }
 
     /**
@@ -70,43 +139,37 @@ public class CircularByteBuffer
     }
 
     /**
-     * Gets the free space in the buffer.
+     * Gets the free space in the buffer. Bytes retained by a mark are not free.
      * 
      * @return the free space 
      */
     public int getFreeSpace()
     {
-        int adjustedByteCount = currentNumberOfBytes;
-        if (markPos >= 0)
-        {
-            adjustedByteCount += bytesReadAfterMark;
-        }
-
-        return buffer.length - adjustedByteCount;
+        Storage s = storage;
+        long rCursor = retainCursor;
+        return s.data.length - (int) (writeCursor - rCursor);
     }
 
     /**
-     * Gets the contiguous free space in the buffer.
+     * Gets the contiguous free space in the buffer. Producer only.
      * 
      * @return the contiguous free space
      */
     public int getContiguousFreeSpace()
     {
-        if (!hasFreeSpace())
+        Storage s = storage;
+        long rCursor = retainCursor;
+        int freeSpace = s.data.length - (int) (writeCursor - rCursor);
+        if (freeSpace <= 0)
         {
             return 0;
         }
 
         // If we have a marked position we don't want to allow that space to be written to until after reset has been called
-        int rPos = readPos;
-        if (markPos >= 0)
-        {
-            rPos = markPos;
-        }
-
+        int rPos = s.indexOf(rCursor);
         if (writePos >= rPos)
         {
-            return buffer.length - writePos;
+            return s.data.length - writePos;
         }
         else
         {
@@ -115,7 +178,7 @@ public class CircularByteBuffer
     }
 
     /**
-     * Gets the location of the next write.
+     * Gets the location of the next write. Producer only.
      * 
      * @return the write offset
      */
@@ -125,28 +188,29 @@ public class CircularByteBuffer
     }
 
     /**
-     * Increments write offset.
+     * Increments write offset, publishing the bytes written to the internal buffer to the consumer. Producer only.
      * 
      * @param increment number of bytes to increment
      * @return the number of bytes incremented
      */
     public int incrementWriteOffset(int increment)
     {
-        int maxIncrement = buffer.length - writePos;
+        int length = storage.data.length;
+        int maxIncrement = length - writePos;
         increment = Math.min(increment, maxIncrement);
 
         writePos += increment;
-        if (writePos >= buffer.length)
+        if (writePos >= length)
         {
             writePos = 0;
         }
 
-        currentNumberOfBytes += increment;
+        writeCursor += increment;
         return increment;
     }
 
     /**
-     * Adds the bytes to the buffer.
+     * Adds the bytes to the buffer. Producer only.
      * 
      * @param srcBuffer the source buffer
      * @param offset the offset within the source buffer
@@ -155,54 +219,46 @@ public class CircularByteBuffer
      */
     public int add(final byte[] srcBuffer, int offset, int length)
     {
-        if (currentNumberOfBytes + length > buffer.length)
-        {
-            length = buffer.length - currentNumberOfBytes;
-        }
+        length = Math.max(0, Math.min(length, getFreeSpace()));
+
+        byte[] data = storage.data;
+        int firstCopyLength = Math.min(length, data.length - writePos);
+        System.arraycopy(srcBuffer, offset, data, writePos, firstCopyLength);
+        System.arraycopy(srcBuffer, offset + firstCopyLength, data, 0, length - firstCopyLength);
 
-        for (int i = 0; i < length; i++)
+        writePos += length;
+        if (writePos >= data.length)
         {
-            buffer[writePos] = srcBuffer[offset + i];
-            if (++writePos == buffer.length)
-            {
-                writePos = 0;
-            }
+            writePos -= data.length;
         }
-        currentNumberOfBytes += length;
+
+        writeCursor += length;
         return length;
     }
 
     /**
-     * Reads a byte from the buffer.
+     * Reads a byte from the buffer. Consumer only.
      * 
      * @return the byte read as an int [0-255] or -1 if no bytes are available
      */
     public int read()
     {
-        if (currentNumberOfBytes <= 0)
+        long rCursor = readCursor;
+        if (writeCursor - rCursor <= 0)
         {
             return -1;
         }
 
-        byte b = buffer[readPos];
-        currentNumberOfBytes--;
-
-        if (markPos >= 0)
-        {
-            bytesReadAfterMark++;
-        }
-        
-        if (++readPos >= buffer.length)
-        {
-            readPos = 0;
-        }
+        byte[] data = syncReadStorage();
+        byte b = data[readPos];
+        advanceReadCursor(rCursor, 1, data.length);
 
         int ret = b;
         return ret + 128;
     }
 
     /**
-     * Reads bytes from the buffer.
+     * Reads bytes from the buffer. Consumer only.
      * 
      * @param targetBuffer the target buffer to write to
      * @param targetOffset the target offset within the target buffer
@@ -211,105 +267,209 @@ public class CircularByteBuffer
      */
     public int read(final byte[] targetBuffer, int targetOffset, int length)
     {
-        if (length > currentNumberOfBytes)
-        {
-            length = currentNumberOfBytes;
-        }
+        long rCursor = readCursor;
+        length = (int) Math.max(0, Math.min(length, writeCursor - rCursor));
 
-        if (readPos + length <= buffer.length)
-        {
-            System.arraycopy(buffer, readPos, targetBuffer, targetOffset, length);
-        }
-        else
+        byte[] data = syncReadStorage();
+        int firstCopyLength = Math.min(length, data.length - readPos);
+        System.arraycopy(data, readPos, targetBuffer, targetOffset, firstCopyLength);
+        System.arraycopy(data, 0, targetBuffer, targetOffset + firstCopyLength, length - firstCopyLength);
+
+        advanceReadCursor(rCursor, length, data.length);
+        return length;
+    }
+
+    /**
+     * Gets the number of bytes that can be read from the buffer returned by {@link #getReadableBuffer} starting
+     * at {@link #getReadOffset} without wrapping. Must be called before either of those methods. Consumer only.
+     * 
+     * @return the contiguous bytes available
+     */
+    public int getContiguousBytesAvailable()
+    {
+        long rCursor = readCursor;
+        long available = writeCursor - rCursor;
+
+        byte[] data = syncReadStorage();
+        return (int) Math.min(available, data.length - readPos);
+    }
+
+    /**
+     * Gets the location of the next read within the buffer returned by {@link #getReadableBuffer}. Consumer only.
+     * 
+     * @return the read offset
+     */
+    public int getReadOffset()
+    {
+        return readPos;
+    }
+
+    /**
+     * Gets the internal buffer the consumer is reading from. This can differ from {@link #getInternalBuffer} while
+     * a resize is in progress, and remains valid until the read offset is incremented. Consumer only.
+     * 
+     * @return the internal buffer being read
+     */
+    public byte[] getReadableBuffer()
+    {
+        return readStorage.data;
+    }
+
+    /**
+     * Increments the read offset after reading bytes directly from the buffer returned by {@link #getReadableBuffer}. Consumer only.
+     * 
+     * @param increment number of bytes to increment
+     * @return the number of bytes incremented
+     */
+    public int incrementReadOffset(int increment)
+    {
+        return skip(increment);
+    }
+
+    /**
+     * Gets the internal buffer the producer writes to. Producer only.
+     * 
+     * @return the internal buffer
+     */
+    public byte[] getInternalBuffer()
+    {
+        return storage.data;
+    }
+
+    /**
+     * Resizes the buffer, preserving its contents including any bytes retained by a mark.
+     * The internal buffer is replaced, so any references to the previous internal buffer must be discarded.
+     * Producer only, the consumer may continue to read while the buffer is resized.
+     * 
+     * @param bufferSize the new buffer size
+     * @return true if the buffer was resized, false if the contents would not fit
+     * @throws IllegalArgumentException if buffer size is less than or equal to 0 or greater than the max buffer size
+     */
+    public boolean resize(int bufferSize) throws IllegalArgumentException
+    {
+        if (bufferSize <= 0)
         {
-            int firstCopyLength = buffer.length - readPos;
-            System.arraycopy(buffer, readPos, targetBuffer, targetOffset, firstCopyLength);
-            System.arraycopy(buffer, 0, targetBuffer, targetOffset + firstCopyLength, length - firstCopyLength);
+            throw new IllegalArgumentException("Buffer size must be greater than 0");
         }
 
-        readPos += length;
-        if (readPos >= buffer.length)
+        if (bufferSize > MAX_BUFFER_SIZE)
         {
-            readPos -= buffer.length;
+            throw new IllegalArgumentException("Buffer size must be less than " + MAX_BUFFER_SIZE);
         }
 
-        currentNumberOfBytes -= length;
-        if (markPos >= 0)
+        // The consumer only moves the retain cursor forward, so copying from a stale retain cursor copies a superset
+        // of the bytes that are still needed, including everything the consumer may read from the new buffer
+        Storage s = storage;
+        long startCursor = retainCursor;
+        int retainedBytes = (int) (writeCursor - startCursor);
+        if (retainedBytes > bufferSize)
         {
-            bytesReadAfterMark += length;
+            return false;
         }
 
-        return length;
+        // Copy the retained bytes, starting from the mark if there is one, to the start of the new buffer
+        byte[] newBuffer = new byte[bufferSize];
+        int startPos = s.indexOf(startCursor);
+        int firstCopyLength = Math.min(retainedBytes, s.data.length - startPos);
+        System.arraycopy(s.data, startPos, newBuffer, 0, firstCopyLength);
+        System.arraycopy(s.data, 0, newBuffer, firstCopyLength, retainedBytes - firstCopyLength);
+
+        writePos = (retainedBytes == bufferSize) ? 0 : retainedBytes;
+        storage = new Storage(newBuffer, startCursor);
+        return true;
     }
 
     /**
-     * Gets the internal buffer.
+     * Gets the buffer capacity.
      * 
-     * @return the internal buffer
+     * @return the capacity
      */
-    public byte[] getInternalBuffer()
+    public int getCapacity()
     {
-        return buffer;
+        return storage.data.length;
     }
 
     /**
-     * Marks the current read position, allowing a reset to return to this position.
+     * Marks the current read position, allowing a reset to return to this position. Consumer only.
      * 
      * @param readLim the read limit before a reset is no longer allowed
      * @throws IllegalArgumentException if read limit exceeds available bytes
      */
     public void mark(int readLim) throws IllegalArgumentException
     {
-        if (readLim > buffer.length)
+        if (readLim > storage.data.length)
         {
             throw new IllegalArgumentException("Read limit exceeds available bytes");
         }
 
-        markPos = readPos;
-        bytesReadAfterMark = 0;
+        // Replacing an earlier mark releases the bytes it retained
+        markCursor = readCursor;
+        RETAIN_CURSOR.lazySet(this, markCursor);
     }
 
     /**
-     * Resets the read position to the last marked position.
+     * Resets the read position to the last marked position. Consumer only.
      */
     public void reset()
     {
-        if (markPos < 0)
+        if (markCursor < 0)
         {
             return;
         }
 
-        currentNumberOfBytes += bytesReadAfterMark;
-
-        readPos = markPos;
-        markPos = -1;
-        bytesReadAfterMark = 0;
+        // The retain cursor is already at the mark, so the producer can't have overwritten the bytes being returned to
+        Storage s = storage;
+        readStorage = s;
+        readPos = s.indexOf(markCursor);
+        READ_CURSOR.lazySet(this, markCursor);
+        markCursor = -1;
     }
 
     /**
-     * Skips the specified number of bytes.
+     * Skips the specified number of bytes. Consumer only.
      * 
      * @param n the number of bytes to skip
      * @return the number of bytes skipped
      */
     public int skip(int n)
     {
-        if (n > currentNumberOfBytes)
+        long rCursor = readCursor;
+        n = (int) Math.max(0, Math.min(n, writeCursor - rCursor));
+
+        byte[] data = syncReadStorage();
+        advanceReadCursor(rCursor, n, data.length);
+        return n;
+    }
+
+    /**
+     * Switches the consumer to the latest internal buffer after a resize. Must be called after the write cursor has
+     * been read, as the buffer that was current at that point contains all of the bytes up to the write cursor.
+     */
+    private byte[] syncReadStorage()
+    {
+        Storage s = storage;
+        if (s != readStorage)
         {
-            n = currentNumberOfBytes;
+            readStorage = s;
+            readPos = s.indexOf(readCursor);
         }
+        return s.data;
+    }
 
+    private void advanceReadCursor(long rCursor, int n, int length)
+    {
         readPos += n;
-        if (readPos >= buffer.length)
+        if (readPos >= length)
         {
-            readPos -= buffer.length;
+            readPos -= length;
         }
 
-        currentNumberOfBytes -= n;
-        if (markPos >= 0)
+        // Ordered writes, all reads from the buffer happen before the space is released to the producer
+        long newCursor = rCursor + n;
+        READ_CURSOR.lazySet(this, newCursor);
+        if (markCursor < 0)
         {
-            bytesReadAfterMark += n;
+            RETAIN_CURSOR.lazySet(this, newCursor);
         }
-        return n;
     }
-};
\ No newline at end of file
+}
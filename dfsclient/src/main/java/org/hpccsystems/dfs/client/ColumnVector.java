@@ -0,0 +1,685 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.ecl.FieldType;
+import org.hpccsystems.commons.ecl.HpccSrcType;
+
+/**
+ * The values of a single field for the rows of a @see org.hpccsystems.dfs.client.ColumnarBatch.
+ *
+ * Values are stored in primitive arrays according to the type of the column:
+ * <ul>
+ * <li>LONG: INTEGER and FILEPOS fields in getLongValues(). UNSIGNED8 values are stored as their raw 64 bits.</li>
+ * <li>DOUBLE: REAL fields in getDoubleValues().</li>
+ * <li>BOOLEAN: BOOLEAN fields in getBooleanValues().</li>
+ * <li>DECIMAL: DECIMAL fields with a precision of up to 18 digits are stored as unscaled values in getLongValues(),
+ * larger decimals are stored as BigDecimals.</li>
+ * <li>STRING: UTF-8 encoded bytes in getByteValues(), the bytes of row i are in [getOffsets()[i], getOffsets()[i+1]).</li>
+ * <li>BINARY: the bytes of DATA fields, with the same layout as STRING.</li>
+ * <li>STRUCT: child records, one child column per field of the child record with the same number of rows.</li>
+ * <li>LIST: SETs and child DATASETs. The elements of row i are [getOffsets()[i], getOffsets()[i+1]) in the single
+ * child column.</li>
+ * </ul>
+ *
+ * The arrays are reused between batches and may be larger than the number of rows in the column.
+ */
+public class ColumnVector
+{
+    public enum ColumnType
+    {
+        LONG,
+        DOUBLE,
+        BOOLEAN,
+        DECIMAL,
+        STRING,
+        BINARY,
+        STRUCT,
+        LIST
+    }
+
+    // Decimals with up to this many digits fit in a long
+    static final int               MAX_UNSCALED_DECIMAL_PRECISION = 18;
+
+    private static final int       INITIAL_CAPACITY               = 64;
+    private static final int       INITIAL_BYTE_CAPACITY          = 1024;
+
+    private final FieldDef         fieldDef;
+    private final ColumnType       type;
+    private final ColumnVector[]   children;
+    private final boolean          hasUnscaledDecimals;
+
+    private int                    size                           = 0;
+    private int                    capacity                       = 0;
+    private boolean[]              nulls                          = null;
+
+    private long[]                 longValues                     = null;
+    private double[]               doubleValues                   = null;
+    private boolean[]              booleanValues                  = null;
+    private BigDecimal[]           decimalValues                  = null;
+    private int[]                  offsets                        = null;
+    private byte[]                 byteValues                     = null;
+
+    /**
+     * Creates a column for the values of a field.
+     *
+     * @param fieldDef
+     *            the field definition
+     * @throws IllegalArgumentException
+     *             if the field type can't be stored in a column
+     */
+    ColumnVector(FieldDef fieldDef)
+    {
+        this.fieldDef = fieldDef;
+        this.type = getColumnType(fieldDef);
+        this.hasUnscaledDecimals = hasUnscaledDecimals(fieldDef);
+
+        switch (type)
+        {
+            case STRUCT:
+                this.children = new ColumnVector[fieldDef.getNumDefs()];
+                for (int i = 0; i < children.length; i++)
+                {
+                    children[i] = new ColumnVector(fieldDef.getDef(i));
+                }
+                break;
+            case LIST:
+                if (fieldDef.getNumDefs() != 1)
+                {
+                    throw new IllegalArgumentException("Set should have a single child type." + fieldDef.getNumDefs() + " child types found.");
+                }
+                this.children = new ColumnVector[] { new ColumnVector(fieldDef.getDef(0)) };
+                break;
+            default:
+                this.children = new ColumnVector[0];
+                break;
+        }
+
+        if (type == ColumnType.STRING || type == ColumnType.BINARY)
+        {
+            byteValues = new byte[INITIAL_BYTE_CAPACITY];
+        }
+
+        ensureCapacity(INITIAL_CAPACITY);
+    }
+
+    private static ColumnType getColumnType(FieldDef fd)
+    {
+        switch (fd.getFieldType())
+        {
+            case INTEGER:
+            case FILEPOS:
+                return ColumnType.LONG;
+            case REAL:
+                return ColumnType.DOUBLE;
+            case BOOLEAN:
+                return ColumnType.BOOLEAN;
+            case DECIMAL:
+                return ColumnType.DECIMAL;
+            case STRING:
+            case CHAR:
+            case VAR_STRING:
+                return ColumnType.STRING;
+            case BINARY:
+                return ColumnType.BINARY;
+            case RECORD:
+                return ColumnType.STRUCT;
+            case SET:
+            case DATASET:
+                return ColumnType.LIST;
+            default:
+                throw new IllegalArgumentException("Unsupported column type: " + fd.getFieldType() + " for field: " + fd.getFieldName());
+        }
+    }
+
+    /**
+     * Returns true if the values of a decimal field are stored as unscaled longs.
+     *
+     * @param fd
+     *            the field definition
+     * @return true if the values are stored as unscaled longs
+     */
+    static boolean hasUnscaledDecimals(FieldDef fd)
+    {
+        return fd.getFieldType() == FieldType.DECIMAL && fd.getPrecision() <= MAX_UNSCALED_DECIMAL_PRECISION;
+    }
+
+    private void ensureCapacity(int requiredCapacity)
+    {
+        if (requiredCapacity <= capacity)
+        {
+            return;
+        }
+
+        int newCapacity = Math.max(requiredCapacity, capacity * 2);
+        switch (type)
+        {
+            case LONG:
+                longValues = grow(longValues, newCapacity);
+                break;
+            case DOUBLE:
+                doubleValues = (doubleValues == null) ? new double[newCapacity] : Arrays.copyOf(doubleValues, newCapacity);
+                break;
+            case BOOLEAN:
+                booleanValues = (booleanValues == null) ? new boolean[newCapacity] : Arrays.copyOf(booleanValues, newCapacity);
+                break;
+            case DECIMAL:
+                if (hasUnscaledDecimals)
+                {
+                    longValues = grow(longValues, newCapacity);
+                }
+                else
+                {
+                    decimalValues = (decimalValues == null) ? new BigDecimal[newCapacity] : Arrays.copyOf(decimalValues, newCapacity);
+                }
+                break;
+            case STRING:
+            case BINARY:
+            case LIST:
+                offsets = (offsets == null) ? new int[newCapacity + 1] : Arrays.copyOf(offsets, newCapacity + 1);
+                break;
+            default:
+                break;
+        }
+
+        if (nulls != null)
+        {
+            nulls = Arrays.copyOf(nulls, newCapacity);
+        }
+
+        capacity = newCapacity;
+    }
+
+    private static long[] grow(long[] values, int newCapacity)
+    {
+        return (values == null) ? new long[newCapacity] : Arrays.copyOf(values, newCapacity);
+    }
+
+    private void ensureByteCapacity(int requiredCapacity)
+    {
+        if (requiredCapacity > byteValues.length)
+        {
+            byteValues = Arrays.copyOf(byteValues, Math.max(requiredCapacity, byteValues.length * 2));
+        }
+    }
+
+    void appendLong(long value)
+    {
+        ensureCapacity(size + 1);
+        longValues[size++] = value;
+    }
+
+    void appendDouble(double value)
+    {
+        ensureCapacity(size + 1);
+        doubleValues[size++] = value;
+    }
+
+    void appendBoolean(boolean value)
+    {
+        ensureCapacity(size + 1);
+        booleanValues[size++] = value;
+    }
+
+    void appendDecimal(BigDecimal value)
+    {
+        ensureCapacity(size + 1);
+        decimalValues[size++] = value;
+    }
+
+    /**
+     * Reserves space for a value of len bytes at the end of the byte values, the bytes
+     * are then written to getByteValues() and the value is added with commitBytes().
+     *
+     * @param len
+     *            the length of the value in bytes
+     * @return the offset of the value in getByteValues()
+     */
+    int reserveBytes(int len)
+    {
+        ensureCapacity(size + 1);
+        int start = offsets[size];
+        ensureByteCapacity(start + len);
+        return start;
+    }
+
+    void commitBytes(int len)
+    {
+        offsets[size + 1] = offsets[size] + len;
+        size++;
+    }
+
+    void appendBytes(byte[] src, int offset, int len)
+    {
+        int pos = reserveBytes(len);
+        System.arraycopy(src, offset, byteValues, pos, len);
+        commitBytes(len);
+    }
+
+    /**
+     * Appends a string, converting it from its source encoding to UTF-8.
+     *
+     * @param src
+     *            the array containing the string
+     * @param offset
+     *            the offset of the string in the array
+     * @param len
+     *            the length of the string in bytes
+     * @param srcType
+     *            the encoding of the string
+     */
+    void appendString(byte[] src, int offset, int len, HpccSrcType srcType)
+    {
+        switch (srcType)
+        {
+            case UTF8:
+                appendBytes(src, offset, len);
+                break;
+            case UTF16LE:
+            case UTF16BE:
+                appendUTF16String(src, offset, len, srcType == HpccSrcType.UTF16LE);
+                break;
+            default:
+                appendSingleByteString(src, offset, len);
+                break;
+        }
+    }
+
+    private void appendSingleByteString(byte[] src, int offset, int len)
+    {
+        // ISO-8859-1 characters above 0x7f are encoded with 2 bytes in UTF-8
+        int pos = reserveBytes(len * 2);
+        int start = pos;
+
+        // ASCII characters are the same in UTF-8, so the leading ASCII characters are copied as is
+        int end = offset + len;
+        int asciiEnd = offset;
+        while (asciiEnd < end && src[asciiEnd] >= 0)
+        {
+            asciiEnd++;
+        }
+        System.arraycopy(src, offset, byteValues, pos, asciiEnd - offset);
+        pos += asciiEnd - offset;
+
+        for (int i = asciiEnd; i < end; i++)
+        {
+            int c = src[i] & 0xff;
+            if (c < 0x80)
+            {
+                byteValues[pos++] = (byte) c;
+            }
+            else
+            {
+                byteValues[pos++] = (byte) (0xc0 | (c >> 6));
+                byteValues[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        commitBytes(pos - start);
+    }
+
+    private void appendUTF16String(byte[] src, int offset, int len, boolean isLittleEndian)
+    {
+        // A UTF-16 code unit is encoded with at most 3 bytes in UTF-8, surrogate pairs with 4
+        int numCodeUnits = len / 2;
+        int pos = reserveBytes(numCodeUnits * 3);
+        int start = pos;
+        for (int i = 0; i < numCodeUnits; i++)
+        {
+            char c = getCodeUnit(src, offset + i * 2, isLittleEndian);
+            if (c < 0x80)
+            {
+                byteValues[pos++] = (byte) c;
+            }
+            else if (c < 0x800)
+            {
+                byteValues[pos++] = (byte) (0xc0 | (c >> 6));
+                byteValues[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < numCodeUnits
+                     && Character.isLowSurrogate(getCodeUnit(src, offset + (i + 1) * 2, isLittleEndian)))
+            {
+                int codePoint = Character.toCodePoint(c, getCodeUnit(src, offset + (i + 1) * 2, isLittleEndian));
+                byteValues[pos++] = (byte) (0xf0 | (codePoint >> 18));
+                byteValues[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                byteValues[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                byteValues[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+                i++;
+            }
+            else if (Character.isSurrogate(c))
+            {
+                // Unpaired surrogates are replaced, matching String.getBytes()
+                byteValues[pos++] = (byte) '?';
+            }
+            else
+            {
+                byteValues[pos++] = (byte) (0xe0 | (c >> 12));
+                byteValues[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                byteValues[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        commitBytes(pos - start);
+    }
+
+    private static char getCodeUnit(byte[] src, int pos, boolean isLittleEndian)
+    {
+        if (isLittleEndian)
+        {
+            return (char) ((src[pos] & 0xff) | ((src[pos + 1] & 0xff) << 8));
+        }
+        return (char) (((src[pos] & 0xff) << 8) | (src[pos + 1] & 0xff));
+    }
+
+    /**
+     * Appends a row to a STRUCT column, after a value has been appended to each child column.
+     */
+    void appendStruct()
+    {
+        ensureCapacity(size + 1);
+        size++;
+    }
+
+    /**
+     * Appends a row to a LIST column, after its elements have been appended to the child column.
+     */
+    void appendList()
+    {
+        ensureCapacity(size + 1);
+        offsets[size + 1] = children[0].size;
+        size++;
+    }
+
+    /**
+     * Appends a null value to a STRING or BINARY column.
+     */
+    void appendNull()
+    {
+        ensureCapacity(size + 1);
+        if (nulls == null)
+        {
+            nulls = new boolean[capacity];
+        }
+        nulls[size] = true;
+        commitBytes(0);
+    }
+
+    /**
+     * Removes the rows after the first numRows rows, including the values of the removed rows in child columns.
+     *
+     * @param numRows
+     *            the number of rows to keep
+     */
+    void truncate(int numRows)
+    {
+        if (numRows >= size)
+        {
+            return;
+        }
+
+        if (nulls != null)
+        {
+            Arrays.fill(nulls, numRows, size, false);
+        }
+
+        if (decimalValues != null)
+        {
+            Arrays.fill(decimalValues, numRows, size, null);
+        }
+
+        if (type == ColumnType.STRUCT)
+        {
+            for (ColumnVector child : children)
+            {
+                child.truncate(numRows);
+            }
+        }
+        else if (type == ColumnType.LIST)
+        {
+            children[0].truncate(offsets[numRows]);
+        }
+
+        size = numRows;
+    }
+
+    /**
+     * Returns the definition of the field stored in this column.
+     *
+     * @return the field definition
+     */
+    public FieldDef getFieldDef()
+    {
+        return fieldDef;
+    }
+
+    /**
+     * Returns the type of the column.
+     *
+     * @return the column type
+     */
+    public ColumnType getType()
+    {
+        return type;
+    }
+
+    /**
+     * Returns the number of rows in the column.
+     *
+     * @return the number of rows
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns true if a row is null. Only STRING columns contain nulls, when empty strings are converted to nulls.
+     *
+     * @param row
+     *            the row
+     * @return true if the row is null
+     */
+    public boolean isNull(int row)
+    {
+        return nulls != null && nulls[row];
+    }
+
+    /**
+     * Returns true if a row of the column may be null.
+     *
+     * @return true if the column has null flags
+     */
+    public boolean hasNulls()
+    {
+        return nulls != null;
+    }
+
+    public long getLong(int row)
+    {
+        return longValues[row];
+    }
+
+    public double getDouble(int row)
+    {
+        return doubleValues[row];
+    }
+
+    public boolean getBoolean(int row)
+    {
+        return booleanValues[row];
+    }
+
+    /**
+     * Returns true if the values of this DECIMAL column are stored as unscaled longs in getLongValues().
+     *
+     * @return true if the values are unscaled longs
+     */
+    public boolean hasUnscaledDecimals()
+    {
+        return hasUnscaledDecimals;
+    }
+
+    /**
+     * Returns the scale of the values in a DECIMAL column.
+     *
+     * @return the scale
+     */
+    public int getDecimalScale()
+    {
+        return fieldDef.getScale();
+    }
+
+    /**
+     * Returns the value of a row of a DECIMAL column. Allocates a BigDecimal when the values are stored as
+     * unscaled longs.
+     *
+     * @param row
+     *            the row
+     * @return the value
+     */
+    public BigDecimal getDecimal(int row)
+    {
+        if (hasUnscaledDecimals)
+        {
+            return BigDecimal.valueOf(longValues[row], fieldDef.getScale());
+        }
+        return decimalValues[row];
+    }
+
+    /**
+     * Returns a copy of the bytes of a row of a STRING or BINARY column.
+     *
+     * @param row
+     *            the row
+     * @return the bytes, or null if the row is null
+     */
+    public byte[] getBytes(int row)
+    {
+        if (isNull(row))
+        {
+            return null;
+        }
+        return Arrays.copyOfRange(byteValues, offsets[row], offsets[row + 1]);
+    }
+
+    /**
+     * Returns the value of a row of a STRING column.
+     *
+     * @param row
+     *            the row
+     * @return the string, or null if the row is null
+     */
+    public String getString(int row)
+    {
+        if (isNull(row))
+        {
+            return null;
+        }
+        return new String(byteValues, offsets[row], offsets[row + 1] - offsets[row], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the number of elements in a row of a LIST column, or the length in bytes of a row of a STRING or
+     * BINARY column.
+     *
+     * @param row
+     *            the row
+     * @return the length
+     */
+    public int getLength(int row)
+    {
+        return offsets[row + 1] - offsets[row];
+    }
+
+    public long[] getLongValues()
+    {
+        return longValues;
+    }
+
+    public double[] getDoubleValues()
+    {
+        return doubleValues;
+    }
+
+    public boolean[] getBooleanValues()
+    {
+        return booleanValues;
+    }
+
+    public BigDecimal[] getDecimalValues()
+    {
+        return decimalValues;
+    }
+
+    /**
+     * Returns the offsets of the rows of a STRING, BINARY or LIST column, the array has at least size() + 1 entries.
+     *
+     * @return the offsets
+     */
+    public int[] getOffsets()
+    {
+        return offsets;
+    }
+
+    public byte[] getByteValues()
+    {
+        return byteValues;
+    }
+
+    /**
+     * Returns the null flags of the column, or null if no row has been null.
+     *
+     * @return the null flags
+     */
+    public boolean[] getNullFlags()
+    {
+        return nulls;
+    }
+
+    /**
+     * Returns the number of child columns, the number of fields for a STRUCT column and 1 for a LIST column.
+     *
+     * @return the number of child columns
+     */
+    public int getNumChildren()
+    {
+        return children.length;
+    }
+
+    public ColumnVector getChild(int index)
+    {
+        return children[index];
+    }
+
+    /**
+     * Returns the child column for a field of a STRUCT column.
+     *
+     * @param fieldName
+     *            the field name, case insensitive
+     * @return the child column, or null if there is no field with the name
+     */
+    public ColumnVector getChild(String fieldName)
+    {
+        for (ColumnVector child : children)
+        {
+            if (child.fieldDef.getFieldName().equalsIgnoreCase(fieldName))
+            {
+                return child;
+            }
+        }
+        return null;
+    }
+}
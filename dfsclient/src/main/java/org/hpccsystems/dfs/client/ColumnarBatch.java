@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+
+/**
+ * A batch of rows stored as one @see org.hpccsystems.dfs.client.ColumnVector per field of the record definition.
+ * Batches are reused by the reader that produced them, so the contents of a batch are only valid until the
+ * next batch is read.
+ */
+public class ColumnarBatch
+{
+    private final FieldDef     recordDef;
+    private final ColumnVector rootColumn;
+
+    /**
+     * Creates an empty batch for a record definition.
+     *
+     * @param recordDef
+     *            the record definition
+     * @throws IllegalArgumentException
+     *             if a field type can't be stored in a column
+     */
+    ColumnarBatch(FieldDef recordDef)
+    {
+        this.recordDef = recordDef;
+        this.rootColumn = new ColumnVector(recordDef);
+    }
+
+    /**
+     * Returns the record definition of the rows in the batch.
+     *
+     * @return the record definition
+     */
+    public FieldDef getRecordDefinition()
+    {
+        return recordDef;
+    }
+
+    /**
+     * Returns the number of rows in the batch.
+     *
+     * @return the number of rows
+     */
+    public int getNumRows()
+    {
+        return rootColumn.size();
+    }
+
+    /**
+     * Returns the number of columns in the batch, one per field of the record definition.
+     *
+     * @return the number of columns
+     */
+    public int getNumColumns()
+    {
+        return rootColumn.getNumChildren();
+    }
+
+    public ColumnVector getColumn(int index)
+    {
+        return rootColumn.getChild(index);
+    }
+
+    /**
+     * Returns the column for a field.
+     *
+     * @param fieldName
+     *            the field name, case insensitive
+     * @return the column, or null if there is no field with the name
+     */
+    public ColumnVector getColumn(String fieldName)
+    {
+        return rootColumn.getChild(fieldName);
+    }
+
+    ColumnVector getRootColumn()
+    {
+        return rootColumn;
+    }
+
+    /**
+     * Removes the rows after the first numRows rows, used to discard a partially decoded row.
+     *
+     * @param numRows
+     *            the number of rows to keep
+     */
+    void truncate(int numRows)
+    {
+        rootColumn.truncate(numRows);
+    }
+
+    void reset()
+    {
+        rootColumn.truncate(0);
+    }
+}
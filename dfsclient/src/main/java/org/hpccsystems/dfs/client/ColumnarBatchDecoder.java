@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.ecl.FieldType;
+import org.hpccsystems.commons.ecl.HpccSrcType;
+import org.hpccsystems.commons.errors.UnparsableContentException;
+
+/**
+ * Decodes the records read by a BinaryRecordReader into the columns of a ColumnarBatch, @see ColumnarBatch.
+ *
+ * The decoders are compiled once for the record definition and capture the string processing settings of the reader,
+ * the reader discards them when its settings change. Fields are read through the reader's input stream and scratch
+ * buffer, so a decoder must only be used by the reader that created it.
+ */
+class ColumnarBatchDecoder
+{
+    /**
+     * Decodes a field into a column, appending one row to it.
+     */
+    private interface ColumnDecoder
+    {
+        /**
+         * Decodes the next field value from the input stream into a column.
+         *
+         * @param column
+         *            the column of the field
+         * @throws UnparsableContentException
+         *             the unparsable content exception
+         * @throws IOException
+         *             Signals that an I/O exception has occurred.
+         */
+        void decode(ColumnVector column) throws UnparsableContentException, IOException;
+    }
+
+    /**
+     * Decodes a field of a record with a fixed length from its offset within the record into a column.
+     */
+    private interface FixedColumnDecoder
+    {
+        void decode(byte[] data, ByteBuffer buffer, int pos, ColumnVector column);
+    }
+
+    private final BinaryRecordReader reader;
+    private final boolean            shouldTrimStrings;
+    private final boolean            shouldTrimFixedLenStrings;
+    private final boolean            convertEmptyStringsToNull;
+    private final ColumnDecoder      rootDecoder;
+
+    // The range of the fixed length string being decoded, [start, end)
+    private final int[]              fixedStringRange = new int[2];
+
+    /**
+     * Compiles the decoders for a record definition.
+     *
+     * @param reader
+     *            the reader the records are read from
+     * @param recordDef
+     *            the record definition of the batches
+     */
+    ColumnarBatchDecoder(BinaryRecordReader reader, FieldDef recordDef)
+    {
+        int flags = reader.getStringProcessingFlags();
+        this.reader = reader;
+        this.shouldTrimStrings = (flags & BinaryRecordReader.TRIM_STRINGS) != 0;
+        this.shouldTrimFixedLenStrings = (flags & BinaryRecordReader.TRIM_FIXED_LEN_STRINGS) != 0;
+        this.convertEmptyStringsToNull = (flags & BinaryRecordReader.CONVERT_EMPTY_STRINGS_TO_NULL) != 0;
+        this.rootDecoder = compileStructColumnDecoder(recordDef);
+    }
+
+    /**
+     * Decodes the next record from the reader's input stream, appending one row to the root column of a batch.
+     *
+     * @param rootColumn
+     *            the root column of the batch
+     * @throws UnparsableContentException
+     *             the unparsable content exception
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    void decode(ColumnVector rootColumn) throws UnparsableContentException, IOException
+    {
+        this.rootDecoder.decode(rootColumn);
+    }
+
+    private ColumnDecoder compileStructColumnDecoder(FieldDef recordDef)
+    {
+        final FixedRecordLayout layout = FixedRecordLayout.create(recordDef);
+        if (layout != null)
+        {
+            final FixedColumnDecoder[] fixedFieldDecoders = new FixedColumnDecoder[layout.getNumFields()];
+            for (int fieldIndex = 0; fieldIndex < layout.getNumFields(); fieldIndex++)
+            {
+                fixedFieldDecoders[fieldIndex] = compileFixedColumnDecoder(layout.getFieldDef(fieldIndex), layout.getFieldSize(fieldIndex));
+            }
+
+            final int recordSize = layout.getRecordSize();
+            return (column) ->
+            {
+                int recordPos = reader.startFixedRecord(recordSize);
+                for (int fieldIndex = 0; fieldIndex < fixedFieldDecoders.length; fieldIndex++)
+                {
+                    int fieldPos = recordPos + layout.getFieldOffset(fieldIndex);
+                    fixedFieldDecoders[fieldIndex].decode(reader.fixedRecordData, reader.fixedRecordBuffer, fieldPos, column.getChild(fieldIndex));
+                }
+                reader.finishFixedRecord(recordSize);
+                column.appendStruct();
+            };
+        }
+
+        final ColumnDecoder[] fieldDecoders = new ColumnDecoder[recordDef.getNumDefs()];
+        for (int fieldIndex = 0; fieldIndex < recordDef.getNumDefs(); fieldIndex++)
+        {
+            fieldDecoders[fieldIndex] = compileColumnDecoder(recordDef.getDef(fieldIndex));
+        }
+
+        return (column) ->
+        {
+            for (int fieldIndex = 0; fieldIndex < fieldDecoders.length; fieldIndex++)
+            {
+                fieldDecoders[fieldIndex].decode(column.getChild(fieldIndex));
+            }
+            column.appendStruct();
+        };
+    }
+
+    private ColumnDecoder compileColumnDecoder(final FieldDef fd)
+    {
+        if (fd.isBlob())
+        {
+            // Only the blob file location is available, so skip it and append a default value
+            switch (fd.getFieldType())
+            {
+                case BINARY:
+                case STRING:
+                case VAR_STRING:
+                    return (column) -> { reader.getUnsigned(8, true); column.appendBytes(reader.scratchBuffer, 0, 0); };
+                case SET:
+                case DATASET:
+                    return (column) -> { reader.getUnsigned(8, true); column.appendList(); };
+                default:
+                    return failingColumnDecoder("Unexpected blob type: " + fd.getFieldType() + " for field: " + fd.getFieldName());
+            }
+        }
+
+        switch (fd.getFieldType())
+        {
+            case INTEGER:
+            case FILEPOS:
+            case REAL:
+            case DECIMAL:
+            case BINARY:
+            case BOOLEAN:
+            case STRING:
+            case CHAR:
+            case VAR_STRING:
+                return wrapColumnErrors(fd, compileFlatColumnDecoder(fd));
+            case RECORD:
+                return compileStructColumnDecoder(fd);
+            case SET:
+            case DATASET:
+                return compileListColumnDecoder(fd);
+            default:
+                return failingColumnDecoder("Unhandled type: " + fd.getFieldType());
+        }
+    }
+
+    private ColumnDecoder compileListColumnDecoder(final FieldDef fd)
+    {
+        if (fd.getNumDefs() != 1)
+        {
+            return failingColumnDecoder("Set should have a single child type." + fd.getNumDefs() + " child types found.");
+        }
+
+        FieldDef childFd = fd.getDef(0);
+        final ColumnDecoder elementDecoder;
+        switch (childFd.getFieldType())
+        {
+            case INTEGER:
+            case FILEPOS:
+            case REAL:
+            case DECIMAL:
+            case BINARY:
+            case BOOLEAN:
+            case STRING:
+            case CHAR:
+            case VAR_STRING:
+                elementDecoder = wrapColumnErrors(fd, compileFlatColumnDecoder(childFd));
+                break;
+            case RECORD:
+                elementDecoder = compileStructColumnDecoder(childFd);
+                break;
+            default:
+                return failingColumnDecoder("Dataset unhandled child type: " + childFd.getFieldType());
+        }
+
+        // Data layout for SETS & DATASETS are similar. Exception is SETS have a preceding unused byte.
+        final boolean isSet = fd.getFieldType() == FieldType.SET;
+        final boolean isLittleEndian = reader.defaultLE;
+        return (column) ->
+        {
+            if (isSet)
+            {
+                reader.inputStream.skip(1);
+            }
+
+            int dataLen = (int) reader.getInt(4, isLittleEndian);
+            ColumnVector elements = column.getChild(0);
+            long setEndPos = reader.inputStream.getStreamPosition() + dataLen;
+            while (reader.inputStream.getStreamPosition() < setEndPos)
+            {
+                elementDecoder.decode(elements);
+            }
+            column.appendList();
+        };
+    }
+
+    private ColumnDecoder compileFlatColumnDecoder(final FieldDef fd)
+    {
+        if (fd.isFixed() && fd.getDataLen() > Integer.MAX_VALUE)
+        {
+            return failingColumnDecoder("BinaryRecordReader.parseFlatField(): Data length: " + fd.getDataLen() + " exceeds max supported length: " + Integer.MAX_VALUE);
+        }
+
+        final int dataLen = (int) fd.getDataLen();
+        final boolean isFieldLittleEndian = fd.getSourceType() == HpccSrcType.LITTLE_ENDIAN;
+        final HpccSrcType srcType = fd.getSourceType();
+
+        // Embedded field lengths are little endian
+        final boolean isLittleEndian = reader.defaultLE;
+
+        switch (fd.getFieldType())
+        {
+            case FILEPOS:
+            case INTEGER:
+                // Unsigned values are stored as their raw bits, so unsigned 8 values don't need special handling
+                if (fd.isUnsigned())
+                {
+                    return (column) -> column.appendLong(reader.getUnsigned(dataLen, isFieldLittleEndian));
+                }
+                return (column) -> column.appendLong(reader.getInt(dataLen, isFieldLittleEndian));
+            case REAL:
+                return (column) -> column.appendDouble(reader.getReal(dataLen, isFieldLittleEndian));
+            case DECIMAL:
+            {
+                final int precision = fd.getPrecision();
+                final int scale = fd.getScale();
+                final boolean isSigned = fd.isUnsigned() == false;
+                if (ColumnVector.hasUnscaledDecimals(fd))
+                {
+                    return (column) ->
+                    {
+                        reader.readIntoScratchBuffer(0, dataLen);
+                        column.appendLong(BinaryRecordReader.decodeUnscaledDecimal(reader.scratchBuffer, 0, dataLen, isSigned));
+                    };
+                }
+
+                if (isSigned)
+                {
+                    return (column) -> column.appendDecimal(reader.getSignedDecimal(precision, scale, dataLen));
+                }
+                return (column) -> column.appendDecimal(reader.getUnsignedDecimal(precision, scale, dataLen));
+            }
+            case BINARY:
+            {
+                final boolean isFixed = fd.isFixed();
+                return (column) ->
+                {
+                    int len = isFixed ? dataLen : (int) reader.getInt(4, isLittleEndian);
+                    int pos = column.reserveBytes(len);
+                    reader.readFully(column.getByteValues(), pos, len);
+                    column.commitBytes(len);
+                };
+            }
+            case BOOLEAN:
+                return (column) -> column.appendBoolean(reader.getInt(dataLen, isFieldLittleEndian) != 0);
+            case CHAR:
+                return (column) -> appendString(column, srcType, 1, false);
+            case STRING:
+            {
+                if (fd.isFixed())
+                {
+                    if (dataLen > BinaryRecordReader.MAX_STRING_LENGTH)
+                    {
+                        return failingColumnDecoder("String length exceeds maximum supported length: " + BinaryRecordReader.MAX_STRING_LENGTH);
+                    }
+
+                    final boolean shouldTrim = shouldTrimStrings || shouldTrimFixedLenStrings;
+                    return (column) -> appendString(column, srcType, dataLen, shouldTrim);
+                }
+
+                final boolean shouldTrim = shouldTrimStrings;
+                return (column) ->
+                {
+                    int codePoints = (int) reader.getInt(4, isLittleEndian);
+                    if (codePoints > BinaryRecordReader.MAX_STRING_LENGTH)
+                    {
+                        throw new UnparsableContentException("String length exceeds maximum supported length: " + BinaryRecordReader.MAX_STRING_LENGTH);
+                    }
+                    appendString(column, srcType, codePoints, shouldTrim);
+                };
+            }
+            case VAR_STRING:
+            {
+                // Var strings are null terminated. In the case of Unicode this a 2-byte null character
+                if (fd.isFixed())
+                {
+                    final boolean shouldTrim = shouldTrimStrings || shouldTrimFixedLenStrings;
+                    final int nullTerminatorLen = srcType.isUTF16() ? 2 : 1;
+                    return (column) ->
+                    {
+                        appendString(column, srcType, dataLen, shouldTrim);
+                        reader.inputStream.skip(nullTerminatorLen);
+                    };
+                }
+
+                final boolean shouldTrim = shouldTrimStrings;
+                final String fieldName = fd.getFieldName();
+                return (column) ->
+                {
+                    try
+                    {
+                        reader.readNullTerminatedString(srcType, shouldTrim);
+                    }
+                    catch (IOException e)
+                    {
+                        throw new UnparsableContentException("Parsing VAR_STRING: " + fieldName + " failed with error: " + e.getMessage(), e);
+                    }
+                    appendStringRange(column, srcType);
+                };
+            }
+            default:
+                return failingColumnDecoder("Unexpected type: " + fd.getFieldType() + " for field: " + fd.getFieldName());
+        }
+    }
+
+    /**
+     * Compiles the column decoder for a field with a fixed length. Must only be called for fields accepted by FixedRecordLayout.
+     */
+    private FixedColumnDecoder compileFixedColumnDecoder(final FieldDef fd, final int fieldSize)
+    {
+        final boolean isFieldLittleEndian = fd.getSourceType() == HpccSrcType.LITTLE_ENDIAN;
+
+        switch (fd.getFieldType())
+        {
+            case FILEPOS:
+            case INTEGER:
+                if (fd.isUnsigned())
+                {
+                    return (data, buffer, pos, column) -> column.appendLong(BinaryRecordReader.getUnsigned(buffer, pos, fieldSize, isFieldLittleEndian));
+                }
+                return (data, buffer, pos, column) -> column.appendLong(BinaryRecordReader.extendSign(BinaryRecordReader.getUnsigned(buffer, pos, fieldSize, isFieldLittleEndian), fieldSize));
+            case REAL:
+                return (data, buffer, pos, column) -> column.appendDouble(BinaryRecordReader.getReal(buffer, pos, fieldSize, isFieldLittleEndian));
+            case BOOLEAN:
+                return (data, buffer, pos, column) -> column.appendBoolean(BinaryRecordReader.getUnsigned(buffer, pos, fieldSize, isFieldLittleEndian) != 0);
+            case DECIMAL:
+            {
+                final int precision = fd.getPrecision();
+                final int scale = fd.getScale();
+                final boolean isSigned = fd.isUnsigned() == false;
+                if (ColumnVector.hasUnscaledDecimals(fd))
+                {
+                    return (data, buffer, pos, column) -> column.appendLong(BinaryRecordReader.decodeUnscaledDecimal(data, pos, fieldSize, isSigned));
+                }
+
+                if (isSigned)
+                {
+                    return (data, buffer, pos, column) -> column.appendDecimal(BinaryRecordReader.decodeSignedDecimal(data, pos, precision, scale, fieldSize));
+                }
+                return (data, buffer, pos, column) -> column.appendDecimal(BinaryRecordReader.decodeUnsignedDecimal(data, pos, precision, scale, fieldSize));
+            }
+            case BINARY:
+                return (data, buffer, pos, column) -> column.appendBytes(data, pos, fieldSize);
+            case STRING:
+            {
+                final HpccSrcType srcType = fd.getSourceType();
+                final boolean isUnicode = srcType.isUTF16();
+                final boolean shouldTrim = shouldTrimStrings || shouldTrimFixedLenStrings;
+                final boolean convertToNull = convertEmptyStringsToNull;
+                if (fieldSize == 0)
+                {
+                    return (data, buffer, pos, column) -> column.appendBytes(data, pos, 0);
+                }
+
+                return (data, buffer, pos, column) ->
+                {
+                    fixedStringRange[0] = pos;
+                    fixedStringRange[1] = pos + fieldSize;
+                    if (shouldTrim)
+                    {
+                        BinaryRecordReader.trimString(data, isUnicode, fixedStringRange);
+                    }
+
+                    int strByteLen = fixedStringRange[1] - fixedStringRange[0];
+                    if (strByteLen == 0 && convertToNull)
+                    {
+                        column.appendNull();
+                        return;
+                    }
+                    column.appendString(data, fixedStringRange[0], strByteLen, srcType);
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Unexpected fixed length type: " + fd.getFieldType() + " for field: " + fd.getFieldName());
+        }
+    }
+
+    /**
+     * Reads a string and appends it to a column, with the same string processing as getString().
+     */
+    private void appendString(ColumnVector column, HpccSrcType srcType, int codePoints, boolean shouldTrim) throws IOException
+    {
+        if (codePoints <= 0)
+        {
+            column.appendBytes(reader.scratchBuffer, 0, 0);
+            return;
+        }
+
+        reader.readString(srcType, codePoints, shouldTrim);
+        appendStringRange(column, srcType);
+    }
+
+    private void appendStringRange(ColumnVector column, HpccSrcType srcType)
+    {
+        int strByteLen = reader.stringRange[1] - reader.stringRange[0];
+        if (strByteLen == 0 && convertEmptyStringsToNull)
+        {
+            column.appendNull();
+            return;
+        }
+        column.appendString(reader.scratchBuffer, reader.stringRange[0], strByteLen, srcType);
+    }
+
+    private static ColumnDecoder wrapColumnErrors(FieldDef fd, final ColumnDecoder decoder)
+    {
+        final String errorMessage = "Error while parsing field: " + fd.getFieldName() + " of type: " + fd.getFieldType() + ": ";
+        return (column) ->
+        {
+            try
+            {
+                decoder.decode(column);
+            }
+            catch (Exception e)
+            {
+                throw new IOException(errorMessage, e);
+            }
+        };
+    }
+
+    private static ColumnDecoder failingColumnDecoder(final String msg)
+    {
+        return (column) ->
+        {
+            throw new UnparsableContentException(msg);
+        };
+    }
+}
@@ -0,0 +1,168 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Creates the background threads used by the DFS client: prefetch threads, fetch request threads,
+ * async write threads and FileUtility task threads.
+ *
+ * By default platform threads are used. On JDK 21+ virtual threads can be enabled with {@link #setUseVirtualThreads(boolean)},
+ * which allows reading a large number of file parts concurrently without an OS thread per file part.
+ * Alternatively any ThreadFactory can be provided with {@link #setThreadFactory(ThreadFactory)}.
+ */
+public class DFSThreadFactory
+{
+    private static final Logger log = LogManager.getLogger(DFSThreadFactory.class);
+
+    private static final ThreadFactory PLATFORM_THREAD_FACTORY = new ThreadFactory()
+    {
+        public Thread newThread(Runnable task)
+        {
+            return new Thread(task);
+        }
+    };
+
+    // Created lazily through reflection, as virtual threads are not available in all supported JDK versions
+    private static ThreadFactory virtualThreadFactory = null;
+    private static boolean virtualThreadLookupDone = false;
+
+    private static volatile ThreadFactory threadFactory = PLATFORM_THREAD_FACTORY;
+    private static volatile boolean usingVirtualThreads = false;
+
+    /**
+     * Is virtual thread support available in the current JVM?
+     *
+     * @return true if virtual threads can be created
+     */
+    public static boolean isVirtualThreadSupported()
+    {
+        return getVirtualThreadFactory() != null;
+    }
+
+    /**
+     * Enables or disables virtual threads. If virtual threads are not supported by the JVM platform threads continue to be used.
+     *
+     * @param useVirtualThreads
+     *            true to use virtual threads
+     * @return true if virtual threads will be used
+     */
+    public static synchronized boolean setUseVirtualThreads(boolean useVirtualThreads)
+    {
+        if (useVirtualThreads == false)
+        {
+            threadFactory = PLATFORM_THREAD_FACTORY;
+            usingVirtualThreads = false;
+            return false;
+        }
+
+        ThreadFactory factory = getVirtualThreadFactory();
+        if (factory == null)
+        {
+            log.warn("DFSThreadFactory: Virtual threads are not supported by this JVM (" + System.getProperty("java.version")
+                     + "), using platform threads");
+            threadFactory = PLATFORM_THREAD_FACTORY;
+            usingVirtualThreads = false;
+            return false;
+        }
+
+        threadFactory = factory;
+        usingVirtualThreads = true;
+        return true;
+    }
+
+    /**
+     * Are virtual threads being used?
+     *
+     * @return true if virtual threads are being used
+     */
+    public static boolean isUsingVirtualThreads()
+    {
+        return usingVirtualThreads;
+    }
+
+    /**
+     * Sets the ThreadFactory used to create DFS client threads.
+     *
+     * @param factory
+     *            the thread factory, null restores the default platform thread factory
+     */
+    public static synchronized void setThreadFactory(ThreadFactory factory)
+    {
+        if (factory == null)
+        {
+            factory = PLATFORM_THREAD_FACTORY;
+        }
+
+        threadFactory = factory;
+        usingVirtualThreads = (factory == virtualThreadFactory);
+    }
+
+    /**
+     * Returns the ThreadFactory used to create DFS client threads.
+     *
+     * @return the thread factory
+     */
+    public static ThreadFactory getThreadFactory()
+    {
+        return threadFactory;
+    }
+
+    /**
+     * Creates a new unstarted thread with the current ThreadFactory.
+     *
+     * @param task
+     *            the task to run
+     * @param name
+     *            the thread name, may be null to keep the factory assigned name
+     * @return the thread
+     */
+    public static Thread newThread(Runnable task, String name)
+    {
+        Thread thread = threadFactory.newThread(task);
+        if (name != null)
+        {
+            thread.setName(name);
+        }
+
+        return thread;
+    }
+
+    private static synchronized ThreadFactory getVirtualThreadFactory()
+    {
+        if (virtualThreadLookupDone)
+        {
+            return virtualThreadFactory;
+        }
+        virtualThreadLookupDone = true;
+
+        // Equivalent to Thread.ofVirtual().factory(), available as a standard feature from JDK 21
+        try
+        {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            virtualThreadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        }
+        catch (Exception | LinkageError e)
+        {
+            log.debug("DFSThreadFactory: Virtual threads unavailable: " + e.getMessage());
+            virtualThreadFactory = null;
+        }
+
+        return virtualThreadFactory;
+    }
+}
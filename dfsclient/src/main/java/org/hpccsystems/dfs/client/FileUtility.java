@@ -427,6 +427,14 @@ public class FileUtility
         {
             RowServiceInputStream.setMaxConcurrentConnectionStartups(concurrentStartups);
         }
+
+        if (cmd.hasOption("use_virtual_threads"))
+        {
+            if (DFSThreadFactory.setUseVirtualThreads(true) == false)
+            {
+                System.out.println("Virtual threads are not supported by this JVM, using platform threads.");
+            }
+        }
     }
 
     private static enum FileFormat
@@ -698,6 +706,7 @@ public class FileUtility
         options.addOption("socket_timeout_seconds", true, "Sets the socket operation timeout in seconds.");
         options.addOption("connection_startup_limit", true, "Specifies the maximum number of connections to startup concurrently."
                                     + " useful in cases where starting up connections too quickly can overwhelm intermediate processes.");
+        options.addOption("use_virtual_threads", false, "Use virtual threads for reading and task execution when supported by the JVM (JDK 21+).");
         options.addOption("non_interactive", false, "Disables prompting for credentials if they are not provided.");
 
         options.addOption(Option.builder("read")
@@ -729,6 +738,7 @@ public class FileUtility
         options.addOption("socket_timeout_seconds", true, "Sets the socket operation timeout in seconds.");
         options.addOption("connection_startup_limit", true, "Specifies the maximum number of connections to startup concurrently."
                                     + " useful in cases where starting up connections too quickly can overwhelm intermediate processes.");
+        options.addOption("use_virtual_threads", false, "Use virtual threads for reading and task execution when supported by the JVM (JDK 21+).");
         options.addOption("non_interactive", false, "Disables prompting for credentials if they are not provided.");
 
         options.addOption(Option.builder("file_parts")
@@ -755,6 +765,7 @@ public class FileUtility
         options.addOption("socket_timeout_seconds", true, "Sets the socket operation timeout in seconds.");
         options.addOption("connection_startup_limit", true, "Specifies the maximum number of connections to startup concurrently."
                                     + " useful in cases where starting up connections too quickly can overwhelm intermediate processes.");
+        options.addOption("use_virtual_threads", false, "Use virtual threads for reading and task execution when supported by the JVM (JDK 21+).");
         options.addOption("non_interactive", false, "Disables prompting for credentials if they are not provided.");
 
         options.addOption(Option.builder("copy")
@@ -780,6 +791,7 @@ public class FileUtility
         options.addOption("socket_timeout_seconds", true, "Sets the socket operation timeout in seconds.");
         options.addOption("connection_startup_limit", true, "Specifies the maximum number of connections to startup concurrently."
                                     + " useful in cases where starting up connections too quickly can overwhelm intermediate processes.");
+        options.addOption("use_virtual_threads", false, "Use virtual threads for reading and task execution when supported by the JVM (JDK 21+).");
         options.addOption("non_interactive", false, "Disables prompting for credentials if they are not provided.");
 
         options.addOption(Option.builder("write")
@@ -965,7 +977,8 @@ public class FileUtility
             final int currentTaskStart = taskNum;
             final int currentNumTasks = numTasksPerThread + residualTasks;
 
-            taskThreads[threadNum] = new Thread(new Runnable()
+            // Task threads are created by DFSThreadFactory, so they can be virtual threads when enabled
+            taskThreads[threadNum] = DFSThreadFactory.newThread(new Runnable()
             {
                 Runnable[] subTasks = tasks;
                 int startingSubTask = currentTaskStart;
@@ -982,7 +995,7 @@ public class FileUtility
                         subTasks[startingSubTask + j].run();
                     }
                 }
-            });
+            }, "FileUtility-Task-" + threadNum);
 
             taskNum += currentNumTasks;
             taskThreads[threadNum].start();
@@ -1022,10 +1035,12 @@ public class FileUtility
                         fileReader.setMaxReadRetries(context.readRetries);
 
                         long recCount = 0;
-                        while (fileReader.hasNext())
+                        List<HPCCRecord> batch = new ArrayList<HPCCRecord>(HpccRemoteFileReader.DEFAULT_RECORD_BATCH_SIZE);
+                        int numRecords = 0;
+                        while ((numRecords = fileReader.nextBatch(batch, HpccRemoteFileReader.DEFAULT_RECORD_BATCH_SIZE)) > 0)
                         {
-                            HPCCRecord record = fileReader.next();
-                            recCount++;
+                            recCount += numRecords;
+                            batch.clear();
                         }
 
                         fileReadOperation.recordsRead.addAndGet(recCount);
@@ -1217,12 +1232,16 @@ public class FileUtility
                             long recordsRead = 0;
                             long recordsWritten = 0;
                             HpccRemoteFileReader<HPCCRecord> fileReader = fileReaders[k];
-                            while (fileReader.hasNext())
+                            List<HPCCRecord> batch = new ArrayList<HPCCRecord>(HpccRemoteFileReader.DEFAULT_RECORD_BATCH_SIZE);
+                            while (fileReader.nextBatch(batch, HpccRemoteFileReader.DEFAULT_RECORD_BATCH_SIZE) > 0)
                             {
-                                HPCCRecord record = fileReader.next();
-                                fileWriter.writeRecord(record);
-                                recordsRead++;
-                                recordsWritten++;
+                                for (HPCCRecord record : batch)
+                                {
+                                    fileWriter.writeRecord(record);
+                                }
+                                recordsRead += batch.size();
+                                recordsWritten += batch.size();
+                                batch.clear();
                             }
                             context.getCurrentOperation().recordsWritten.addAndGet(recordsWritten);
                             context.getCurrentOperation().recordsRead.addAndGet(recordsRead);
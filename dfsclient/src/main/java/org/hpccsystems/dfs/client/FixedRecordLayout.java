@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.ecl.HpccSrcType;
+
+/**
+ * The layout of a record in which every field has a fixed length, IE: a record made up of INTEGER, REAL, BOOLEAN,
+ * DECIMAL, fixed length STRING and fixed length DATA fields.
+ *
+ * For these records the size of the record and the offset of every field can be computed once from the record
+ * definition. This allows a record to be read or written with a single bounds check, and a field to be accessed
+ * without decoding the fields before it.
+ */
+class FixedRecordLayout
+{
+    private final FieldDef[] fieldDefs;
+    private final int[]      fieldOffsets;
+    private final int[]      fieldSizes;
+    private final int        recordSize;
+
+    private FixedRecordLayout(FieldDef[] fieldDefs, int[] fieldOffsets, int[] fieldSizes, int recordSize)
+    {
+        this.fieldDefs = fieldDefs;
+        this.fieldOffsets = fieldOffsets;
+        this.fieldSizes = fieldSizes;
+        this.recordSize = recordSize;
+    }
+
+    /**
+     * Creates the layout of a record definition.
+     *
+     * @param recordDef
+     *            the record definition
+     * @return the layout, or null if the record contains a field that does not have a fixed length
+     */
+    static FixedRecordLayout create(FieldDef recordDef)
+    {
+        FieldDef[] fieldDefs = new FieldDef[recordDef.getNumDefs()];
+        for (int i = 0; i < fieldDefs.length; i++)
+        {
+            fieldDefs[i] = recordDef.getDef(i);
+        }
+        return create(fieldDefs);
+    }
+
+    /**
+     * Creates the layout of a record with the provided fields.
+     *
+     * @param fieldDefs
+     *            the field definitions of the record
+     * @return the layout, or null if a field does not have a fixed length
+     */
+    static FixedRecordLayout create(FieldDef[] fieldDefs)
+    {
+        if (fieldDefs.length == 0)
+        {
+            return null;
+        }
+
+        int[] fieldOffsets = new int[fieldDefs.length];
+        int[] fieldSizes = new int[fieldDefs.length];
+        long recordSize = 0;
+        for (int i = 0; i < fieldDefs.length; i++)
+        {
+            int fieldSize = getFixedFieldSize(fieldDefs[i]);
+            if (fieldSize < 0)
+            {
+                return null;
+            }
+
+            fieldOffsets[i] = (int) recordSize;
+            fieldSizes[i] = fieldSize;
+            recordSize += fieldSize;
+            if (recordSize > Integer.MAX_VALUE)
+            {
+                return null;
+            }
+        }
+
+        return new FixedRecordLayout(fieldDefs, fieldOffsets, fieldSizes, (int) recordSize);
+    }
+
+    /**
+     * Returns the serialized size of a field if it has a fixed length.
+     *
+     * @param fd
+     *            the field definition
+     * @return the size of the field in bytes, or -1 if the field does not have a fixed length
+     */
+    static int getFixedFieldSize(FieldDef fd)
+    {
+        if (fd.isBlob() || fd.getDataLen() > Integer.MAX_VALUE)
+        {
+            return -1;
+        }
+
+        int dataLen = (int) fd.getDataLen();
+        switch (fd.getFieldType())
+        {
+            case INTEGER:
+            case FILEPOS:
+                return (dataLen > 0 && dataLen <= 8) ? dataLen : -1;
+            case REAL:
+                return (dataLen == 4 || dataLen == 8) ? dataLen : -1;
+            case BOOLEAN:
+                return (dataLen == 1) ? dataLen : -1;
+            case DECIMAL:
+                return (dataLen > 0) ? dataLen : -1;
+            case BINARY:
+                return fd.isFixed() ? dataLen : -1;
+            case STRING:
+            {
+                // Only character sets with a fixed number of bytes per code point
+                if (fd.isFixed() == false)
+                {
+                    return -1;
+                }
+
+                if (fd.getSourceType() == HpccSrcType.SINGLE_BYTE_CHAR)
+                {
+                    return dataLen;
+                }
+                else if (fd.getSourceType().isUTF16() && dataLen <= Integer.MAX_VALUE / 2)
+                {
+                    return dataLen * 2;
+                }
+                return -1;
+            }
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the size of a record.
+     *
+     * @return the record size in bytes
+     */
+    int getRecordSize()
+    {
+        return recordSize;
+    }
+
+    /**
+     * Returns the number of fields in the record.
+     *
+     * @return the number of fields
+     */
+    int getNumFields()
+    {
+        return fieldDefs.length;
+    }
+
+    /**
+     * Returns the definition of a field.
+     *
+     * @param index
+     *            the field index
+     * @return the field definition
+     */
+    FieldDef getFieldDef(int index)
+    {
+        return fieldDefs[index];
+    }
+
+    /**
+     * Returns the offset of a field from the start of the record.
+     *
+     * @param index
+     *            the field index
+     * @return the offset in bytes
+     */
+    int getFieldOffset(int index)
+    {
+        return fieldOffsets[index];
+    }
+
+    /**
+     * Returns the size of a field.
+     *
+     * @param index
+     *            the field index
+     * @return the size in bytes
+     */
+    int getFieldSize(int index)
+    {
+        return fieldSizes[index];
+    }
+}
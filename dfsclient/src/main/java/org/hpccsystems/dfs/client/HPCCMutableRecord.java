@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+
+/**
+ * A record that is reused for every row read with an @see org.hpccsystems.dfs.client.HPCCMutableRecordBuilder.
+ *
+ * Integer, real and boolean fields are stored in primitive slots and can be read without boxing through getLong(),
+ * getDouble() and getBoolean(), and SET OF INTEGER fields can be read as a long array with getLongArray(). Decimals read with
+ * BinaryRecordReader.setUseUnscaledDecimals() are stored as an unscaled long and can be read with getUnscaledDecimal()
+ * and getDecimalScale(). Other fields are stored as the same objects an @see org.hpccsystems.dfs.client.HPCCRecord
+ * contains, child records are stored as HPCCMutableRecords that are reused as well.
+ *
+ * The contents of the record are replaced by the next row read, use toHPCCRecord() to keep a row.
+ */
+public class HPCCMutableRecord
+{
+    private static final byte OBJECT_VALUE  = 0;
+    private static final byte LONG_VALUE    = 1;
+    private static final byte DOUBLE_VALUE  = 2;
+    private static final byte BOOLEAN_VALUE = 3;
+    private static final byte LONG_ARRAY_VALUE = 4;
+    private static final byte DECIMAL_VALUE = 5;
+
+    private final FieldDef recordDef;
+    private final byte[]   valueTypes;
+    private final long[]   longValues;
+    private final double[] doubleValues;
+    private final Object[] objectValues;
+    private final long[][] longArrayValues;
+    private final int[]    longArrayLengths;
+    private final int[]    decimalScales;
+
+    HPCCMutableRecord(FieldDef recordDef)
+    {
+        int numFields = recordDef.getNumDefs();
+        this.recordDef = recordDef;
+        this.valueTypes = new byte[numFields];
+        this.longValues = new long[numFields];
+        this.doubleValues = new double[numFields];
+        this.objectValues = new Object[numFields];
+        this.longArrayValues = new long[numFields][];
+        this.longArrayLengths = new int[numFields];
+        this.decimalScales = new int[numFields];
+    }
+
+    void setField(int index, Object value)
+    {
+        valueTypes[index] = OBJECT_VALUE;
+        objectValues[index] = value;
+    }
+
+    void setLong(int index, long value)
+    {
+        valueTypes[index] = LONG_VALUE;
+        longValues[index] = value;
+        objectValues[index] = null;
+    }
+
+    void setDouble(int index, double value)
+    {
+        valueTypes[index] = DOUBLE_VALUE;
+        doubleValues[index] = value;
+        objectValues[index] = null;
+    }
+
+    void setBoolean(int index, boolean value)
+    {
+        valueTypes[index] = BOOLEAN_VALUE;
+        longValues[index] = value ? 1 : 0;
+        objectValues[index] = null;
+    }
+
+    void setUnscaledDecimal(int index, long unscaledValue, int scale)
+    {
+        valueTypes[index] = DECIMAL_VALUE;
+        longValues[index] = unscaledValue;
+        decimalScales[index] = scale;
+        objectValues[index] = null;
+    }
+
+    boolean hasUnscaledDecimal(int index, int scale)
+    {
+        return valueTypes[index] == DECIMAL_VALUE && decimalScales[index] == scale;
+    }
+
+    void setLongArray(int index, long[] values, int length)
+    {
+        valueTypes[index] = LONG_ARRAY_VALUE;
+        objectValues[index] = null;
+
+        // The array is reused for the following rows
+        if (longArrayValues[index] == null || longArrayValues[index].length < length)
+        {
+            longArrayValues[index] = new long[length];
+        }
+        System.arraycopy(values, 0, longArrayValues[index], 0, length);
+        longArrayLengths[index] = length;
+    }
+
+    /**
+     * Gets the record definition.
+     *
+     * @return the record definition
+     */
+    public FieldDef getRecordDefinition()
+    {
+        return recordDef;
+    }
+
+    /**
+     * Gets the num fields.
+     *
+     * @return the num fields
+     */
+    public int getNumFields()
+    {
+        return valueTypes.length;
+    }
+
+    /**
+     * Gets the field, primitive values are boxed.
+     *
+     * @param index
+     *            the index
+     * @return the field
+     */
+    public Object getField(int index)
+    {
+        switch (valueTypes[index])
+        {
+            case LONG_VALUE:
+                return Long.valueOf(longValues[index]);
+            case DOUBLE_VALUE:
+                return Double.valueOf(doubleValues[index]);
+            case BOOLEAN_VALUE:
+                return Boolean.valueOf(longValues[index] != 0);
+            case DECIMAL_VALUE:
+                return BigDecimal.valueOf(longValues[index], decimalScales[index]);
+            case LONG_ARRAY_VALUE:
+            {
+                ArrayList<Object> values = new ArrayList<Object>(longArrayLengths[index]);
+                for (int i = 0; i < longArrayLengths[index]; i++)
+                {
+                    values.add(Long.valueOf(longArrayValues[index][i]));
+                }
+                return values;
+            }
+            default:
+                return objectValues[index];
+        }
+    }
+
+    /**
+     * Gets the value of a numeric field as a long.
+     *
+     * @param index
+     *            the index
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the field is not numeric
+     */
+    public long getLong(int index)
+    {
+        switch (valueTypes[index])
+        {
+            case LONG_VALUE:
+                return longValues[index];
+            case DOUBLE_VALUE:
+                return (long) doubleValues[index];
+            case DECIMAL_VALUE:
+                return BigDecimal.valueOf(longValues[index], decimalScales[index]).longValue();
+            default:
+                return getNumber(index).longValue();
+        }
+    }
+
+    /**
+     * Gets the value of a numeric field as a double.
+     *
+     * @param index
+     *            the index
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the field is not numeric
+     */
+    public double getDouble(int index)
+    {
+        switch (valueTypes[index])
+        {
+            case LONG_VALUE:
+                return longValues[index];
+            case DOUBLE_VALUE:
+                return doubleValues[index];
+            case DECIMAL_VALUE:
+                return BigDecimal.valueOf(longValues[index], decimalScales[index]).doubleValue();
+            default:
+                return getNumber(index).doubleValue();
+        }
+    }
+
+    /**
+     * Gets the value of a boolean field.
+     *
+     * @param index
+     *            the index
+     * @return the value
+     * @throws IllegalArgumentException
+     *             if the field is not a boolean
+     */
+    public boolean getBoolean(int index)
+    {
+        if (valueTypes[index] == BOOLEAN_VALUE)
+        {
+            return longValues[index] != 0;
+        }
+
+        if (valueTypes[index] == OBJECT_VALUE && objectValues[index] instanceof Boolean)
+        {
+            return (Boolean) objectValues[index];
+        }
+
+        throw new IllegalArgumentException("HPCCMutableRecord: Field: " + recordDef.getDef(index).getFieldName() + " is not a boolean.");
+    }
+
+    /**
+     * Gets the unscaled value of a decimal field, the value of the decimal is unscaledValue * 10^-scale where scale
+     * is returned by getDecimalScale().
+     *
+     * @param index
+     *            the index
+     * @return the unscaled value
+     * @throws IllegalArgumentException
+     *             if the field is not a decimal
+     * @throws ArithmeticException
+     *             if the unscaled value of the decimal doesn't fit in a long
+     */
+    public long getUnscaledDecimal(int index)
+    {
+        if (valueTypes[index] == DECIMAL_VALUE)
+        {
+            return longValues[index];
+        }
+
+        return getDecimal(index).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Gets the scale of a decimal field.
+     *
+     * @param index
+     *            the index
+     * @return the scale
+     * @throws IllegalArgumentException
+     *             if the field is not a decimal
+     */
+    public int getDecimalScale(int index)
+    {
+        if (valueTypes[index] == DECIMAL_VALUE)
+        {
+            return decimalScales[index];
+        }
+
+        return getDecimal(index).scale();
+    }
+
+    private BigDecimal getDecimal(int index)
+    {
+        if (valueTypes[index] == OBJECT_VALUE && objectValues[index] instanceof BigDecimal)
+        {
+            return (BigDecimal) objectValues[index];
+        }
+
+        throw new IllegalArgumentException("HPCCMutableRecord: Field: " + recordDef.getDef(index).getFieldName() + " is not a decimal.");
+    }
+
+    /**
+     * Gets the value of a SET OF INTEGER field as a long array.
+     *
+     * @param index
+     *            the index
+     * @return a copy of the values
+     * @throws IllegalArgumentException
+     *             if the field is not a set of integers
+     */
+    public long[] getLongArray(int index)
+    {
+        if (valueTypes[index] == LONG_ARRAY_VALUE)
+        {
+            return Arrays.copyOf(longArrayValues[index], longArrayLengths[index]);
+        }
+
+        if (valueTypes[index] == OBJECT_VALUE && objectValues[index] instanceof List)
+        {
+            List<?> list = (List<?>) objectValues[index];
+            long[] values = new long[list.size()];
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = ((Number) list.get(i)).longValue();
+            }
+            return values;
+        }
+
+        throw new IllegalArgumentException("HPCCMutableRecord: Field: " + recordDef.getDef(index).getFieldName() + " is not a set of integers.");
+    }
+
+    private Number getNumber(int index)
+    {
+        if (valueTypes[index] == OBJECT_VALUE && objectValues[index] instanceof Number)
+        {
+            return (Number) objectValues[index];
+        }
+
+        throw new IllegalArgumentException("HPCCMutableRecord: Field: " + recordDef.getDef(index).getFieldName() + " is not numeric.");
+    }
+
+    /**
+     * Copies the current row out of the reused record. Child records are copied as well, so the returned
+     * record remains valid after the next row is read.
+     *
+     * @return the record
+     */
+    public HPCCRecord toHPCCRecord()
+    {
+        Object[] fields = new Object[valueTypes.length];
+        for (int i = 0; i < fields.length; i++)
+        {
+            Object value = getField(i);
+            if (value instanceof HPCCMutableRecord)
+            {
+                value = ((HPCCMutableRecord) value).toHPCCRecord();
+            }
+            fields[i] = value;
+        }
+        return new HPCCRecord(fields, recordDef);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    public String toString()
+    {
+        return toHPCCRecord().toString();
+    }
+}
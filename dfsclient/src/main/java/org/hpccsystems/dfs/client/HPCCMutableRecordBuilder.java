@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.ecl.FieldType;
+
+/**
+ * Record builder that builds every row into the same @see org.hpccsystems.dfs.client.HPCCMutableRecord, so reading
+ * does not allocate a record per row. Integer, real, boolean and SET OF INTEGER values are set without boxing.
+ *
+ * Rows of child datasets are built as @see org.hpccsystems.dfs.client.HPCCRecord, since every row of a dataset must be
+ * a separate object.
+ */
+public class HPCCMutableRecordBuilder implements IRecordBuilder
+{
+    private FieldDef          fieldDef            = null;
+    private HPCCMutableRecord record              = null;
+    private IRecordBuilder[]  childRecordBuilders = null;
+
+    /**
+     * Instantiates a new HPCC mutable record builder.
+     *
+     * @param recordDef
+     *            the record def
+     */
+    public HPCCMutableRecordBuilder(FieldDef recordDef)
+    {
+        setRecordDefinition(recordDef);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setRecordDefinition(org.hpccsystems.commons.ecl.FieldDef)
+     */
+    public void setRecordDefinition(FieldDef fieldDef)
+    {
+        this.fieldDef = fieldDef;
+        this.record = new HPCCMutableRecord(fieldDef);
+        this.childRecordBuilders = new IRecordBuilder[fieldDef.getNumDefs()];
+        for (int i = 0; i < fieldDef.getNumDefs(); i++)
+        {
+            FieldDef fd = fieldDef.getDef(i);
+            if (fd.getFieldType() == FieldType.RECORD)
+            {
+                childRecordBuilders[i] = new HPCCMutableRecordBuilder(fd);
+            }
+            else if (fd.getFieldType() == FieldType.DATASET && fd.getDef(0).getFieldType() == FieldType.RECORD)
+            {
+                childRecordBuilders[i] = new HPCCRecordBuilder(fd.getDef(0));
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#getRecordDefinition()
+     */
+    public FieldDef getRecordDefinition()
+    {
+        return this.fieldDef;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#startRecord()
+     */
+    public void startRecord() throws java.lang.InstantiationException
+    {
+        // Every field is set for each row, so the previous row doesn't need to be cleared
+    }
+
+    /**
+     * Returns the reused record.
+     *
+     * @return the record
+     */
+    public Object finalizeRecord() throws java.lang.InstantiationException
+    {
+        return this.record;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setFieldValue(int, java.lang.Object)
+     */
+    public void setFieldValue(int index, Object value) throws IllegalArgumentException, IllegalAccessException
+    {
+        this.record.setField(index, value);
+    }
+
+    /**
+     * Primitive field values are stored without boxing.
+     *
+     * @return true
+     */
+    public boolean supportsPrimitiveFieldValues()
+    {
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setLongFieldValue(int, long)
+     */
+    public void setLongFieldValue(int index, long value)
+    {
+        this.record.setLong(index, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setDoubleFieldValue(int, double)
+     */
+    public void setDoubleFieldValue(int index, double value)
+    {
+        this.record.setDouble(index, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setBooleanFieldValue(int, boolean)
+     */
+    public void setBooleanFieldValue(int index, boolean value)
+    {
+        this.record.setBoolean(index, value);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setUnscaledDecimalFieldValue(int, long, int)
+     */
+    public void setUnscaledDecimalFieldValue(int index, long unscaledValue, int scale)
+    {
+        this.record.setUnscaledDecimal(index, unscaledValue, scale);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setLongArrayFieldValue(int, long[], int)
+     */
+    public void setLongArrayFieldValue(int index, long[] values, int length)
+    {
+        this.record.setLongArray(index, values, length);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#getChildRecordBuilder(int)
+     */
+    public IRecordBuilder getChildRecordBuilder(int index)
+    {
+        return this.childRecordBuilders[index];
+    }
+}
@@ -23,11 +23,13 @@ import org.hpccsystems.commons.ecl.FieldDef;
 import org.hpccsystems.commons.ecl.FieldType;
 
 /**
- * Allows consumers of IRecordAccessor to access data within an @see org.hpccsystems.dfs.client.HPCCRecord.
+ * Allows consumers of IRecordAccessor to access data within an @see org.hpccsystems.dfs.client.HPCCRecord
+ * or an @see org.hpccsystems.dfs.client.HPCCMutableRecord.
  */
 public class HPCCRecordAccessor implements IRecordAccessor
 {
     private HPCCRecord           record               = null;
+    private HPCCMutableRecord    mutableRecord        = null;
     private FieldDef             fieldDef             = null;
     private HPCCRecordAccessor[] childRecordAccessors = null;
 
@@ -70,7 +72,16 @@ public class HPCCRecordAccessor implements IRecordAccessor
      */
     public IRecordAccessor setRecord(Object rd)
     {
-        this.record = (HPCCRecord) rd;
+        if (rd instanceof HPCCMutableRecord)
+        {
+            this.record = null;
+            this.mutableRecord = (HPCCMutableRecord) rd;
+        }
+        else
+        {
+            this.record = (HPCCRecord) rd;
+            this.mutableRecord = null;
+        }
         return this;
     }
 
@@ -91,6 +102,11 @@ public class HPCCRecordAccessor implements IRecordAccessor
      */
     public Object getFieldValue(int index)
     {
+        if (this.mutableRecord != null)
+        {
+            return this.mutableRecord.getField(index);
+        }
+
         if (this.record == null)
         {
             return null;
@@ -99,6 +115,87 @@ public class HPCCRecordAccessor implements IRecordAccessor
         return this.record.getField(index);
     }
 
+    /**
+     * Primitive field values are supported for HPCCMutableRecords. HPCCRecords store boxed values, which are
+     * converted by the writer.
+     *
+     * @return true if the current record is an HPCCMutableRecord
+     */
+    public boolean supportsPrimitiveFieldValues()
+    {
+        return this.mutableRecord != null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hpccsystems.dfs.client.IRecordAccessor#getLongFieldValue(int)
+     */
+    public long getLongFieldValue(int index)
+    {
+        if (this.mutableRecord != null)
+        {
+            return this.mutableRecord.getLong(index);
+        }
+        return IRecordAccessor.super.getLongFieldValue(index);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hpccsystems.dfs.client.IRecordAccessor#getDoubleFieldValue(int)
+     */
+    public double getDoubleFieldValue(int index)
+    {
+        if (this.mutableRecord != null)
+        {
+            return this.mutableRecord.getDouble(index);
+        }
+        return IRecordAccessor.super.getDoubleFieldValue(index);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hpccsystems.dfs.client.IRecordAccessor#getBooleanFieldValue(int)
+     */
+    public boolean getBooleanFieldValue(int index)
+    {
+        if (this.mutableRecord != null)
+        {
+            return this.mutableRecord.getBoolean(index);
+        }
+        return IRecordAccessor.super.getBooleanFieldValue(index);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hpccsystems.dfs.client.IRecordAccessor#getUnscaledDecimalFieldValue(int, int)
+     */
+    public long getUnscaledDecimalFieldValue(int index, int scale)
+    {
+        if (this.mutableRecord != null && this.mutableRecord.hasUnscaledDecimal(index, scale))
+        {
+            return this.mutableRecord.getUnscaledDecimal(index);
+        }
+        return IRecordAccessor.super.getUnscaledDecimalFieldValue(index, scale);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hpccsystems.dfs.client.IRecordAccessor#getLongArrayFieldValue(int)
+     */
+    public long[] getLongArrayFieldValue(int index)
+    {
+        if (this.mutableRecord != null)
+        {
+            return this.mutableRecord.getLongArray(index);
+        }
+        return IRecordAccessor.super.getLongArrayFieldValue(index);
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -16,6 +16,8 @@
 
 package org.hpccsystems.dfs.client;
 
+import java.util.ArrayList;
+
 import org.hpccsystems.dfs.client.IRecordBuilder;
 import org.hpccsystems.dfs.client.HPCCRecord;
 
@@ -116,6 +118,61 @@ public class HPCCRecordBuilder implements IRecordBuilder
         this.fields[index] = value;
     }
 
+    /**
+     * HPCCRecords store boxed values, but sets of integers are built directly from the decoded values.
+     *
+     * @return true
+     */
+    public boolean supportsPrimitiveFieldValues()
+    {
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setLongFieldValue(int, long)
+     */
+    public void setLongFieldValue(int index, long value)
+    {
+        this.fields[index] = Long.valueOf(value);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setDoubleFieldValue(int, double)
+     */
+    public void setDoubleFieldValue(int index, double value)
+    {
+        this.fields[index] = Double.valueOf(value);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setBooleanFieldValue(int, boolean)
+     */
+    public void setBooleanFieldValue(int index, boolean value)
+    {
+        this.fields[index] = Boolean.valueOf(value);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setLongArrayFieldValue(int, long[], int)
+     */
+    public void setLongArrayFieldValue(int index, long[] values, int length)
+    {
+        ArrayList<Object> list = new ArrayList<Object>(length);
+        for (int i = 0; i < length; i++)
+        {
+            list.add(Long.valueOf(values[i]));
+        }
+        this.fields[index] = list;
+    }
+
     /*
      * (non-Javadoc)
      * 
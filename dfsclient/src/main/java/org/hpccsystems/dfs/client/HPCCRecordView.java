@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.util.Arrays;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.errors.HpccFileException;
+
+/**
+ * A record that is decoded lazily from its raw bytes, created by reading with an @see org.hpccsystems.dfs.client.HPCCRecordViewBuilder.
+ *
+ * Each field is decoded the first time it is accessed and the decoded value is cached for later accesses. Field values
+ * are the same types that an @see org.hpccsystems.dfs.client.HPCCRecord contains, child records and datasets are
+ * decoded into HPCCRecords.
+ *
+ * The reader reuses the view and its buffer for every record, so a view is only valid until the next record is read.
+ * Use copy() to keep a record beyond that point.
+ */
+public class HPCCRecordView
+{
+    private static final Object NOT_DECODED = new Object();
+
+    private final FieldDef      recordDef;
+    private final Object[]      values;
+    private byte[]              buffer      = null;
+    private int[]               fieldOffsets = null;
+    private BinaryRecordReader  fieldReader = null;
+
+    HPCCRecordView(FieldDef recordDef)
+    {
+        this.recordDef = recordDef;
+        this.values = new Object[recordDef.getNumDefs()];
+    }
+
+    /**
+     * Points the view at the next record.
+     *
+     * @param buffer
+     *            the buffer containing the record
+     * @param fieldOffsets
+     *            the offset of each field in the buffer, followed by the end of the record
+     * @param fieldReader
+     *            the reader used to decode fields
+     */
+    void attach(byte[] buffer, int[] fieldOffsets, BinaryRecordReader fieldReader)
+    {
+        this.buffer = buffer;
+        this.fieldOffsets = fieldOffsets;
+        this.fieldReader = fieldReader;
+        Arrays.fill(this.values, NOT_DECODED);
+    }
+
+    /**
+     * Returns the record definition of the record.
+     *
+     * @return the record definition
+     */
+    public FieldDef getRecordDefinition()
+    {
+        return recordDef;
+    }
+
+    /**
+     * Returns the number of fields in the record.
+     *
+     * @return the number of fields
+     */
+    public int getNumFields()
+    {
+        return values.length;
+    }
+
+    /**
+     * Returns the value of a field, decoding it on first access.
+     *
+     * @param index
+     *            the field index
+     * @return the field value
+     * @throws HpccFileException
+     *             if the field can't be decoded
+     */
+    public Object getField(int index) throws HpccFileException
+    {
+        Object value = values[index];
+        if (value == NOT_DECODED)
+        {
+            // The field reader is shared by the copies of the view
+            synchronized (fieldReader)
+            {
+                value = fieldReader.decodeRecordViewField(index, buffer, fieldOffsets[index], fieldOffsets[index + 1]);
+            }
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value of a field, decoding it on first access.
+     *
+     * @param fieldName
+     *            the field name
+     * @return the field value
+     * @throws HpccFileException
+     *             if the field can't be decoded
+     * @throws IllegalArgumentException
+     *             if there is no field with the name
+     */
+    public Object getField(String fieldName) throws HpccFileException
+    {
+        int index = recordDef.getDefIndexWithFieldName(fieldName);
+        if (index < 0)
+        {
+            throw new IllegalArgumentException("HPCCRecordView: Unknown field: " + fieldName);
+        }
+        return getField(index);
+    }
+
+    /**
+     * Returns the size of a field in the record bytes.
+     *
+     * @param index
+     *            the field index
+     * @return the size in bytes
+     */
+    public int getFieldSize(int index)
+    {
+        return fieldOffsets[index + 1] - fieldOffsets[index];
+    }
+
+    /**
+     * Returns a view that owns a copy of the record bytes, which remains valid after the next record is read.
+     * Fields that have already been decoded are not decoded again.
+     *
+     * @return the copy
+     */
+    public HPCCRecordView copy()
+    {
+        HPCCRecordView copy = new HPCCRecordView(recordDef);
+        copy.buffer = Arrays.copyOf(buffer, fieldOffsets[values.length]);
+        copy.fieldOffsets = fieldOffsets.clone();
+        copy.fieldReader = fieldReader;
+        System.arraycopy(values, 0, copy.values, 0, values.length);
+        return copy;
+    }
+
+    /**
+     * Decodes all of the fields into an HPCCRecord.
+     *
+     * @return the record
+     * @throws HpccFileException
+     *             if a field can't be decoded
+     */
+    public HPCCRecord toHPCCRecord() throws HpccFileException
+    {
+        Object[] fields = new Object[values.length];
+        for (int i = 0; i < fields.length; i++)
+        {
+            fields[i] = getField(i);
+        }
+        return new HPCCRecord(fields, recordDef);
+    }
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+
+/**
+ * Record builder that makes the @see org.hpccsystems.dfs.client.BinaryRecordReader return an
+ * @see org.hpccsystems.dfs.client.HPCCRecordView for each record instead of an @see org.hpccsystems.dfs.client.HPCCRecord.
+ *
+ * Record views keep the bytes of the record and decode fields when they are accessed, so fields that are never
+ * accessed are never decoded. The same view is reused for every record, @see org.hpccsystems.dfs.client.HPCCRecordView#copy()
+ * must be used to keep a record after the next record is read.
+ */
+public class HPCCRecordViewBuilder implements IRecordBuilder
+{
+    private FieldDef fieldDef = null;
+
+    /**
+     * Instantiates a new HPCC record view builder.
+     *
+     * @param recordDef
+     *            the record def
+     */
+    public HPCCRecordViewBuilder(FieldDef recordDef)
+    {
+        setRecordDefinition(recordDef);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#setRecordDefinition(org.hpccsystems.commons.ecl.FieldDef)
+     */
+    public void setRecordDefinition(FieldDef fieldDef)
+    {
+        this.fieldDef = fieldDef;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see org.hpccsystems.dfs.client.IRecordBuilder#getRecordDefinition()
+     */
+    public FieldDef getRecordDefinition()
+    {
+        return this.fieldDef;
+    }
+
+    /**
+     * Not supported, record views are created by the BinaryRecordReader from the record bytes.
+     *
+     * @throws InstantiationException
+     *             always
+     */
+    public void startRecord() throws java.lang.InstantiationException
+    {
+        throw new InstantiationException("HPCCRecordViewBuilder: Record views are created by the BinaryRecordReader.");
+    }
+
+    /**
+     * Not supported, record views are created by the BinaryRecordReader from the record bytes.
+     *
+     * @return never returns
+     * @throws InstantiationException
+     *             always
+     */
+    public Object finalizeRecord() throws java.lang.InstantiationException
+    {
+        throw new InstantiationException("HPCCRecordViewBuilder: Record views are created by the BinaryRecordReader.");
+    }
+
+    /**
+     * Not supported, record view fields are decoded by the record view.
+     *
+     * @param index
+     *            the index
+     * @param value
+     *            the value
+     * @throws IllegalAccessException
+     *             always
+     */
+    public void setFieldValue(int index, Object value) throws IllegalArgumentException, IllegalAccessException
+    {
+        throw new IllegalAccessException("HPCCRecordViewBuilder: Record view fields are decoded by the record view.");
+    }
+
+    /**
+     * Child records are decoded into @see org.hpccsystems.dfs.client.HPCCRecord when accessed, there are no child builders.
+     *
+     * @param index
+     *            the index
+     * @return null
+     */
+    public IRecordBuilder getChildRecordBuilder(int index)
+    {
+        return null;
+    }
+}
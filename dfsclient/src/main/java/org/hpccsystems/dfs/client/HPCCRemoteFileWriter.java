@@ -23,6 +23,7 @@ import io.opentelemetry.api.trace.StatusCode;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
+import java.nio.ByteOrder;
 import java.util.Iterator;
 
 /**
@@ -51,6 +52,10 @@ public class HPCCRemoteFileWriter<T>
         public CompressionAlgorithm fileCompression = CompressionAlgorithm.DEFAULT;
         public int connectTimeoutMs = -1;
         public int socketOpTimeoutMs = -1;
+        public int maxInFlightWrites = -1; // Values > 1 pipeline writes to the row service instead of waiting for each write to be acknowledged
+        public boolean asyncWrite = false; // Encode records into one buffer while a background thread sends the other
+        public boolean useConnectionPool = false; // Reuse idle row service connections and cache the row service version per host, see RowServiceConnectionPool
+        public boolean useBufferPool = false; // Borrow the record encoding buffers from the process wide BufferPool and return them on close
         public Span parentSpan = null;
     }
 
@@ -157,13 +162,19 @@ public class HPCCRemoteFileWriter<T>
 
         this.outputStream = new RowServiceOutputStream(dataPartition.getCopyIP(0), dataPartition.getPort(), dataPartition.getUseSsl(),
                 dataPartition.getFileAccessBlob(), context.recordDef, this.dataPartition.getThisPart(), this.dataPartition.getCopyPath(0),
-                context.fileCompression, context.connectTimeoutMs, context.socketOpTimeoutMs, this.writeSpan);
+                context.fileCompression, context.connectTimeoutMs, context.socketOpTimeoutMs, this.writeSpan, context.maxInFlightWrites,
+                context.useConnectionPool);
 
-        this.binaryRecordWriter = new BinaryRecordWriter(this.outputStream);
+        this.binaryRecordWriter = new BinaryRecordWriter(this.outputStream, ByteOrder.nativeOrder(), context.useBufferPool);
+        if (context.asyncWrite)
+        {
+            this.binaryRecordWriter.enableAsyncFlush();
+        }
         this.binaryRecordWriter.initialize(this.recordAccessor);
 
         log.info("HPCCRemoteFileWriter: Opening file part: " + dataPartition.getThisPart()
-                + " compression: " + context.fileCompression.name());
+                + " compression: " + context.fileCompression.name()
+                + " async write: " + context.asyncWrite);
         log.trace("Record definition:\n"
                 + RecordDefinitionTranslator.toJsonRecord(context.recordDef));
         openTimeMs = System.currentTimeMillis();
@@ -242,6 +253,13 @@ public class HPCCRemoteFileWriter<T>
         log.info("HPCCRemoteFileWriter: Closing file part: " + dataPartition.getThisPart()
                 + " write time: " + writeTimeS + "s "
                 + " records written: " + recordsWritten);
+
+        if (this.binaryRecordWriter.isAsyncFlushEnabled())
+        {
+            log.info("HPCCRemoteFileWriter: File part: " + dataPartition.getThisPart()
+                    + " async send time: " + (this.binaryRecordWriter.getSendTimeNS() / 1000000000.0) + "s "
+                    + " flush wait time: " + (this.binaryRecordWriter.getFlushWaitTimeNS() / 1000000000.0) + "s");
+        }
     }
 
     /**
@@ -274,6 +292,9 @@ public class HPCCRemoteFileWriter<T>
     public void flush() throws Exception
     {
         this.binaryRecordWriter.flush();
+
+        // Wait for any pipelined writes to be acknowledged
+        this.outputStream.flush();
     }
 
     /**
@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.util.Arrays;
+
+/**
+ * Decides when a row service read request should be hedged, IE: also sent to another copy of the file part.
+ *
+ * Streams with hedged reads enabled report the first byte time and throughput of their read requests to a controller
+ * shared by all streams in the process. A request whose response has not started after the hedge percentile of the
+ * first byte times of its peers is hedged. A response whose throughput is below the equivalent low percentile of its
+ * peers causes the following request to be hedged immediately.
+ *
+ * Hedges use additional connections and server resources, so the number of hedged requests is capped to a fraction of
+ * all requests. Until enough samples have been collected no requests are hedged.
+ */
+public class HedgedReadController
+{
+    public static final double DEFAULT_HEDGE_PERCENTILE = 95.0;
+    public static final double DEFAULT_MAX_HEDGE_RATE = 0.05;
+    public static final int    DEFAULT_MIN_SAMPLES = 20;
+
+    // Number of recent samples used to compute the percentiles
+    private static final int   SAMPLE_WINDOW_SIZE = 256;
+
+    // Smaller responses, IE: the end of a file part, do not provide a meaningful throughput sample
+    private static final long  MIN_THROUGHPUT_SAMPLE_BYTES = 64 * 1024;
+
+    private static final HedgedReadController instance = new HedgedReadController(DEFAULT_HEDGE_PERCENTILE, DEFAULT_MAX_HEDGE_RATE, DEFAULT_MIN_SAMPLES);
+
+    private double             hedgePercentile;
+    private double             maxHedgeRate;
+    private int                minSamples;
+
+    private final long[]       firstByteTimesNS = new long[SAMPLE_WINDOW_SIZE];
+    private int                numFirstByteSamples = 0;
+    private final double[]     throughputsBytesPerNS = new double[SAMPLE_WINDOW_SIZE];
+    private int                numThroughputSamples = 0;
+
+    private long               numRequests = 0;
+    private long               numHedges = 0;
+    private long               numHedgeWins = 0;
+    private long               numHedgesSkipped = 0;
+
+    /**
+     * Returns the controller shared by all streams in the process.
+     *
+     * @return the controller
+     */
+    public static HedgedReadController getInstance()
+    {
+        return instance;
+    }
+
+    /**
+     * Instantiates a new controller.
+     *
+     * @param hedgePercentile
+     *            the percentile of peer first byte times after which a request is hedged
+     * @param maxHedgeRate
+     *            the maximum fraction of requests that are hedged
+     * @param minSamples
+     *            the number of samples required before requests are hedged
+     */
+    HedgedReadController(double hedgePercentile, double maxHedgeRate, int minSamples)
+    {
+        setHedgePercentile(hedgePercentile);
+        setMaxHedgeRate(maxHedgeRate);
+        setMinSamples(minSamples);
+    }
+
+    /**
+     * Sets the percentile of peer first byte times after which a request is hedged. Responses with a throughput below
+     * the (100 - percentile) percentile of peer throughputs cause the next request to be hedged.
+     *
+     * @param percentile
+     *            the percentile, between 50 and 100
+     */
+    public synchronized void setHedgePercentile(double percentile)
+    {
+        if (percentile < 50.0 || percentile > 100.0)
+        {
+            throw new IllegalArgumentException("Invalid hedge percentile: " + percentile + " must be between 50 and 100");
+        }
+
+        this.hedgePercentile = percentile;
+    }
+
+    /**
+     * @return the percentile of peer first byte times after which a request is hedged
+     */
+    public synchronized double getHedgePercentile()
+    {
+        return hedgePercentile;
+    }
+
+    /**
+     * Sets the maximum fraction of requests that are hedged, 0 disables hedging.
+     *
+     * @param rate
+     *            the maximum hedge rate, between 0 and 1
+     */
+    public synchronized void setMaxHedgeRate(double rate)
+    {
+        if (rate < 0.0 || rate > 1.0)
+        {
+            throw new IllegalArgumentException("Invalid max hedge rate: " + rate + " must be between 0 and 1");
+        }
+
+        this.maxHedgeRate = rate;
+    }
+
+    /**
+     * @return the maximum fraction of requests that are hedged
+     */
+    public synchronized double getMaxHedgeRate()
+    {
+        return maxHedgeRate;
+    }
+
+    /**
+     * Sets the number of first byte time and throughput samples required before requests are hedged.
+     *
+     * @param numSamples
+     *            the number of samples
+     */
+    public synchronized void setMinSamples(int numSamples)
+    {
+        this.minSamples = Math.max(1, Math.min(SAMPLE_WINDOW_SIZE, numSamples));
+    }
+
+    /**
+     * Records the time between sending a request and the start of its response.
+     *
+     * @param firstByteTimeNS
+     *            the first byte time
+     */
+    synchronized void onResponseStarted(long firstByteTimeNS)
+    {
+        numRequests++;
+        firstByteTimesNS[numFirstByteSamples++ % SAMPLE_WINDOW_SIZE] = Math.max(0, firstByteTimeNS);
+        if (numFirstByteSamples >= 2 * SAMPLE_WINDOW_SIZE)
+        {
+            numFirstByteSamples -= SAMPLE_WINDOW_SIZE;
+        }
+    }
+
+    /**
+     * Records the throughput of a completed response.
+     *
+     * @param bytesRead
+     *            the number of bytes in the response
+     * @param transferTimeNS
+     *            the time spent receiving the response
+     * @return true if the throughput is below the low percentile of previous responses and the next request should be hedged
+     */
+    synchronized boolean onResponseComplete(long bytesRead, long transferTimeNS)
+    {
+        if (bytesRead < MIN_THROUGHPUT_SAMPLE_BYTES)
+        {
+            return false;
+        }
+
+        double throughput = bytesRead / (double) Math.max(1, transferTimeNS);
+
+        boolean isSlow = false;
+        int numSamples = Math.min(numThroughputSamples, SAMPLE_WINDOW_SIZE);
+        if (numSamples >= minSamples)
+        {
+            double[] samples = Arrays.copyOf(throughputsBytesPerNS, numSamples);
+            Arrays.sort(samples);
+            isSlow = throughput < samples[getPercentileIndex(100.0 - hedgePercentile, numSamples)];
+        }
+
+        throughputsBytesPerNS[numThroughputSamples++ % SAMPLE_WINDOW_SIZE] = throughput;
+        if (numThroughputSamples >= 2 * SAMPLE_WINDOW_SIZE)
+        {
+            numThroughputSamples -= SAMPLE_WINDOW_SIZE;
+        }
+
+        return isSlow;
+    }
+
+    /**
+     * Returns the first byte time after which a request should be hedged.
+     *
+     * @return the hedge percentile of the recent first byte times, or -1 if there are not enough samples
+     */
+    synchronized long getFirstByteThresholdNS()
+    {
+        int numSamples = Math.min(numFirstByteSamples, SAMPLE_WINDOW_SIZE);
+        if (numSamples < minSamples || maxHedgeRate <= 0.0)
+        {
+            return -1;
+        }
+
+        long[] samples = Arrays.copyOf(firstByteTimesNS, numSamples);
+        Arrays.sort(samples);
+        return samples[getPercentileIndex(hedgePercentile, numSamples)];
+    }
+
+    /**
+     * Called before a request is hedged, enforces the max hedge rate.
+     *
+     * @return true if the request can be hedged
+     */
+    synchronized boolean tryStartHedge()
+    {
+        if (numHedges + 1 > maxHedgeRate * numRequests)
+        {
+            numHedgesSkipped++;
+            return false;
+        }
+
+        numHedges++;
+        return true;
+    }
+
+    /**
+     * Called once a hedged request has finished racing the original request.
+     *
+     * @param hedgeWon
+     *            true if the response to the hedged request started first
+     */
+    synchronized void onHedgeComplete(boolean hedgeWon)
+    {
+        if (hedgeWon)
+        {
+            numHedgeWins++;
+        }
+    }
+
+    /**
+     * @return the number of requests that have been sent by streams using hedged reads
+     */
+    public synchronized long getNumRequests()
+    {
+        return numRequests;
+    }
+
+    /**
+     * @return the number of requests that have been hedged
+     */
+    public synchronized long getNumHedges()
+    {
+        return numHedges;
+    }
+
+    /**
+     * @return the number of hedged requests that responded before the original request
+     */
+    public synchronized long getNumHedgeWins()
+    {
+        return numHedgeWins;
+    }
+
+    /**
+     * @return the number of requests that were not hedged because of the max hedge rate
+     */
+    public synchronized long getNumHedgesSkipped()
+    {
+        return numHedgesSkipped;
+    }
+
+    /**
+     * @return the fraction of requests that have been hedged
+     */
+    public synchronized double getHedgeRate()
+    {
+        if (numRequests == 0)
+        {
+            return 0.0;
+        }
+
+        return numHedges / (double) numRequests;
+    }
+
+    private static int getPercentileIndex(double percentile, int numSamples)
+    {
+        int index = (int) Math.ceil(percentile / 100.0 * numSamples) - 1;
+        return Math.max(0, Math.min(numSamples - 1, index));
+    }
+}
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+
+/**
+ * Remote file reader that reads the data represented by a @see org.hpccsystems.dfs.client.DataPartition
+ * into batches of columns, @see org.hpccsystems.dfs.client.ColumnarBatch. Records are decoded directly from
+ * the row service data into the column vectors without constructing record objects.
+ *
+ * Connection handling, retries and read resumption are the same as @see org.hpccsystems.dfs.client.HpccRemoteFileReader.
+ */
+public class HpccColumnarFileReader
+{
+    private HpccRemoteFileReader<Object> fileReader = null;
+    private ColumnarBatch                batch      = null;
+
+    /**
+     * A columnar reader for the file part using the projected record definition provided.
+     *
+     * @param ctx
+     *            the FileReadContext
+     * @param dp
+     *            the part of the file, name and location
+     * @param projectedRD
+     *            the projected record definition, the batches have a column per field
+     * @throws Exception
+     *             general exception
+     */
+    public HpccColumnarFileReader(HpccRemoteFileReader.FileReadContext ctx, DataPartition dp, FieldDef projectedRD) throws Exception
+    {
+        this(ctx, dp, projectedRD, null);
+    }
+
+    /**
+     * A columnar reader for the file part using the projected record definition provided.
+     *
+     * @param ctx
+     *            the FileReadContext
+     * @param dp
+     *            the part of the file, name and location
+     * @param projectedRD
+     *            the projected record definition, the batches have a column per field
+     * @param resumeInfo
+     *            FileReadeResumeInfo data required to restart a read from a particular point in a file, null for reading from start
+     * @throws Exception
+     *             general exception
+     */
+    public HpccColumnarFileReader(HpccRemoteFileReader.FileReadContext ctx, DataPartition dp, FieldDef projectedRD,
+                                  HpccRemoteFileReader.FileReadResumeInfo resumeInfo) throws Exception
+    {
+        if (projectedRD == null)
+        {
+            throw new Exception("HpccColumnarFileReader: Provided projected record definition is null.");
+        }
+
+        if (ctx.recordPredicate != null)
+        {
+            throw new Exception("HpccColumnarFileReader: Record predicates are not supported by the columnar reader.");
+        }
+
+        // Validate the column types before opening the connection
+        this.batch = new ColumnarBatch(projectedRD);
+        this.fileReader = new HpccRemoteFileReader<Object>(ctx, dp, new HPCCRecordBuilder(projectedRD), resumeInfo);
+    }
+
+    /**
+     * Is there more data
+     *
+     * @return true if there is a next record
+     */
+    public boolean hasNext()
+    {
+        return fileReader.hasNext();
+    }
+
+    /**
+     * Reads the next batch of up to maxRows records. The batch is reused by the next call to nextBatch(),
+     * data that is needed after that must be copied out of it.
+     *
+     * @param maxRows
+     *            the maximum number of rows in the batch
+     * @return the batch, or null if there are no more records
+     */
+    public ColumnarBatch nextBatch(int maxRows)
+    {
+        if (maxRows <= 0)
+        {
+            throw new IllegalArgumentException("HpccColumnarFileReader.nextBatch(): maxRows must be greater than 0.");
+        }
+
+        batch.reset();
+        while (batch.getNumRows() < maxRows && fileReader.hasNext())
+        {
+            fileReader.next(batch);
+        }
+
+        if (batch.getNumRows() == 0)
+        {
+            return null;
+        }
+
+        return batch;
+    }
+
+    /**
+     * Returns read resume info for the position after the last batch read.
+     *
+     * @return FileReadResumeInfo
+     */
+    public HpccRemoteFileReader.FileReadResumeInfo getFileReadResumeInfo()
+    {
+        return fileReader.getFileReadResumeInfo();
+    }
+
+    /**
+     * Returns the BinaryRecordReader used to decode records, IE: to set string processing flags.
+     *
+     * @return the record reader
+     */
+    public BinaryRecordReader getRecordReader()
+    {
+        return fileReader.getRecordReader();
+    }
+
+    /**
+     * Closes the underlying connection, reports summary of messages generated during read operation.
+     *
+     * @throws Exception
+     *             the exception
+     */
+    public void close() throws Exception
+    {
+        fileReader.close();
+    }
+}
@@ -173,7 +173,7 @@ public class HpccRandomAccessFileReader<T> implements Iterator<T>
                 }
             };
 
-            fetchRequestThread = new Thread(fetchRequestTask);
+            fetchRequestThread = DFSThreadFactory.newThread(fetchRequestTask, "HpccRandomAccessFileReader-Fetch-" + this.dataPartition.getThisPart());
             fetchRequestThread.start();
         }
 
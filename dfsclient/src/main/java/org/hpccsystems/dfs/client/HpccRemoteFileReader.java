@@ -25,12 +25,24 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Remote file reader the reads the data represented by a @see org.hpccsystems.dfs.client.DataPartition
  * Remote file reader the reads the data represented by a @see org.hpccsystems.dfs.client.DataPartition
  * and constructs records via the provided @see org.hpccsystems.dfs.client#IRecordBuilder.
+ *
+ * Reading with an @see org.hpccsystems.dfs.client.HPCCMutableRecordBuilder returns the same
+ * @see org.hpccsystems.dfs.client.HPCCMutableRecord from every call to next(), avoiding the allocation of a record per row.
+ * The record is overwritten by the next call to next(), use HPCCMutableRecord.toHPCCRecord() to keep a row.
+ * Reading with an @see org.hpccsystems.dfs.client.HPCCRecordViewBuilder likewise returns the same
+ * @see org.hpccsystems.dfs.client.HPCCRecordView from every call to next(), use HPCCRecordView.copy() to keep a row.
+ *
+ * nextBatch(), forEachRemaining() and batchIterator() decode records in batches, checking for the end of the stream
+ * and updating the stream position once per batch instead of once per record.
  */
 public class HpccRemoteFileReader<T> implements Iterator<T>
 {
@@ -49,12 +61,14 @@ public class HpccRemoteFileReader<T> implements Iterator<T>
     private long                  recordsRead       = 0;
 
     private FileReadContext       context           = null;
+    private FieldDef              readRecordDefinition = null;
     private Span                  readSpan          = null;
 
     public static final int    NO_RECORD_LIMIT                  = -1;
     public static final int    DEFAULT_READ_SIZE_OPTION         = -1;
     public static final int    DEFAULT_CONNECT_TIMEOUT_OPTION   = -1;
     public static final int    DEFAULT_READ_RETRIES             = 3;
+    public static final int    DEFAULT_RECORD_BATCH_SIZE        = 1024;
 
     public static class FileReadResumeInfo
     {
@@ -76,6 +90,18 @@ public class HpccRemoteFileReader<T> implements Iterator<T>
         public int readRequestSpanBatchSize = -1; // The number of read requests before creating a new span
         public double recordSamplingRate = RowServiceInputStream.MAX_RECORD_SAMPLING_RATE;
         public long recordSamplingSeed = RowServiceInputStream.USE_RANDOM_SEED;
+        public boolean useCommCompression = false; // Request compressed replies from the row service, trades CPU for network bandwidth
+        public boolean useMultiplexedReads = false; // Read using the shared MultiplexedReadEngine selector threads instead of a prefetch thread per file part
+        public boolean useAdaptiveReadSize = false; // Adjust the read request size to the measured throughput and round trip time, starting from readSizeKB
+        public boolean adaptiveReadBufferSize = false; // Also resize the read buffer with the read request size, requires useAdaptiveReadSize
+        public int maxOutstandingReadRequests = 1; // The number of read requests to keep in flight per file part, values above 1 pipeline continuation requests
+        public boolean useHedgedReads = false; // Also send slow read requests to another copy of the file part and continue with the copy that responds first, see HedgedReadController
+        public boolean useConnectionPool = false; // Reuse idle row service connections and cache the row service version per host, see RowServiceConnectionPool
+        public IReadAdmissionController admissionController = null; // Limits the streams and bandwidth per host, IE: ReadAdmissionController.getInstance(), null for no limits
+        public boolean useReadBufferBudget = false; // Allocate the read buffer within the process wide memory budget, see ReadBufferMemoryManager
+        public boolean useBufferPool = false; // Borrow the read buffer from the process wide BufferPool and return it on close
+        public RecordPredicate recordPredicate = null; // Records that do not match are skipped by the client, for filters the row service cannot apply
+        public boolean useUnscaledDecimals = false; // Decode decimals of up to 18 digits as unscaled longs, see BinaryRecordReader.setUseUnscaledDecimals
         public Span parentSpan = null;
 
         private long getReadSizeKB()
@@ -125,6 +151,16 @@ public class HpccRemoteFileReader<T> implements Iterator<T>
         context.readBufferSizeKB = readContext.readBufferSizeKB;
         context.recordSamplingRate = readContext.recordSamplingRate;
         context.recordSamplingSeed = readContext.recordSamplingSeed;
+        context.useCommCompression = readContext.useCommCompression;
+        context.useMultiplexedReads = readContext.useMultiplexedReads;
+        context.useAdaptiveReadSize = readContext.useAdaptiveReadSize;
+        context.adaptiveReadBufferSize = readContext.adaptiveReadBufferSize;
+        context.maxOutstandingReadRequests = readContext.maxOutstandingReadRequests;
+        context.useHedgedReads = readContext.useHedgedReads;
+        context.useConnectionPool = readContext.useConnectionPool;
+        context.admissionController = readContext.admissionController;
+        context.useReadBufferBudget = readContext.useReadBufferBudget;
+        context.useBufferPool = readContext.useBufferPool;
 
         return context;
     }
@@ -324,8 +360,24 @@ public class HpccRemoteFileReader<T> implements Iterator<T>
             throw e;
         }
 
+        // Fields tested by the record predicate are read even when they are not part of the projection
+        this.readRecordDefinition = projectedRecordDefinition;
+        if (context.recordPredicate != null)
+        {
+            try
+            {
+                this.readRecordDefinition = context.recordPredicate.getReadRecordDefinition(projectedRecordDefinition, context.originalRD);
+            }
+            catch (Exception e)
+            {
+                this.readSpan.recordException(e);
+                this.readSpan.end();
+                throw e;
+            }
+        }
+
         RowServiceInputStream.StreamContext streamContext = constructStreamContext(context);
-        streamContext.projectedRecordDefinition = projectedRecordDefinition;
+        streamContext.projectedRecordDefinition = this.readRecordDefinition;
         streamContext.fileReadSpan = this.readSpan;
 
         if (resumeInfo == null)
@@ -335,12 +387,7 @@ public class HpccRemoteFileReader<T> implements Iterator<T>
 
             this.binaryRecordReader = new BinaryRecordReader(this.inputStream, 0, this.readSpan);
             this.binaryRecordReader.setRecordBuildingSpanBatchSizeKB(context.getReadRequestSpanBatchSize() * context.getReadSizeKB());
-            this.binaryRecordReader.initialize(this.recordBuilder);
-
-            if (dp.getFileType() == DataPartition.FileType.INDEX)
-            {
-                this.binaryRecordReader.setIsIndex(true);
-            }
+            initializeRecordReader(context.useUnscaledDecimals, context.recordPredicate);
         }
         else
         {
@@ -367,12 +414,7 @@ public class HpccRemoteFileReader<T> implements Iterator<T>
 
             this.binaryRecordReader = new BinaryRecordReader(this.inputStream, resumeInfo.recordReaderStreamPos, this.readSpan);
             this.binaryRecordReader.setRecordBuildingSpanBatchSizeKB(context.getReadRequestSpanBatchSize() * context.getReadSizeKB());
-            this.binaryRecordReader.initialize(this.recordBuilder);
-
-            if (dp.getFileType() == DataPartition.FileType.INDEX)
-            {
-                this.binaryRecordReader.setIsIndex(true);
-            }
+            initializeRecordReader(context.useUnscaledDecimals, context.recordPredicate);
         }
 
         log.info("HPCCRemoteFileReader: Opening file part: " + dataPartition.getThisPart()
@@ -384,6 +426,29 @@ public class HpccRemoteFileReader<T> implements Iterator<T>
         openTimeMs = System.currentTimeMillis();
     }
 
+    /**
+     * Initializes a new record reader, when the file part is opened and when a read is retried. Options that can be
+     * changed on the record reader are passed in, so a retry keeps the options of the reader it replaces.
+     *
+     * @param useUnscaledDecimals
+     *            decode decimals of up to 18 digits as unscaled longs
+     * @param recordPredicate
+     *            the record predicate, null to read every record
+     * @throws Exception
+     *             the exception
+     */
+    private void initializeRecordReader(boolean useUnscaledDecimals, RecordPredicate recordPredicate) throws Exception
+    {
+        this.binaryRecordReader.initialize(this.recordBuilder);
+        if (this.dataPartition.getFileType() == DataPartition.FileType.INDEX)
+        {
+            this.binaryRecordReader.setIsIndex(true);
+        }
+
+        this.binaryRecordReader.setUseUnscaledDecimals(useUnscaledDecimals);
+        this.binaryRecordReader.setRecordPredicate(recordPredicate, this.readRecordDefinition);
+    }
+
     private long getReadSizeKB()
     {
         long readSize = context.readSizeKB;
@@ -440,7 +505,7 @@ public class HpccRemoteFileReader<T> implements Iterator<T>
                 this.readSpan = createReadSpan(context, dataPartition);
 
                 RowServiceInputStream.StreamContext streamContext = constructStreamContext(context);
-                streamContext.projectedRecordDefinition = this.recordBuilder.getRecordDefinition();
+                streamContext.projectedRecordDefinition = this.readRecordDefinition;
                 streamContext.fileReadSpan = this.readSpan;
 
                 this.inputStream = new RowServiceInputStream(streamContext, this.dataPartition, restartInfo);
@@ -458,16 +523,12 @@ public class HpccRemoteFileReader<T> implements Iterator<T>
 
                 // Capture settings from previous reader
                 boolean useDecimalForUnsigned8 = binaryRecordReader.getUseDecimalForUnsigned8();
+                boolean useUnscaledDecimals = binaryRecordReader.getUseUnscaledDecimals();
                 int stringProcessingFlags = binaryRecordReader.getStringProcessingFlags();
+                RecordPredicate recordPredicate = binaryRecordReader.getRecordPredicate();
 
                 this.binaryRecordReader = new BinaryRecordReader(this.inputStream, resumeInfo.recordReaderStreamPos);
-                this.binaryRecordReader.initialize(this.recordBuilder);
-
-                if (dataPartition.getFileType() == DataPartition.FileType.INDEX)
-                {
-                    this.binaryRecordReader.setIsIndex(true);
-                }
-
+                initializeRecordReader(useUnscaledDecimals, recordPredicate);
                 this.binaryRecordReader.setUseDecimalForUnsigned8(useDecimalForUnsigned8);
                 this.binaryRecordReader.setStringProcessingFlags(stringProcessingFlags);
             }
@@ -702,6 +763,217 @@ public class HpccRemoteFileReader<T> implements Iterator<T>
         return (T) rslt;
     }
 
+    /**
+     * Reads up to maxRecords records into the provided list. Records are decoded while the read buffer has data,
+     * so fewer than maxRecords records may be returned before the end of the file part. The end of stream check
+     * and the stream position used for read resumption are updated once per batch.
+     *
+     * Records decoded before a read failure remain in the list and the read is retried from the last complete record.
+     * Record builders that reuse records, IE: @see org.hpccsystems.dfs.client.HPCCMutableRecordBuilder, add the
+     * same record to the list for every row and should be read with next() instead. Record views are added as copies,
+     * @see org.hpccsystems.dfs.client.HPCCRecordView#copy().
+     *
+     * @param records
+     *            the list the records are added to
+     * @param maxRecords
+     *            the maximum number of records to read
+     * @return the number of records added, 0 if there are no more records
+     */
+    @SuppressWarnings("unchecked")
+    public int nextBatch(List<T> records, int maxRecords)
+    {
+        if (maxRecords <= 0)
+        {
+            throw new IllegalArgumentException("HpccRemoteFileReader.nextBatch(): maxRecords must be greater than 0.");
+        }
+
+        if (isClosed)
+        {
+            log.warn("nextBatch() called on an HpccRemoteFileReader that has been closed.");
+            return 0;
+        }
+
+        int initialSize = records.size();
+        try
+        {
+            int numRecords = this.binaryRecordReader.getNextBatch((List<Object>) records, maxRecords);
+            recordsRead += numRecords;
+
+            // The end of the stream may be caused by a prefetch failure, see hasNext()
+            if (numRecords == 0 && this.inputStream.getPrefetchException() != null)
+            {
+                throw this.inputStream.getPrefetchException();
+            }
+        }
+        catch (HpccFileException e)
+        {
+            int numRecords = records.size() - initialSize;
+            recordsRead += numRecords;
+
+            this.readSpan.recordException(e);
+            this.readSpan.setStatus(StatusCode.ERROR);
+            this.readSpan.end();
+
+            if (!retryRead())
+            {
+                log.error("Read failure for " + this.dataPartition.toString() + " " + e.getMessage(), e);
+                java.util.NoSuchElementException exception = new java.util.NoSuchElementException("Fatal read error: " + e.getMessage());
+                exception.initCause(e);
+                throw exception;
+            }
+
+            // Return the records read before the failure, the retried read resumes after them
+            if (numRecords > 0)
+            {
+                return numRecords;
+            }
+            return nextBatch(records, maxRecords);
+        }
+
+        canReadNext = false;
+        return records.size() - initialSize;
+    }
+
+    /**
+     * @return true if the record builder returns the same record for every row
+     */
+    private boolean reusesRecords()
+    {
+        return this.recordBuilder instanceof HPCCMutableRecordBuilder || this.recordBuilder instanceof HPCCRecordViewBuilder;
+    }
+
+    /**
+     * Performs the action for each remaining record, reading the records in batches.
+     *
+     * @param action
+     *            the action
+     */
+    @Override
+    public void forEachRemaining(Consumer<? super T> action)
+    {
+        // Reused records must be consumed before the next record is read
+        if (reusesRecords())
+        {
+            while (hasNext())
+            {
+                action.accept(next());
+            }
+            return;
+        }
+
+        int batchSize = DEFAULT_RECORD_BATCH_SIZE;
+        List<T> batch = new ArrayList<T>(batchSize);
+        while (nextBatch(batch, batchSize) > 0)
+        {
+            for (T record : batch)
+            {
+                action.accept(record);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Returns an iterator over the remaining records that reads them in batches of up to batchSize records.
+     * The stream position of this reader is after the last record of the current batch, so read resume info
+     * should be taken from this reader only after the iterator's current batch has been consumed.
+     *
+     * Readers that reuse records, IE: with an @see org.hpccsystems.dfs.client.HPCCMutableRecordBuilder or
+     * @see org.hpccsystems.dfs.client.HPCCRecordViewBuilder, return this reader, as each record must be consumed before
+     * the next record is read.
+     *
+     * @param batchSize
+     *            the maximum number of records per batch
+     * @return the iterator
+     */
+    public Iterator<T> batchIterator(int batchSize)
+    {
+        if (batchSize <= 0)
+        {
+            throw new IllegalArgumentException("HpccRemoteFileReader.batchIterator(): batchSize must be greater than 0.");
+        }
+
+        if (reusesRecords())
+        {
+            return this;
+        }
+
+        final int maxRecords = batchSize;
+        return new Iterator<T>()
+        {
+            private final List<T> batch = new ArrayList<T>(maxRecords);
+            private int           batchPos = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (batchPos < batch.size())
+                {
+                    return true;
+                }
+
+                batch.clear();
+                batchPos = 0;
+                return nextBatch(batch, maxRecords) > 0;
+            }
+
+            @Override
+            public T next()
+            {
+                if (!hasNext())
+                {
+                    throw new java.util.NoSuchElementException("No next record!");
+                }
+                return batch.get(batchPos++);
+            }
+        };
+    }
+
+    /**
+     * Decodes the next record into a row of a columnar batch, retrying the read on failure. A row that was
+     * partially decoded when the read failed is removed from the batch before retrying.
+     *
+     * @param batch
+     *            the batch, created from the projected record definition of this reader
+     */
+    void next(ColumnarBatch batch)
+    {
+        if (isClosed && !canReadNext)
+        {
+            throw new java.util.NoSuchElementException("Fatal read error: Attempting to read next() from a closed file reader.");
+        }
+
+        int numRows = batch.getNumRows();
+        try
+        {
+            this.binaryRecordReader.getNext(batch);
+        }
+        catch (HpccFileException e)
+        {
+            batch.truncate(numRows);
+
+            this.readSpan.recordException(e);
+            this.readSpan.setStatus(StatusCode.ERROR);
+            this.readSpan.end();
+
+            if (!retryRead())
+            {
+                log.error("Read failure for " + this.dataPartition.toString() + " " + e.getMessage(), e);
+                java.util.NoSuchElementException exception = new java.util.NoSuchElementException("Fatal read error: " + e.getMessage());
+                exception.initCause(e);
+                throw exception;
+            }
+
+            next(batch);
+            return;
+        }
+
+        recordsRead++;
+
+        // Reset this after each read so we can handle edge cases where close() was called between hasNext() / next()
+        canReadNext = false;
+    }
+
     /**
      * Closes inputstream, reports summary of messages generated during read operation.
      *
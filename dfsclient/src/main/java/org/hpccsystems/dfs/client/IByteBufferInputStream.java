@@ -0,0 +1,42 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for InputStreams that can expose their buffered data directly, allowing the BinaryRecordReader
+ * to decode records from the stream's memory rather than copying the data out of the stream first.
+ */
+public interface IByteBufferInputStream
+{
+    /**
+     * Returns a view of the bytes that can be read without copying, starting at the current stream position.
+     * Blocks until at least one byte is available. The view may contain fewer bytes than are available in the stream,
+     * IE: when the buffered data wraps around the end of a ring buffer.
+     *
+     * The view is only valid until the next call to a method of the stream. Bytes read from the view are consumed
+     * by skipping them in the stream.
+     *
+     * @param maxLength
+     *            the maximum number of bytes in the view
+     * @return the view, positioned at the first byte, or null at the end of the stream
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    public ByteBuffer getReadableByteBuffer(int maxLength) throws IOException;
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+/**
+ * Interface for controlling the load row service streams place on the hosts they read from.
+ *
+ * A stream is admitted before it connects to a row service and released when it is closed. Before the data of each
+ * read response is read the stream acquires the bytes in the response, blocking while the bandwidth budget of the host
+ * is exhausted. Stalling the stream stalls the connection, so the row service can only send at the admitted rate.
+ *
+ * Implementations are shared by the streams in a process and must be thread safe.
+ */
+public interface IReadAdmissionController
+{
+    /**
+     * Blocks until a new stream can read from the row service.
+     *
+     * @param host
+     *            the row service host
+     * @param port
+     *            the row service port
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    void admitStream(String host, int port) throws InterruptedException;
+
+    /**
+     * Called when a stream admitted by admitStream has finished reading from the row service.
+     *
+     * @param host
+     *            the row service host
+     * @param port
+     *            the row service port
+     */
+    void releaseStream(String host, int port);
+
+    /**
+     * Blocks until the bytes can be read from the row service within its bandwidth budget.
+     *
+     * @param host
+     *            the row service host
+     * @param port
+     *            the row service port
+     * @param numBytes
+     *            the number of bytes about to be read
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    void acquireBytes(String host, int port, long numBytes) throws InterruptedException;
+}
@@ -54,6 +54,102 @@ public interface IRecordAccessor
      */
     public Object getFieldValue(int index);
 
+    /**
+     * Returns true if the accessor implements the primitive field value getters without boxing. Writers only call the
+     * primitive getters on accessors that support them.
+     *
+     * @return true if primitive field values are supported
+     */
+    default boolean supportsPrimitiveFieldValues()
+    {
+        return false;
+    }
+
+    /**
+     * Gets the value of an integer field. The default implementation unboxes the value returned by getFieldValue(),
+     * null values are returned as 0.
+     *
+     * @param index
+     *            the index
+     * @return the field value
+     */
+    default long getLongFieldValue(int index)
+    {
+        Object value = getFieldValue(index);
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    /**
+     * Gets the value of a real field. The default implementation unboxes the value returned by getFieldValue(),
+     * null values are returned as 0.
+     *
+     * @param index
+     *            the index
+     * @return the field value
+     */
+    default double getDoubleFieldValue(int index)
+    {
+        Object value = getFieldValue(index);
+        return value == null ? 0.0 : ((Number) value).doubleValue();
+    }
+
+    /**
+     * Gets the value of a boolean field. The default implementation unboxes the value returned by getFieldValue(),
+     * null values are returned as false.
+     *
+     * @param index
+     *            the index
+     * @return the field value
+     */
+    default boolean getBooleanFieldValue(int index)
+    {
+        Object value = getFieldValue(index);
+        return value == null ? false : (Boolean) value;
+    }
+
+    /**
+     * Gets the value of a decimal field with at most 18 digits as a long unscaled to the provided scale. The default
+     * implementation rescales the BigDecimal returned by getFieldValue(), null values are returned as 0.
+     *
+     * @param index
+     *            the index
+     * @param scale
+     *            the scale of the field
+     * @return the unscaled field value
+     * @throws ArithmeticException
+     *             if the value has more fractional digits than the scale or doesn't fit in a long
+     */
+    default long getUnscaledDecimalFieldValue(int index, int scale)
+    {
+        Object value = getFieldValue(index);
+        return value == null ? 0 : ((java.math.BigDecimal) value).setScale(scale).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Gets the value of a SET OF INTEGER field. The default implementation copies the List returned by getFieldValue()
+     * into an array, null values are returned as an empty array.
+     *
+     * @param index
+     *            the index
+     * @return the field values
+     */
+    default long[] getLongArrayFieldValue(int index)
+    {
+        Object value = getFieldValue(index);
+        if (value == null)
+        {
+            return new long[0];
+        }
+
+        java.util.List<?> list = (java.util.List<?>) value;
+        long[] values = new long[list.size()];
+        for (int i = 0; i < values.length; i++)
+        {
+            values[i] = ((Number) list.get(i)).longValue();
+        }
+        return values;
+    }
+
     /**
      * Gets the field definition.
      *
@@ -73,6 +73,114 @@ public interface IRecordBuilder
      */
     public void setFieldValue(int index, Object value) throws IllegalArgumentException, IllegalAccessException;
 
+    /**
+     * Returns true if the builder implements the primitive field value setters without boxing. Readers only call the
+     * primitive setters on builders that support them.
+     *
+     * @return true if primitive field values are supported
+     */
+    default boolean supportsPrimitiveFieldValues()
+    {
+        return false;
+    }
+
+    /**
+     * Sets the value of an integer field. The default implementation boxes the value and calls setFieldValue().
+     *
+     * @param index
+     *            the index
+     * @param value
+     *            the value
+     * @throws IllegalArgumentException
+     *             the illegal argument exception
+     * @throws IllegalAccessException
+     *             the illegal access exception
+     */
+    default void setLongFieldValue(int index, long value) throws IllegalArgumentException, IllegalAccessException
+    {
+        setFieldValue(index, Long.valueOf(value));
+    }
+
+    /**
+     * Sets the value of a real field. The default implementation boxes the value and calls setFieldValue().
+     *
+     * @param index
+     *            the index
+     * @param value
+     *            the value
+     * @throws IllegalArgumentException
+     *             the illegal argument exception
+     * @throws IllegalAccessException
+     *             the illegal access exception
+     */
+    default void setDoubleFieldValue(int index, double value) throws IllegalArgumentException, IllegalAccessException
+    {
+        setFieldValue(index, Double.valueOf(value));
+    }
+
+    /**
+     * Sets the value of a boolean field. The default implementation boxes the value and calls setFieldValue().
+     *
+     * @param index
+     *            the index
+     * @param value
+     *            the value
+     * @throws IllegalArgumentException
+     *             the illegal argument exception
+     * @throws IllegalAccessException
+     *             the illegal access exception
+     */
+    default void setBooleanFieldValue(int index, boolean value) throws IllegalArgumentException, IllegalAccessException
+    {
+        setFieldValue(index, Boolean.valueOf(value));
+    }
+
+    /**
+     * Sets the value of a decimal field with at most 18 digits as an unscaled long, the value of the decimal is
+     * unscaledValue * 10^-scale. Only called when the reader decodes decimals into unscaled longs. The default
+     * implementation creates a BigDecimal and calls setFieldValue().
+     *
+     * @param index
+     *            the index
+     * @param unscaledValue
+     *            the unscaled value
+     * @param scale
+     *            the scale of the field
+     * @throws IllegalArgumentException
+     *             the illegal argument exception
+     * @throws IllegalAccessException
+     *             the illegal access exception
+     */
+    default void setUnscaledDecimalFieldValue(int index, long unscaledValue, int scale) throws IllegalArgumentException, IllegalAccessException
+    {
+        setFieldValue(index, java.math.BigDecimal.valueOf(unscaledValue, scale));
+    }
+
+    /**
+     * Sets the value of a SET OF INTEGER field. The values array is reused by the reader, so implementations must copy
+     * the values they keep. The default implementation boxes the values into a List and calls setFieldValue().
+     *
+     * @param index
+     *            the index
+     * @param values
+     *            the values, only the first length values are part of the set
+     * @param length
+     *            the number of values in the set
+     * @throws IllegalArgumentException
+     *             the illegal argument exception
+     * @throws IllegalAccessException
+     *             the illegal access exception
+     */
+    default void setLongArrayFieldValue(int index, long[] values, int length) throws IllegalArgumentException, IllegalAccessException
+    {
+        java.util.ArrayList<Object> list = new java.util.ArrayList<Object>(length);
+        for (int i = 0; i < length; i++)
+        {
+            list.add(Long.valueOf(values[i]));
+        }
+        setFieldValue(index, list);
+    }
+
     /**
      * Gets the child record builder.
      *
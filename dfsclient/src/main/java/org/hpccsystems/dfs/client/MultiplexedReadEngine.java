@@ -0,0 +1,440 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A read engine that drives many RowServiceInputStreams from a small pool of selector threads.
+ *
+ * By default each RowServiceInputStream owns a prefetch thread that blocks on its socket. When reading
+ * files with many file parts from a single process this results in a large number of mostly idle threads.
+ * Streams registered with this engine instead use non-blocking socket channels, and the selector threads
+ * run the row service request / response state machine for each stream as data becomes available.
+ *
+ * Streams are assigned to the least loaded selector thread when registered. The engine is created on first use
+ * and its selector threads are daemon threads that live for the life of the process.
+ *
+ * Finished streams are closed from a separate close thread, as closing a stream sends a blocking close request to the
+ * row service. Closing on a selector thread would stall every other stream on that thread for a network round trip.
+ */
+public class MultiplexedReadEngine
+{
+    private static final Logger log = LogManager.getLogger(MultiplexedReadEngine.class);
+
+    public static final int DEFAULT_NUM_SELECTOR_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+    // Upper bound on how long a selector thread blocks, socket operation timeouts are checked at this interval
+    private static final long SELECT_TIMEOUT_MS = 1000;
+
+    private static int numSelectorThreads = DEFAULT_NUM_SELECTOR_THREADS;
+    private static MultiplexedReadEngine instance = null;
+
+    private final SelectorThread[] selectorThreads;
+    private final ExecutorService  closeExecutor;
+    private final AtomicInteger numRegisteredStreams = new AtomicInteger(0);
+
+    /**
+     * Sets the number of selector threads used by the engine. Only takes effect if called before the engine is first used.
+     *
+     * @param numThreads
+     *            the number of selector threads
+     */
+    public static synchronized void setNumSelectorThreads(int numThreads)
+    {
+        if (instance != null)
+        {
+            log.warn("MultiplexedReadEngine: Engine already started with " + instance.selectorThreads.length
+                     + " selector threads, ignoring request for " + numThreads + " threads");
+            return;
+        }
+
+        numSelectorThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Returns the shared engine, starting its selector threads on first use.
+     *
+     * @return the engine
+     * @throws IOException
+     *             if a selector could not be opened
+     */
+    public static synchronized MultiplexedReadEngine getInstance() throws IOException
+    {
+        if (instance == null)
+        {
+            instance = new MultiplexedReadEngine(numSelectorThreads);
+        }
+
+        return instance;
+    }
+
+    private MultiplexedReadEngine(int numThreads) throws IOException
+    {
+        closeExecutor = Executors.newCachedThreadPool((Runnable task) ->
+        {
+            Thread thread = DFSThreadFactory.newThread(task, "MultiplexedReadEngine-Close");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        selectorThreads = new SelectorThread[numThreads];
+        for (int i = 0; i < numThreads; i++)
+        {
+            selectorThreads[i] = new SelectorThread(i);
+        }
+
+        for (SelectorThread selectorThread : selectorThreads)
+        {
+            selectorThread.start();
+        }
+    }
+
+    /**
+     * Returns the number of selector threads.
+     *
+     * @return the number of selector threads
+     */
+    public int getNumSelectorThreads()
+    {
+        return selectorThreads.length;
+    }
+
+    /**
+     * Returns the number of streams currently registered with the engine.
+     *
+     * @return the number of registered streams
+     */
+    public int getNumRegisteredStreams()
+    {
+        return numRegisteredStreams.get();
+    }
+
+    /**
+     * Registers a stream with the engine. The channel is switched to non-blocking mode, and the stream's
+     * processMultiplexedIO() is called from a selector thread whenever its channel is ready.
+     *
+     * @param stream
+     *            the stream
+     * @param channel
+     *            the stream's connected channel
+     * @return the registration, used to resume and cancel the stream
+     * @throws IOException
+     *             if the channel could not be switched to non-blocking mode
+     */
+    Registration register(RowServiceInputStream stream, SocketChannel channel) throws IOException
+    {
+        SelectorThread leastLoaded = selectorThreads[0];
+        for (SelectorThread selectorThread : selectorThreads)
+        {
+            if (selectorThread.numStreams.get() < leastLoaded.numStreams.get())
+            {
+                leastLoaded = selectorThread;
+            }
+        }
+
+        channel.configureBlocking(false);
+
+        final SelectorThread selectorThread = leastLoaded;
+        Registration registration = new Registration(selectorThread, stream, channel);
+        selectorThread.numStreams.incrementAndGet();
+        numRegisteredStreams.incrementAndGet();
+        selectorThread.submit(() -> selectorThread.addRegistration(registration));
+
+        return registration;
+    }
+
+    /**
+     * A stream's registration with a selector thread.
+     */
+    static final class Registration
+    {
+        private final SelectorThread        selectorThread;
+        private final RowServiceInputStream stream;
+        private final SocketChannel         channel;
+
+        // Only accessed from the selector thread
+        private SelectionKey                key = null;
+        private boolean                     cancelled = false;
+
+        private Registration(SelectorThread selectorThread, RowServiceInputStream stream, SocketChannel channel)
+        {
+            this.selectorThread = selectorThread;
+            this.stream = stream;
+            this.channel = channel;
+        }
+
+        /**
+         * Asks the selector thread to process the stream again, used after the stream was paused waiting for buffer space.
+         */
+        void resume()
+        {
+            selectorThread.submit(() -> selectorThread.process(this));
+        }
+
+        /**
+         * @return true if called from the selector thread processing the stream
+         */
+        boolean isSelectorThread()
+        {
+            return Thread.currentThread() == selectorThread;
+        }
+
+        /**
+         * Removes the stream from the engine and switches its channel back to blocking mode.
+         * Blocks until the selector thread has processed the cancellation.
+         */
+        void cancel()
+        {
+            if (isSelectorThread())
+            {
+                selectorThread.cancel(this);
+                return;
+            }
+
+            CountDownLatch cancelDone = new CountDownLatch(1);
+            selectorThread.submit(() ->
+            {
+                selectorThread.cancel(this);
+                cancelDone.countDown();
+            });
+
+            boolean interrupted = false;
+            while (true)
+            {
+                try
+                {
+                    cancelDone.await();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private final class SelectorThread extends Thread
+    {
+        private final Selector                        selector;
+        private final ConcurrentLinkedQueue<Runnable> pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+        private final AtomicInteger                   numStreams = new AtomicInteger(0);
+        private long                                  lastTimeoutCheckNS = System.nanoTime();
+
+        SelectorThread(int index) throws IOException
+        {
+            super("MultiplexedReadEngine-Selector-" + index);
+            setDaemon(true);
+            selector = Selector.open();
+        }
+
+        void submit(Runnable task)
+        {
+            pendingTasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                try
+                {
+                    selector.select(SELECT_TIMEOUT_MS);
+                }
+                catch (IOException e)
+                {
+                    log.error("MultiplexedReadEngine: Error while selecting: " + e.getMessage());
+                }
+
+                Runnable task = null;
+                while ((task = pendingTasks.poll()) != null)
+                {
+                    // Tasks that process a stream fail only that stream, this keeps the thread serving the others
+                    try
+                    {
+                        task.run();
+                    }
+                    catch (RuntimeException e)
+                    {
+                        log.error("MultiplexedReadEngine: Unexpected error while running task: " + e.getMessage(), e);
+                    }
+                }
+
+                // Cancelling a registration flushes the selector, which modifies the selected key set, so process a copy
+                List<SelectionKey> readyKeys = new ArrayList<SelectionKey>(selector.selectedKeys());
+                selector.selectedKeys().clear();
+                for (SelectionKey key : readyKeys)
+                {
+                    if (key.isValid())
+                    {
+                        process((Registration) key.attachment());
+                    }
+                }
+
+                long now = System.nanoTime();
+                if (now - lastTimeoutCheckNS >= SELECT_TIMEOUT_MS * 1000000L)
+                {
+                    lastTimeoutCheckNS = now;
+                    checkTimeouts(now);
+                }
+            }
+        }
+
+        private void addRegistration(Registration registration)
+        {
+            try
+            {
+                registration.key = registration.channel.register(selector, 0, registration);
+            }
+            catch (IOException e)
+            {
+                registration.stream.failMultiplexedIO("Unable to register channel with selector: " + e.getMessage(), e);
+                finish(registration);
+                return;
+            }
+
+            process(registration);
+        }
+
+        private void process(Registration registration)
+        {
+            if (registration.cancelled)
+            {
+                return;
+            }
+
+            try
+            {
+                int interestOps = registration.stream.processMultiplexedIO(registration.channel);
+                if (interestOps < 0)
+                {
+                    finish(registration);
+                    return;
+                }
+
+                registration.key.interestOps(interestOps);
+            }
+            catch (RuntimeException e)
+            {
+                fail(registration, e);
+            }
+        }
+
+        private void checkTimeouts(long now)
+        {
+            List<SelectionKey> keys = new ArrayList<SelectionKey>(selector.keys());
+            for (SelectionKey key : keys)
+            {
+                Registration registration = (Registration) key.attachment();
+                try
+                {
+                    if (key.isValid() && registration.stream.hasMultiplexedIOTimedOut(now))
+                    {
+                        registration.stream.failMultiplexedIO("Timed out waiting for data from row service", null);
+                        finish(registration);
+                    }
+                }
+                catch (RuntimeException e)
+                {
+                    fail(registration, e);
+                }
+            }
+        }
+
+        /**
+         * Fails a stream that threw an unexpected exception, without affecting the other streams on this thread.
+         */
+        private void fail(Registration registration, RuntimeException e)
+        {
+            log.error("MultiplexedReadEngine: Unexpected error while processing stream: " + e.getMessage(), e);
+            try
+            {
+                registration.stream.failMultiplexedIO("Unexpected error: " + e.getMessage(), e);
+            }
+            finally
+            {
+                finish(registration);
+            }
+        }
+
+        /**
+         * Cancels a registration and closes its stream on the close thread, used once the stream has reached the end of the file or failed.
+         */
+        private void finish(Registration registration)
+        {
+            cancel(registration);
+
+            closeExecutor.execute(() ->
+            {
+                try
+                {
+                    registration.stream.closeFinishedMultiplexedStream();
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    log.error("MultiplexedReadEngine: Error while closing stream: " + e.getMessage());
+                }
+            });
+        }
+
+        private void cancel(Registration registration)
+        {
+            if (registration.cancelled)
+            {
+                return;
+            }
+            registration.cancelled = true;
+
+            numStreams.decrementAndGet();
+            numRegisteredStreams.decrementAndGet();
+
+            if (registration.key == null)
+            {
+                return;
+            }
+
+            // The channel can only be switched back to blocking mode once the selector has deregistered it
+            registration.key.cancel();
+            try
+            {
+                selector.selectNow();
+                registration.channel.configureBlocking(true);
+            }
+            catch (Exception e)
+            {
+                log.error("MultiplexedReadEngine: Error while deregistering channel: " + e.getMessage());
+            }
+        }
+    }
+}
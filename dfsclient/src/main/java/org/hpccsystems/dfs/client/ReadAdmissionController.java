@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The default read admission controller, limits the number of active streams per host and the bandwidth used per host
+ * and across all hosts.
+ *
+ * Streams waiting to be admitted to a host are admitted in the order they arrived. Bandwidth is limited by token
+ * buckets that allow bursts of up to a second of data. A request that exceeds the available tokens puts the bucket into
+ * debt and waits for the debt to be repaid, so requests are served in the order they were made and a large request
+ * cannot be starved by smaller ones.
+ *
+ * Streams wait for admission on a ReentrantLock condition rather than a monitor, as a virtual thread waiting on a monitor
+ * pins its carrier thread, and streams waiting for admission could occupy every carrier while the admitted streams wait
+ * to be scheduled.
+ *
+ * All limits are disabled by default.
+ */
+public class ReadAdmissionController implements IReadAdmissionController
+{
+    public static final int    UNLIMITED = 0;
+
+    // The bandwidth that can be used in a burst after a bucket has been idle
+    private static final double BURST_SECONDS = 1.0;
+
+    private static final ReadAdmissionController instance = new ReadAdmissionController();
+
+    /**
+     * A token bucket, tokens are bytes.
+     */
+    static final class TokenBucket
+    {
+        private double  tokens = 0.0;
+        private long    lastRefillNS = 0;
+        private boolean isInitialized = false;
+
+        /**
+         * Takes the bytes from the bucket.
+         *
+         * @return the time until the bucket is out of debt, IE: how long the caller should wait before reading
+         */
+        synchronized long reserve(long numBytes, long bytesPerSecond, long nowNS)
+        {
+            if (bytesPerSecond <= UNLIMITED)
+            {
+                isInitialized = false;
+                return 0;
+            }
+
+            double capacity = bytesPerSecond * BURST_SECONDS;
+            if (!isInitialized)
+            {
+                tokens = capacity;
+                isInitialized = true;
+            }
+            else
+            {
+                tokens = Math.min(capacity, tokens + (nowNS - lastRefillNS) * (bytesPerSecond / 1e9));
+            }
+            lastRefillNS = nowNS;
+
+            tokens -= numBytes;
+            if (tokens >= 0.0)
+            {
+                return 0;
+            }
+
+            return (long) Math.ceil(-tokens / bytesPerSecond * 1e9);
+        }
+    }
+
+    private static final class HostState
+    {
+        private final ReentrantLock      lock = new ReentrantLock();
+        private final Condition          admissionChanged = lock.newCondition();
+        private int                      numActiveStreams = 0;
+        private final ArrayDeque<Object> waitingStreams = new ArrayDeque<Object>();
+        private final TokenBucket        bandwidth = new TokenBucket();
+    }
+
+    private final ConcurrentHashMap<String, HostState> hosts = new ConcurrentHashMap<String, HostState>();
+    private final TokenBucket                          globalBandwidth = new TokenBucket();
+
+    private volatile int                               maxActiveStreamsPerHost = UNLIMITED;
+    private volatile long                              maxBytesPerSecondPerHost = UNLIMITED;
+    private volatile long                              maxBytesPerSecond = UNLIMITED;
+
+    private long                                       numStreamWaits = 0;
+    private long                                       streamWaitTimeNS = 0;
+    private long                                       numBandwidthWaits = 0;
+    private long                                       bandwidthWaitTimeNS = 0;
+
+    /**
+     * Returns the controller shared by all streams in the process.
+     *
+     * @return the controller
+     */
+    public static ReadAdmissionController getInstance()
+    {
+        return instance;
+    }
+
+    ReadAdmissionController()
+    {
+    }
+
+    /**
+     * Sets the maximum number of streams that can read from a host at the same time.
+     *
+     * @param maxStreams
+     *            the maximum number of streams, UNLIMITED to disable the limit
+     */
+    public void setMaxActiveStreamsPerHost(int maxStreams)
+    {
+        this.maxActiveStreamsPerHost = Math.max(UNLIMITED, maxStreams);
+        for (HostState host : hosts.values())
+        {
+            host.lock.lock();
+            try
+            {
+                host.admissionChanged.signalAll();
+            }
+            finally
+            {
+                host.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of streams that can read from a host at the same time
+     */
+    public int getMaxActiveStreamsPerHost()
+    {
+        return maxActiveStreamsPerHost;
+    }
+
+    /**
+     * Sets the maximum rate at which data can be read from a single host.
+     *
+     * @param bytesPerSecond
+     *            the rate in bytes per second, UNLIMITED to disable the limit
+     */
+    public void setMaxBytesPerSecondPerHost(long bytesPerSecond)
+    {
+        this.maxBytesPerSecondPerHost = Math.max(UNLIMITED, bytesPerSecond);
+    }
+
+    /**
+     * @return the maximum rate at which data can be read from a single host in bytes per second
+     */
+    public long getMaxBytesPerSecondPerHost()
+    {
+        return maxBytesPerSecondPerHost;
+    }
+
+    /**
+     * Sets the maximum rate at which data can be read from all hosts.
+     *
+     * @param bytesPerSecond
+     *            the rate in bytes per second, UNLIMITED to disable the limit
+     */
+    public void setMaxBytesPerSecond(long bytesPerSecond)
+    {
+        this.maxBytesPerSecond = Math.max(UNLIMITED, bytesPerSecond);
+    }
+
+    /**
+     * @return the maximum rate at which data can be read from all hosts in bytes per second
+     */
+    public long getMaxBytesPerSecond()
+    {
+        return maxBytesPerSecond;
+    }
+
+    @Override
+    public void admitStream(String host, int port) throws InterruptedException
+    {
+        HostState state = getHostState(host, port);
+        long startNS = System.nanoTime();
+        boolean hasWaited = false;
+        state.lock.lock();
+        try
+        {
+            Object ticket = new Object();
+            state.waitingStreams.addLast(ticket);
+            try
+            {
+                while (state.waitingStreams.peekFirst() != ticket || !hasStreamCapacity(state))
+                {
+                    hasWaited = true;
+                    state.admissionChanged.await();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                state.waitingStreams.remove(ticket);
+                state.admissionChanged.signalAll();
+                throw e;
+            }
+
+            state.waitingStreams.pollFirst();
+            state.numActiveStreams++;
+
+            // The next waiting stream may also fit
+            state.admissionChanged.signalAll();
+        }
+        finally
+        {
+            state.lock.unlock();
+        }
+
+        if (hasWaited)
+        {
+            recordStreamWait(System.nanoTime() - startNS);
+        }
+    }
+
+    @Override
+    public void releaseStream(String host, int port)
+    {
+        HostState state = getHostState(host, port);
+        state.lock.lock();
+        try
+        {
+            if (state.numActiveStreams > 0)
+            {
+                state.numActiveStreams--;
+            }
+            state.admissionChanged.signalAll();
+        }
+        finally
+        {
+            state.lock.unlock();
+        }
+    }
+
+    @Override
+    public void acquireBytes(String host, int port, long numBytes) throws InterruptedException
+    {
+        if (numBytes <= 0)
+        {
+            return;
+        }
+
+        long nowNS = System.nanoTime();
+        long hostWaitNS = getHostState(host, port).bandwidth.reserve(numBytes, maxBytesPerSecondPerHost, nowNS);
+        long globalWaitNS = globalBandwidth.reserve(numBytes, maxBytesPerSecond, nowNS);
+
+        long waitNS = Math.max(hostWaitNS, globalWaitNS);
+        if (waitNS > 0)
+        {
+            TimeUnit.NANOSECONDS.sleep(waitNS);
+            recordBandwidthWait(System.nanoTime() - nowNS);
+        }
+    }
+
+    /**
+     * @return the number of active streams reading from the host
+     */
+    public int getNumActiveStreams(String host, int port)
+    {
+        HostState state = getHostState(host, port);
+        state.lock.lock();
+        try
+        {
+            return state.numActiveStreams;
+        }
+        finally
+        {
+            state.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of streams that had to wait to be admitted
+     */
+    public synchronized long getNumStreamWaits()
+    {
+        return numStreamWaits;
+    }
+
+    /**
+     * @return the total time streams have waited to be admitted in nanoseconds
+     */
+    public synchronized long getStreamWaitTimeNS()
+    {
+        return streamWaitTimeNS;
+    }
+
+    /**
+     * @return the number of reads that had to wait for bandwidth
+     */
+    public synchronized long getNumBandwidthWaits()
+    {
+        return numBandwidthWaits;
+    }
+
+    /**
+     * @return the total time reads have waited for bandwidth in nanoseconds
+     */
+    public synchronized long getBandwidthWaitTimeNS()
+    {
+        return bandwidthWaitTimeNS;
+    }
+
+    private HostState getHostState(String host, int port)
+    {
+        return hosts.computeIfAbsent(host + ":" + port, key -> new HostState());
+    }
+
+    private boolean hasStreamCapacity(HostState state)
+    {
+        int maxStreams = maxActiveStreamsPerHost;
+        return maxStreams <= UNLIMITED || state.numActiveStreams < maxStreams;
+    }
+
+    private synchronized void recordStreamWait(long waitTimeNS)
+    {
+        numStreamWaits++;
+        streamWaitTimeNS += waitTimeNS;
+    }
+
+    private synchronized void recordBandwidthWait(long waitTimeNS)
+    {
+        numBandwidthWaits++;
+        bandwidthWaitTimeNS += waitTimeNS;
+    }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+/**
+ * Limits the memory used by the read buffers of the row service streams in a process.
+ *
+ * Each stream reserves the capacity of its read buffer when it is created, and while the budget is exhausted new streams
+ * are given smaller buffers. Streams that adapt their buffer size must reserve the additional capacity before growing,
+ * when the budget is exhausted the buffer keeps its size and the prefetch pauses while the buffer is full.
+ *
+ * Every stream is given at least MIN_BUFFER_SIZE so it can make progress, so the budget can be exceeded by up to
+ * MIN_BUFFER_SIZE per stream. The budget is unlimited by default.
+ */
+public class ReadBufferMemoryManager
+{
+    public static final long UNLIMITED = 0;
+
+    // Given to each stream regardless of the budget
+    public static final int  MIN_BUFFER_SIZE = 64 * 1024;
+
+    private static final ReadBufferMemoryManager instance = new ReadBufferMemoryManager();
+
+    private long maxBytes = UNLIMITED;
+    private long reservedBytes = 0;
+    private long peakReservedBytes = 0;
+    private long numReducedAllocations = 0;
+    private long numDeniedGrowths = 0;
+    private long stallTimeNS = 0;
+
+    /**
+     * Returns the memory manager shared by all streams in the process.
+     *
+     * @return the memory manager
+     */
+    public static ReadBufferMemoryManager getInstance()
+    {
+        return instance;
+    }
+
+    ReadBufferMemoryManager()
+    {
+    }
+
+    /**
+     * Sets the maximum memory used by read buffers. Buffers already allocated are not affected.
+     *
+     * @param maxBytes
+     *            the budget in bytes, UNLIMITED to disable the limit
+     */
+    public synchronized void setMaxBytes(long maxBytes)
+    {
+        this.maxBytes = Math.max(UNLIMITED, maxBytes);
+    }
+
+    /**
+     * @return the maximum memory used by read buffers in bytes
+     */
+    public synchronized long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * Reserves the capacity of a new read buffer.
+     *
+     * @param requestedBytes
+     *            the requested buffer size
+     * @return the buffer size to allocate, smaller than requested if the budget is exhausted
+     */
+    synchronized int allocate(int requestedBytes)
+    {
+        int grantedBytes = requestedBytes;
+        if (maxBytes != UNLIMITED && reservedBytes + requestedBytes > maxBytes)
+        {
+            long remainingBytes = Math.max(0, maxBytes - reservedBytes);
+            grantedBytes = (int) Math.max(Math.min(MIN_BUFFER_SIZE, requestedBytes), remainingBytes);
+            numReducedAllocations++;
+        }
+
+        reserve(grantedBytes);
+        return grantedBytes;
+    }
+
+    /**
+     * Reserves additional capacity for an existing read buffer.
+     *
+     * @param numBytes
+     *            the additional capacity
+     * @return true if the capacity was reserved, false if it would exceed the budget
+     */
+    synchronized boolean tryGrow(int numBytes)
+    {
+        if (maxBytes != UNLIMITED && reservedBytes + numBytes > maxBytes)
+        {
+            numDeniedGrowths++;
+            return false;
+        }
+
+        reserve(numBytes);
+        return true;
+    }
+
+    /**
+     * Releases capacity reserved by allocate or tryGrow.
+     *
+     * @param numBytes
+     *            the capacity to release
+     */
+    synchronized void release(int numBytes)
+    {
+        reservedBytes = Math.max(0, reservedBytes - numBytes);
+    }
+
+    /**
+     * Records the time a stream's prefetch was paused because its read buffer was full.
+     *
+     * @param timeNS
+     *            the stall time in nanoseconds
+     */
+    synchronized void recordStallTime(long timeNS)
+    {
+        stallTimeNS += timeNS;
+    }
+
+    /**
+     * @return the memory currently reserved by read buffers in bytes
+     */
+    public synchronized long getReservedBytes()
+    {
+        return reservedBytes;
+    }
+
+    /**
+     * @return the most memory reserved by read buffers at one time in bytes
+     */
+    public synchronized long getPeakReservedBytes()
+    {
+        return peakReservedBytes;
+    }
+
+    /**
+     * @return the number of read buffers allocated smaller than requested
+     */
+    public synchronized long getNumReducedAllocations()
+    {
+        return numReducedAllocations;
+    }
+
+    /**
+     * @return the number of read buffer growths denied by the budget
+     */
+    public synchronized long getNumDeniedGrowths()
+    {
+        return numDeniedGrowths;
+    }
+
+    /**
+     * @return the total time closed streams had their prefetch paused on a full read buffer in nanoseconds
+     */
+    public synchronized long getStallTimeNS()
+    {
+        return stallTimeNS;
+    }
+
+    private void reserve(long numBytes)
+    {
+        reservedBytes += numBytes;
+        peakReservedBytes = Math.max(peakReservedBytes, reservedBytes);
+    }
+}
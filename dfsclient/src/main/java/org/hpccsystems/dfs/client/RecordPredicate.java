@@ -0,0 +1,546 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.errors.HpccFileException;
+
+/**
+ * A predicate on the top level fields of a record that is evaluated by the client while records are read,
+ * for filters that cannot be applied by the row service, @see org.hpccsystems.commons.ecl.FileFilter.
+ *
+ * Predicates are evaluated on the bytes of each record before the record is constructed, the fields of records
+ * that do not match are never decoded. @see org.hpccsystems.dfs.client.BinaryRecordReader#setRecordPredicate(RecordPredicate)
+ *
+ * Comparisons follow SQL semantics: a comparison with a null field value is unknown, and only records for
+ * which the predicate is true are returned. Field values are null only when empty strings are converted to null,
+ * @see org.hpccsystems.dfs.client.BinaryRecordReader#CONVERT_EMPTY_STRINGS_TO_NULL.
+ *
+ * Values are compared to the decoded field values: integer fields are compared to integer values, real fields to real
+ * values, decimal fields to decimal values, boolean fields to boolean values and string fields to string values.
+ * Values are converted to the field type when the predicate is compiled the same way as FileFilter values,
+ * @see org.hpccsystems.dfs.client.CompiledFieldFilter#convertValue(String, org.hpccsystems.commons.ecl.FieldType).
+ * String values are unquoted and comparisons ignore trailing whitespace, STARTS WITH, ENDS WITH and CONTAINS match
+ * the value as given.
+ * Predicates with values that cannot be converted are rejected.
+ */
+public class RecordPredicate implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    public enum Operator
+    {
+        EQUAL("="),
+        NOT_EQUAL("!="),
+        LESS_THAN("<"),
+        LESS_THAN_OR_EQUAL("<="),
+        GREATER_THAN(">"),
+        GREATER_THAN_OR_EQUAL(">="),
+        IN("IN"),
+        STARTS_WITH("STARTS WITH"),
+        ENDS_WITH("ENDS WITH"),
+        CONTAINS("CONTAINS"),
+        IS_NULL("IS NULL"),
+        IS_NOT_NULL("IS NOT NULL"),
+        AND("AND"),
+        OR("OR"),
+        NOT("NOT");
+
+        private final String symbol;
+
+        Operator(String symbol)
+        {
+            this.symbol = symbol;
+        }
+
+        /**
+         * Returns the symbol of the operator used by toString().
+         *
+         * @return the symbol
+         */
+        public String getSymbol()
+        {
+            return symbol;
+        }
+
+        /**
+         * Is this a comparison between a field value and a single value.
+         *
+         * @return true for =, !=, &lt;, &lt;=, &gt; and &gt;=
+         */
+        public boolean isComparison()
+        {
+            return ordinal() <= GREATER_THAN_OR_EQUAL.ordinal();
+        }
+    }
+
+    private final Operator          operator;
+    private final String            fieldName;
+    private final Object[]          values;
+    private final RecordPredicate[] children;
+
+    private RecordPredicate(Operator operator, String fieldName, Object[] values, RecordPredicate[] children)
+    {
+        this.operator = operator;
+        this.fieldName = fieldName;
+        this.values = values;
+        this.children = children;
+    }
+
+    private static RecordPredicate fieldPredicate(Operator operator, String fieldName, Object... values)
+    {
+        if (fieldName == null || fieldName.isEmpty())
+        {
+            throw new IllegalArgumentException("RecordPredicate: " + operator + " requires a field name.");
+        }
+
+        for (Object value : values)
+        {
+            if (value == null)
+            {
+                throw new IllegalArgumentException("RecordPredicate: " + operator + " on field: " + fieldName + " does not support null values, use isNull().");
+            }
+        }
+
+        return new RecordPredicate(operator, fieldName, values, new RecordPredicate[0]);
+    }
+
+    private static RecordPredicate logicalPredicate(Operator operator, RecordPredicate... children)
+    {
+        if (children == null || children.length == 0)
+        {
+            throw new IllegalArgumentException("RecordPredicate: " + operator + " requires at least one predicate.");
+        }
+
+        for (RecordPredicate child : children)
+        {
+            if (child == null)
+            {
+                throw new IllegalArgumentException("RecordPredicate: " + operator + " does not support null predicates.");
+            }
+        }
+
+        return new RecordPredicate(operator, null, new Object[0], children.clone());
+    }
+
+    /**
+     * Matches records in which the field is equal to the value.
+     *
+     * @param fieldName the name of a top level field
+     * @param value the value
+     * @return the predicate
+     */
+    public static RecordPredicate equalTo(String fieldName, Object value)
+    {
+        return fieldPredicate(Operator.EQUAL, fieldName, value);
+    }
+
+    /**
+     * Matches records in which the field is not equal to the value.
+     *
+     * @param fieldName the name of a top level field
+     * @param value the value
+     * @return the predicate
+     */
+    public static RecordPredicate notEqualTo(String fieldName, Object value)
+    {
+        return fieldPredicate(Operator.NOT_EQUAL, fieldName, value);
+    }
+
+    /**
+     * Matches records in which the field is less than the value.
+     *
+     * @param fieldName the name of a top level field
+     * @param value the value
+     * @return the predicate
+     */
+    public static RecordPredicate lessThan(String fieldName, Object value)
+    {
+        return fieldPredicate(Operator.LESS_THAN, fieldName, value);
+    }
+
+    /**
+     * Matches records in which the field is less than or equal to the value.
+     *
+     * @param fieldName the name of a top level field
+     * @param value the value
+     * @return the predicate
+     */
+    public static RecordPredicate lessThanOrEqual(String fieldName, Object value)
+    {
+        return fieldPredicate(Operator.LESS_THAN_OR_EQUAL, fieldName, value);
+    }
+
+    /**
+     * Matches records in which the field is greater than the value.
+     *
+     * @param fieldName the name of a top level field
+     * @param value the value
+     * @return the predicate
+     */
+    public static RecordPredicate greaterThan(String fieldName, Object value)
+    {
+        return fieldPredicate(Operator.GREATER_THAN, fieldName, value);
+    }
+
+    /**
+     * Matches records in which the field is greater than or equal to the value.
+     *
+     * @param fieldName the name of a top level field
+     * @param value the value
+     * @return the predicate
+     */
+    public static RecordPredicate greaterThanOrEqual(String fieldName, Object value)
+    {
+        return fieldPredicate(Operator.GREATER_THAN_OR_EQUAL, fieldName, value);
+    }
+
+    /**
+     * Matches records in which the field is equal to one of the values.
+     *
+     * @param fieldName the name of a top level field
+     * @param values the values
+     * @return the predicate
+     */
+    public static RecordPredicate in(String fieldName, Object... values)
+    {
+        if (values == null || values.length == 0)
+        {
+            throw new IllegalArgumentException("RecordPredicate: IN on field: " + fieldName + " requires at least one value.");
+        }
+        return fieldPredicate(Operator.IN, fieldName, values.clone());
+    }
+
+    /**
+     * Matches records in which the string field starts with the prefix.
+     *
+     * @param fieldName the name of a top level string field
+     * @param prefix the prefix
+     * @return the predicate
+     */
+    public static RecordPredicate startsWith(String fieldName, String prefix)
+    {
+        return fieldPredicate(Operator.STARTS_WITH, fieldName, prefix);
+    }
+
+    /**
+     * Matches records in which the string field ends with the suffix.
+     *
+     * @param fieldName the name of a top level string field
+     * @param suffix the suffix
+     * @return the predicate
+     */
+    public static RecordPredicate endsWith(String fieldName, String suffix)
+    {
+        return fieldPredicate(Operator.ENDS_WITH, fieldName, suffix);
+    }
+
+    /**
+     * Matches records in which the string field contains the value.
+     *
+     * @param fieldName the name of a top level string field
+     * @param value the value
+     * @return the predicate
+     */
+    public static RecordPredicate contains(String fieldName, String value)
+    {
+        return fieldPredicate(Operator.CONTAINS, fieldName, value);
+    }
+
+    /**
+     * Matches records in which the field is null.
+     *
+     * @param fieldName the name of a top level field
+     * @return the predicate
+     */
+    public static RecordPredicate isNull(String fieldName)
+    {
+        return fieldPredicate(Operator.IS_NULL, fieldName);
+    }
+
+    /**
+     * Matches records in which the field is not null.
+     *
+     * @param fieldName the name of a top level field
+     * @return the predicate
+     */
+    public static RecordPredicate isNotNull(String fieldName)
+    {
+        return fieldPredicate(Operator.IS_NOT_NULL, fieldName);
+    }
+
+    /**
+     * Matches records that match all of the predicates.
+     *
+     * @param predicates the predicates
+     * @return the predicate
+     */
+    public static RecordPredicate and(RecordPredicate... predicates)
+    {
+        return logicalPredicate(Operator.AND, predicates);
+    }
+
+    /**
+     * Matches records that match any of the predicates.
+     *
+     * @param predicates the predicates
+     * @return the predicate
+     */
+    public static RecordPredicate or(RecordPredicate... predicates)
+    {
+        return logicalPredicate(Operator.OR, predicates);
+    }
+
+    /**
+     * Matches records that do not match the predicate.
+     *
+     * @param predicate the predicate
+     * @return the predicate
+     */
+    public static RecordPredicate not(RecordPredicate predicate)
+    {
+        return logicalPredicate(Operator.NOT, predicate);
+    }
+
+    /**
+     * Returns the operator.
+     *
+     * @return the operator
+     */
+    public Operator getOperator()
+    {
+        return operator;
+    }
+
+    /**
+     * Returns the name of the field tested, null for AND, OR and NOT.
+     *
+     * @return the field name
+     */
+    public String getFieldName()
+    {
+        return fieldName;
+    }
+
+    /**
+     * Returns the values the field is compared to.
+     *
+     * @return the values, empty for null checks, AND, OR and NOT
+     */
+    public Object[] getValues()
+    {
+        return values.clone();
+    }
+
+    /**
+     * Returns the predicates combined by AND, OR and NOT.
+     *
+     * @return the child predicates, empty for field predicates
+     */
+    public RecordPredicate[] getChildren()
+    {
+        return children.clone();
+    }
+
+    /**
+     * Returns the names of the fields tested by this predicate and its children.
+     *
+     * @return the field names, without duplicates
+     */
+    public List<String> getFieldNames()
+    {
+        List<String> fieldNames = new ArrayList<String>();
+        addFieldNames(fieldNames);
+        return fieldNames;
+    }
+
+    private void addFieldNames(List<String> fieldNames)
+    {
+        if (fieldName != null && findFieldIndex(fieldNames, fieldName) < 0)
+        {
+            fieldNames.add(fieldName);
+        }
+
+        for (RecordPredicate child : children)
+        {
+            child.addFieldNames(fieldNames);
+        }
+    }
+
+    /**
+     * Returns the record definition that must be read to evaluate this predicate: the projected record definition,
+     * followed by the fields tested by the predicate that are not part of the projection.
+     *
+     * @param projectedRD
+     *            the projected record definition
+     * @param originalRD
+     *            the record definition of the file
+     * @return the projected record definition if it contains every field tested, otherwise an extended copy of it
+     * @throws Exception
+     *             if a field tested is not a top level field of the original record definition
+     */
+    public FieldDef getReadRecordDefinition(FieldDef projectedRD, FieldDef originalRD) throws Exception
+    {
+        List<FieldDef> missingFields = new ArrayList<FieldDef>();
+        for (String name : getFieldNames())
+        {
+            if (findFieldIndex(projectedRD, name) >= 0)
+            {
+                continue;
+            }
+
+            int originalIndex = findFieldIndex(originalRD, name);
+            if (originalIndex < 0)
+            {
+                throw new Exception("RecordPredicate: Unable to find field: " + name + " in record definition.");
+            }
+            missingFields.add(originalRD.getDef(originalIndex));
+        }
+
+        if (missingFields.isEmpty())
+        {
+            return projectedRD;
+        }
+
+        FieldDef readRD = new FieldDef(projectedRD);
+        FieldDef[] readFields = new FieldDef[projectedRD.getNumDefs() + missingFields.size()];
+        for (int i = 0; i < projectedRD.getNumDefs(); i++)
+        {
+            readFields[i] = readRD.getDef(i);
+        }
+        for (int i = 0; i < missingFields.size(); i++)
+        {
+            readFields[projectedRD.getNumDefs() + i] = new FieldDef(missingFields.get(i));
+        }
+        readRD.setDefs(readFields);
+        return readRD;
+    }
+
+    /**
+     * Checks that the predicate can be evaluated on records of the record definition: the fields tested exist and
+     * support the operators used, and the values can be converted to the field types.
+     *
+     * @param recordDef
+     *            the record definition
+     * @throws Exception
+     *             if the predicate cannot be evaluated
+     */
+    public void validate(FieldDef recordDef) throws Exception
+    {
+        try
+        {
+            new RecordPredicateEvaluator(this, recordDef, null, BinaryRecordReader.NO_STRING_PROCESSING, false);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new HpccFileException("RecordPredicate.validate(): Unable to compile record predicate: " + this + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Finds a top level field by name, field names are not case sensitive.
+     *
+     * @param recordDef the record definition
+     * @param name the field name
+     * @return the index of the field, -1 if it doesn't exist
+     */
+    static int findFieldIndex(FieldDef recordDef, String name)
+    {
+        for (int i = 0; i < recordDef.getNumDefs(); i++)
+        {
+            if (recordDef.getDef(i).getFieldName().equalsIgnoreCase(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int findFieldIndex(List<String> fieldNames, String name)
+    {
+        for (int i = 0; i < fieldNames.size(); i++)
+        {
+            if (fieldNames.get(i).equalsIgnoreCase(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        switch (operator)
+        {
+            case AND:
+            case OR:
+            {
+                sb.append('(');
+                for (int i = 0; i < children.length; i++)
+                {
+                    if (i > 0)
+                    {
+                        sb.append(' ').append(operator.getSymbol()).append(' ');
+                    }
+                    sb.append(children[i]);
+                }
+                sb.append(')');
+                break;
+            }
+            case NOT:
+                sb.append("NOT ").append(children[0]);
+                break;
+            case IS_NULL:
+            case IS_NOT_NULL:
+                sb.append(fieldName).append(' ').append(operator.getSymbol());
+                break;
+            case IN:
+            {
+                sb.append(fieldName).append(" IN [");
+                for (int i = 0; i < values.length; i++)
+                {
+                    if (i > 0)
+                    {
+                        sb.append(", ");
+                    }
+                    appendValue(sb, values[i]);
+                }
+                sb.append(']');
+                break;
+            }
+            default:
+                sb.append(fieldName).append(' ').append(operator.getSymbol()).append(' ');
+                appendValue(sb, values[0]);
+                break;
+        }
+        return sb.toString();
+    }
+
+    private static void appendValue(StringBuilder sb, Object value)
+    {
+        if (value instanceof String)
+        {
+            sb.append('\'').append(value).append('\'');
+        }
+        else
+        {
+            sb.append(value);
+        }
+    }
+}
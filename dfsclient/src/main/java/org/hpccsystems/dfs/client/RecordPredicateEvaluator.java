@@ -0,0 +1,656 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.ecl.FieldType;
+import org.hpccsystems.commons.ecl.HpccSrcType;
+import org.hpccsystems.commons.errors.HpccFileException;
+
+/**
+ * Evaluates a record predicate on the bytes of the records scanned by a BinaryRecordReader, @see RecordPredicate.
+ *
+ * The predicate is compiled against the record definition into a tree of evaluators. Integers, reals, short decimals
+ * and most strings are compared without decoding the field, other fields are decoded by the reader's record view field
+ * reader. Values are converted to the field type by CompiledFieldFilter.convertValue, so they compare the same way as
+ * the values of a FileFilter applied by the row service: string values are unquoted and comparisons ignore trailing
+ * whitespace.
+ */
+class RecordPredicateEvaluator
+{
+    // Results of evaluating a record predicate, comparisons with null field values are unknown
+    static final int FALSE   = 0;
+    static final int TRUE    = 1;
+    static final int UNKNOWN = 2;
+
+    /**
+     * Evaluates a predicate on the fields of a record.
+     */
+    private interface Evaluator
+    {
+        int evaluate(byte[] data, ByteBuffer buffer, int[] offsets) throws HpccFileException;
+    }
+
+    private final FieldDef           recordDef;
+    private final BinaryRecordReader fieldReader;
+    private final boolean            hasStringProcessing;
+    private final boolean            convertEmptyStringsToNull;
+    private final boolean            useDecimalForUnsigned8;
+    private final Evaluator          rootEvaluator;
+
+    /**
+     * Compiles the predicate.
+     *
+     * @param predicate
+     *            the predicate
+     * @param recordDef
+     *            the record definition of the records scanned
+     * @param fieldReader
+     *            decodes the fields that can't be compared from their bytes, null to only validate the predicate
+     * @param stringProcessingFlags
+     *            the string processing flags of the reader, @see BinaryRecordReader#setStringProcessingFlags(int)
+     * @param useDecimalForUnsigned8
+     *            true if unsigned 8 values are decoded as BigDecimals
+     * @throws IllegalArgumentException
+     *             if the predicate cannot be evaluated on the record definition
+     */
+    RecordPredicateEvaluator(RecordPredicate predicate, FieldDef recordDef, BinaryRecordReader fieldReader, int stringProcessingFlags,
+            boolean useDecimalForUnsigned8)
+    {
+        this.recordDef = recordDef;
+        this.fieldReader = fieldReader;
+        this.hasStringProcessing = stringProcessingFlags != BinaryRecordReader.NO_STRING_PROCESSING;
+        this.convertEmptyStringsToNull = (stringProcessingFlags & BinaryRecordReader.CONVERT_EMPTY_STRINGS_TO_NULL) != 0;
+        this.useDecimalForUnsigned8 = useDecimalForUnsigned8;
+        this.rootEvaluator = compile(predicate);
+    }
+
+    /**
+     * Evaluates the predicate on a record.
+     *
+     * @param data
+     *            the array containing the record
+     * @param buffer
+     *            a buffer wrapping the array, with the same indexes as the array
+     * @param offsets
+     *            the offsets of the fields in the array, followed by the end of the record
+     * @return TRUE, FALSE or UNKNOWN
+     * @throws HpccFileException
+     *             the hpcc file exception
+     */
+    int evaluate(byte[] data, ByteBuffer buffer, int[] offsets) throws HpccFileException
+    {
+        return rootEvaluator.evaluate(data, buffer, offsets);
+    }
+
+    private Evaluator compile(RecordPredicate predicate)
+    {
+        switch (predicate.getOperator())
+        {
+            case AND:
+            case OR:
+            {
+                RecordPredicate[] children = predicate.getChildren();
+                final Evaluator[] childEvaluators = new Evaluator[children.length];
+                for (int i = 0; i < children.length; i++)
+                {
+                    childEvaluators[i] = compile(children[i]);
+                }
+
+                // AND is false as soon as a child is false, OR is true as soon as a child is true
+                final int decidingResult = (predicate.getOperator() == RecordPredicate.Operator.AND) ? FALSE : TRUE;
+                final int otherResult = (decidingResult == FALSE) ? TRUE : FALSE;
+                return (data, buffer, offsets) ->
+                {
+                    int result = otherResult;
+                    for (Evaluator childEvaluator : childEvaluators)
+                    {
+                        int childResult = childEvaluator.evaluate(data, buffer, offsets);
+                        if (childResult == decidingResult)
+                        {
+                            return decidingResult;
+                        }
+                        else if (childResult == UNKNOWN)
+                        {
+                            result = UNKNOWN;
+                        }
+                    }
+                    return result;
+                };
+            }
+            case NOT:
+            {
+                final Evaluator childEvaluator = compile(predicate.getChildren()[0]);
+                return (data, buffer, offsets) ->
+                {
+                    int childResult = childEvaluator.evaluate(data, buffer, offsets);
+                    if (childResult == UNKNOWN)
+                    {
+                        return UNKNOWN;
+                    }
+                    return (childResult == TRUE) ? FALSE : TRUE;
+                };
+            }
+            default:
+                return compileField(predicate);
+        }
+    }
+
+    private Evaluator compileField(RecordPredicate predicate)
+    {
+        final int fieldIndex = RecordPredicate.findFieldIndex(recordDef, predicate.getFieldName());
+        if (fieldIndex < 0)
+        {
+            throw new IllegalArgumentException("Unable to find field: " + predicate.getFieldName() + " in record definition.");
+        }
+
+        final FieldDef fd = recordDef.getDef(fieldIndex);
+        final RecordPredicate.Operator operator = predicate.getOperator();
+        final boolean isString = fd.getFieldType() == FieldType.STRING || fd.getFieldType() == FieldType.CHAR
+                                 || fd.getFieldType() == FieldType.VAR_STRING;
+        if (fd.isBlob())
+        {
+            throw new IllegalArgumentException("Blob field: " + fd.getFieldName() + " is not supported.");
+        }
+
+        if (operator == RecordPredicate.Operator.IS_NULL || operator == RecordPredicate.Operator.IS_NOT_NULL)
+        {
+            // Only strings converted to null can be null
+            if (isString && convertEmptyStringsToNull)
+            {
+                return compileDecodedField(fieldIndex, operator, new Object[0], false);
+            }
+
+            final int result = (operator == RecordPredicate.Operator.IS_NULL) ? FALSE : TRUE;
+            return (data, buffer, offsets) -> result;
+        }
+
+        if (isStringOperator(operator) && !isString)
+        {
+            throw new IllegalArgumentException(operator + " is not supported on field: " + fd.getFieldName() + " of type: " + fd.getFieldType());
+        }
+
+        switch (fd.getFieldType())
+        {
+            case INTEGER:
+            case FILEPOS:
+            case BOOLEAN:
+                return compileInteger(fd, fieldIndex, predicate);
+            case REAL:
+                return compileReal(fd, fieldIndex, predicate);
+            case DECIMAL:
+                return compileDecimal(fd, fieldIndex, predicate);
+            case STRING:
+            case CHAR:
+            case VAR_STRING:
+                return compileString(fd, fieldIndex, predicate);
+            default:
+                throw new IllegalArgumentException("Field: " + fd.getFieldName() + " of type: " + fd.getFieldType() + " is not supported.");
+        }
+    }
+
+    private static boolean isStringOperator(RecordPredicate.Operator operator)
+    {
+        return operator == RecordPredicate.Operator.STARTS_WITH || operator == RecordPredicate.Operator.ENDS_WITH
+               || operator == RecordPredicate.Operator.CONTAINS;
+    }
+
+    /**
+     * Converts the predicate values to the field type, @see CompiledFieldFilter#convertValue(String, FieldType).
+     */
+    private static Object[] convertValues(FieldDef fd, RecordPredicate predicate, FieldType type)
+    {
+        Object[] values = predicate.getValues();
+        Object[] converted = new Object[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            // Floats are converted from the value of the float, not from its shortest decimal representation
+            String value = (values[i] instanceof Float) ? Double.toString(((Float) values[i]).doubleValue()) : String.valueOf(values[i]);
+            try
+            {
+                if (type == FieldType.BOOLEAN && !value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+                {
+                    throw new IllegalArgumentException("Invalid boolean value: " + value);
+                }
+                converted[i] = CompiledFieldFilter.convertValue(value, type);
+            }
+            catch (Exception e)
+            {
+                throw new IllegalArgumentException("Unable to convert value: " + value + " for field: " + fd.getFieldName() + ": " + e.getMessage(), e);
+            }
+        }
+        return converted;
+    }
+
+    /**
+     * Compiles a predicate on an integer or boolean field that compares the field bytes without decoding them.
+     * Booleans are compared as 0 and 1.
+     */
+    private Evaluator compileInteger(final FieldDef fd, final int fieldIndex, RecordPredicate predicate)
+    {
+        final int dataLen = (int) fd.getDataLen();
+        if (dataLen < 1 || dataLen > 8)
+        {
+            throw new IllegalArgumentException("Field: " + fd.getFieldName() + " has an unsupported length: " + fd.getDataLen());
+        }
+
+        final boolean isBoolean = fd.getFieldType() == FieldType.BOOLEAN;
+        final boolean isSigned = !isBoolean && !fd.isUnsigned();
+        final boolean isFieldLittleEndian = fd.getSourceType() == HpccSrcType.LITTLE_ENDIAN;
+
+        // Unsigned 8 values are only compared as unsigned values when they are decoded as BigDecimals
+        final boolean compareUnsigned = fd.isUnsigned() && dataLen == 8 && useDecimalForUnsigned8;
+
+        Object[] values = convertValues(fd, predicate, isBoolean ? FieldType.BOOLEAN : FieldType.INTEGER);
+        final long[] literals = new long[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            literals[i] = isBoolean ? (((Boolean) values[i]) ? 1 : 0) : (Long) values[i];
+        }
+
+        final RecordPredicate.Operator operator = predicate.getOperator();
+        return (data, buffer, offsets) ->
+        {
+            long fieldValue = BinaryRecordReader.getUnsigned(buffer, offsets[fieldIndex], dataLen, isFieldLittleEndian);
+            if (isSigned)
+            {
+                fieldValue = BinaryRecordReader.extendSign(fieldValue, dataLen);
+            }
+            else if (isBoolean)
+            {
+                fieldValue = (fieldValue != 0) ? 1 : 0;
+            }
+
+            if (operator == RecordPredicate.Operator.IN)
+            {
+                for (long literal : literals)
+                {
+                    if (fieldValue == literal)
+                    {
+                        return TRUE;
+                    }
+                }
+                return FALSE;
+            }
+
+            int comparison = 0;
+            if (compareUnsigned)
+            {
+                comparison = (literals[0] < 0) ? 1 : Long.compareUnsigned(fieldValue, literals[0]);
+            }
+            else
+            {
+                comparison = Long.compare(fieldValue, literals[0]);
+            }
+            return getComparisonResult(operator, comparison);
+        };
+    }
+
+    /**
+     * Compiles a predicate on a real field that compares the field bytes without decoding them.
+     */
+    private Evaluator compileReal(final FieldDef fd, final int fieldIndex, RecordPredicate predicate)
+    {
+        final int dataLen = (int) fd.getDataLen();
+        if (dataLen != 4 && dataLen != 8)
+        {
+            throw new IllegalArgumentException("Field: " + fd.getFieldName() + " has an unsupported length: " + fd.getDataLen());
+        }
+
+        final boolean isFieldLittleEndian = fd.getSourceType() == HpccSrcType.LITTLE_ENDIAN;
+
+        Object[] values = convertValues(fd, predicate, FieldType.REAL);
+        final double[] literals = new double[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            literals[i] = (Double) values[i];
+        }
+
+        final RecordPredicate.Operator operator = predicate.getOperator();
+        return (data, buffer, offsets) ->
+        {
+            double fieldValue = BinaryRecordReader.getReal(buffer, offsets[fieldIndex], dataLen, isFieldLittleEndian);
+            if (operator == RecordPredicate.Operator.IN)
+            {
+                for (double literal : literals)
+                {
+                    if (compareReals(fieldValue, literal) == 0)
+                    {
+                        return TRUE;
+                    }
+                }
+                return FALSE;
+            }
+
+            return getComparisonResult(operator, compareReals(fieldValue, literals[0]));
+        };
+    }
+
+    /**
+     * Compiles a predicate on a decimal field. Decimals with at most 18 digits are compared from their unscaled value,
+     * wider decimals are decoded.
+     */
+    private Evaluator compileDecimal(final FieldDef fd, final int fieldIndex, RecordPredicate predicate)
+    {
+        Object[] values = convertValues(fd, predicate, FieldType.DECIMAL);
+        final BigDecimal[] literals = new BigDecimal[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            literals[i] = (BigDecimal) values[i];
+        }
+
+        final RecordPredicate.Operator operator = predicate.getOperator();
+        if (!ColumnVector.hasUnscaledDecimals(fd))
+        {
+            return compileDecodedField(fieldIndex, operator, literals, false);
+        }
+
+        final int dataLen = (int) fd.getDataLen();
+        final int scale = fd.getScale();
+        final boolean isSigned = fd.isUnsigned() == false;
+        return (data, buffer, offsets) ->
+        {
+            BigDecimal fieldValue = BigDecimal.valueOf(BinaryRecordReader.decodeUnscaledDecimal(data, offsets[fieldIndex], dataLen, isSigned), scale);
+            if (operator == RecordPredicate.Operator.IN)
+            {
+                for (BigDecimal literal : literals)
+                {
+                    if (fieldValue.compareTo(literal) == 0)
+                    {
+                        return TRUE;
+                    }
+                }
+                return FALSE;
+            }
+
+            return getComparisonResult(operator, fieldValue.compareTo(literals[0]));
+        };
+    }
+
+    /**
+     * Compiles a predicate on a string field. Strings are compared without decoding them when no string processing
+     * flags are set, the string is single byte or variable length UTF8, and the values can be encoded in its
+     * character set. UTF8 strings are only ordered after decoding them.
+     */
+    private Evaluator compileString(final FieldDef fd, final int fieldIndex, RecordPredicate predicate)
+    {
+        final RecordPredicate.Operator operator = predicate.getOperator();
+
+        // STARTS WITH, ENDS WITH and CONTAINS match the value as given
+        final String[] literals = new String[predicate.getValues().length];
+        Object[] values = isStringOperator(operator) ? predicate.getValues() : convertValues(fd, predicate, FieldType.STRING);
+        for (int i = 0; i < values.length; i++)
+        {
+            literals[i] = String.valueOf(values[i]);
+        }
+
+        boolean isOrdering = operator.isComparison() && operator != RecordPredicate.Operator.EQUAL
+                             && operator != RecordPredicate.Operator.NOT_EQUAL;
+        HpccSrcType srcType = fd.getSourceType();
+
+        // The offsets of the string content from the start and end of the field
+        int contentStart = -1;
+        int contentEnd = 0;
+        if (srcType == HpccSrcType.SINGLE_BYTE_CHAR)
+        {
+            if (fd.getFieldType() == FieldType.VAR_STRING)
+            {
+                // The null terminator is part of the field
+                contentStart = fd.isFixed() ? -1 : 0;
+                contentEnd = 1;
+            }
+            else
+            {
+                // Variable length strings are preceded by their length
+                contentStart = (fd.getFieldType() == FieldType.STRING && !fd.isFixed()) ? 4 : 0;
+            }
+        }
+        else if (srcType == HpccSrcType.UTF8 && fd.getFieldType() == FieldType.STRING && !fd.isFixed() && !isOrdering)
+        {
+            contentStart = 4;
+        }
+
+        Charset charset = (srcType == HpccSrcType.UTF8) ? StandardCharsets.UTF_8 : StandardCharsets.ISO_8859_1;
+        boolean canCompareBytes = !hasStringProcessing && contentStart >= 0;
+        for (int i = 0; i < literals.length && canCompareBytes; i++)
+        {
+            canCompareBytes = charset.newEncoder().canEncode(literals[i]);
+        }
+
+        if (!canCompareBytes)
+        {
+            return compileDecodedField(fieldIndex, operator, literals, true);
+        }
+
+        final byte[][] literalBytes = new byte[literals.length][];
+        for (int i = 0; i < literals.length; i++)
+        {
+            literalBytes[i] = literals[i].getBytes(charset);
+        }
+
+        final int fieldContentStart = contentStart;
+        final int fieldContentEnd = contentEnd;
+        return (data, buffer, offsets) ->
+        {
+            int start = offsets[fieldIndex] + fieldContentStart;
+            int end = offsets[fieldIndex + 1] - fieldContentEnd;
+            switch (operator)
+            {
+                case IN:
+                {
+                    end = trimTrailingWhitespace(data, start, end);
+                    for (byte[] literal : literalBytes)
+                    {
+                        if (compareBytes(data, start, end, literal) == 0)
+                        {
+                            return TRUE;
+                        }
+                    }
+                    return FALSE;
+                }
+                case STARTS_WITH:
+                {
+                    byte[] literal = literalBytes[0];
+                    return getResult(end - start >= literal.length && matchesBytes(data, start, literal));
+                }
+                case ENDS_WITH:
+                {
+                    byte[] literal = literalBytes[0];
+                    return getResult(end - start >= literal.length && matchesBytes(data, end - literal.length, literal));
+                }
+                case CONTAINS:
+                {
+                    byte[] literal = literalBytes[0];
+                    for (int pos = start; pos <= end - literal.length; pos++)
+                    {
+                        if (matchesBytes(data, pos, literal))
+                        {
+                            return TRUE;
+                        }
+                    }
+                    return FALSE;
+                }
+                default:
+                    end = trimTrailingWhitespace(data, start, end);
+                    return getComparisonResult(operator, compareBytes(data, start, end, literalBytes[0]));
+            }
+        };
+    }
+
+    /**
+     * Compiles a predicate that decodes the field value and compares it to values of the same class.
+     */
+    private Evaluator compileDecodedField(final int fieldIndex, final RecordPredicate.Operator operator, final Object[] literals,
+            final boolean isString)
+    {
+        final BinaryRecordReader reader = this.fieldReader;
+        return (data, buffer, offsets) ->
+        {
+            Object fieldValue = reader.decodeRecordViewField(fieldIndex, data, offsets[fieldIndex], offsets[fieldIndex + 1]);
+            switch (operator)
+            {
+                case IS_NULL:
+                    return getResult(fieldValue == null);
+                case IS_NOT_NULL:
+                    return getResult(fieldValue != null);
+                default:
+                    break;
+            }
+
+            if (fieldValue == null)
+            {
+                return UNKNOWN;
+            }
+
+            switch (operator)
+            {
+                case STARTS_WITH:
+                    return getResult(fieldValue.toString().startsWith((String) literals[0]));
+                case ENDS_WITH:
+                    return getResult(fieldValue.toString().endsWith((String) literals[0]));
+                case CONTAINS:
+                    return getResult(fieldValue.toString().contains((String) literals[0]));
+                default:
+                    break;
+            }
+
+            if (isString)
+            {
+                fieldValue = trimTrailingWhitespace(fieldValue.toString());
+            }
+
+            if (operator == RecordPredicate.Operator.IN)
+            {
+                for (Object literal : literals)
+                {
+                    if (compareValues(fieldValue, literal) == 0)
+                    {
+                        return TRUE;
+                    }
+                }
+                return FALSE;
+            }
+            return getComparisonResult(operator, compareValues(fieldValue, literals[0]));
+        };
+    }
+
+    private static int getResult(boolean matches)
+    {
+        return matches ? TRUE : FALSE;
+    }
+
+    private static int getComparisonResult(RecordPredicate.Operator operator, int comparison)
+    {
+        switch (operator)
+        {
+            case EQUAL:
+                return getResult(comparison == 0);
+            case NOT_EQUAL:
+                return getResult(comparison != 0);
+            case LESS_THAN:
+                return getResult(comparison < 0);
+            case LESS_THAN_OR_EQUAL:
+                return getResult(comparison <= 0);
+            case GREATER_THAN:
+                return getResult(comparison > 0);
+            case GREATER_THAN_OR_EQUAL:
+                return getResult(comparison >= 0);
+            default:
+                throw new IllegalArgumentException("Unexpected comparison operator: " + operator);
+        }
+    }
+
+    /**
+     * Compares reals with 0.0 equal to -0.0 and NaN equal to NaN and greater than any other value.
+     */
+    private static int compareReals(double lhs, double rhs)
+    {
+        if (lhs < rhs)
+        {
+            return -1;
+        }
+        else if (lhs > rhs)
+        {
+            return 1;
+        }
+        return (lhs == rhs) ? 0 : Double.compare(lhs, rhs);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compareValues(Object lhs, Object rhs)
+    {
+        return ((Comparable<Object>) lhs).compareTo(rhs);
+    }
+
+    /**
+     * Compares the unsigned bytes in [start, end) of data to the value, shorter prefixes are smaller.
+     */
+    private static int compareBytes(byte[] data, int start, int end, byte[] value)
+    {
+        int len = Math.min(end - start, value.length);
+        for (int i = 0; i < len; i++)
+        {
+            int diff = (data[start + i] & 0xff) - (value[i] & 0xff);
+            if (diff != 0)
+            {
+                return diff;
+            }
+        }
+        return (end - start) - value.length;
+    }
+
+    private static boolean matchesBytes(byte[] data, int pos, byte[] value)
+    {
+        for (int i = 0; i < value.length; i++)
+        {
+            if (data[pos + i] != value[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The whitespace removed from the end of string values by CompiledFieldFilter.convertValue, IE: \s in a regex.
+     * These are single byte characters in UTF8, so they can be trimmed from the encoded string.
+     */
+    private static boolean isWhitespace(int c)
+    {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    private static int trimTrailingWhitespace(byte[] data, int start, int end)
+    {
+        while (end > start && isWhitespace(data[end - 1]))
+        {
+            end--;
+        }
+        return end;
+    }
+
+    private static String trimTrailingWhitespace(String str)
+    {
+        int end = str.length();
+        while (end > 0 && isWhitespace(str.charAt(end - 1)))
+        {
+            end--;
+        }
+        return str.substring(0, end);
+    }
+}
@@ -0,0 +1,341 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.ecl.FieldType;
+import org.hpccsystems.commons.ecl.HpccSrcType;
+import org.hpccsystems.commons.errors.UnparsableContentException;
+
+/**
+ * Copies the records read by a BinaryRecordReader into a buffer without decoding them, and sets the offsets of their
+ * top level fields. Used for record views and to evaluate record predicates, @see HPCCRecordView.
+ *
+ * The field offsets of fixed length records are the same for every record, so they are only copied. Fields are read
+ * through the reader's input stream and scratch buffer, so a scanner must only be used by the reader that created it.
+ */
+class RecordViewScanner
+{
+    /**
+     * Copies a field from the input stream into the buffer without decoding it.
+     */
+    private interface FieldScanner
+    {
+        void scan() throws UnparsableContentException, IOException;
+    }
+
+    private final BinaryRecordReader reader;
+    private final FixedRecordLayout  layout;
+    private final FieldScanner[]     scanners;
+    private final int[]              offsets;
+    private byte[]                   buffer = new byte[BinaryRecordReader.BUFFER_GROW_SIZE];
+    private ByteBuffer               byteBuffer = null;
+    private int                      recordLen = 0;
+
+    /**
+     * Compiles the scanner for a record definition.
+     *
+     * @param reader
+     *            the reader the records are read from
+     * @param recordDef
+     *            the record definition of the records
+     */
+    RecordViewScanner(BinaryRecordReader reader, FieldDef recordDef)
+    {
+        int numFields = recordDef.getNumDefs();
+        this.reader = reader;
+        this.offsets = new int[numFields + 1];
+        this.layout = FixedRecordLayout.create(recordDef);
+        if (this.layout != null)
+        {
+            for (int fieldIndex = 0; fieldIndex < numFields; fieldIndex++)
+            {
+                this.offsets[fieldIndex] = this.layout.getFieldOffset(fieldIndex);
+            }
+            this.offsets[numFields] = this.layout.getRecordSize();
+            this.scanners = null;
+        }
+        else
+        {
+            this.scanners = new FieldScanner[numFields];
+            for (int fieldIndex = 0; fieldIndex < numFields; fieldIndex++)
+            {
+                FieldDef fd = recordDef.getDef(fieldIndex);
+                this.scanners[fieldIndex] = wrapScannerErrors(fd, compileFieldScanner(fd));
+            }
+        }
+    }
+
+    /**
+     * Copies the next record into the buffer, and sets the offsets of its fields.
+     *
+     * @throws UnparsableContentException
+     *             the unparsable content exception
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    void scan() throws UnparsableContentException, IOException
+    {
+        this.recordLen = 0;
+        if (this.layout != null)
+        {
+            append(this.layout.getRecordSize());
+        }
+        else
+        {
+            for (int fieldIndex = 0; fieldIndex < this.scanners.length; fieldIndex++)
+            {
+                this.offsets[fieldIndex] = this.recordLen;
+                this.scanners[fieldIndex].scan();
+            }
+            this.offsets[this.scanners.length] = this.recordLen;
+        }
+    }
+
+    /**
+     * Returns the buffer holding the last record scanned. The buffer is replaced when it grows.
+     *
+     * @return the buffer
+     */
+    byte[] getBuffer()
+    {
+        return this.buffer;
+    }
+
+    /**
+     * Returns a byte buffer wrapping getBuffer(), with the same indexes as the array.
+     *
+     * @return the byte buffer
+     */
+    ByteBuffer getByteBuffer()
+    {
+        if (this.byteBuffer == null || this.byteBuffer.array() != this.buffer)
+        {
+            this.byteBuffer = ByteBuffer.wrap(this.buffer);
+        }
+        return this.byteBuffer;
+    }
+
+    /**
+     * Returns the offsets of the fields of the last record scanned, followed by the end of the record.
+     *
+     * @return the offsets
+     */
+    int[] getOffsets()
+    {
+        return this.offsets;
+    }
+
+    private FieldScanner compileFieldScanner(final FieldDef fd)
+    {
+        // Only the blob file location is stored in the record
+        if (fd.isBlob())
+        {
+            return () -> append(8);
+        }
+
+        final int fixedFieldSize = FixedRecordLayout.getFixedFieldSize(fd);
+        if (fixedFieldSize >= 0)
+        {
+            return () -> append(fixedFieldSize);
+        }
+
+        if (fd.isFixed() && fd.getDataLen() > Integer.MAX_VALUE)
+        {
+            return failingScanner("BinaryRecordReader.parseFlatField(): Data length: " + fd.getDataLen() + " exceeds max supported length: " + Integer.MAX_VALUE);
+        }
+
+        final int dataLen = (int) fd.getDataLen();
+        final HpccSrcType srcType = fd.getSourceType();
+        switch (fd.getFieldType())
+        {
+            case INTEGER:
+            case FILEPOS:
+            case REAL:
+            case BOOLEAN:
+            case DECIMAL:
+                return () -> append(dataLen);
+            case BINARY:
+                return () -> append(readLength());
+            case CHAR:
+                return () -> scanString(srcType, 1);
+            case STRING:
+            {
+                if (fd.isFixed())
+                {
+                    return () -> scanString(srcType, dataLen);
+                }
+
+                return () ->
+                {
+                    int codePoints = readLength();
+                    if (codePoints > BinaryRecordReader.MAX_STRING_LENGTH)
+                    {
+                        throw new UnparsableContentException("String length exceeds maximum supported length: " + BinaryRecordReader.MAX_STRING_LENGTH);
+                    }
+                    scanString(srcType, codePoints);
+                };
+            }
+            case VAR_STRING:
+            {
+                if (fd.isFixed())
+                {
+                    final int nullTerminatorLen = srcType.isUTF16() ? 2 : 1;
+                    return () ->
+                    {
+                        scanString(srcType, dataLen);
+                        append(nullTerminatorLen);
+                    };
+                }
+                return () -> scanNullTerminatedString(srcType);
+            }
+            case RECORD:
+            {
+                final FieldScanner[] childScanners = new FieldScanner[fd.getNumDefs()];
+                for (int i = 0; i < childScanners.length; i++)
+                {
+                    childScanners[i] = compileFieldScanner(fd.getDef(i));
+                }
+
+                return () ->
+                {
+                    for (FieldScanner childScanner : childScanners)
+                    {
+                        childScanner.scan();
+                    }
+                };
+            }
+            case SET:
+            case DATASET:
+            {
+                // Data layout for SETS & DATASETS are similar. Exception is SETS have a preceding unused byte.
+                final boolean isSet = fd.getFieldType() == FieldType.SET;
+                return () ->
+                {
+                    if (isSet)
+                    {
+                        append(1);
+                    }
+                    append(readLength());
+                };
+            }
+            default:
+                return failingScanner("Unhandled type: " + fd.getFieldType());
+        }
+    }
+
+    private void append(int len) throws IOException
+    {
+        if (len < 0)
+        {
+            throw new IOException("Invalid field length: " + len);
+        }
+
+        int requiredCapacity = this.recordLen + len;
+        if (requiredCapacity > this.buffer.length)
+        {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(requiredCapacity, this.buffer.length * 2));
+        }
+
+        reader.readFully(this.buffer, this.recordLen, len);
+        this.recordLen += len;
+    }
+
+    // Embedded lengths are 4 byte integers in the default byte order
+    private int readLength() throws IOException
+    {
+        int pos = this.recordLen;
+        append(4);
+
+        int length = 0;
+        for (int i = 0; i < 4; i++)
+        {
+            int idx = reader.defaultLE ? 3 - i : i;
+            length = (length << 8) | (this.buffer[pos + idx] & 0xff);
+        }
+        return length;
+    }
+
+    /**
+     * Copies a string into the buffer, consuming the same bytes as BinaryRecordReader.getString().
+     */
+    private void scanString(HpccSrcType styp, int codePoints) throws IOException
+    {
+        if (codePoints <= 0)
+        {
+            return;
+        }
+
+        // The byte length of UTF8 strings is only known after scanning the code points
+        if (styp == HpccSrcType.UTF8)
+        {
+            reader.readString(styp, codePoints, false);
+            appendScratchBuffer(reader.stringRange[1] - reader.stringRange[0], 0);
+            return;
+        }
+
+        append(reader.getLenFromCodePoints(styp, codePoints));
+    }
+
+    /**
+     * Copies a null terminated string, including the terminator, into the buffer.
+     */
+    private void scanNullTerminatedString(HpccSrcType stype) throws IOException
+    {
+        reader.readNullTerminatedString(stype, false);
+        appendScratchBuffer(reader.stringRange[1] - reader.stringRange[0], stype.isUTF16() ? 2 : 1);
+    }
+
+    private void appendScratchBuffer(int len, int numZeroBytes)
+    {
+        int requiredCapacity = this.recordLen + len + numZeroBytes;
+        if (requiredCapacity > this.buffer.length)
+        {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(requiredCapacity, this.buffer.length * 2));
+        }
+
+        System.arraycopy(reader.scratchBuffer, reader.stringRange[0], this.buffer, this.recordLen, len);
+        this.recordLen += len;
+
+        Arrays.fill(this.buffer, this.recordLen, this.recordLen + numZeroBytes, (byte) 0);
+        this.recordLen += numZeroBytes;
+    }
+
+    private static FieldScanner wrapScannerErrors(FieldDef fd, final FieldScanner scanner)
+    {
+        final String errorMessage = "Error while parsing field: " + fd.getFieldName() + " of type: " + fd.getFieldType() + ": ";
+        return () ->
+        {
+            try
+            {
+                scanner.scan();
+            }
+            catch (Exception e)
+            {
+                throw new IOException(errorMessage, e);
+            }
+        };
+    }
+
+    private static FieldScanner failingScanner(final String msg)
+    {
+        return () ->
+        {
+            throw new UnparsableContentException(msg);
+        };
+    }
+}
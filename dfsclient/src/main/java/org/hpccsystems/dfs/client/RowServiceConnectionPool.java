@@ -0,0 +1,671 @@
+/*******************************************************************************
+ * HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A pool of idle row service connections shared by the row service streams in the process.
+ *
+ * Opening a connection requires a TCP, and often a TLS, handshake followed by a version request. When reading many
+ * small file parts from the same dafilesrv this setup dominates the read time. Streams using the pool release their
+ * connection once the file has been closed on the server, and a later stream to the same host, port and SSL setting
+ * reuses it. The row service version of each endpoint is cached, so the version request is only sent once.
+ *
+ * Connections that have been idle for longer than the validation threshold are checked for having been closed by the
+ * server before reuse, as the check is a blocking read. Idle connections are closed by a background thread after the
+ * idle timeout. Connections are closed after releasing the pool lock, as closing a TLS connection sends a close_notify.
+ */
+public class RowServiceConnectionPool
+{
+    private static final Logger log = LogManager.getLogger(RowServiceConnectionPool.class);
+
+    public static final int  DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST = 8;
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30000;
+    public static final long DEFAULT_VALIDATION_IDLE_THRESHOLD_MS = 1000;
+
+    // An idle connection has no data to read, so a short read either times out or detects a connection closed by the server
+    private static final int VALIDATION_READ_TIMEOUT_MS = 1;
+
+    private static final RowServiceConnectionPool instance = new RowServiceConnectionPool();
+
+    /**
+     * The host, port and SSL setting of a row service.
+     */
+    static final class Endpoint
+    {
+        private final String  host;
+        private final int     port;
+        private final boolean useSSL;
+
+        Endpoint(String host, int port, boolean useSSL)
+        {
+            this.host = host;
+            this.port = port;
+            this.useSSL = useSSL;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (!(obj instanceof Endpoint))
+            {
+                return false;
+            }
+
+            Endpoint other = (Endpoint) obj;
+            return port == other.port && useSSL == other.useSSL && host.equals(other.host);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (host.hashCode() * 31 + port) * 2 + (useSSL ? 1 : 0);
+        }
+
+        @Override
+        public String toString()
+        {
+            return host + ":" + port + (useSSL ? " (SSL)" : "");
+        }
+    }
+
+    private static final class IdleConnection
+    {
+        private final Socket socket;
+        private final long   idleSinceMS;
+
+        IdleConnection(Socket socket)
+        {
+            this.socket = socket;
+            this.idleSinceMS = System.currentTimeMillis();
+        }
+    }
+
+    private final Map<Endpoint, ArrayDeque<IdleConnection>> idleConnections = new HashMap<Endpoint, ArrayDeque<IdleConnection>>();
+    private final ConcurrentHashMap<Endpoint, String>       rowServiceVersions = new ConcurrentHashMap<Endpoint, String>();
+
+    private final ReentrantLock      lock = new ReentrantLock();
+
+    private int                      maxIdleConnectionsPerHost = DEFAULT_MAX_IDLE_CONNECTIONS_PER_HOST;
+    private long                     idleTimeoutMS = DEFAULT_IDLE_TIMEOUT_MS;
+    private volatile long            validationIdleThresholdMS = DEFAULT_VALIDATION_IDLE_THRESHOLD_MS;
+    private ScheduledExecutorService evictionExecutor = null;
+
+    private long                     numHits = 0;
+    private long                     numMisses = 0;
+    private long                     numEvictions = 0;
+    private long                     numValidationFailures = 0;
+    private long                     numVersionCacheHits = 0;
+
+    /**
+     * Returns the pool shared by all streams in the process.
+     *
+     * @return the pool
+     */
+    public static RowServiceConnectionPool getInstance()
+    {
+        return instance;
+    }
+
+    RowServiceConnectionPool()
+    {
+    }
+
+    /**
+     * Sets the maximum number of idle connections kept for each endpoint, connections released beyond this are closed.
+     *
+     * @param maxConnections
+     *            the maximum number of idle connections, 0 disables pooling
+     */
+    public void setMaxIdleConnectionsPerHost(int maxConnections)
+    {
+        lock.lock();
+        try
+        {
+            this.maxIdleConnectionsPerHost = Math.max(0, maxConnections);
+        }
+        finally
+        {
+            lock.unlock();
+        }
+        evictIdleConnections();
+    }
+
+    /**
+     * @return the maximum number of idle connections kept for each endpoint
+     */
+    public int getMaxIdleConnectionsPerHost()
+    {
+        lock.lock();
+        try
+        {
+            return maxIdleConnectionsPerHost;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets how long a connection can be idle before it is closed. dafilesrv also closes idle connections, so this
+     * should be less than the server side timeout.
+     *
+     * @param timeoutMS
+     *            the idle timeout in milliseconds
+     */
+    public void setIdleTimeoutMS(long timeoutMS)
+    {
+        if (timeoutMS <= 0)
+        {
+            throw new IllegalArgumentException("Invalid idle timeout: " + timeoutMS + " must be greater than 0");
+        }
+
+        lock.lock();
+        try
+        {
+            this.idleTimeoutMS = timeoutMS;
+            if (evictionExecutor != null)
+            {
+                evictionExecutor.shutdownNow();
+                evictionExecutor = null;
+                startEvictionTimer();
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the idle timeout in milliseconds
+     */
+    public long getIdleTimeoutMS()
+    {
+        lock.lock();
+        try
+        {
+            return idleTimeoutMS;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets how long a connection can be idle before it is checked for having been closed by the server when acquired.
+     * The check is a short blocking read, so connections released more recently are reused without it.
+     *
+     * @param thresholdMS
+     *            the idle time in milliseconds, 0 to check every connection
+     */
+    public void setValidationIdleThresholdMS(long thresholdMS)
+    {
+        if (thresholdMS < 0)
+        {
+            throw new IllegalArgumentException("Invalid validation idle threshold: " + thresholdMS + " must be 0 or greater");
+        }
+
+        this.validationIdleThresholdMS = thresholdMS;
+    }
+
+    /**
+     * @return how long a connection can be idle before it is checked when acquired in milliseconds
+     */
+    public long getValidationIdleThresholdMS()
+    {
+        return validationIdleThresholdMS;
+    }
+
+    /**
+     * Returns an idle connection to the endpoint.
+     *
+     * @param host
+     *            the row service host
+     * @param port
+     *            the row service port
+     * @param useSSL
+     *            true if the connection uses SSL
+     * @return the connection, or null if there is no usable idle connection
+     */
+    Socket acquire(String host, int port, boolean useSSL)
+    {
+        Endpoint endpoint = new Endpoint(host, port, useSSL);
+        while (true)
+        {
+            IdleConnection connection = null;
+            lock.lock();
+            try
+            {
+                ArrayDeque<IdleConnection> connections = idleConnections.get(endpoint);
+                if (connections != null)
+                {
+                    // Most recently used first, as it is the least likely to have been closed by the server
+                    connection = connections.pollLast();
+                    if (connections.isEmpty())
+                    {
+                        idleConnections.remove(endpoint);
+                    }
+                }
+
+                if (connection == null)
+                {
+                    numMisses++;
+                    return null;
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            boolean validate = System.currentTimeMillis() - connection.idleSinceMS >= validationIdleThresholdMS;
+            if (isConnectionUsable(connection.socket, validate))
+            {
+                lock.lock();
+                try
+                {
+                    numHits++;
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+                return connection.socket;
+            }
+
+            log.debug("RowServiceConnectionPool: Discarding closed connection to: " + endpoint);
+            closeQuietly(connection.socket);
+            lock.lock();
+            try
+            {
+                numValidationFailures++;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns a connection to the pool. The connection must be idle, IE: all responses have been read and the file has
+     * been closed on the server.
+     *
+     * @param host
+     *            the row service host
+     * @param port
+     *            the row service port
+     * @param useSSL
+     *            true if the connection uses SSL
+     * @param socket
+     *            the connection
+     */
+    void release(String host, int port, boolean useSSL, Socket socket)
+    {
+        if (socket == null || socket.isClosed())
+        {
+            return;
+        }
+
+        Endpoint endpoint = new Endpoint(host, port, useSSL);
+        lock.lock();
+        try
+        {
+            ArrayDeque<IdleConnection> connections = idleConnections.get(endpoint);
+            if (connections == null)
+            {
+                connections = new ArrayDeque<IdleConnection>();
+                idleConnections.put(endpoint, connections);
+            }
+
+            if (connections.size() < maxIdleConnectionsPerHost)
+            {
+                connections.addLast(new IdleConnection(socket));
+                startEvictionTimer();
+                return;
+            }
+
+            if (connections.isEmpty())
+            {
+                idleConnections.remove(endpoint);
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        closeQuietly(socket);
+    }
+
+    /**
+     * Returns the cached row service version of the endpoint.
+     *
+     * @return the version, an empty string for the old protocol, or null if the version is not known
+     */
+    String getRowServiceVersion(String host, int port, boolean useSSL)
+    {
+        String version = rowServiceVersions.get(new Endpoint(host, port, useSSL));
+        if (version != null)
+        {
+            lock.lock();
+            try
+            {
+                numVersionCacheHits++;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Caches the row service version of the endpoint.
+     *
+     * @param version
+     *            the version, an empty string for the old protocol
+     */
+    void setRowServiceVersion(String host, int port, boolean useSSL, String version)
+    {
+        rowServiceVersions.put(new Endpoint(host, port, useSSL), version);
+    }
+
+    /**
+     * Closes idle connections that have exceeded the idle timeout or the max idle connections per host.
+     */
+    public void evictIdleConnections()
+    {
+        List<Socket> evicted = new ArrayList<Socket>();
+        lock.lock();
+        try
+        {
+            long idleLimitMS = System.currentTimeMillis() - idleTimeoutMS;
+            Iterator<Map.Entry<Endpoint, ArrayDeque<IdleConnection>>> it = idleConnections.entrySet().iterator();
+            while (it.hasNext())
+            {
+                // Connections are ordered from least to most recently released
+                ArrayDeque<IdleConnection> connections = it.next().getValue();
+                while (!connections.isEmpty() && (connections.size() > maxIdleConnectionsPerHost || connections.peekFirst().idleSinceMS <= idleLimitMS))
+                {
+                    evicted.add(connections.pollFirst().socket);
+                    numEvictions++;
+                }
+
+                if (connections.isEmpty())
+                {
+                    it.remove();
+                }
+            }
+
+            if (idleConnections.isEmpty() && evictionExecutor != null)
+            {
+                evictionExecutor.shutdown();
+                evictionExecutor = null;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        for (Socket socket : evicted)
+        {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Closes all idle connections and clears the cached row service versions.
+     */
+    public void clear()
+    {
+        ArrayDeque<Socket> closed = new ArrayDeque<Socket>();
+        lock.lock();
+        try
+        {
+            for (ArrayDeque<IdleConnection> connections : idleConnections.values())
+            {
+                for (IdleConnection connection : connections)
+                {
+                    closed.add(connection.socket);
+                }
+            }
+            idleConnections.clear();
+            rowServiceVersions.clear();
+
+            if (evictionExecutor != null)
+            {
+                evictionExecutor.shutdown();
+                evictionExecutor = null;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        for (Socket socket : closed)
+        {
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @return the number of times an idle connection was reused
+     */
+    public long getNumHits()
+    {
+        lock.lock();
+        try
+        {
+            return numHits;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of times no idle connection was available and a new connection had to be opened
+     */
+    public long getNumMisses()
+    {
+        lock.lock();
+        try
+        {
+            return numMisses;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of idle connections closed by the idle timeout or max idle connections
+     */
+    public long getNumEvictions()
+    {
+        lock.lock();
+        try
+        {
+            return numEvictions;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of idle connections that had been closed by the server when they were acquired
+     */
+    public long getNumValidationFailures()
+    {
+        lock.lock();
+        try
+        {
+            return numValidationFailures;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of times a cached row service version was found
+     */
+    public long getNumVersionCacheHits()
+    {
+        lock.lock();
+        try
+        {
+            return numVersionCacheHits;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of idle connections in the pool
+     */
+    public int getNumIdleConnections()
+    {
+        lock.lock();
+        try
+        {
+            int numConnections = 0;
+            for (ArrayDeque<IdleConnection> connections : idleConnections.values())
+            {
+                numConnections += connections.size();
+            }
+            return numConnections;
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts the eviction timer if it is not running. Must be called while holding the lock.
+     */
+    private void startEvictionTimer()
+    {
+        if (evictionExecutor != null)
+        {
+            return;
+        }
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, (Runnable task) -> {
+            Thread thread = DFSThreadFactory.newThread(task, "RowServiceConnectionPool-Eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+
+        long intervalMS = Math.max(1, idleTimeoutMS / 2);
+        executor.scheduleWithFixedDelay(this::evictIdleConnections, intervalMS, intervalMS, TimeUnit.MILLISECONDS);
+        evictionExecutor = executor;
+    }
+
+    /**
+     * Checks that an idle connection has not been closed. An idle connection has no data available, so a short read
+     * times out on a usable connection, and returns the end of stream or fails on a closed connection.
+     *
+     * @param validate
+     *            true to check with a short read, otherwise only the socket state and available data are checked
+     */
+    private static boolean isConnectionUsable(Socket socket, boolean validate)
+    {
+        if (socket.isClosed() || !socket.isConnected() || socket.isInputShutdown() || socket.isOutputShutdown())
+        {
+            return false;
+        }
+
+        if (!validate)
+        {
+            try
+            {
+                // Unexpected data would be read as the start of the next response
+                return socket.getInputStream().available() == 0;
+            }
+            catch (IOException e)
+            {
+                return false;
+            }
+        }
+
+        int previousTimeoutMS = 0;
+        try
+        {
+            previousTimeoutMS = socket.getSoTimeout();
+            socket.setSoTimeout(VALIDATION_READ_TIMEOUT_MS);
+            socket.getInputStream().read();
+
+            // Either the end of stream or unexpected data, neither connection can be used
+            return false;
+        }
+        catch (SocketTimeoutException e)
+        {
+            return true;
+        }
+        catch (IOException e)
+        {
+            return false;
+        }
+        finally
+        {
+            try
+            {
+                socket.setSoTimeout(previousTimeoutMS);
+            }
+            catch (IOException e) {}
+        }
+    }
+
+    private static void closeQuietly(Socket socket)
+    {
+        try
+        {
+            socket.close();
+        }
+        catch (IOException e) {}
+    }
+}
@@ -12,15 +12,26 @@
  *******************************************************************************/
 package org.hpccsystems.dfs.client;
 
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.PushbackInputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.io.InputStream;
 
 import java.sql.Timestamp;
@@ -40,7 +51,9 @@ import org.hpccsystems.commons.benchmarking.SimpleMetric;
 import org.hpccsystems.commons.ecl.FieldDef;
 import org.hpccsystems.commons.ecl.FileFilter;
 import org.hpccsystems.commons.errors.HpccFileException;
+import org.hpccsystems.commons.fastlz4j.FastLZ4j;
 import org.hpccsystems.commons.network.Network;
+import org.hpccsystems.commons.network.SharedSSLContext;
 import org.hpccsystems.generated.CompileTimeConstants;
 
 import io.opentelemetry.api.common.AttributeKey;
@@ -53,7 +66,7 @@ import io.opentelemetry.semconv.ServiceAttributes;
 /**
  * An input stream that uses the row service provided by the HPCC platform to read a particular file part.
  */
-public class RowServiceInputStream extends InputStream implements IProfilable
+public class RowServiceInputStream extends InputStream implements IProfilable, IByteBufferInputStream
 {
     private static class ReadRequestEvent
     {
@@ -92,6 +105,16 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         public int connectTimeoutMS = DEFAULT_CONNECT_TIMEOUT_MILIS;
         public int socketOpTimeoutMS = DEFAULT_SOCKET_OP_TIMEOUT_MS;
         public int readBufferSizeKB = DEFAULT_READ_BUFFER_SIZE_KB;
+        public boolean useCommCompression = false;
+        public boolean useMultiplexedReads = false;
+        public boolean useAdaptiveReadSize = false;
+        public boolean adaptiveReadBufferSize = false;
+        public int maxOutstandingReadRequests = 1;
+        public boolean useHedgedReads = false;
+        public boolean useConnectionPool = false;
+        public IReadAdmissionController admissionController = null;
+        public boolean useReadBufferBudget = false;
+        public boolean useBufferPool = false;
         public Span fileReadSpan = null;
     };
 
@@ -126,7 +149,6 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     public static final double       MAX_RECORD_SAMPLING_RATE = 1.0;
     public static final long         USE_RANDOM_SEED = -1;
 
-    private static final int         SHORT_SLEEP_MS           = 1;
     private static final int         LONG_WAIT_THRESHOLD_US   = 100;
     private static final int         MAX_HOT_LOOP_NS          = 10000;
 
@@ -138,7 +160,37 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     // at least 512 bytes are available
     private static final int         MIN_SOCKET_READ_SIZE     = 512;
 
+    // States of the non-blocking response parser used by the multiplexed read engine
+    private static final int         MUX_STATE_RESPONSE_LEN        = 0;
+    private static final int         MUX_STATE_ERROR_CODE          = 1;
+    private static final int         MUX_STATE_ERROR_MESSAGE       = 2;
+    private static final int         MUX_STATE_HANDLE              = 3;
+    private static final int         MUX_STATE_DATA_LEN            = 4;
+    private static final int         MUX_STATE_DATA                = 5;
+    private static final int         MUX_STATE_TOKEN_LEN           = 6;
+    private static final int         MUX_STATE_TOKEN               = 7;
+    private static final int         MUX_STATE_EMPTY_REPLY_TRAILER = 8;
+
+    // Once the read buffer is full the prefetch thread waits until this fraction of the buffer
+    // has been consumed before resuming, to avoid waking it up for every byte read
+    private static final int         PREFETCH_RESUME_DIVISOR  = 4;
+
+    // How often a hedged request and the original request are checked for the start of a response
+    private static final int         HEDGE_POLL_INTERVAL_MS   = 5;
+
+    // The comm compression format requested from the row service when comm compression is enabled.
+    // FLZ replies are decoded with the FastLZ implementation in commons-hpcc
+    public static final String       COMM_COMPRESSION_FORMAT  = "FLZ";
+
+    // A FastLZ block never expands by more than this factor, the longest match is under 256 bytes per encoded byte
+    private static final int         FLZ_MAX_EXPANSION_RATIO  = 256;
+
+    // Compressed reply blocks are read in chunks of at most this size, so block buffers only grow as data arrives
+    private static final int         COMPRESSED_BLOCK_READ_CHUNK_SIZE = 1024 * 1024;
+
     public static final String BYTES_READ_METRIC = "bytesRead";
+    public static final String COMPRESSED_BYTES_READ_METRIC = "compressedBytesRead";
+    public static final String UNCOMPRESSED_BYTES_READ_METRIC = "uncompressedBytesRead";
     public static final String FIRST_BYTE_TIME_METRIC = "prefetchFirstByteTime";
     public static final String WAIT_TIME_METRIC = "parseWaitTime";
     public static final String MUTEX_WAIT_TIME_METRIC = "mutexWaitTime";
@@ -153,6 +205,24 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     public static final String FETCHES_METRIC = "numFetches";
     public static final String PARTIAL_BLOCK_READS_METRIC = "numPartialBlockReads";
     public static final String BLOCK_READS_METRIC = "numBlockReads";
+    public static final String ADAPTIVE_READ_SIZE_METRIC = "adaptiveReadSize";
+    public static final String READ_SIZE_INCREASES_METRIC = "numReadSizeIncreases";
+    public static final String READ_SIZE_DECREASES_METRIC = "numReadSizeDecreases";
+    public static final String BANDWIDTH_DELAY_PRODUCT_METRIC = "estimatedBandwidthDelayProduct";
+    public static final String READ_BUFFER_SIZE_METRIC = "readBufferSize";
+    public static final String READ_BUFFER_RESIZES_METRIC = "numReadBufferResizes";
+    public static final String HEDGED_READS_METRIC = "numHedgedReads";
+    public static final String HEDGED_READ_WINS_METRIC = "numHedgedReadWins";
+    public static final String HEDGED_READ_RATE_METRIC = "hedgedReadRate";
+    public static final String CONNECTION_POOL_HITS_METRIC = "connectionPoolHits";
+    public static final String CONNECTION_POOL_MISSES_METRIC = "connectionPoolMisses";
+    public static final String SSL_HANDSHAKE_TIME_METRIC = "sslHandshakeTime";
+    public static final String SSL_HANDSHAKES_METRIC = "numSSLHandshakes";
+    public static final String SSL_RESUMED_HANDSHAKES_METRIC = "numResumedSSLHandshakes";
+    public static final String ADMISSION_WAIT_TIME_METRIC = "admissionWaitTime";
+    public static final String BANDWIDTH_WAIT_TIME_METRIC = "bandwidthWaitTime";
+    public static final String READ_BUFFER_STALL_TIME_METRIC = "readBufferStallTime";
+    public static final String READ_BUFFER_GROWTHS_DENIED_METRIC = "numReadBufferGrowthsDenied";
 
     private static AtomicInteger     connectionStartupCount = new AtomicInteger(0);
     private static int maxConcurrentStartups = DEFAULT_MAX_CONCURRENT_CONNECTION_STARTUPS;
@@ -183,7 +253,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     private int                      readRequestBatchSize = DEFAULT_READ_REQUEST_SPAN_BATCH_SIZE;
 
     private List<ReadRequestEvent>   readRequestEvents = new ArrayList<ReadRequestEvent>();
-    private ReadRequestEvent         currentReadRequestEvent = null;
+    private ArrayDeque<ReadRequestEvent> pendingReadRequestEvents = new ArrayDeque<ReadRequestEvent>();
 
     private int                      filePartCopyIndexPointer = 0;  //pointer into the prioritizedCopyIndexes struct
     private List<Integer>            prioritizedCopyIndexes = new ArrayList<Integer>();
@@ -193,19 +263,121 @@ public class RowServiceInputStream extends InputStream implements IProfilable
 
     private CircularByteBuffer       readBuffer = null;
 
+    // View of the read buffer returned by getReadableByteBuffer, re-wrapped when the read buffer is resized
+    private ByteBuffer               readableByteBufferView = null;
+
+    // The read buffer is a single producer / single consumer buffer and is accessed without locking.
+    // The lock is only taken to block when the buffer is empty or full, and to signal a blocked side.
+    // Locks are used rather than monitors so that waiting virtual threads do not pin their carrier threads
+    private final ReentrantLock      readBufferLock = new ReentrantLock();
+    private final Condition          readBufferDataAvailable = readBufferLock.newCondition();
+    private final Condition          readBufferSpaceAvailable = readBufferLock.newCondition();
+
+    // Producer / consumer handoff state, the waiting flags are only set while holding readBufferLock.
+    // Used to avoid signalling the other side when it isn't waiting. A waiting side sets its flag before checking the
+    // buffer again, and the other side checks the flag after updating the buffer, so a wake up can't be missed.
+    private volatile boolean         consumerWaiting = false;
+    private volatile boolean         producerWaiting = false;
+    private volatile int             prefetchResumeThreshold = 1;
+
     private int                      recordLimit = -1;
 
     private int                      totalDataInCurrentRequest = 0;
     private int                      remainingDataInCurrentRequest = 0;
+
+    // The number of uncompressed stream bytes in the current request, used for restarts
+    private int                      streamDataInCurrentRequest = 0;
+
+    // Comm compression state, blocks are decompressed in the prefetch thread and then copied into the read buffer
+    private boolean                  useCommCompression = false;
+    private byte[]                   compressedBlockBuffer = null;
+    private byte[]                   decompressedBlockBuffer = null;
+    private int                      decompressedBlockPos = 0;
+    private int                      decompressedBlockLen = 0;
+    private int                      remainingExpandedDataInCurrentRequest = -1;
     private long                     streamPos = 0;
     private long                     streamMarkPos = 0;
 
+    // Multiplexed read state, once registered with the MultiplexedReadEngine these are only accessed from its selector thread
+    private boolean                  useMultiplexedReads = false;
+    private volatile MultiplexedReadEngine.Registration multiplexedRegistration = null;
+    private volatile Thread          multiplexedCloseThread = null;
+    private int                      multiplexedReadState = MUX_STATE_RESPONSE_LEN;
+    private ByteBuffer               multiplexedIntBuffer = ByteBuffer.allocate(4);
+    private ByteBuffer               multiplexedPayloadBuffer = null;
+    private ByteBuffer               multiplexedReadBufferView = null;
+    private ByteBuffer               multiplexedWriteBuffer = null;
+    private int                      multiplexedResponseLen = 0;
+    private int                      multiplexedErrorCode = 0;
+    private boolean                  multiplexedInTokenRetry = false;
+    private boolean                  multiplexedPaused = false;
+    private long                     multiplexedLastIOTimeNS = 0;
+
+    // Read requests that have been sent but whose responses have not been started. Only accessed from the producing side of the stream.
+    // More than one request is outstanding when pipelining read requests, the row service answers requests in the order they were sent
+    private int                      maxOutstandingReadRequests = 1;
+    private int                      numPendingReadRequests = 0;
+
+    // Adaptive read request sizing, null when disabled. Only accessed from the producing side of the stream
+    private AdaptiveReadSizeController readSizeController = null;
+    private boolean                  adaptiveReadBufferSize = false;
+    private int                      minReadBufferSize = 0;
+    private int                      numReadBufferResizes = 0;
+
+    // Read buffer memory budget, see ReadBufferMemoryManager. The reservation is held until the consumer is done with the buffer
+    private ReadBufferMemoryManager  readBufferMemoryManager = null;
+    private int                      reservedReadBufferBytes = 0;
+    private boolean                  isReadBufferMemoryReleased = false;
+    private int                      numReadBufferGrowthsDenied = 0;
+    private final ReentrantLock      readBufferMemoryLock = new ReentrantLock();
+
+    // Buffer pooling, see BufferPool. The read buffer is returned when the consumer closes the stream, unless it has been resized
+    private byte[]                   pooledReadBuffer = null;
+
+    // Hedged reads, see HedgedReadController
+    private boolean                  useHedgedReads = false;
+    private HedgedReadController     hedgedReadController = null;
+    private PushbackInputStream      responseInputStream = null; // Allows the start of a response to be awaited without consuming it
+    private boolean                  hedgeNextRequest = false;
+    private long                     hedgeRequestSentNS = 0;
+    private long                     hedgeStallTimeNSAtRequest = 0;
+    private long                     hedgeStallTimeNSAtResponse = 0;
+    private int                      numHedgedReads = 0;
+    private int                      numHedgedReadWins = 0;
+    private ArrayDeque<long[]>       pendingReadRequestTimes = new ArrayDeque<long[]>();
+    private long                     fetchRequestSentNS = 0;
+    private long                     fetchResponseStartNS = 0;
+    private long                     previousResponseEndNS = 0;
+    private long                     producerStallTimeNS = 0;
+
+    // Connection pooling, see RowServiceConnectionPool. Multiplexed connections are registered with the engine and are not pooled
+    private boolean                  useConnectionPool = false;
+    private boolean                  responseInProgress = false; // The connection is only reusable between responses
+    private int                      numConnectionPoolHits = 0;
+    private int                      numConnectionPoolMisses = 0;
+
+    // TLS handshakes, also performed by hedged request threads
+    private long                     sslHandshakeTimeNS = 0;
+    private int                      numSSLHandshakes = 0;
+    private int                      numResumedSSLHandshakes = 0;
+    private final Object             sslHandshakeLock = new Object();
+
+    // Admission control, the stream is admitted to the host of the copy it first connects to until it is closed
+    private IReadAdmissionController admissionController = null;
+    private String                   admittedHost = null;
+    private long                     admissionWaitTimeNS = 0;
+    private long                     bandwidthWaitTimeNS = 0;
+    private long                     producerStallTimeNSAtRequest = 0;
+    private volatile long            consumerStallTimeNS = 0;
+    private long                     consumerStallTimeNSAtRequest = 0;
+
     private boolean                  shouldSampleRecords = false;
     private double                   recordSamplingRate = MAX_RECORD_SAMPLING_RATE; // Default to no sampling
     private long                     recordSamplingSeed = USE_RANDOM_SEED;
 
     // Used for restarts
     private long                     streamPosOfFetchStart = 0;
+    private final ReentrantLock      fetchHistoryLock = new ReentrantLock();
     private List<Long>               streamPosOfFetches = new ArrayList<Long>();
     private List<byte[]>             tokenBinOfFetches = new ArrayList<byte[]>();
 
@@ -225,6 +397,8 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     private int                      numFetches = 0;
     private long                     numPartialBlockReads = 0;
     private long                     numBlockReads = 0;
+    private long                     compressedBytesRead = 0;
+    private long                     uncompressedBytesRead = 0;
 
     private Socket                   sock;
     private int                      connectTimeout = DEFAULT_CONNECT_TIMEOUT_MILIS;
@@ -477,7 +651,20 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             readBufferSizeKB = this.maxReadSizeKB;
         }
 
-        this.readBuffer = new CircularByteBuffer(readBufferSizeKB * 1024);
+        // Continuation requests are only pipelined for sequential reads, fetches are a single request
+        if (context.maxOutstandingReadRequests > 1 && !this.inFetchingMode)
+        {
+            this.maxOutstandingReadRequests = context.maxOutstandingReadRequests;
+        }
+
+        // Adaptive sizing starts from the max read size, and is not used when fetching as each fetch is a single request
+        if (context.useAdaptiveReadSize && !this.inFetchingMode)
+        {
+            this.readSizeController = new AdaptiveReadSizeController(this.maxReadSizeKB, AdaptiveReadSizeController.MIN_READ_SIZE_KB,
+                                                                     AdaptiveReadSizeController.MAX_READ_SIZE_KB, this.maxOutstandingReadRequests);
+            this.adaptiveReadBufferSize = context.adaptiveReadBufferSize;
+            this.minReadBufferSize = readBufferSizeKB * 1024;
+        }
 
         this.jsonRecordDefinition = RecordDefinitionTranslator.toJsonRecord(this.recordDefinition).toString();
         this.projectedJsonRecordDefinition = RecordDefinitionTranslator.toJsonRecord(this.projectedRecordDefinition).toString();
@@ -514,6 +701,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         }
 
         this.recordLimit = context.recordReadLimit;
+        this.useCommCompression = context.useCommCompression;
 
         if (context.recordSamplingRate < MAX_RECORD_SAMPLING_RATE)
         {
@@ -527,6 +715,56 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         }
         this.recordSamplingSeed = context.recordSamplingSeed;
 
+        // The multiplexed engine only supports plain sequential reads, other streams use a prefetch thread
+        if (context.useMultiplexedReads)
+        {
+            this.useMultiplexedReads = context.createPrefetchThread && !inFetchingMode && !useCommCompression && !getUseSSL();
+            if (this.useMultiplexedReads == false)
+            {
+                log.debug("Multiplexed reads are not supported for SSL, comm compressed or fetching streams. File part: "
+                          + dp.getThisPart() + " will be read using a prefetch thread.");
+            }
+        }
+
+        // A hedged request races the start of its response against the original request, so only one request can be in flight
+        if (context.useHedgedReads && dp.getCopyCount() > 1)
+        {
+            this.useHedgedReads = !inFetchingMode && !useMultiplexedReads && maxOutstandingReadRequests == 1;
+            if (this.useHedgedReads)
+            {
+                this.hedgedReadController = HedgedReadController.getInstance();
+            }
+            else
+            {
+                log.debug("Hedged reads are not supported for multiplexed, pipelined or fetching streams. File part: "
+                          + dp.getThisPart() + " will be read without hedged requests.");
+            }
+        }
+
+        this.useConnectionPool = context.useConnectionPool && !useMultiplexedReads;
+        this.admissionController = context.admissionController;
+
+        // Allocated once the settings have been validated, the reserved memory is released below if construction fails
+        int readBufferSize = readBufferSizeKB * 1024;
+        if (context.useReadBufferBudget)
+        {
+            this.readBufferMemoryManager = ReadBufferMemoryManager.getInstance();
+            readBufferSize = readBufferMemoryManager.allocate(readBufferSize);
+            this.reservedReadBufferBytes = readBufferSize;
+        }
+
+        // The consumer can only give the buffer back once the producer has stopped, so pooling requires a prefetch thread
+        if (context.useBufferPool && context.createPrefetchThread && !inFetchingMode)
+        {
+            this.pooledReadBuffer = BufferPool.getInstance().borrow(readBufferSize);
+            this.readBuffer = new CircularByteBuffer(pooledReadBuffer);
+        }
+        else
+        {
+            this.readBuffer = new CircularByteBuffer(readBufferSize);
+        }
+        this.prefetchResumeThreshold = Math.max(1, readBufferSize / PREFETCH_RESUME_DIVISOR);
+
         if (restartInfo != null)
         {
             this.tokenBin = restartInfo.tokenBin;
@@ -537,14 +775,25 @@ public class RowServiceInputStream extends InputStream implements IProfilable
 
         if (inFetchingMode == false)
         {
-            this.makeActive();
+            try
+            {
+                this.makeActive();
+            }
+            catch (HpccFileException e)
+            {
+                // The stream can't be closed by the caller if construction fails
+                releaseAdmission();
+                releaseReadBufferMemory();
+                releasePooledReadBuffer();
+                throw e;
+            }
         }
         else
         {
             // Starting a fetch for the first record so that the connection is warm started
             // Starting the fetch on another thread to allow for records larger than the buffer size
             AtomicBoolean blockingRequestFinished = new AtomicBoolean(false);
-            Thread tempFetchThread = new Thread(() -> {
+            Thread tempFetchThread = DFSThreadFactory.newThread(() -> {
                 try
                 {
                     Long[] emptyOffsets = {0L};
@@ -556,7 +805,8 @@ public class RowServiceInputStream extends InputStream implements IProfilable
                 }
 
                 blockingRequestFinished.set(true);
-            });
+                signalReadBufferWaiters();
+            }, "RowServiceInputStream-WarmStartFetch-" + dp.getThisPart());
             tempFetchThread.start();
 
             // Consume data until we have read all data in the requested record
@@ -568,13 +818,26 @@ public class RowServiceInputStream extends InputStream implements IProfilable
                     if (avail > 0)
                     {
                         this.skip(avail);
+                    }
 
-                        // Sleep 1ms to prevent hot loop from eating CPU resources
-                        try
+                    // Wait for the fetch thread to either write more data or finish
+                    readBufferLock.lock();
+                    consumerWaiting = true;
+                    try
+                    {
+                        while (readBuffer.getBytesAvailable() == 0 && blockingRequestFinished.get() == false && this.closed.get() == false)
                         {
-                            Thread.sleep(SHORT_SLEEP_MS);
+                            try
+                            {
+                                readBufferDataAvailable.await();
+                            }
+                            catch(InterruptedException e) {/*We don't care about waking early*/}
                         }
-                        catch(InterruptedException e) {/*We don't care about waking early*/}
+                    }
+                    finally
+                    {
+                        consumerWaiting = false;
+                        readBufferLock.unlock();
                     }
                 }
                 catch (IOException e)
@@ -589,12 +852,18 @@ public class RowServiceInputStream extends InputStream implements IProfilable
 
             if (prefetchException != null)
             {
+                releaseReadBufferMemory();
+
                 // Will already be recorded in span
                 throw prefetchException;
             }
         }
 
-        if (context.createPrefetchThread)
+        if (this.useMultiplexedReads)
+        {
+            startMultiplexedReads();
+        }
+        else if (context.createPrefetchThread)
         {
             RowServiceInputStream rowInputStream = this;
             Runnable prefetchTask = new Runnable()
@@ -606,27 +875,13 @@ public class RowServiceInputStream extends InputStream implements IProfilable
                     {
                         inputStream.prefetchData();
 
-                        // Sleep after each prefetch to prevent hot loop from eating CPU resources
-                        try
-                        {
-                            if (CompileTimeConstants.PROFILE_CODE)
-                            {
-                                long sleepTime = System.nanoTime();
-                                Thread.sleep(SHORT_SLEEP_MS);
-                                sleepTime = System.nanoTime() - sleepTime;
-                                sleepTimeNS += sleepTime;
-                            }
-                            else
-                            {
-                                Thread.sleep(SHORT_SLEEP_MS);
-                            }
-                        }
-                        catch(InterruptedException e) {/*We don't care about waking early*/}
+                        // Block until the consumer frees space in the read buffer, rather than polling
+                        inputStream.waitForReadBufferSpace();
                     }
                 }
             };
 
-            prefetchThread = new Thread(prefetchTask);
+            prefetchThread = DFSThreadFactory.newThread(prefetchTask, "RowServiceInputStream-Prefetch-" + dp.getThisPart());
             prefetchThread.start();
         }
     }
@@ -640,7 +895,8 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     {
         RestartInformation restartInfo = new RestartInformation();
 
-        synchronized (streamPosOfFetches)
+        fetchHistoryLock.lock();
+        try
         {
             // Note if we don't find a valid start point we will restart from the beginning of the file
             for (int i = streamPosOfFetches.size()-1; i >= 0; i--)
@@ -654,6 +910,10 @@ public class RowServiceInputStream extends InputStream implements IProfilable
                 }
             }
         }
+        finally
+        {
+            fetchHistoryLock.unlock();
+        }
 
         return restartInfo;
     }
@@ -661,6 +921,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     private void setPrefetchException(HpccFileException e)
     {
         this.prefetchException = e;
+        signalReadBufferWaiters();
 
         if (readRequestSpan != null)
         {
@@ -865,10 +1126,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
      */
     public int getRemainingBufferCapacity()
     {
-        synchronized (readBuffer)
-        {
-            return readBuffer.getFreeSpace();
-        }
+        return readBuffer.getFreeSpace();
     }
 
     /**
@@ -900,11 +1158,16 @@ public class RowServiceInputStream extends InputStream implements IProfilable
 
         // Clear restart info
         streamPosOfFetchStart = 0;
-        synchronized (streamPosOfFetches)
+        fetchHistoryLock.lock();
+        try
         {
             streamPosOfFetches.clear();
             tokenBinOfFetches.clear();
         }
+        finally
+        {
+            fetchHistoryLock.unlock();
+        }
 
         this.fetchRequestOffsets.clear();
         this.fetchRequestOffsets.addAll(fetchOffsets);
@@ -926,9 +1189,10 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         if (CompileTimeConstants.PROFILE_CODE)
         {
             long nsFetching = System.nanoTime();
-            while (remainingDataInCurrentRequest > 0)
+            while (hasRemainingDataInCurrentRequest() && this.closed.get() == false)
             {
                 readDataInFetch();
+                waitForReadBufferSpace();
             }
             nsFetching = System.nanoTime() - nsFetching;
             fetchTimeNS += nsFetching;
@@ -941,13 +1205,14 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         }
         else
         {
-            while (remainingDataInCurrentRequest > 0)
+            while (hasRemainingDataInCurrentRequest() && this.closed.get() == false)
             {
                 readDataInFetch();
+                waitForReadBufferSpace();
             }
         }
 
-        if (remainingDataInCurrentRequest == 0)
+        if (hasRemainingDataInCurrentRequest() == false)
         {
             if (CompileTimeConstants.PROFILE_CODE)
             {
@@ -979,10 +1244,11 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             }
             readRequestCount++;
 
-            currentReadRequestEvent = new ReadRequestEvent();
-            currentReadRequestEvent.requestTime = System.currentTimeMillis();
-            currentReadRequestEvent.requestStreamPos = streamPos;
-            currentReadRequestEvent.requestSize = maxReadSizeKB*1000;
+            ReadRequestEvent readRequestEvent = new ReadRequestEvent();
+            readRequestEvent.requestTime = System.currentTimeMillis();
+            readRequestEvent.requestStreamPos = streamPos;
+            readRequestEvent.requestSize = maxReadSizeKB*1000;
+            pendingReadRequestEvents.add(readRequestEvent);
         }
     }
 
@@ -990,13 +1256,13 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     {
         if (readRequestSpan != null)
         {
-            if (currentReadRequestEvent != null)
+            // Responses are returned in the order requests were sent, so the oldest pending event belongs to this response
+            ReadRequestEvent readRequestEvent = pendingReadRequestEvents.poll();
+            if (readRequestEvent != null)
             {
-                currentReadRequestEvent.responseTime = System.currentTimeMillis();
-                currentReadRequestEvent.bytesRead = totalDataInCurrentRequest;
-                readRequestEvents.add(currentReadRequestEvent);
-
-                currentReadRequestEvent = null;
+                readRequestEvent.responseTime = System.currentTimeMillis();
+                readRequestEvent.bytesRead = totalDataInCurrentRequest;
+                readRequestEvents.add(readRequestEvent);
             }
 
             int batchIndex = readRequestCount % readRequestBatchSize;
@@ -1084,6 +1350,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
                     this.dos.writeInt(requestLen);
                     this.dos.write(readAheadRequest.getBytes(HPCCCharSet), 0, requestLen);
                     this.dos.flush();
+                    onReadRequestSent();
                 }
                 catch (IOException e)
                 {
@@ -1102,12 +1369,19 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         //------------------------------------------------------------------------------
 
         boolean inTokenRetry = false;
+        boolean skipResponse = false;
         do
         {
             RowServiceResponse response = null;
             try
             {
+                if (useHedgedReads && !inTokenRetry)
+                {
+                    awaitResponseStart();
+                }
+
                 response = readResponse();
+                onReadResponseStarted();
             }
             catch (HpccFileException e)
             {
@@ -1152,7 +1426,13 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             //------------------------------------------------------------------------------
 
             this.handle = response.handle;
-            if (this.handle <= 0 && !inTokenRetry)
+            skipResponse = false;
+            if (this.handle <= 0 && !inTokenRetry && numPendingReadRequests > 0)
+            {
+                // Pipelined requests sent after this one used the same handle, skip their responses before retrying with the token
+                skipResponse = true;
+            }
+            else if (this.handle <= 0 && !inTokenRetry)
             {
                 inTokenRetry = true;
 
@@ -1163,6 +1443,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
                     this.dos.writeInt(len);
                     this.dos.write(retryTrans.getBytes(HPCCCharSet), 0, len);
                     this.dos.flush();
+                    onReadRequestSent();
                 }
                 catch (IOException e)
                 {
@@ -1185,7 +1466,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
                 inTokenRetry = false;
             }
         }
-        while(inTokenRetry);
+        while(inTokenRetry || skipResponse);
 
         //------------------------------------------------------------------------------
         // Read / return the length of the record data in this request
@@ -1195,16 +1476,29 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         try
         {
             dataLen = dis.readInt();
+            fetchResponseStartNS = System.nanoTime();
+            responseInProgress = true;
+            acquireReadBandwidth(dataLen);
+
+            // Reset the per request decompression state, the uncompressed length will be known once the block header is read
+            streamDataInCurrentRequest = useCommCompression ? 0 : dataLen;
+            remainingExpandedDataInCurrentRequest = -1;
+            decompressedBlockPos = 0;
+            decompressedBlockLen = 0;
+
             if (inFetchingMode == false)
             {
                 if (dataLen == 0)
                 {
                     // Read handle before closing
                     dis.readInt();
+                    responseInProgress = false;
                     close();
                     return 0;
                 }
             }
+
+            sendPipelinedReadRequests();
         }
         catch (IOException e)
         {
@@ -1219,264 +1513,1707 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         return dataLen;
     }
 
-    private void readDataInFetch()
+    /**
+     * Waits for the start of the response to the outstanding request. If the response has not started within the first byte
+     * time threshold of the HedgedReadController, or the previous response was slow, the request is also sent to another copy
+     * of the file part from the current token. Reading continues on the connection whose response starts first.
+     *
+     * @throws HpccFileException
+     *             if the connection failed and the request could not be hedged
+     */
+    private void awaitResponseStart() throws HpccFileException
     {
-        String prefix = "RowServiceInputStream.readDataInFetch(), file "   + dataPart.getFileName() + "part " + dataPart.getThisPart() + " on IP " + getIP() + ":";
-        if (this.closed.get())
+        String prefix = "RowServiceInputStream.awaitResponseStart(), file " + dataPart.getFileName() + " part " + dataPart.getThisPart() + " on IP " + getIP() + ":";
+
+        long thresholdNS = hedgeNextRequest ? 0 : hedgedReadController.getFirstByteThresholdNS();
+        hedgeNextRequest = false;
+        if (thresholdNS < 0)
         {
             return;
         }
 
-        // Loop here while data is being consumed quickly enough
-        while (remainingDataInCurrentRequest > 0)
+        HedgedRequest hedgedRequest = null;
+        try
         {
-            // Read up to available bytes in input stream
-            int bytesToRead = 0;
-            try
+            int remainingMS = (int) Math.max(0, TimeUnit.NANOSECONDS.toMillis(thresholdNS - getHedgeRequestElapsedNS() + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+            if (hasResponseStarted(sock, responseInputStream, remainingMS) || !hedgedReadController.tryStartHedge())
             {
-                bytesToRead = this.dis.available();
-                if (bytesToRead < 0)
+                return;
+            }
+
+            // The outstanding request is the initial request until the first token has been received
+            int hedgeCopy = (filePartCopyIndexPointer + 1) % prioritizedCopyIndexes.size();
+            String request = (this.tokenBin == null || this.tokenBin.length == 0) ? makeInitialRequest(readRequestSpan, hedgeCopy)
+                                                                                 : makeTokenRequest(readRequestSpan, hedgeCopy);
+
+            hedgedRequest = new HedgedRequest(hedgeCopy, request);
+            numHedgedReads++;
+            log.debug(prefix + " response not started after " + TimeUnit.NANOSECONDS.toMillis(getHedgeRequestElapsedNS())
+                      + "ms, hedging request to copy: " + (hedgeCopy + 1) + " on IP: " + hedgedRequest.getIP());
+            DFSThreadFactory.newThread(hedgedRequest, "RowServiceInputStream-HedgedRead-" + dataPart.getThisPart()).start();
+
+            IOException connectionException = null;
+            while (this.closed.get() == false)
+            {
+                if (connectionException == null)
                 {
-                    IOException wrappedException = new IOException(prefix + "Encountered unexpected end of stream mid fetch, this.dis.available() returned " + bytesToRead + " bytes.");
-                    if (fileReadSpan != null)
+                    try
                     {
-                        Attributes attributes = Attributes.of(  AttributeKey.longKey("server.index"), Long.valueOf(getFilePartCopy()),
-                                                                ExceptionAttributes.EXCEPTION_MESSAGE, wrappedException.getMessage());
-                        fileReadSpan.recordException(wrappedException, attributes);
+                        if (hasResponseStarted(sock, responseInputStream, HEDGE_POLL_INTERVAL_MS))
+                        {
+                            return;
+                        }
+                    }
+                    catch (IOException e)
+                    {
+                        // The hedged request may still succeed
+                        connectionException = e;
                     }
-                    throw wrappedException;
                 }
-
-                // Either due to a bug in the JVM or due to a design issue
-                // available can return 0 even in cases where there is data available.
-                // So always attempt to read at least some data
-                if (bytesToRead < MIN_SOCKET_READ_SIZE)
+                else
                 {
-                    bytesToRead = MIN_SOCKET_READ_SIZE;
+                    hedgedRequest.awaitFinished();
                 }
 
-                // Limit bytes to read based on remaining data in request and buffer capacity
-                synchronized (readBuffer)
-                {   
-                    int writeOffset = readBuffer.getWriteOffset();
-                    bytesToRead = Math.min(readBuffer.getContiguousFreeSpace(), Math.min(bytesToRead, remainingDataInCurrentRequest));
-
-                    this.dis.readFully(this.readBuffer.getInternalBuffer(), writeOffset, bytesToRead);
-                    this.readBuffer.incrementWriteOffset(bytesToRead);
-                }
-            }
-            catch (IOException e)
-            {
-                setPrefetchException(new HpccFileException(prefix + "Error during read block:" + e.getMessage(), e));
-                try
+                if (hedgedRequest.isFinished())
                 {
-                    close();
-                }
-                catch(Exception ie){}
-            }
+                    if (hedgedRequest.isResponseStarted())
+                    {
+                        useHedgedConnection(hedgedRequest);
+                        hedgedRequest = null;
+                        hedgedReadController.onHedgeComplete(true);
+                        numHedgedReadWins++;
+                        return;
+                    }
 
-            remainingDataInCurrentRequest -= bytesToRead;
+                    if (connectionException != null)
+                    {
+                        throw connectionException;
+                    }
 
-            // If we don't have enough room in the buffer. Return, and let the calling prefetch thread handle sleep etc
-            boolean hasFreeSpace = false;
-            synchronized (readBuffer)
-            {
-                hasFreeSpace = readBuffer.hasFreeSpace();
+                    // Continue waiting on the original request
+                    return;
+                }
             }
-
-            if (!hasFreeSpace)
+        }
+        catch (IOException e)
+        {
+            throw new HpccFileException(prefix + "Error while waiting for the start of the response: " + e.getMessage(), e);
+        }
+        finally
+        {
+            if (hedgedRequest != null)
             {
-                return;
+                hedgedRequest.cancel();
+                hedgedReadController.onHedgeComplete(false);
             }
         }
     }
 
-    private void finishFetch()
+    /**
+     * Waits for the start of a response without consuming it.
+     *
+     * @return true if the response has started, false if the timeout expired
+     * @throws IOException
+     *             if the connection failed or was closed
+     */
+    private static boolean hasResponseStarted(Socket socket, PushbackInputStream inputStream, int timeoutMS) throws IOException
     {
-        String prefix = "RowServiceInputStream.finishFetch(), file "   + dataPart.getFileName() + "part " + dataPart.getThisPart() + " on IP " + getIP() + ":";
-        if (this.closed.get())
+        if (inputStream.available() > 0)
         {
-            return;
+            return true;
         }
 
-        //------------------------------------------------------------------------------
-        // Read token that represents the cursor for the end of this request
-        //------------------------------------------------------------------------------
+        // A socket timeout of 0 is an infinite timeout
+        if (timeoutMS <= 0)
+        {
+            return false;
+        }
 
+        int previousTimeoutMS = socket.getSoTimeout();
+        socket.setSoTimeout(timeoutMS);
         try
         {
-            if (dis==null) {
-                return;
-            }
-            int tokenLen = dis.readInt();
-            if (tokenLen == 0)
-            {
-                close();
-                return;
-            }
-
-            if (this.tokenBin == null || tokenLen > this.tokenBin.length)
+            int value = inputStream.read();
+            if (value < 0)
             {
-                this.tokenBin = new byte[tokenLen];
+                throw new EOFException("Connection closed before the start of the response");
             }
-            dis.readFully(this.tokenBin,0,tokenLen);
-
-            this.streamPosOfFetchStart += totalDataInCurrentRequest;
-            synchronized (streamPosOfFetches)
-            {
-                if (streamPosOfFetches.size() >= FETCH_HISTORY_SIZE)
-                {
-                    streamPosOfFetches.remove(0);
-                    tokenBinOfFetches.remove(0);
-                }
 
-                streamPosOfFetches.add(this.streamPosOfFetchStart);
-                tokenBinOfFetches.add(this.tokenBin);
-            }
+            inputStream.unread(value);
+            return true;
         }
-        catch (IOException e)
+        catch (SocketTimeoutException e)
         {
-            setPrefetchException(new HpccFileException(prefix + "Error during finish request read block: " + e.getMessage(), e));
-            try
-            {
-                close();
-            }
-            catch(Exception ie){}
+            return false;
+        }
+        finally
+        {
+            socket.setSoTimeout(previousTimeoutMS);
         }
+    }
 
-        finishReadRequestSpan();
+    /**
+     * Replaces the current connection with the connection of a hedged request whose response has started.
+     */
+    private void useHedgedConnection(HedgedRequest hedgedRequest)
+    {
+        Socket previousSock = this.sock;
 
-        // After we have read the first request allow another connection to start
-        if (isFirstReadRequest)
+        this.sock = hedgedRequest.sock;
+        this.dos = hedgedRequest.dos;
+        this.dis = hedgedRequest.dis;
+        this.responseInputStream = hedgedRequest.responseInputStream;
+        this.filePartCopyIndexPointer = hedgedRequest.filePartCopy;
+
+        // The handle on the previous connection is released when the socket is closed
+        try
         {
-            isFirstReadRequest = false;
-            connectionStartupCount.decrementAndGet();
+            previousSock.close();
         }
+        catch (IOException e) {}
+    }
 
-        //------------------------------------------------------------------------------
-        // Send read ahead request
-        //------------------------------------------------------------------------------
+    /**
+     * A read request sent to another copy of the file part on a new connection. Runs on its own thread until the
+     * start of the response has been received, the connection is then either used or cancelled by the stream.
+     */
+    private class HedgedRequest implements Runnable
+    {
+        private final int                      filePartCopy;
+        private final String                   request;
+        private final CountDownLatch           finished = new CountDownLatch(1);
+        private volatile boolean               responseStarted = false;
+
+        // Guards cancelled and sock, sockets are closed after releasing the lock
+        private final ReentrantLock            socketLock = new ReentrantLock();
+        private boolean                        cancelled = false;
+        private Socket                         sock = null;
+        private java.io.DataOutputStream       dos = null;
+        private java.io.DataInputStream        dis = null;
+        private PushbackInputStream            responseInputStream = null;
+
+        HedgedRequest(int filePartCopy, String request)
+        {
+            this.filePartCopy = filePartCopy;
+            this.request = request;
+        }
 
-        if (inFetchingMode == false)
+        String getIP()
         {
-            startNewReadRequestSpan();
-            if (readRequestDelayMS > 0)
+            return dataPart.getCopyIP(prioritizedCopyIndexes.get(filePartCopy));
+        }
+
+        public void run()
+        {
+            try
             {
-                try
+                Socket socket = openSocket(getIP());
+                if (setSocket(socket) == false)
                 {
-                    Thread.sleep(readRequestDelayMS);
+                    return;
                 }
-                catch (InterruptedException e)
+
+                dos = new java.io.DataOutputStream(socket.getOutputStream());
+                responseInputStream = new PushbackInputStream(socket.getInputStream(), 1);
+                dis = new java.io.DataInputStream(responseInputStream);
+
+                // The copy must use the same protocol version as the original connection
+                writeRequest(makeGetVersionRequest(null));
+                RowServiceResponse response = readResponse(dis);
+                if (response.errorMessage != null)
                 {
-                    // We don't care about waking early
+                    throw new IOException(response.errorMessage);
                 }
-            }
 
-            // Create the read ahead request
-            if (this.simulateFail) this.handle = -1;
-            String readAheadRequest = (this.forceTokenUse) ? this.makeTokenRequest(readRequestSpan) : this.makeHandleRequest(readRequestSpan);
+                if ((response.len == 0) != useOldProtocol)
+                {
+                    throw new IOException("Row service protocol version does not match the original connection");
+                }
 
-            try
+                if (response.len > 0)
+                {
+                    dis.readFully(new byte[response.len]);
+                }
+
+                writeRequest(request);
+                responseStarted = hasResponseStarted(socket, responseInputStream, socketOpTimeoutMs);
+            }
+            catch (Exception e)
             {
-                int requestLen = readAheadRequest.length();
-                this.dos.writeInt(requestLen);
-                this.dos.write(readAheadRequest.getBytes(HPCCCharSet), 0, requestLen);
-                this.dos.flush();
+                log.debug("Hedged request for file part: " + dataPart.getThisPart() + " copy: " + (filePartCopy + 1)
+                          + " on IP: " + getIP() + " failed: " + e.getMessage());
             }
-            catch (IOException e)
+            finally
             {
-                setPrefetchException(new HpccFileException(prefix + "Failure sending read ahead transaction:" + e.getMessage(), e));
-                try
+                if (responseStarted == false)
                 {
-                    close();
+                    cancel();
                 }
-                catch(Exception ie){}
+
+                finished.countDown();
             }
         }
-    }
 
-    public void prefetchData()
-    {
-        // If we haven't finished reading the current request continue reading it
-        if (remainingDataInCurrentRequest > 0)
+        private void writeRequest(String msg) throws IOException
         {
-            if (CompileTimeConstants.PROFILE_CODE)
+            int msgLen = msg.length();
+            dos.writeInt(msgLen);
+            dos.write(msg.getBytes(HPCCCharSet), 0, msgLen);
+            dos.flush();
+        }
+
+        private boolean setSocket(Socket socket)
+        {
+            socketLock.lock();
+            try
             {
-                long nsFetching = System.nanoTime();
-                readDataInFetch();
-                nsFetching = System.nanoTime() - nsFetching;
-                fetchTimeNS += nsFetching;
+                if (cancelled == false)
+                {
+                    this.sock = socket;
+                    return true;
+                }
             }
-            else
+            finally
             {
+                socketLock.unlock();
+            }
+
+            closeSocket(socket);
+            return false;
+        }
+
+        void cancel()
+        {
+            Socket socket = null;
+            socketLock.lock();
+            try
+            {
+                cancelled = true;
+                socket = sock;
+            }
+            finally
+            {
+                socketLock.unlock();
+            }
+
+            if (socket != null)
+            {
+                closeSocket(socket);
+            }
+        }
+
+        private void closeSocket(Socket socket)
+        {
+            try
+            {
+                socket.close();
+            }
+            catch (IOException e) {}
+        }
+
+        boolean isFinished()
+        {
+            return finished.getCount() == 0;
+        }
+
+        boolean isResponseStarted()
+        {
+            return responseStarted;
+        }
+
+        void awaitFinished()
+        {
+            while (isFinished() == false)
+            {
+                try
+                {
+                    finished.await();
+                }
+                catch (InterruptedException e) {} // We don't care about waking early
+            }
+        }
+    }
+
+    private boolean hasRemainingDataInCurrentRequest()
+    {
+        return remainingDataInCurrentRequest > 0 || decompressedBlockPos < decompressedBlockLen;
+    }
+
+    private void readDataInFetch()
+    {
+        String prefix = "RowServiceInputStream.readDataInFetch(), file "   + dataPart.getFileName() + "part " + dataPart.getThisPart() + " on IP " + getIP() + ":";
+        if (this.closed.get())
+        {
+            return;
+        }
+
+        if (useCommCompression)
+        {
+            readCompressedDataInFetch(prefix);
+            return;
+        }
+
+        // Loop here while data is being consumed quickly enough
+        while (remainingDataInCurrentRequest > 0)
+        {
+            // Read up to available bytes in input stream
+            int bytesToRead = 0;
+            try
+            {
+                bytesToRead = this.dis.available();
+                if (bytesToRead < 0)
+                {
+                    IOException wrappedException = new IOException(prefix + "Encountered unexpected end of stream mid fetch, this.dis.available() returned " + bytesToRead + " bytes.");
+                    if (fileReadSpan != null)
+                    {
+                        Attributes attributes = Attributes.of(  AttributeKey.longKey("server.index"), Long.valueOf(getFilePartCopy()),
+                                                                ExceptionAttributes.EXCEPTION_MESSAGE, wrappedException.getMessage());
+                        fileReadSpan.recordException(wrappedException, attributes);
+                    }
+                    throw wrappedException;
+                }
+
+                // Either due to a bug in the JVM or due to a design issue
+                // available can return 0 even in cases where there is data available.
+                // So always attempt to read at least some data
+                if (bytesToRead < MIN_SOCKET_READ_SIZE)
+                {
+                    bytesToRead = MIN_SOCKET_READ_SIZE;
+                }
+
+                // Limit bytes to read based on remaining data in request and buffer capacity
+                int writeOffset = readBuffer.getWriteOffset();
+                bytesToRead = Math.min(readBuffer.getContiguousFreeSpace(), Math.min(bytesToRead, remainingDataInCurrentRequest));
+
+                // The free region of the buffer is only ever written by this thread, so the socket read
+                // can happen without blocking the consumer
+                this.dis.readFully(this.readBuffer.getInternalBuffer(), writeOffset, bytesToRead);
+
+                this.readBuffer.incrementWriteOffset(bytesToRead);
+                signalConsumerIfWaiting();
+            }
+            catch (IOException e)
+            {
+                setPrefetchException(new HpccFileException(prefix + "Error during read block:" + e.getMessage(), e));
+                try
+                {
+                    close();
+                }
+                catch(Exception ie){}
+            }
+
+            remainingDataInCurrentRequest -= bytesToRead;
+            compressedBytesRead += bytesToRead;
+            uncompressedBytesRead += bytesToRead;
+
+            // If we don't have enough room in the buffer. Return, and let the calling prefetch thread wait for space
+            if (!readBuffer.hasFreeSpace())
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reads and decompresses the blocks of a comm compressed reply.
+     *
+     * The row service compresses the data of each reply with the HPCC Platform jlib fastLZCompressToBuffer, and this
+     * follows the layout read by its counterpart fastLZDecompressToBuffer. The data starts with the total uncompressed
+     * length, followed by a block prefixed with its size. A block that is the same size as the remaining uncompressed
+     * data is stored uncompressed. All lengths are 32 bit little endian values. Further blocks are read until the
+     * uncompressed length has been reached, so replies compressed in more than one block are also supported.
+     *
+     * The lengths are validated against the reply length before use, and buffers are sized from the data actually
+     * received rather than from the lengths, so a corrupt reply fails the stream rather than exhausting memory.
+     *
+     * Decompressed data is copied into the read buffer as space becomes available, returns when the
+     * read buffer is full or all of the data in the current request has been read.
+     */
+    private void readCompressedDataInFetch(String prefix)
+    {
+        try
+        {
+            while (hasRemainingDataInCurrentRequest())
+            {
+                if (decompressedBlockPos < decompressedBlockLen)
+                {
+                    writeDecompressedBlockToReadBuffer();
+                    if (decompressedBlockPos < decompressedBlockLen)
+                    {
+                        // Read buffer is full, let the calling prefetch thread wait for space
+                        return;
+                    }
+                    continue;
+                }
+
+                if (remainingExpandedDataInCurrentRequest < 0)
+                {
+                    remainingExpandedDataInCurrentRequest = readLittleEndianLength(prefix, "uncompressed reply length");
+                    streamDataInCurrentRequest = remainingExpandedDataInCurrentRequest;
+                    checkCompressedReplyRemaining(prefix);
+                    continue;
+                }
+
+                int blockLen = readLittleEndianLength(prefix, "compressed block length");
+                if (blockLen > remainingExpandedDataInCurrentRequest || blockLen > remainingDataInCurrentRequest)
+                {
+                    throw new IOException(prefix + "Invalid compressed block length: " + blockLen + ", remaining uncompressed length: "
+                                          + remainingExpandedDataInCurrentRequest + ", remaining reply length: " + remainingDataInCurrentRequest);
+                }
+
+                if (blockLen == remainingExpandedDataInCurrentRequest)
+                {
+                    // The remaining data was stored uncompressed
+                    decompressedBlockBuffer = readCompressedReplyBlock(decompressedBlockBuffer, blockLen);
+                    decompressedBlockLen = blockLen;
+                }
+                else
+                {
+                    compressedBlockBuffer = readCompressedReplyBlock(compressedBlockBuffer, blockLen);
+
+                    // The size of a decompressed block isn't known up front, but it can't exceed the remaining data
+                    // or the most the block can expand to
+                    int maxDecompressedLen = (int) Math.min(remainingExpandedDataInCurrentRequest, (long) blockLen * FLZ_MAX_EXPANSION_RATIO);
+                    if (decompressedBlockBuffer == null || decompressedBlockBuffer.length < maxDecompressedLen)
+                    {
+                        decompressedBlockBuffer = new byte[maxDecompressedLen];
+                    }
+
+                    decompressedBlockLen = (blockLen > 0) ? FastLZ4j.decompress(compressedBlockBuffer, blockLen, decompressedBlockBuffer) : 0;
+                    if (decompressedBlockLen <= 0 || decompressedBlockLen > remainingExpandedDataInCurrentRequest)
+                    {
+                        throw new IOException(prefix + "Failed to decompress block of length: " + blockLen + ", decompressed length: "
+                                              + decompressedBlockLen + ", remaining uncompressed length: " + remainingExpandedDataInCurrentRequest);
+                    }
+                }
+
+                decompressedBlockPos = 0;
+                remainingDataInCurrentRequest -= blockLen;
+                remainingExpandedDataInCurrentRequest -= decompressedBlockLen;
+                compressedBytesRead += blockLen;
+                uncompressedBytesRead += decompressedBlockLen;
+                checkCompressedReplyRemaining(prefix);
+            }
+        }
+        catch (IOException e)
+        {
+            setPrefetchException(new HpccFileException(prefix + "Error during compressed read block:" + e.getMessage(), e));
+            remainingDataInCurrentRequest = 0;
+            decompressedBlockPos = 0;
+            decompressedBlockLen = 0;
+            try
+            {
+                close();
+            }
+            catch(Exception ie){}
+        }
+    }
+
+    private void checkCompressedReplyRemaining(String prefix) throws IOException
+    {
+        if (remainingDataInCurrentRequest == 0 && remainingExpandedDataInCurrentRequest != 0)
+        {
+            throw new IOException(prefix + "Compressed reply ended with " + remainingExpandedDataInCurrentRequest + " bytes of uncompressed data remaining");
+        }
+    }
+
+    private int readLittleEndianLength(String prefix, String description) throws IOException
+    {
+        if (remainingDataInCurrentRequest < 4)
+        {
+            throw new IOException(prefix + "Compressed reply ended before " + description + " could be read");
+        }
+
+        int len = Integer.reverseBytes(this.dis.readInt());
+        remainingDataInCurrentRequest -= 4;
+        compressedBytesRead += 4;
+
+        if (len < 0)
+        {
+            throw new IOException(prefix + "Invalid " + description + ": " + Integer.toUnsignedString(len));
+        }
+        return len;
+    }
+
+    /**
+     * Reads a block of a compressed reply, growing the buffer as the data is received.
+     *
+     * @return the buffer holding the block, a new buffer if the provided buffer was too small
+     */
+    private byte[] readCompressedReplyBlock(byte[] buffer, int blockLen) throws IOException
+    {
+        int bytesRead = 0;
+        while (bytesRead < blockLen)
+        {
+            int bytesToRead = Math.min(blockLen - bytesRead, COMPRESSED_BLOCK_READ_CHUNK_SIZE);
+            if (buffer == null || buffer.length < bytesRead + bytesToRead)
+            {
+                int newLength = (int) Math.min(blockLen, Math.max(bytesRead + bytesToRead, (buffer != null) ? buffer.length * 2L : 0));
+                buffer = (buffer != null) ? Arrays.copyOf(buffer, newLength) : new byte[newLength];
+            }
+
+            this.dis.readFully(buffer, bytesRead, bytesToRead);
+            bytesRead += bytesToRead;
+        }
+        return buffer;
+    }
+
+    /**
+     * Copies as much of the current decompressed block into the read buffer as will fit.
+     */
+    private void writeDecompressedBlockToReadBuffer()
+    {
+        while (decompressedBlockPos < decompressedBlockLen)
+        {
+            int writeOffset = readBuffer.getWriteOffset();
+            int bytesToWrite = Math.min(readBuffer.getContiguousFreeSpace(), decompressedBlockLen - decompressedBlockPos);
+            if (bytesToWrite == 0)
+            {
+                return;
+            }
+
+            // As with socket reads the free region of the buffer is only written by this thread
+            System.arraycopy(decompressedBlockBuffer, decompressedBlockPos, readBuffer.getInternalBuffer(), writeOffset, bytesToWrite);
+            decompressedBlockPos += bytesToWrite;
+
+            this.readBuffer.incrementWriteOffset(bytesToWrite);
+            signalConsumerIfWaiting();
+        }
+    }
+
+    private void finishFetch()
+    {
+        String prefix = "RowServiceInputStream.finishFetch(), file "   + dataPart.getFileName() + "part " + dataPart.getThisPart() + " on IP " + getIP() + ":";
+        if (this.closed.get())
+        {
+            return;
+        }
+
+        //------------------------------------------------------------------------------
+        // Read token that represents the cursor for the end of this request
+        //------------------------------------------------------------------------------
+
+        try
+        {
+            if (dis==null) {
+                return;
+            }
+            int tokenLen = dis.readInt();
+            if (tokenLen == 0)
+            {
+                responseInProgress = false;
+                close();
+                return;
+            }
+
+            // The token is kept in the fetch history for restarts, so a new array is needed for each token
+            this.tokenBin = new byte[tokenLen];
+            dis.readFully(this.tokenBin,0,tokenLen);
+            responseInProgress = false;
+
+            recordFetchToken();
+        }
+        catch (IOException e)
+        {
+            setPrefetchException(new HpccFileException(prefix + "Error during finish request read block: " + e.getMessage(), e));
+            try
+            {
+                close();
+            }
+            catch(Exception ie){}
+        }
+
+        completeFetch();
+
+        //------------------------------------------------------------------------------
+        // Send read ahead request
+        //------------------------------------------------------------------------------
+
+        // When pipelining the next request has already been sent
+        if (inFetchingMode == false && numPendingReadRequests == 0)
+        {
+            if (readRequestDelayMS > 0)
+            {
+                try
+                {
+                    Thread.sleep(readRequestDelayMS);
+                }
+                catch (InterruptedException e)
+                {
+                    // We don't care about waking early
+                }
+            }
+
+            String readAheadRequest = makeReadAheadRequest();
+
+            try
+            {
+                int requestLen = readAheadRequest.length();
+                this.dos.writeInt(requestLen);
+                this.dos.write(readAheadRequest.getBytes(HPCCCharSet), 0, requestLen);
+                this.dos.flush();
+                onReadRequestSent();
+            }
+            catch (IOException e)
+            {
+                setPrefetchException(new HpccFileException(prefix + "Failure sending read ahead transaction:" + e.getMessage(), e));
+                try
+                {
+                    close();
+                }
+                catch(Exception ie){}
+            }
+        }
+    }
+
+    /**
+     * Records the stream position and token at the end of the current request so that reads can be restarted from it.
+     */
+    private void recordFetchToken()
+    {
+        this.streamPosOfFetchStart += streamDataInCurrentRequest;
+        fetchHistoryLock.lock();
+        try
+        {
+            if (streamPosOfFetches.size() >= FETCH_HISTORY_SIZE)
+            {
+                streamPosOfFetches.remove(0);
+                tokenBinOfFetches.remove(0);
+            }
+
+            streamPosOfFetches.add(this.streamPosOfFetchStart);
+            tokenBinOfFetches.add(this.tokenBin);
+        }
+        finally
+        {
+            fetchHistoryLock.unlock();
+        }
+    }
+
+    private void completeFetch()
+    {
+        finishReadRequestSpan();
+
+        // Responses received while waiting for buffer space queue up in the socket and do not reflect the throughput of the copy
+        if (useHedgedReads && producerStallTimeNS == hedgeStallTimeNSAtResponse)
+        {
+            hedgeNextRequest = hedgedReadController.onResponseComplete(totalDataInCurrentRequest, System.nanoTime() - fetchResponseStartNS);
+        }
+
+        // The first request includes connection setup and uses the initial read size, so it isn't representative
+        if (readSizeController != null)
+        {
+            if (isFirstReadRequest)
+            {
+                previousResponseEndNS = System.nanoTime();
+            }
+            else
+            {
+                updateReadSize();
+            }
+        }
+
+        // After we have read the first request allow another connection to start
+        if (isFirstReadRequest)
+        {
+            isFirstReadRequest = false;
+            connectionStartupCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Passes the completed request to the adaptive read size controller, and resizes the read buffer to match the new read size if enabled.
+     */
+    private void updateReadSize()
+    {
+        long responseEndNS = System.nanoTime();
+        long producerStallNS = producerStallTimeNS - producerStallTimeNSAtRequest;
+        long consumerStallNS = consumerStallTimeNS - consumerStallTimeNSAtRequest;
+
+        // A pipelined request waits behind the responses sent before it, only the idle time before its response is counted as round trip time
+        long requestSentNS = Math.max(fetchRequestSentNS, previousResponseEndNS);
+        previousResponseEndNS = responseEndNS;
+
+        if (readSizeController.onRequestComplete(requestSentNS, fetchResponseStartNS, responseEndNS,
+                                                 totalDataInCurrentRequest, producerStallNS, consumerStallNS) == false)
+        {
+            return;
+        }
+
+        log.debug("RowServiceInputStream: file part " + dataPart.getThisPart() + " read size changed from " + maxReadSizeKB + "KB to "
+                  + readSizeController.getReadSizeKB() + "KB, estimated bandwidth-delay product: " + readSizeController.getBandwidthDelayProduct() + " bytes");
+        this.maxReadSizeKB = readSizeController.getReadSizeKB();
+
+        if (adaptiveReadBufferSize)
+        {
+            // Leave room for two requests so the next response can be received while the current one is consumed
+            int targetBufferSize = (int) Math.min(CircularByteBuffer.MAX_BUFFER_SIZE, Math.max(minReadBufferSize, this.maxReadSizeKB * 2048L));
+
+            // Resizing is a producer operation, the consumer can continue reading from the previous buffer while it is replaced
+            if (targetBufferSize != readBuffer.getCapacity() && resizeReadBuffer(targetBufferSize, producerStallNS > 0))
+            {
+                numReadBufferResizes++;
+                prefetchResumeThreshold = Math.max(1, targetBufferSize / PREFETCH_RESUME_DIVISOR);
+            }
+        }
+    }
+
+    /**
+     * Resizes the read buffer within the read buffer memory budget. Producer only.
+     *
+     * @param targetBufferSize
+     *            the new buffer size
+     * @param isConsumerBound
+     *            true if the prefetch was paused on a full buffer during the last request
+     * @return true if the buffer was resized
+     */
+    private boolean resizeReadBuffer(int targetBufferSize, boolean isConsumerBound)
+    {
+        readBufferMemoryLock.lock();
+        try
+        {
+            if (readBufferMemoryManager == null)
+            {
+                if (readBuffer.resize(targetBufferSize) == false)
+                {
+                    return false;
+                }
+            }
+            else
+            {
+                if (isReadBufferMemoryReleased)
+                {
+                    return false;
+                }
+
+                int currentBufferSize = readBuffer.getCapacity();
+                int growth = targetBufferSize - currentBufferSize;
+                if (growth > 0)
+                {
+                    // A larger buffer doesn't help a slow consumer, the prefetch pauses instead of taking memory from other streams
+                    if (isConsumerBound || readBufferMemoryManager.tryGrow(growth) == false)
+                    {
+                        numReadBufferGrowthsDenied++;
+                        return false;
+                    }
+                }
+
+                if (readBuffer.resize(targetBufferSize) == false)
+                {
+                    if (growth > 0)
+                    {
+                        readBufferMemoryManager.release(growth);
+                    }
+                    return false;
+                }
+
+                if (growth < 0)
+                {
+                    readBufferMemoryManager.release(-growth);
+                }
+                reservedReadBufferBytes = targetBufferSize;
+            }
+
+            // The consumer may still be reading from the previous buffer, so it is left to the garbage collector
+            if (pooledReadBuffer != null)
+            {
+                BufferPool.getInstance().discard(pooledReadBuffer);
+                pooledReadBuffer = null;
+            }
+            return true;
+        }
+        finally
+        {
+            readBufferMemoryLock.unlock();
+        }
+    }
+
+    /**
+     * Called by the producer once all data has been received. The buffer is shrunk to the data the consumer has yet to
+     * read, so memory held by a stream that is no longer receiving data can be used by other streams.
+     */
+    private void shrinkReadBufferToContent()
+    {
+        // Shrinking only frees memory for other streams when the memory is budgeted
+        if (readBufferMemoryManager == null)
+        {
+            return;
+        }
+
+        int capacity = readBuffer.getCapacity();
+        int targetBufferSize = Math.max(1, readBuffer.getBytesAvailable());
+
+        // Not worth copying the remaining data for a small saving
+        if (targetBufferSize <= capacity / 2 && resizeReadBuffer(targetBufferSize, false))
+        {
+            numReadBufferResizes++;
+        }
+    }
+
+    /**
+     * Releases the memory reserved for the read buffer, once the consumer is done with it.
+     */
+    private void releaseReadBufferMemory()
+    {
+        if (readBufferMemoryManager == null)
+        {
+            return;
+        }
+
+        readBufferMemoryLock.lock();
+        try
+        {
+            if (isReadBufferMemoryReleased)
+            {
+                return;
+            }
+
+            isReadBufferMemoryReleased = true;
+            readBufferMemoryManager.release(reservedReadBufferBytes);
+            readBufferMemoryManager.recordStallTime(getReadBufferStallTimeNS());
+        }
+        finally
+        {
+            readBufferMemoryLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the read buffer to the buffer pool. Only called once the consumer has closed the stream and the producer has stopped.
+     */
+    private void releasePooledReadBuffer()
+    {
+        byte[] buffer = null;
+        readBufferMemoryLock.lock();
+        try
+        {
+            buffer = pooledReadBuffer;
+            pooledReadBuffer = null;
+        }
+        finally
+        {
+            readBufferMemoryLock.unlock();
+        }
+
+        if (buffer != null)
+        {
+            BufferPool.getInstance().release(buffer);
+        }
+    }
+
+    /**
+     * @return the time the prefetch was paused because the read buffer was full, excluding bandwidth waits
+     */
+    private long getReadBufferStallTimeNS()
+    {
+        return producerStallTimeNS - bandwidthWaitTimeNS;
+    }
+
+    /**
+     * Returns true if called from the thread receiving data for the stream.
+     */
+    private boolean isProducerThread()
+    {
+        MultiplexedReadEngine.Registration registration = this.multiplexedRegistration;
+        return Thread.currentThread() == this.prefetchThread || Thread.currentThread() == this.multiplexedCloseThread
+               || (registration != null && registration.isSelectorThread());
+    }
+
+    /**
+     * Sends read ahead requests until the max number of outstanding requests is reached. The row service answers the requests
+     * on a connection in order, so continuation requests sent while a response is being received return the following blocks of the file.
+     * Token requests start a new stream from the token of the last completed request, so are not pipelined.
+     */
+    private void sendPipelinedReadRequests() throws IOException
+    {
+        while (!this.forceTokenUse && numPendingReadRequests < maxOutstandingReadRequests - 1)
+        {
+            String readAheadRequest = makeReadAheadRequest();
+            int requestLen = readAheadRequest.length();
+            this.dos.writeInt(requestLen);
+            this.dos.write(readAheadRequest.getBytes(HPCCCharSet), 0, requestLen);
+            this.dos.flush();
+            onReadRequestSent();
+        }
+    }
+
+    /**
+     * Must be called after each read request is sent, tracks the requests awaiting a response.
+     */
+    private void onReadRequestSent()
+    {
+        numPendingReadRequests++;
+        if (readSizeController != null)
+        {
+            pendingReadRequestTimes.add(new long[] {System.nanoTime(), producerStallTimeNS, consumerStallTimeNS});
+        }
+
+        if (useHedgedReads)
+        {
+            hedgeRequestSentNS = System.nanoTime();
+            hedgeStallTimeNSAtRequest = producerStallTimeNS;
+        }
+    }
+
+    /**
+     * Must be called once the start of each read response has been read, matches the response to the oldest pending request.
+     */
+    private void onReadResponseStarted()
+    {
+        if (numPendingReadRequests > 0)
+        {
+            numPendingReadRequests--;
+        }
+
+        long[] requestTimes = pendingReadRequestTimes.poll();
+        if (requestTimes != null)
+        {
+            fetchRequestSentNS = requestTimes[0];
+            producerStallTimeNSAtRequest = requestTimes[1];
+            consumerStallTimeNSAtRequest = requestTimes[2];
+        }
+
+        if (useHedgedReads)
+        {
+            hedgedReadController.onResponseStarted(getHedgeRequestElapsedNS());
+            hedgeStallTimeNSAtResponse = producerStallTimeNS;
+        }
+    }
+
+    /**
+     * The time since the outstanding request was sent, excluding time the prefetch side spent waiting for read buffer space,
+     * as the start of the response may have arrived while it was waiting.
+     */
+    private long getHedgeRequestElapsedNS()
+    {
+        return System.nanoTime() - hedgeRequestSentNS - (producerStallTimeNS - hedgeStallTimeNSAtRequest);
+    }
+
+    private String makeReadAheadRequest()
+    {
+        startNewReadRequestSpan();
+
+        if (this.simulateFail) this.handle = -1;
+        return (this.forceTokenUse) ? this.makeTokenRequest(readRequestSpan) : this.makeHandleRequest(readRequestSpan);
+    }
+
+    public void prefetchData()
+    {
+        // If we haven't finished reading the current request continue reading it
+        if (hasRemainingDataInCurrentRequest())
+        {
+            if (CompileTimeConstants.PROFILE_CODE)
+            {
+                long nsFetching = System.nanoTime();
+                readDataInFetch();
+                nsFetching = System.nanoTime() - nsFetching;
+                fetchTimeNS += nsFetching;
+            }
+            else
+            {
+                readDataInFetch();
+            }
+
+            if (hasRemainingDataInCurrentRequest() == false)
+            {
+                if (CompileTimeConstants.PROFILE_CODE)
+                {
+                    long nsFinishFetch = System.nanoTime();
+                    finishFetch();
+                    nsFinishFetch = System.nanoTime() - nsFinishFetch;
+                    fetchFinishTimeNS += nsFinishFetch;
+                }
+                else
+                {
+                    finishFetch();
+                }
+            }
+        }
+        // Otherwise start a new request
+        else
+        {
+            if (CompileTimeConstants.PROFILE_CODE)
+            {
+                long nsStartFetch = System.nanoTime();
+                totalDataInCurrentRequest = startFetch();
+                remainingDataInCurrentRequest = totalDataInCurrentRequest;
+                nsStartFetch = System.nanoTime() - nsStartFetch;
+                fetchStartTimeNS += nsStartFetch;
+            }
+            else
+            {
+                totalDataInCurrentRequest = startFetch();
+                remainingDataInCurrentRequest = totalDataInCurrentRequest;
+            }
+
+            if (CompileTimeConstants.PROFILE_CODE)
+            {
+                long nsFetching = System.nanoTime();
                 readDataInFetch();
+                nsFetching = System.nanoTime() - nsFetching;
+                fetchTimeNS += nsFetching;
+
+                // If this is the first fetch. numFetches gets incremented at the start of a fetch
+                if (numFetches == 1 && firstByteTimeNS > 0)
+                {
+                    firstByteTimeNS = System.nanoTime() - firstByteTimeNS;
+                }
+            }
+            else
+            {
+                readDataInFetch();
+            }
+
+            if (hasRemainingDataInCurrentRequest() == false)
+            {
+                if (CompileTimeConstants.PROFILE_CODE)
+                {
+                    long nsFinishFetch = System.nanoTime();
+                    finishFetch();
+                    nsFinishFetch = System.nanoTime() - nsFinishFetch;
+                    fetchFinishTimeNS += nsFinishFetch;
+                }
+                else
+                {
+                    finishFetch();
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers this stream with the multiplexed read engine, which reads the response to the initial request sent by makeActive.
+     */
+    private void startMultiplexedReads() throws HpccFileException
+    {
+        numFetches++;
+        multiplexedLastIOTimeNS = System.nanoTime();
+        try
+        {
+            multiplexedRegistration = MultiplexedReadEngine.getInstance().register(this, sock.getChannel());
+        }
+        catch (IOException e)
+        {
+            HpccFileException wrappedException = new HpccFileException(getMultiplexedPrefix() + "Unable to register with multiplexed read engine: " + e.getMessage(), e);
+            setPrefetchException(wrappedException);
+            try
+            {
+                close();
+            }
+            catch(Exception ie){}
+
+            throw wrappedException;
+        }
+    }
+
+    private String getMultiplexedPrefix()
+    {
+        return "RowServiceInputStream.processMultiplexedIO(), file " + dataPart.getFileName() + " part " + dataPart.getThisPart() + " on IP " + getIP() + ":";
+    }
+
+    /**
+     * Advances the non-blocking response parser as far as the data available on the channel allows.
+     * Called from a MultiplexedReadEngine selector thread, this is the non-blocking equivalent of startFetch, readDataInFetch and finishFetch.
+     *
+     * @param channel
+     *            the non-blocking channel for this stream
+     * @return the interest ops to wait for, 0 when paused waiting for read buffer space, or -1 once the stream is finished
+     */
+    int processMultiplexedIO(SocketChannel channel)
+    {
+        if (this.closed.get())
+        {
+            return -1;
+        }
+
+        if (multiplexedPaused)
+        {
+            multiplexedPaused = false;
+
+            long now = System.nanoTime();
+            sleepTimeNS += now - multiplexedLastIOTimeNS;
+            producerStallTimeNS += now - multiplexedLastIOTimeNS;
+            multiplexedLastIOTimeNS = now;
+        }
+
+        try
+        {
+            while (true)
+            {
+                if (multiplexedWriteBuffer != null)
+                {
+                    channel.write(multiplexedWriteBuffer);
+                    if (multiplexedWriteBuffer.hasRemaining())
+                    {
+                        return SelectionKey.OP_WRITE;
+                    }
+
+                    multiplexedWriteBuffer = null;
+                    multiplexedLastIOTimeNS = System.nanoTime();
+                }
+
+                if (multiplexedReadState == MUX_STATE_DATA)
+                {
+                    if (readBuffer.hasFreeSpace() == false && pauseForReadBufferSpace())
+                    {
+                        // Stop reading until the consumer frees space, see signalProducerIfWaiting
+                        return 0;
+                    }
+
+                    int writeOffset = readBuffer.getWriteOffset();
+                    int bytesToRead = Math.min(readBuffer.getContiguousFreeSpace(), remainingDataInCurrentRequest);
+
+                    byte[] internalBuffer = readBuffer.getInternalBuffer();
+                    if (multiplexedReadBufferView == null || multiplexedReadBufferView.array() != internalBuffer)
+                    {
+                        multiplexedReadBufferView = ByteBuffer.wrap(internalBuffer);
+                    }
+
+                    // As with the prefetch thread, the free region of the buffer is only written from this side
+                    multiplexedReadBufferView.clear();
+                    multiplexedReadBufferView.position(writeOffset);
+                    multiplexedReadBufferView.limit(writeOffset + bytesToRead);
+
+                    int bytesRead = channel.read(multiplexedReadBufferView);
+                    if (bytesRead < 0)
+                    {
+                        throw new IOException("Connection closed by remote host mid fetch, " + remainingDataInCurrentRequest + " bytes remaining in request");
+                    }
+                    else if (bytesRead == 0)
+                    {
+                        return SelectionKey.OP_READ;
+                    }
+                    multiplexedLastIOTimeNS = System.nanoTime();
+
+                    this.readBuffer.incrementWriteOffset(bytesRead);
+                    signalConsumerIfWaiting();
+
+                    remainingDataInCurrentRequest -= bytesRead;
+                    compressedBytesRead += bytesRead;
+                    uncompressedBytesRead += bytesRead;
+
+                    if (remainingDataInCurrentRequest == 0)
+                    {
+                        multiplexedReadState = MUX_STATE_TOKEN_LEN;
+                    }
+                }
+                else if (multiplexedReadState == MUX_STATE_ERROR_MESSAGE || multiplexedReadState == MUX_STATE_TOKEN)
+                {
+                    if (readMultiplexedBytes(channel, multiplexedPayloadBuffer) == false)
+                    {
+                        return SelectionKey.OP_READ;
+                    }
+
+                    if (multiplexedReadState == MUX_STATE_ERROR_MESSAGE)
+                    {
+                        failMultiplexedIO(makeErrorMessage(multiplexedErrorCode, multiplexedPayloadBuffer.array()), null);
+                        return -1;
+                    }
+
+                    // Read the token that represents the cursor for the end of this request, then send the read ahead request
+                    multiplexedPayloadBuffer = null;
+                    recordFetchToken();
+                    completeFetch();
+
+                    // When pipelining the next request has already been queued
+                    if (numPendingReadRequests == 0)
+                    {
+                        queueMultiplexedRequest(makeReadAheadRequest());
+                        numFetches++;
+                    }
+                    multiplexedReadState = MUX_STATE_RESPONSE_LEN;
+                }
+                else
+                {
+                    if (readMultiplexedBytes(channel, multiplexedIntBuffer) == false)
+                    {
+                        return SelectionKey.OP_READ;
+                    }
+
+                    int value = multiplexedIntBuffer.getInt(0);
+                    multiplexedIntBuffer.clear();
+
+                    if (handleMultiplexedInt(value) == false)
+                    {
+                        return -1;
+                    }
+                }
             }
+        }
+        catch (IOException e)
+        {
+            failMultiplexedIO("Error during read block:" + e.getMessage(), e);
+            return -1;
+        }
+    }
+
+    /**
+     * Handles an integer field of a response.
+     *
+     * @return false once the stream is finished, either because the end of the file was reached or an error occurred
+     */
+    private boolean handleMultiplexedInt(int value)
+    {
+        switch (multiplexedReadState)
+        {
+            case MUX_STATE_RESPONSE_LEN:
+            {
+                onReadResponseStarted();
+                multiplexedResponseLen = value & 0x7FFFFFFF;
+
+                // A zero length response indicates we have finished reading the file
+                if (multiplexedResponseLen == 0)
+                {
+                    return false;
+                }
 
-            if (remainingDataInCurrentRequest == 0)
+                multiplexedReadState = MUX_STATE_ERROR_CODE;
+                return true;
+            }
+            case MUX_STATE_ERROR_CODE:
             {
-                if (CompileTimeConstants.PROFILE_CODE)
+                multiplexedErrorCode = value;
+                multiplexedResponseLen -= 4;
+
+                if (multiplexedErrorCode != RFCCodes.RFCStreamNoError)
                 {
-                    long nsFinishFetch = System.nanoTime();
-                    finishFetch();
-                    nsFinishFetch = System.nanoTime() - nsFinishFetch;
-                    fetchFinishTimeNS += nsFinishFetch;
+                    if (multiplexedResponseLen > 0)
+                    {
+                        multiplexedPayloadBuffer = ByteBuffer.allocate(multiplexedResponseLen);
+                        multiplexedReadState = MUX_STATE_ERROR_MESSAGE;
+                        return true;
+                    }
+
+                    failMultiplexedIO(makeErrorMessage(multiplexedErrorCode, null), null);
+                    return false;
                 }
-                else
+
+                if (multiplexedResponseLen < 4)
                 {
-                    finishFetch();
+                    failMultiplexedIO("Early data termination, no handle. response length < 4", null);
+                    return false;
                 }
+
+                multiplexedReadState = MUX_STATE_HANDLE;
+                return true;
             }
-        }
-        // Otherwise start a new request
-        else
-        {
-            if (CompileTimeConstants.PROFILE_CODE)
+            case MUX_STATE_HANDLE:
             {
-                long nsStartFetch = System.nanoTime();
-                totalDataInCurrentRequest = startFetch();
-                remainingDataInCurrentRequest = totalDataInCurrentRequest;
-                nsStartFetch = System.nanoTime() - nsStartFetch;
-                fetchStartTimeNS += nsStartFetch;
+                // Retry with the token if handle is invalid
+                this.handle = value;
+                if (this.handle <= 0 && !multiplexedInTokenRetry && numPendingReadRequests > 0)
+                {
+                    // Pipelined requests sent after this one used the same handle, skip their responses before retrying with the token
+                    multiplexedReadState = MUX_STATE_RESPONSE_LEN;
+                    return true;
+                }
+                else if (this.handle <= 0 && !multiplexedInTokenRetry)
+                {
+                    multiplexedInTokenRetry = true;
+                    queueMultiplexedRequest(this.makeTokenRequest(readRequestSpan));
+                    multiplexedReadState = MUX_STATE_RESPONSE_LEN;
+                    return true;
+                }
+                else if (this.handle == 0)
+                {
+                    failMultiplexedIO("response.handle was null, Read retry failed", null);
+                    return false;
+                }
+
+                multiplexedInTokenRetry = false;
+                multiplexedReadState = MUX_STATE_DATA_LEN;
+                return true;
             }
-            else
+            case MUX_STATE_DATA_LEN:
             {
-                totalDataInCurrentRequest = startFetch();
-                remainingDataInCurrentRequest = totalDataInCurrentRequest;
-            }
+                if (value < 0)
+                {
+                    failMultiplexedIO("Invalid response data length: " + value, null);
+                    return false;
+                }
 
-            if (CompileTimeConstants.PROFILE_CODE)
-            {
-                long nsFetching = System.nanoTime();
-                readDataInFetch();
-                nsFetching = System.nanoTime() - nsFetching;
-                fetchTimeNS += nsFetching;
+                totalDataInCurrentRequest = value;
+                remainingDataInCurrentRequest = value;
+                streamDataInCurrentRequest = value;
+                fetchResponseStartNS = System.nanoTime();
 
-                // If this is the first fetch. numFetches gets incremented at the start of a fetch
-                if (numFetches == 1 && firstByteTimeNS > 0)
+                if (CompileTimeConstants.PROFILE_CODE && numFetches == 1 && firstByteTimeNS > 0)
                 {
                     firstByteTimeNS = System.nanoTime() - firstByteTimeNS;
                 }
+
+                // An empty response is followed by a trailing int before the end of the file
+                multiplexedReadState = (value == 0) ? MUX_STATE_EMPTY_REPLY_TRAILER : MUX_STATE_DATA;
+
+                while (value > 0 && !this.forceTokenUse && numPendingReadRequests < maxOutstandingReadRequests - 1)
+                {
+                    queueMultiplexedRequest(makeReadAheadRequest());
+                    numFetches++;
+                }
+                return true;
             }
-            else
+            case MUX_STATE_EMPTY_REPLY_TRAILER:
             {
-                readDataInFetch();
+                return false;
             }
+            case MUX_STATE_TOKEN_LEN:
+            {
+                if (value == 0)
+                {
+                    return false;
+                }
+                else if (value < 0)
+                {
+                    failMultiplexedIO("Invalid token length: " + value, null);
+                    return false;
+                }
 
-            if (remainingDataInCurrentRequest == 0)
+                // The token is kept in the fetch history for restarts, so a new array is needed for each token
+                this.tokenBin = new byte[value];
+                multiplexedPayloadBuffer = ByteBuffer.wrap(this.tokenBin);
+                multiplexedReadState = MUX_STATE_TOKEN;
+                return true;
+            }
+            default:
             {
-                if (CompileTimeConstants.PROFILE_CODE)
+                failMultiplexedIO("Unexpected multiplexed read state: " + multiplexedReadState, null);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Reads from the channel into the remaining space of the provided buffer.
+     *
+     * @return true once the buffer has been filled
+     */
+    private boolean readMultiplexedBytes(SocketChannel channel, ByteBuffer buffer) throws IOException
+    {
+        int bytesRead = channel.read(buffer);
+        if (bytesRead < 0)
+        {
+            throw new IOException("Connection closed by remote host while reading response");
+        }
+        else if (bytesRead > 0)
+        {
+            multiplexedLastIOTimeNS = System.nanoTime();
+        }
+
+        return buffer.hasRemaining() == false;
+    }
+
+    private void queueMultiplexedRequest(String request)
+    {
+        int requestLen = request.length();
+        int queuedLen = (multiplexedWriteBuffer != null) ? multiplexedWriteBuffer.remaining() : 0;
+
+        // Pipelined requests can be queued before the previous request has been fully written
+        ByteBuffer requestBuffer = ByteBuffer.allocate(queuedLen + 4 + requestLen);
+        if (queuedLen > 0)
+        {
+            requestBuffer.put(multiplexedWriteBuffer);
+        }
+        requestBuffer.putInt(requestLen);
+        requestBuffer.put(request.getBytes(HPCCCharSet), 0, requestLen);
+        requestBuffer.flip();
+
+        multiplexedWriteBuffer = requestBuffer;
+        onReadRequestSent();
+    }
+
+    /**
+     * Returns true if the stream has been waiting on the row service for longer than the socket operation timeout.
+     * Time spent paused waiting for read buffer space is not counted.
+     */
+    boolean hasMultiplexedIOTimedOut(long nowNS)
+    {
+        return multiplexedPaused == false && (nowNS - multiplexedLastIOTimeNS) > socketOpTimeoutMs * 1000000L;
+    }
+
+    void failMultiplexedIO(String message, Exception cause)
+    {
+        setPrefetchException(new HpccFileException(getMultiplexedPrefix() + message, cause));
+    }
+
+    /**
+     * Closes the stream once the multiplexed read engine has finished reading it, at the end of the file or on failure.
+     * Called from the engine's close thread, which closes the stream on behalf of the producer, so the blocking close request
+     * does not stall the other streams on the selector thread.
+     *
+     * @throws IOException
+     *             Signals that an I/O exception has occurred.
+     */
+    void closeFinishedMultiplexedStream() throws IOException
+    {
+        this.multiplexedCloseThread = Thread.currentThread();
+        close();
+    }
+
+    /**
+     * Is this stream being read by the multiplexed read engine?
+     *
+     * @return true if this stream is read by the multiplexed read engine rather than a prefetch thread
+     */
+    public boolean isUsingMultiplexedReads()
+    {
+        return useMultiplexedReads;
+    }
+
+    /**
+     * Returns true if the prefetch thread should keep waiting for buffer space. Can be called without holding readBufferLock.
+     * The prefetch thread resumes once enough space has been freed, or immediately if the consumer is starved for data.
+     */
+    private boolean shouldWaitForReadBufferSpace()
+    {
+        int freeSpace = readBuffer.getFreeSpace();
+        if (freeSpace == 0)
+        {
+            return true;
+        }
+
+        return freeSpace < prefetchResumeThreshold && consumerWaiting == false;
+    }
+
+    /**
+     * Blocks the prefetch thread until the consumer has freed space in the read buffer or the stream has been closed.
+     * Time spent waiting is reported as the prefetch sleep time.
+     */
+    private void waitForReadBufferSpace()
+    {
+        long waitTime = 0;
+        if (CompileTimeConstants.PROFILE_CODE)
+        {
+            waitTime = System.nanoTime();
+        }
+
+        readBufferLock.lock();
+        try
+        {
+            if (readBuffer.hasFreeSpace() == false)
+            {
+                // Always tracked as the adaptive read size controller uses it to detect when the consumer is the bottleneck
+                long stallStartNS = System.nanoTime();
+                producerWaiting = true;
+                try
                 {
-                    long nsFinishFetch = System.nanoTime();
-                    finishFetch();
-                    nsFinishFetch = System.nanoTime() - nsFinishFetch;
-                    fetchFinishTimeNS += nsFinishFetch;
+                    while (this.closed.get() == false && shouldWaitForReadBufferSpace())
+                    {
+                        try
+                        {
+                            readBufferSpaceAvailable.await();
+                        }
+                        catch(InterruptedException e) {/*We don't care about waking early*/}
+                    }
                 }
-                else
+                finally
                 {
-                    finishFetch();
+                    producerWaiting = false;
+                    producerStallTimeNS += System.nanoTime() - stallStartNS;
+                }
+            }
+        }
+        finally
+        {
+            readBufferLock.unlock();
+        }
+
+        if (CompileTimeConstants.PROFILE_CODE)
+        {
+            waitTime = System.nanoTime() - waitTime;
+            sleepTimeNS += waitTime;
+        }
+    }
+
+    /**
+     * Blocks the consuming thread until data is available in the read buffer.
+     * Briefly hot loops as data is often only moments away, and then waits to be signalled by the prefetch side.
+     *
+     * @return the number of bytes available
+     * @throws IOException when the stream has been closed and no more data is available
+     */
+    private int waitForAvailableData() throws IOException
+    {
+        int available = this.available();
+        if (available > 0)
+        {
+            return available;
+        }
+
+        long waitNS = System.nanoTime();
+        try
+        {
+            while ((available = this.available()) < 1)
+            {
+                if (System.nanoTime() - waitNS < MAX_HOT_LOOP_NS)
+                {
+                    continue;
+                }
+
+                // The flag is set before checking the buffer, see signalConsumerIfWaiting
+                readBufferLock.lock();
+                consumerWaiting = true;
+                try
+                {
+                    if (readBuffer.getBytesAvailable() == 0 && this.closed.get() == false)
+                    {
+                        // The prefetch thread may be waiting on a partially free buffer, let it know we are starved
+                        if (producerWaiting)
+                        {
+                            wakeProducer();
+                        }
+
+                        try
+                        {
+                            readBufferDataAvailable.await();
+                        }
+                        catch(InterruptedException e) {/*We don't care about waking early*/}
+                    }
+                }
+                finally
+                {
+                    consumerWaiting = false;
+                    readBufferLock.unlock();
                 }
             }
         }
+        catch (IOException e)
+        {
+            // waitNS in this case is the time it took for the stream to close
+            if (CompileTimeConstants.PROFILE_CODE)
+            {
+                closeTimeNS = System.nanoTime() - waitNS;
+            }
+            throw e;
+        }
+
+        // Only written from the consuming thread
+        waitNS = System.nanoTime() - waitNS;
+        consumerStallTimeNS += waitNS;
+
+        if (CompileTimeConstants.PROFILE_CODE)
+        {
+            waitTimeNS += waitNS;
+
+            float timeUS = waitNS / 1000.0f;
+            if (timeUS >= LONG_WAIT_THRESHOLD_US)
+            {
+                numLongWaits++;
+            }
+        }
+
+        return available;
+    }
+
+    /**
+     * Wakes up any thread waiting on the read buffer. Used when the state of the stream changes, IE: closed or failed.
+     */
+    private void signalReadBufferWaiters()
+    {
+        readBufferLock.lock();
+        try
+        {
+            readBufferDataAvailable.signalAll();
+            readBufferSpaceAvailable.signalAll();
+        }
+        finally
+        {
+            readBufferLock.unlock();
+        }
+    }
+
+    /**
+     * Signals the producing side if it is waiting and enough free space is available. Called by the consumer after freeing space.
+     *
+     * The consumer releases space with ordered rather than volatile writes, so a producer that starts waiting at the same moment
+     * may not be seen here. In that case the producer is woken by the next read, or when the consumer runs out of data.
+     */
+    private void signalProducerIfWaiting()
+    {
+        // Checked without the lock first as this is called after every read
+        if (producerWaiting == false || shouldWaitForReadBufferSpace())
+        {
+            return;
+        }
+
+        readBufferLock.lock();
+        try
+        {
+            if (producerWaiting && shouldWaitForReadBufferSpace() == false)
+            {
+                wakeProducer();
+            }
+        }
+        finally
+        {
+            readBufferLock.unlock();
+        }
+    }
+
+    /**
+     * Signals the consumer if it is waiting for data. Called by the producing side after writing to the read buffer.
+     */
+    private void signalConsumerIfWaiting()
+    {
+        // The consumer sets the flag before its final check of the buffer and holds the lock until it waits, so checking
+        // the flag after the write cursor has been published can't miss it
+        if (consumerWaiting)
+        {
+            readBufferLock.lock();
+            try
+            {
+                readBufferDataAvailable.signalAll();
+            }
+            finally
+            {
+                readBufferLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Pauses the multiplexed stream until the consumer frees space in the read buffer.
+     *
+     * @return true if the stream was paused, false if space became available
+     */
+    private boolean pauseForReadBufferSpace()
+    {
+        readBufferLock.lock();
+        try
+        {
+            // Set before checking the buffer again, so either the consumer sees the flag or this sees the freed space
+            producerWaiting = true;
+            if (readBuffer.hasFreeSpace() == false)
+            {
+                multiplexedPaused = true;
+                multiplexedLastIOTimeNS = System.nanoTime();
+                return true;
+            }
+
+            producerWaiting = false;
+            return false;
+        }
+        finally
+        {
+            readBufferLock.unlock();
+        }
+    }
+
+    /**
+     * Wakes the producing side of the stream. Must be called while holding readBufferLock.
+     * A stream read by the multiplexed engine is paused rather than blocked, so it is handed back to its selector thread.
+     */
+    private void wakeProducer()
+    {
+        if (multiplexedRegistration != null)
+        {
+            producerWaiting = false;
+            multiplexedRegistration.resume();
+        }
+        else
+        {
+            readBufferSpaceAvailable.signalAll();
+        }
     }
 
     /*
@@ -1487,21 +3224,20 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     @Override
     public int available() throws IOException
     {
-        int availBytes = 0;
-        synchronized (readBuffer)
-        {
-            availBytes = readBuffer.getBytesAvailable();
-        }
+        int availBytes = readBuffer.getBytesAvailable();
 
         if (this.closed.get())
         {
             if (this.prefetchException != null)
             {
+                releaseReadBufferMemory();
                 throw new IOException("Prefetch thread exited early exception:" + prefetchException.getMessage(), this.prefetchException);
             }
             
             if (availBytes == 0)
             {
+                releaseReadBufferMemory();
+
                 String prefix = "RowServiceInputStream.available(), file "   + dataPart.getFileName() + " part " + dataPart.getThisPart() + " on IP " + getIP() + ":";
 
                 IOException wrappedException = new IOException(prefix + "End of input stream, streamPos: " + streamPos);
@@ -1527,10 +3263,26 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             connectionStartupCount.decrementAndGet();
         }
 
+        // Already closed by the producer at the end of the file, the consumer is now done with the remaining data
+        if (this.closed.get() && isProducerThread() == false)
+        {
+            releaseReadBufferMemory();
+            releasePooledReadBuffer();
+        }
+
         // Using getAndSet to prevent main thread and background thread from
         // closing at the same time
         if (this.closed.getAndSet(true) == false)
         {
+            // Wake up the prefetch thread if it is waiting on buffer space, and any waiting consumer
+            signalReadBufferWaiters();
+
+            // Remove the stream from the multiplexed engine, this switches the channel back to blocking mode for the close request
+            if (this.multiplexedRegistration != null)
+            {
+                this.multiplexedRegistration.cancel();
+            }
+
             // If close was not called from the prefetch thread wait for it to finish
             if (this.prefetchThread != null && Thread.currentThread() != this.prefetchThread)
             {
@@ -1542,15 +3294,40 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             }
 
             finishReadRequestSpan();
+            releaseAdmission();
+
+            // The consumer may still be reading the remaining data when the producer closes the stream at the end of the file
+            if (isProducerThread() && this.prefetchException == null && readBuffer.getBytesAvailable() > 0)
+            {
+                shrinkReadBufferToContent();
+            }
+            else
+            {
+                releaseReadBufferMemory();
+            }
+
+            // A prefetch thread that didn't stop may still write to the buffer
+            if (isProducerThread() == false && (this.prefetchThread == null || this.prefetchThread.isAlive() == false))
+            {
+                releasePooledReadBuffer();
+            }
 
-            this.sendCloseFileRequest();
+            boolean isConnectionIdle = this.sendCloseFileRequest();
 
-            this.dos.close();
-            if (this.dis != null)
+            // Closing the data streams would close the socket, a reusable connection is returned to the pool instead
+            if (useConnectionPool && isConnectionIdle && this.prefetchException == null)
+            {
+                RowServiceConnectionPool.getInstance().release(getIP(), dataPart.getPort(), getUseSSL(), this.sock);
+            }
+            else
             {
-                this.dis.close();
+                this.dos.close();
+                if (this.dis != null)
+                {
+                    this.dis.close();
+                }
+                this.sock.close();
             }
-            this.sock.close();
             this.dos = null;
             this.dis = null;
             this.sock = null;
@@ -1566,10 +3343,8 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     public void mark(int readLim)
     {
         this.streamMarkPos = this.streamPos;
-        synchronized (readBuffer)
-        {
-            this.readBuffer.mark(readLim);
-        }
+        this.readBuffer.mark(readLim);
+        signalProducerIfWaiting();
     }
 
     /*
@@ -1597,66 +3372,22 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             throw new IOException(this.prefetchException.getMessage(),this.prefetchException);
         }
 
-        // We are waiting on a single byte so hot loop
-        long waitNS = System.nanoTime();
         try
         {
-            while (this.available() < 1)
-            {
-                long currentWaitNS = System.nanoTime() - waitNS;
-                if (currentWaitNS >= MAX_HOT_LOOP_NS)
-                {
-                    try
-                    {
-                        if (CompileTimeConstants.PROFILE_CODE)
-                        {
-                            long sleepTime = System.nanoTime();
-                            Thread.sleep(SHORT_SLEEP_MS);
-                            sleepTime = System.nanoTime() - sleepTime;
-                            sleepTimeNS += sleepTime;
-                        }
-                        else
-                        {
-                            Thread.sleep(SHORT_SLEEP_MS);
-                        }
-                    }
-                    catch(InterruptedException e) {/*We don't care about waking early*/}
-                }
-            }
-
-            if (CompileTimeConstants.PROFILE_CODE)
-            {
-                waitNS = System.nanoTime() - waitNS;
-                waitTimeNS += waitNS;
-
-                float timeUS = waitNS / 1000.0f;
-                if (timeUS >= LONG_WAIT_THRESHOLD_US)
-                {
-                    numLongWaits++;
-                }
-            }
+            waitForAvailableData();
         }
         catch (IOException e)
         {
-            // waitNS in this case is the time it took for the stream to close
-            if (CompileTimeConstants.PROFILE_CODE)
-            {
-                closeTimeNS = System.nanoTime() - waitNS;
-            }
-
             // Read failed due to EOS. Other side closed socket
             return -1;
         }
 
-        int b = 0;
-        synchronized (readBuffer)
+        int b = readBuffer.read();
+        if (b == -1)
         {
-            b = readBuffer.read();
-            if (b == -1)
-            {
-                throw new IOException("Error reading byte from buffer, another thread may have read the byte.");
-            }
+            throw new IOException("Error reading byte from buffer, another thread may have read the byte.");
         }
+        signalProducerIfWaiting();
         this.streamPos++;
 
         return b;
@@ -1688,10 +3419,16 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             throw new IOException(this.prefetchException.getMessage(),prefetchException);
         }
 
+        if (len == 0)
+        {
+            return 0;
+        }
+
+        // Block until at least some data is available, per the InputStream contract
         int available = 0;
         try
         {
-            available = this.available();
+            available = waitForAvailableData();
         }
         catch (IOException e)
         {
@@ -1706,15 +3443,50 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         }
         numBlockReads++;
 
-        synchronized (readBuffer)
-        {
-            bytesToRead = readBuffer.read(b, off, bytesToRead);
-        }
+        bytesToRead = readBuffer.read(b, off, bytesToRead);
+        signalProducerIfWaiting();
         this.streamPos += bytesToRead;
 
         return bytesToRead;
     }
 
+    /*
+     * (non-Javadoc)
+     *
+     * @see org.hpccsystems.dfs.client.IByteBufferInputStream#getReadableByteBuffer(int)
+     */
+    @Override
+    public ByteBuffer getReadableByteBuffer(int maxLength) throws IOException
+    {
+        if (this.prefetchException != null)
+        {
+            throw new IOException(this.prefetchException.getMessage(),prefetchException);
+        }
+
+        try
+        {
+            waitForAvailableData();
+        }
+        catch (IOException e)
+        {
+            return null;
+        }
+
+        // The bytes from the read offset up to the contiguous limit are owned by the consumer until they are skipped
+        int length = Math.min(readBuffer.getContiguousBytesAvailable(), maxLength);
+        byte[] readableBuffer = readBuffer.getReadableBuffer();
+        if (readableByteBufferView == null || readableByteBufferView.array() != readableBuffer)
+        {
+            readableByteBufferView = ByteBuffer.wrap(readableBuffer);
+        }
+
+        int offset = readBuffer.getReadOffset();
+        readableByteBufferView.clear();
+        readableByteBufferView.position(offset);
+        readableByteBufferView.limit(offset + length);
+        return readableByteBufferView;
+    }
+
     /*
      * (non-Javadoc)
      *
@@ -1729,10 +3501,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         }
 
         this.streamPos = this.streamMarkPos;
-        synchronized (readBuffer)
-        {
-            this.readBuffer.reset();
-        }
+        this.readBuffer.reset();
     }
 
     /*
@@ -1755,7 +3524,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             int available = 0;
             try
             {
-                available = this.available();
+                available = waitForAvailableData();
             }
             catch (IOException e)
             {
@@ -1763,10 +3532,8 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             }
 
             int bytesToSkip = Math.min((int) remainingBytesToSkip, available);
-            synchronized (readBuffer)
-            {
-                bytesToSkip = readBuffer.skip(bytesToSkip);
-            }
+            bytesToSkip = readBuffer.skip(bytesToSkip);
+            signalProducerIfWaiting();
             remainingBytesToSkip -= bytesToSkip;
         }
 
@@ -1781,6 +3548,8 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     {
         ArrayList<IMetric> metrics = new ArrayList<IMetric>();
         metrics.add(new SimpleMetric((double) this.streamPos,BYTES_READ_METRIC,new Units(Units.Type.BYTES)));
+        metrics.add(new SimpleMetric((double) this.compressedBytesRead,COMPRESSED_BYTES_READ_METRIC,new Units(Units.Type.BYTES)));
+        metrics.add(new SimpleMetric((double) this.uncompressedBytesRead,UNCOMPRESSED_BYTES_READ_METRIC,new Units(Units.Type.BYTES)));
         metrics.add(new SimpleMetric((double) this.firstByteTimeNS,FIRST_BYTE_TIME_METRIC,new Units(Units.Type.SECONDS,Units.Scale.NANO)));
         metrics.add(new SimpleMetric((double) this.waitTimeNS,WAIT_TIME_METRIC,new Units(Units.Type.SECONDS,Units.Scale.NANO)));
         metrics.add(new SimpleMetric((double) this.sleepTimeNS,SLEEP_TIME_METRIC,new Units(Units.Type.SECONDS,Units.Scale.NANO)));
@@ -1794,11 +3563,197 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         metrics.add(new SimpleMetric((double) this.numPartialBlockReads,PARTIAL_BLOCK_READS_METRIC,new Units(Units.Type.COUNT)));
         metrics.add(new SimpleMetric((double) this.numBlockReads,BLOCK_READS_METRIC,new Units(Units.Type.COUNT)));
 
+        if (readSizeController != null)
+        {
+            metrics.add(new SimpleMetric((double) this.maxReadSizeKB * 1024,ADAPTIVE_READ_SIZE_METRIC,new Units(Units.Type.BYTES)));
+            metrics.add(new SimpleMetric((double) readSizeController.getNumIncreases(),READ_SIZE_INCREASES_METRIC,new Units(Units.Type.COUNT)));
+            metrics.add(new SimpleMetric((double) readSizeController.getNumDecreases(),READ_SIZE_DECREASES_METRIC,new Units(Units.Type.COUNT)));
+            metrics.add(new SimpleMetric((double) readSizeController.getBandwidthDelayProduct(),BANDWIDTH_DELAY_PRODUCT_METRIC,new Units(Units.Type.BYTES)));
+            metrics.add(new SimpleMetric((double) this.readBuffer.getCapacity(),READ_BUFFER_SIZE_METRIC,new Units(Units.Type.BYTES)));
+            metrics.add(new SimpleMetric((double) this.numReadBufferResizes,READ_BUFFER_RESIZES_METRIC,new Units(Units.Type.COUNT)));
+        }
+
+        if (useHedgedReads)
+        {
+            metrics.add(new SimpleMetric((double) this.numHedgedReads,HEDGED_READS_METRIC,new Units(Units.Type.COUNT)));
+            metrics.add(new SimpleMetric((double) this.numHedgedReadWins,HEDGED_READ_WINS_METRIC,new Units(Units.Type.COUNT)));
+            metrics.add(new SimpleMetric(hedgedReadController.getHedgeRate() * 100.0,HEDGED_READ_RATE_METRIC,new Units(Units.Type.PERCENTAGE)));
+        }
+
+        if (getUseSSL())
+        {
+            synchronized (this.sslHandshakeLock)
+            {
+                metrics.add(new SimpleMetric((double) this.sslHandshakeTimeNS,SSL_HANDSHAKE_TIME_METRIC,new Units(Units.Type.SECONDS,Units.Scale.NANO)));
+                metrics.add(new SimpleMetric((double) this.numSSLHandshakes,SSL_HANDSHAKES_METRIC,new Units(Units.Type.COUNT)));
+                metrics.add(new SimpleMetric((double) this.numResumedSSLHandshakes,SSL_RESUMED_HANDSHAKES_METRIC,new Units(Units.Type.COUNT)));
+            }
+        }
+
+        if (useConnectionPool)
+        {
+            metrics.add(new SimpleMetric((double) this.numConnectionPoolHits,CONNECTION_POOL_HITS_METRIC,new Units(Units.Type.COUNT)));
+            metrics.add(new SimpleMetric((double) this.numConnectionPoolMisses,CONNECTION_POOL_MISSES_METRIC,new Units(Units.Type.COUNT)));
+        }
+
+        if (admissionController != null)
+        {
+            metrics.add(new SimpleMetric((double) this.admissionWaitTimeNS,ADMISSION_WAIT_TIME_METRIC,new Units(Units.Type.SECONDS,Units.Scale.NANO)));
+            metrics.add(new SimpleMetric((double) this.bandwidthWaitTimeNS,BANDWIDTH_WAIT_TIME_METRIC,new Units(Units.Type.SECONDS,Units.Scale.NANO)));
+        }
+
+        if (readBufferMemoryManager != null)
+        {
+            if (readSizeController == null)
+            {
+                metrics.add(new SimpleMetric((double) this.readBuffer.getCapacity(),READ_BUFFER_SIZE_METRIC,new Units(Units.Type.BYTES)));
+            }
+            metrics.add(new SimpleMetric((double) getReadBufferStallTimeNS(),READ_BUFFER_STALL_TIME_METRIC,new Units(Units.Type.SECONDS,Units.Scale.NANO)));
+            metrics.add(new SimpleMetric((double) this.numReadBufferGrowthsDenied,READ_BUFFER_GROWTHS_DENIED_METRIC,new Units(Units.Type.COUNT)));
+        }
+
         return metrics;
     }
 
+    private void recordSSLHandshake(long handshakeTimeNS, boolean isResumed)
+    {
+        synchronized (this.sslHandshakeLock)
+        {
+            sslHandshakeTimeNS += handshakeTimeNS;
+            numSSLHandshakes++;
+            if (isResumed)
+            {
+                numResumedSSLHandshakes++;
+            }
+        }
+    }
+
+    /**
+     * Opens a connection to the row service on the host of a file part copy.
+     *
+     * @param ip
+     *            the IP address of the file part copy
+     * @return the connected socket
+     * @throws IOException
+     *             if the connection fails
+     */
+    private Socket openSocket(String ip) throws IOException
+    {
+        Socket socket = null;
+        if (getUseSSL())
+        {
+            // The shared context caches sessions, so connections to a host after the first resume the session
+            SSLSocketFactory ssf = SharedSSLContext.getInstance().getSocketFactory();
+            socket = (SSLSocket) ssf.createSocket();
+
+            // Optimize for bandwidth over latency and connection time.
+            // We are opening up a long standing connection and potentially reading a significant amount of
+            // data
+            // So we don't care as much about individual packet latency or connection time overhead
+            socket.setPerformancePreferences(0, 1, 2);
+            socket.connect(new InetSocketAddress(ip, this.dataPart.getPort()), this.connectTimeout);
+
+            log.debug("Attempting SSL handshake...");
+            long handshakeStartNS = System.nanoTime();
+            boolean isResumed = SharedSSLContext.getInstance().startHandshake((SSLSocket) socket);
+            recordSSLHandshake(System.nanoTime() - handshakeStartNS, isResumed);
+            log.debug("SSL handshake successful...");
+            log.debug("   Remote address = " + socket.getInetAddress().toString() + " Remote port = " + socket.getPort());
+        }
+        else if (useMultiplexedReads)
+        {
+            // Connection setup is blocking, the channel is switched to non-blocking mode once registered with the engine
+            socket = SocketChannel.open().socket();
+            socket.setPerformancePreferences(0, 1, 2);
+            socket.connect(new InetSocketAddress(ip, this.dataPart.getPort()), this.connectTimeout);
+        }
+        else
+        {
+            SocketFactory sf = SocketFactory.getDefault();
+            socket = sf.createSocket();
+
+            // Optimize for bandwidth over latency and connection time.
+            // We are opening up a long standing connection and potentially reading a significant amount of
+            // data
+            // So we don't care as much about individual packet latency or connection time overhead
+            socket.setPerformancePreferences(0, 1, 2);
+            socket.connect(new InetSocketAddress(ip, this.dataPart.getPort()), this.connectTimeout);
+        }
+
+        socket.setSoTimeout(socketOpTimeoutMs);
+        return socket;
+    }
+
+    /**
+     * Waits for the admission controller to admit the stream to the host of the current copy. A stream is only admitted
+     * once, failing over to another copy keeps the admission to the original host.
+     *
+     * @throws HpccFileException
+     *             if interrupted while waiting
+     */
+    private void admitStream() throws HpccFileException
+    {
+        if (admissionController == null || admittedHost != null)
+        {
+            return;
+        }
+
+        String host = getIP();
+        long startNS = System.nanoTime();
+        try
+        {
+            admissionController.admitStream(host, dataPart.getPort());
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new HpccFileException("RowServiceInputStream.admitStream, file " + dataPart.getFileName() + " part " + dataPart.getThisPart()
+                                        + " on IP " + host + ": Interrupted while waiting for admission", e);
+        }
+        admissionWaitTimeNS += System.nanoTime() - startNS;
+        admittedHost = host;
+    }
+
+    private void releaseAdmission()
+    {
+        if (admittedHost != null)
+        {
+            admissionController.releaseStream(admittedHost, dataPart.getPort());
+            admittedHost = null;
+        }
+    }
+
+    /**
+     * Waits for the admission controller to allow the data of the current response to be read. The wait stalls the
+     * response like waiting on read buffer space, so it is counted as producer stall time.
+     */
+    private void acquireReadBandwidth(int numBytes)
+    {
+        if (admissionController == null || numBytes <= 0)
+        {
+            return;
+        }
+
+        long startNS = System.nanoTime();
+        try
+        {
+            admissionController.acquireBytes(getIP(), dataPart.getPort(), numBytes);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        long waitNS = System.nanoTime() - startNS;
+        bandwidthWaitTimeNS += waitNS;
+        producerStallTimeNS += waitNS;
+    }
+
     private void makeActive() throws HpccFileException
     {
+        // Admit the stream before taking a startup slot, so a stream waiting on a busy host doesn't block other hosts
+        admitStream();
+
         // Limit the number of concurrent connection startups
         int currentCount = connectionStartupCount.get();
         int newCount = currentCount+1;
@@ -1828,47 +3783,38 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         }
 
         boolean needsRetry = false;
+        boolean isPooledConnection = false;
         do
         {
             needsRetry = false;
+            isPooledConnection = false;
             try
             {
                 log.debug("Attempting to connect to file part : '" + dataPart.getThisPart() + "' Copy: '"
                         + (getFilePartCopy() + 1) + "' on IP: '" + getIP() + "'" + " for Path: '" + getCopyPath() + "'");
                 try
                 {
-                    if (getUseSSL())
+                    sock = null;
+                    if (useConnectionPool)
                     {
-                        SSLSocketFactory ssf = (SSLSocketFactory) SSLSocketFactory.getDefault();
-                        sock = (SSLSocket) ssf.createSocket();
-
-                        // Optimize for bandwidth over latency and connection time.
-                        // We are opening up a long standing connection and potentially reading a significant amount of
-                        // data
-                        // So we don't care as much about individual packet latency or connection time overhead
-                        sock.setPerformancePreferences(0, 1, 2);
-                        sock.connect(new InetSocketAddress(this.getIP(), this.dataPart.getPort()), this.connectTimeout);
-
-                        log.debug("Attempting SSL handshake...");
-                        ((SSLSocket) sock).startHandshake();
-                        log.debug("SSL handshake successful...");
-                        log.debug("   Remote address = " + sock.getInetAddress().toString() + " Remote port = " + sock.getPort());
+                        sock = RowServiceConnectionPool.getInstance().acquire(getIP(), dataPart.getPort(), getUseSSL());
+                        isPooledConnection = sock != null;
+                        if (isPooledConnection)
+                        {
+                            numConnectionPoolHits++;
+                            sock.setSoTimeout(socketOpTimeoutMs);
+                        }
+                        else
+                        {
+                            numConnectionPoolMisses++;
+                        }
                     }
-                    else
+
+                    if (sock == null)
                     {
-                        SocketFactory sf = SocketFactory.getDefault();
-                        sock = sf.createSocket();
-
-                        // Optimize for bandwidth over latency and connection time.
-                        // We are opening up a long standing connection and potentially reading a significant amount of
-                        // data
-                        // So we don't care as much about individual packet latency or connection time overhead
-                        sock.setPerformancePreferences(0, 1, 2);
-                        sock.connect(new InetSocketAddress(this.getIP(), this.dataPart.getPort()), this.connectTimeout);
+                        sock = openSocket(this.getIP());
                     }
 
-                    this.sock.setSoTimeout(socketOpTimeoutMs);
-
                     log.debug("Connected: Remote address = " + sock.getInetAddress().toString() + " Remote port = " + sock.getPort());
                 }
                 catch (java.net.UnknownHostException e)
@@ -1901,7 +3847,15 @@ public class RowServiceInputStream extends InputStream implements IProfilable
                 try
                 {
                     this.dos = new java.io.DataOutputStream(sock.getOutputStream());
-                    this.dis = new java.io.DataInputStream(sock.getInputStream());
+                    if (useHedgedReads)
+                    {
+                        this.responseInputStream = new PushbackInputStream(sock.getInputStream(), 1);
+                        this.dis = new java.io.DataInputStream(this.responseInputStream);
+                    }
+                    else
+                    {
+                        this.dis = new java.io.DataInputStream(sock.getInputStream());
+                    }
                 }
                 catch (java.io.IOException e)
                 {
@@ -1936,45 +3890,32 @@ public class RowServiceInputStream extends InputStream implements IProfilable
                     versionSpan.setStatus(StatusCode.OK);
                 }
 
-                try
-                {
-                    String msg = makeGetVersionRequest(versionSpan);
-                    int msgLen = msg.length();
-
-                    this.dos.writeInt(msgLen);
-                    this.dos.write(msg.getBytes(HPCCCharSet), 0, msgLen);
-                    this.dos.flush();
-                }
-                catch (IOException e)
+                // The version of a row service does not change between connections, an empty version denotes the old protocol
+                String cachedVersion = null;
+                if (useConnectionPool)
                 {
-                    HpccFileException wrappedException = new HpccFileException(prefix+ " Failed on initial remote read transfer: " + e.getMessage(),e);
-                    if (versionSpan != null)
-                    {
-                        versionSpan.setStatus(StatusCode.ERROR);
-                        versionSpan.recordException(wrappedException);
-                        versionSpan.end();
-                    }
-
-                    throw wrappedException;
+                    cachedVersion = RowServiceConnectionPool.getInstance().getRowServiceVersion(getIP(), dataPart.getPort(), getUseSSL());
                 }
 
-                RowServiceResponse response = readResponse();
-                if (response.len == 0)
+                if (cachedVersion != null)
                 {
-                    useOldProtocol = true;
+                    useOldProtocol = cachedVersion.isEmpty();
+                    rowServiceVersion = cachedVersion;
                 }
                 else
                 {
-                    useOldProtocol = false;
-
-                    byte[] versionBytes = new byte[response.len];
                     try
                     {
-                        this.dis.readFully(versionBytes);
+                        String msg = makeGetVersionRequest(versionSpan);
+                        int msgLen = msg.length();
+
+                        this.dos.writeInt(msgLen);
+                        this.dos.write(msg.getBytes(HPCCCharSet), 0, msgLen);
+                        this.dos.flush();
                     }
                     catch (IOException e)
                     {
-                        HpccFileException wrappedException = new HpccFileException(prefix + "Error while attempting to read version response:" + e.getMessage(), e);
+                        HpccFileException wrappedException = new HpccFileException(prefix+ " Failed on initial remote read transfer: " + e.getMessage(),e);
                         if (versionSpan != null)
                         {
                             versionSpan.setStatus(StatusCode.ERROR);
@@ -1985,7 +3926,40 @@ public class RowServiceInputStream extends InputStream implements IProfilable
                         throw wrappedException;
                     }
 
-                    rowServiceVersion = new String(versionBytes, HPCCCharSet);
+                    RowServiceResponse response = readResponse();
+                    if (response.len == 0)
+                    {
+                        useOldProtocol = true;
+                    }
+                    else
+                    {
+                        useOldProtocol = false;
+
+                        byte[] versionBytes = new byte[response.len];
+                        try
+                        {
+                            this.dis.readFully(versionBytes);
+                        }
+                        catch (IOException e)
+                        {
+                            HpccFileException wrappedException = new HpccFileException(prefix + "Error while attempting to read version response:" + e.getMessage(), e);
+                            if (versionSpan != null)
+                            {
+                                versionSpan.setStatus(StatusCode.ERROR);
+                                versionSpan.recordException(wrappedException);
+                                versionSpan.end();
+                            }
+
+                            throw wrappedException;
+                        }
+
+                        rowServiceVersion = new String(versionBytes, HPCCCharSet);
+                    }
+
+                    if (useConnectionPool)
+                    {
+                        RowServiceConnectionPool.getInstance().setRowServiceVersion(getIP(), dataPart.getPort(), getUseSSL(), useOldProtocol ? "" : rowServiceVersion);
+                    }
                 }
 
                 if (versionSpan != null)
@@ -2016,6 +3990,11 @@ public class RowServiceInputStream extends InputStream implements IProfilable
                     this.dos.writeInt(transLen);
                     this.dos.write(readTrans.getBytes(HPCCCharSet), 0, transLen);
                     this.dos.flush();
+
+                    // A new connection has no other outstanding requests
+                    numPendingReadRequests = 0;
+                    pendingReadRequestTimes.clear();
+                    onReadRequestSent();
                 }
                 catch (IOException e)
                 {
@@ -2040,9 +4019,22 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             }
             catch (Exception e)
             {
+                needsRetry = true;
+
+                // A pooled connection may have been closed by the server since it was validated, retry the copy with a new connection
+                if (isPooledConnection)
+                {
+                    log.debug(prefix + " Pooled connection failed, reconnecting: " + e.getMessage());
+                    try
+                    {
+                        sock.close();
+                    }
+                    catch (IOException ie) {}
+                    continue;
+                }
+
                 log.error(prefix + ": Could not reach file part: '" + dataPart.getThisPart() + "' copy: '" + (getFilePartCopy() + 1) + "' on IP: '" + getIP() + ":" + e.getMessage(),e);
 
-                needsRetry = true;
                 if (!setNextFilePartCopy())
                 {
                     // This connection has failed, decrement the connection count to allow another connection to start
@@ -2340,12 +4332,18 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     }
 
     private String makeInitialRequest(Span span)
+    {
+        return makeInitialRequest(span, getFilePartCopy());
+    }
+
+    private String makeInitialRequest(Span span, int filePartCopy)
     {
         StringBuilder sb = new StringBuilder(256);
 
         sb.append(RFCCodes.RFCStreamReadCmd);
         sb.append("{ \"format\" : \"binary\", \n");
         sb.append("\"replyLimit\" : " + this.initialReadSizeKB + ",\n");
+        appendCommCompression(sb);
 
         String traceContextHeader = org.hpccsystems.ws.client.utils.Utils.getTraceParentHeader(span);
         final String trace = traceContextHeader != null ? "\"_trace\": { \"traceparent\" : \"" + traceContextHeader + "\" },\n" : "";
@@ -2361,13 +4359,21 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             makeFetchObject(sb);
         }
 
-        sb.append(makeNodeObject());
+        sb.append(makeNodeObject(filePartCopy));
         sb.append("\n}\n");
 
         return sb.toString();
     }
 
-    private String makeNodeObject()
+    private void appendCommCompression(StringBuilder sb)
+    {
+        if (useCommCompression)
+        {
+            sb.append("\"commCompression\" : \"" + COMM_COMPRESSION_FORMAT + "\",\n");
+        }
+    }
+
+    private String makeNodeObject(int filePartCopy)
     {
         StringBuilder sb = new StringBuilder(256);
 
@@ -2383,7 +4389,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         sb.append(this.dataPart.getThisPart());
         sb.append("\", \n");
         sb.append("\"filePartCopy\" : \"");
-        sb.append(getFilePartCopy() + 1);
+        sb.append(filePartCopy + 1);
         sb.append("\", \n");
 
         if (this.dataPart.isTLK())
@@ -2433,6 +4439,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         sb.append("{ \"format\" : \"binary\",\n");
         sb.append("  \"handle\" : \"" + Integer.toString(this.handle) + "\",");
         sb.append("\"replyLimit\" : " + this.maxReadSizeKB + ",\n");
+        appendCommCompression(sb);
 
         String traceContextHeader = org.hpccsystems.ws.client.utils.Utils.getTraceParentHeader(span);
         final String trace = traceContextHeader != null ? "\"_trace\": { \"traceparent\" : \"" + traceContextHeader + "\" },\n" : "";
@@ -2454,12 +4461,18 @@ public class RowServiceInputStream extends InputStream implements IProfilable
     }
 
     private String makeTokenRequest(Span span)
+    {
+        return makeTokenRequest(span, getFilePartCopy());
+    }
+
+    private String makeTokenRequest(Span span, int filePartCopy)
     {
         StringBuilder sb = new StringBuilder(256);
 
         sb.append(RFCCodes.RFCStreamReadCmd);
         sb.append("{ \"format\" : \"binary\",\n");
         sb.append("\"replyLimit\" : " + this.maxReadSizeKB + ",\n");
+        appendCommCompression(sb);
 
         String traceContextHeader = org.hpccsystems.ws.client.utils.Utils.getTraceParentHeader(span);
         final String trace = traceContextHeader != null ? "\"_trace\": { \"traceparent\" : \"" + traceContextHeader + "\" },\n" : "";
@@ -2470,7 +4483,7 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             sb.append("\"command\" : \"newstream\", \n");
         }
 
-        sb.append(makeNodeObject());
+        sb.append(makeNodeObject(filePartCopy));
         sb.append(",\n");
         sb.append("  \"cursorBin\" : \""); // dafilesrv calls our "token" a cursor. Renamed on our side to reduce confusion
         sb.append(java.util.Base64.getEncoder().encodeToString(this.tokenBin));
@@ -2495,13 +4508,26 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         return sb.toString();
     }
 
-    private void sendCloseFileRequest() throws IOException
+    /**
+     * Closes the file handle on the row service.
+     *
+     * @return true if the connection is idle and can be reused
+     * @throws IOException
+     *             if the close request fails
+     */
+    private boolean sendCloseFileRequest() throws IOException
     {
         String prefix = "RowServiceInputStream.sendCloseFileRequest(), file  "  + dataPart.getFileName() + " part " + dataPart.getThisPart() + " on IP " + getIP() + ":";
 
         if (useOldProtocol)
         {
-            return;
+            return false;
+        }
+
+        // Responses to pipelined read requests would arrive before the close response, closing the socket releases the handle instead
+        if (numPendingReadRequests > 0)
+        {
+            return false;
         }
 
         Span closeSpan = null;
@@ -2528,9 +4554,10 @@ public class RowServiceInputStream extends InputStream implements IProfilable
             throw new IOException(prefix + " Failed on close file with error: " + e.getMessage(), e);
         }
 
+        RowServiceResponse response = null;
         try
         {
-            RowServiceResponse response = readResponse();
+            response = readResponse();
         }
         catch (HpccFileException e)
         {
@@ -2548,9 +4575,49 @@ public class RowServiceInputStream extends InputStream implements IProfilable
         {
             closeSpan.end();
         }
+
+        // Any unread response data would be read as the start of the next response on the connection
+        return !responseInProgress && response.errorCode == RFCCodes.RFCStreamNoError && response.len <= 0;
+    }
+
+    private String makeErrorMessage(int errorCode, byte[] message)
+    {
+        StringBuilder sb = new StringBuilder(256);
+
+        sb.append("\nReceived ERROR from Thor node (");
+        sb.append(this.getIP());
+        sb.append("): Code: '");
+        sb.append(errorCode);
+        sb.append("'");
+
+        if (message != null)
+        {
+            sb.append(" Message: '");
+            sb.append(new String(message));
+            sb.append("'");
+        }
+
+        switch (errorCode)
+        {
+            case RFCCodes.DAFSERR_cmdstream_invalidexpiry:
+                sb.append("\nInvalid file access expiry reported - change File Access Expiry (HPCCFile) and retry");
+                break;
+            case RFCCodes.DAFSERR_cmdstream_authexpired:
+                sb.append("\nFile access expired before initial request - Retry and consider increasing File Access Expiry (HPCCFile) to something greater than " + this.socketOpTimeoutMs);
+                break;
+            default:
+                break;
+        }
+
+        return sb.toString();
     }
 
     private RowServiceResponse readResponse() throws HpccFileException
+    {
+        return readResponse(this.dis);
+    }
+
+    private RowServiceResponse readResponse(java.io.DataInputStream dis) throws HpccFileException
     {
         RowServiceResponse response = new RowServiceResponse();
         String prefix="RowServiceInputStream.readResponse(): , file "  + dataPart.getFileName() + " part " + dataPart.getThisPart() + " on IP " + getIP() + ": ";
@@ -2573,37 +4640,15 @@ public class RowServiceInputStream extends InputStream implements IProfilable
 
             if (response.errorCode != RFCCodes.RFCStreamNoError)
             {
-                StringBuilder sb = new StringBuilder(256);
-
-                sb.append("\nReceived ERROR from Thor node (");
-                sb.append(this.getIP());
-                sb.append("): Code: '");
-                sb.append(response.errorCode);
-                sb.append("'");
-
+                byte[] message = null;
                 if (response.len > 0)
                 {
-                    byte[] message = new byte[response.len];
+                    message = new byte[response.len];
                     dis.readFully(message, 0, response.len);
-                    sb.append(" Message: '");
-                    sb.append(new String(message));
-                    sb.append("'");
-                }
-
-                switch (response.errorCode)
-                {
-                    case RFCCodes.DAFSERR_cmdstream_invalidexpiry:
-                        sb.append("\nInvalid file access expiry reported - change File Access Expiry (HPCCFile) and retry");
-                        break;
-                    case RFCCodes.DAFSERR_cmdstream_authexpired:
-                        sb.append("\nFile access expired before initial request - Retry and consider increasing File Access Expiry (HPCCFile) to something greater than " + this.socketOpTimeoutMs);
-                        break;
-                    default:
-                        break;
                 }
 
                 response.len = -1;
-                response.errorMessage = sb.toString();
+                response.errorMessage = makeErrorMessage(response.errorCode, message);
                 return response;
             }
 
@@ -22,6 +22,8 @@ import java.text.AttributedCharacterIterator.Attribute;
 import java.io.OutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLSocket;
@@ -39,6 +41,7 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.hpccsystems.commons.ecl.RecordDefinitionTranslator;
 import org.hpccsystems.commons.errors.HpccFileException;
+import org.hpccsystems.commons.network.SharedSSLContext;
 import org.hpccsystems.commons.ecl.FieldDef;
 
 /**
@@ -49,6 +52,7 @@ public class RowServiceOutputStream extends OutputStream
     private static final Logger  log                           = LogManager.getLogger(RowServiceOutputStream.class);
     public static final int      DEFAULT_CONNECT_TIMEOUT_MILIS = 5000; // 5 second connection timeout
     public static final int      DEFAULT_SOCKET_OP_TIMEOUT_MS  = 15000; // 15 second timeout on reads
+    public static final int      DEFAULT_MAX_IN_FLIGHT_WRITES  = 1; // 1 = wait for each write to be acknowledged before sending the next
     private static int           SCRATCH_BUFFER_LEN            = 2048;
 
     private String               rowServiceVersion             = "";
@@ -67,12 +71,26 @@ public class RowServiceOutputStream extends OutputStream
 
     private boolean              useOldProtocol                = false;
     private long                 bytesWritten                  = 0;
-    private long                 handle                        = -1;
+    private volatile long        handle                        = -1;
     private ByteBuffer           scratchBuffer                 = ByteBuffer.allocate(SCRATCH_BUFFER_LEN);
 
+    // Pipelined writes, up to maxInFlightWrites blocks can be sent before their acknowledgements are read.
+    // Acknowledgements are read by a background thread, numInFlightWrites & ackReaderExit are guarded by ackLock
+    private int                  maxInFlightWrites             = DEFAULT_MAX_IN_FLIGHT_WRITES;
+    private int                  numInFlightWrites             = 0;
+    private boolean              ackReaderExit                 = false;
+    private final ReentrantLock  ackLock                       = new ReentrantLock();
+    private final Condition      ackStateChanged               = ackLock.newCondition();
+    private Thread               ackReaderThread               = null;
+    private volatile IOException asyncWriteException           = null;
+
     private Span                 fileWriteSpan                     = null;
     private String               traceContextHeader            = null;
 
+    // Connection pooling, see RowServiceConnectionPool
+    private boolean              useSSL                        = false;
+    private boolean              useConnectionPool             = false;
+
     private static class RowServiceResponse
     {
         int len = 0;
@@ -230,6 +248,83 @@ public class RowServiceOutputStream extends OutputStream
      */
     RowServiceOutputStream(String ip, int port, boolean useSSL, String accessToken, FieldDef recordDef, int filePartIndex, String filePartPath,
             CompressionAlgorithm fileCompression, int connectTimeoutMs, int sockOpTimeoutMS, Span fileWriteSpan) throws Exception
+    {
+        this(ip,port,useSSL,accessToken,recordDef,filePartIndex,filePartPath,fileCompression, connectTimeoutMs, sockOpTimeoutMS, fileWriteSpan, DEFAULT_MAX_IN_FLIGHT_WRITES);
+    }
+
+    /**
+     * Creates RowServiceOutputStream to be used to stream data to target dafilesrv on HPCC cluster.
+     *
+     * @param ip
+     *            the ip
+     * @param port
+     *            the port
+     * @param useSSL
+     *            the use SSL
+     * @param accessToken
+     *            the access token
+     * @param recordDef
+     *            the record def
+     * @param filePartIndex
+     *            the file part index
+     * @param filePartPath
+     *            the file part path
+     * @param fileCompression
+     *            the file compression
+     * @param connectTimeoutMs
+     *            the socket connect timeout in ms (default is 5000)
+     * @param socketOpTimeoutMS
+     *            the socket operation(read/write) timeout in ms (default is 15000)
+     * @param fileWriteSpan
+     *            the opentelemetry span to use for tracing
+     * @param maxInFlightWrites
+     *            the max number of written blocks that can be awaiting acknowledgement from the row service.
+     *            Values greater than 1 enable pipelined writes, errors are then reported on the next write, flush or close (default is 1)
+     * @throws Exception
+     *             the exception
+     */
+    RowServiceOutputStream(String ip, int port, boolean useSSL, String accessToken, FieldDef recordDef, int filePartIndex, String filePartPath,
+            CompressionAlgorithm fileCompression, int connectTimeoutMs, int sockOpTimeoutMS, Span fileWriteSpan, int maxInFlightWrites) throws Exception
+    {
+        this(ip,port,useSSL,accessToken,recordDef,filePartIndex,filePartPath,fileCompression, connectTimeoutMs, sockOpTimeoutMS, fileWriteSpan, maxInFlightWrites, false);
+    }
+
+    /**
+     * Creates RowServiceOutputStream to be used to stream data to target dafilesrv on HPCC cluster.
+     *
+     * @param ip
+     *            the ip
+     * @param port
+     *            the port
+     * @param useSSL
+     *            the use SSL
+     * @param accessToken
+     *            the access token
+     * @param recordDef
+     *            the record def
+     * @param filePartIndex
+     *            the file part index
+     * @param filePartPath
+     *            the file part path
+     * @param fileCompression
+     *            the file compression
+     * @param connectTimeoutMs
+     *            the socket connect timeout in ms (default is 5000)
+     * @param socketOpTimeoutMS
+     *            the socket operation(read/write) timeout in ms (default is 15000)
+     * @param fileWriteSpan
+     *            the opentelemetry span to use for tracing
+     * @param maxInFlightWrites
+     *            the max number of written blocks that can be awaiting acknowledgement from the row service.
+     *            Values greater than 1 enable pipelined writes, errors are then reported on the next write, flush or close (default is 1)
+     * @param useConnectionPool
+     *            reuse an idle connection to the row service and return the connection to the pool once the file is closed, see RowServiceConnectionPool
+     * @throws Exception
+     *             the exception
+     */
+    RowServiceOutputStream(String ip, int port, boolean useSSL, String accessToken, FieldDef recordDef, int filePartIndex, String filePartPath,
+            CompressionAlgorithm fileCompression, int connectTimeoutMs, int sockOpTimeoutMS, Span fileWriteSpan, int maxInFlightWrites,
+            boolean useConnectionPool) throws Exception
     {
         this.rowServiceIP = ip;
         this.rowServicePort = port;
@@ -238,6 +333,13 @@ public class RowServiceOutputStream extends OutputStream
         this.filePath = filePartPath;
         this.accessToken = accessToken;
         this.compressionAlgo = fileCompression;
+        this.useSSL = useSSL;
+        this.useConnectionPool = useConnectionPool;
+
+        if (maxInFlightWrites > 0)
+        {
+            this.maxInFlightWrites = maxInFlightWrites;
+        }
 
         if (sockOpTimeoutMS < 0)
         {
@@ -256,6 +358,28 @@ public class RowServiceOutputStream extends OutputStream
             this.traceContextHeader = org.hpccsystems.ws.client.utils.Utils.getTraceParentHeader(fileWriteSpan);
         }
 
+        boolean isConnected = false;
+        if (useConnectionPool)
+        {
+            isConnected = usePooledConnection();
+        }
+
+        if (!isConnected)
+        {
+            connect(connectTimeoutMs);
+
+            // Go ahead and make the initial write request. This won't write any data to file
+            // but it will cause the file to be opened on the remote server and keeps our access
+            // token from expiring before we can start writing
+            makeInitialWriteRequest();
+        }
+    }
+
+    /**
+     * Opens a new connection to the row service and checks the protocol version.
+     */
+    private void connect(int connectTimeoutMs) throws Exception
+    {
         Span connectSpan = null;
         if (this.fileWriteSpan != null)
         {
@@ -268,7 +392,8 @@ public class RowServiceOutputStream extends OutputStream
         {
             if (useSSL)
             {
-                SSLSocketFactory ssf = (SSLSocketFactory) SSLSocketFactory.getDefault();
+                // The shared context caches sessions, so connections to a host after the first resume the session
+                SSLSocketFactory ssf = SharedSSLContext.getInstance().getSocketFactory();
                 this.socket = (SSLSocket) ssf.createSocket();
 
                 // Optimize for bandwidth over latency and connection time.
@@ -278,7 +403,7 @@ public class RowServiceOutputStream extends OutputStream
                 socket.connect(new InetSocketAddress(this.rowServiceIP, this.rowServicePort), connectTimeoutMs);
 
                 log.debug("Attempting SSL handshake...");
-                ((SSLSocket) this.socket).startHandshake();
+                SharedSSLContext.getInstance().startHandshake((SSLSocket) this.socket);
                 log.debug("SSL handshake successful...");
                 log.debug("   Remote address = " + this.socket.getInetAddress().toString() + " Remote port = " + this.socket.getPort());
             }
@@ -392,10 +517,62 @@ public class RowServiceOutputStream extends OutputStream
             versionSpan.end();
         }
 
-        // Go ahead and make the initial write request. This won't write any data to file
-        // but it will cause the file to be opened on the remote server and keeps our access
-        // token from expiring before we can start writing
-        makeInitialWriteRequest();
+        if (useConnectionPool)
+        {
+            RowServiceConnectionPool.getInstance().setRowServiceVersion(rowServiceIP, rowServicePort, useSSL, useOldProtocol ? "" : rowServiceVersion);
+        }
+    }
+
+    /**
+     * Opens the file on an idle connection from the pool, the version request is skipped as the version of the row
+     * service is cached.
+     *
+     * @return true if a pooled connection is used, false if a new connection needs to be opened
+     */
+    private boolean usePooledConnection()
+    {
+        RowServiceConnectionPool pool = RowServiceConnectionPool.getInstance();
+        String cachedVersion = pool.getRowServiceVersion(rowServiceIP, rowServicePort, useSSL);
+        if (cachedVersion == null)
+        {
+            return false;
+        }
+
+        Socket pooledSocket = pool.acquire(rowServiceIP, rowServicePort, useSSL);
+        if (pooledSocket == null)
+        {
+            return false;
+        }
+
+        try
+        {
+            this.socket = pooledSocket;
+            this.socket.setSoTimeout(sockOpTimeoutMs);
+            this.dos = new DataOutputStream(socket.getOutputStream());
+            this.dis = new DataInputStream(socket.getInputStream());
+
+            this.useOldProtocol = cachedVersion.isEmpty();
+            this.rowServiceVersion = cachedVersion;
+
+            makeInitialWriteRequest();
+            return true;
+        }
+        catch (Exception e)
+        {
+            // The connection may have been closed by the server since it was validated
+            log.debug("Pooled connection to row service (" + rowServiceIP + ":" + rowServicePort + ") failed, reconnecting: " + e.getMessage());
+            try
+            {
+                pooledSocket.close();
+            }
+            catch (IOException ie) {}
+
+            this.socket = null;
+            this.dos = null;
+            this.dis = null;
+            this.handle = -1;
+            return false;
+        }
     }
 
     private Attributes getServerAttributes()
@@ -485,11 +662,16 @@ public class RowServiceOutputStream extends OutputStream
         return sb.toString();
     }
 
-    private void sendCloseFileRequest() throws IOException
+    /**
+     * Closes the file on the row service.
+     *
+     * @return true if the connection is idle and can be reused
+     */
+    private boolean sendCloseFileRequest() throws IOException
     {
         if (useOldProtocol)
         {
-            return;
+            return false;
         }
 
         String closeFileRequest = makeCloseHandleRequest();
@@ -540,6 +722,9 @@ public class RowServiceOutputStream extends OutputStream
 
             throw wrappedException;
         }
+
+        // Any unread response data would be read as the start of the next response on the connection
+        return response.len <= 0;
     }
 
     private RowServiceResponse readResponse() throws HpccFileException
@@ -634,11 +819,23 @@ public class RowServiceOutputStream extends OutputStream
      */
     public void close() throws IOException
     {
-        this.flush();
+        try
+        {
+            this.flush();
+        }
+        catch (IOException e)
+        {
+            // Closing the socket first ensures the ack reader isn't left blocked on a failed connection
+            this.socket.close();
+            stopAckReader();
+            throw e;
+        }
+        stopAckReader();
 
+        boolean isConnectionIdle = false;
         if (!useOldProtocol)
         {
-            this.sendCloseFileRequest();
+            isConnectionIdle = this.sendCloseFileRequest();
         }
         else if (bytesWritten == 0 && compressionAlgo != CompressionAlgorithm.NONE)
         {
@@ -651,7 +848,14 @@ public class RowServiceOutputStream extends OutputStream
             throw wrappedException;
         }
 
-        this.socket.close();
+        if (useConnectionPool && isConnectionIdle && asyncWriteException == null)
+        {
+            RowServiceConnectionPool.getInstance().release(rowServiceIP, rowServicePort, useSSL, this.socket);
+        }
+        else
+        {
+            this.socket.close();
+        }
     }
 
     /*
@@ -661,7 +865,200 @@ public class RowServiceOutputStream extends OutputStream
      */
     public void flush() throws IOException
     {
+        throwIfAsyncWriteFailed();
         this.dos.flush();
+
+        // Wait for all outstanding writes to be acknowledged
+        ackLock.lock();
+        try
+        {
+            while (numInFlightWrites > 0 && asyncWriteException == null)
+            {
+                try
+                {
+                    ackStateChanged.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for outstanding writes to be acknowledged", e);
+                }
+            }
+        }
+        finally
+        {
+            ackLock.unlock();
+        }
+
+        throwIfAsyncWriteFailed();
+    }
+
+    /**
+     * Returns the max number of written blocks that can be awaiting acknowledgement from the row service.
+     *
+     * @return the max in flight writes
+     */
+    public int getMaxInFlightWrites()
+    {
+        return this.maxInFlightWrites;
+    }
+
+    private boolean isPipelined()
+    {
+        return this.maxInFlightWrites > 1;
+    }
+
+    private void throwIfAsyncWriteFailed() throws IOException
+    {
+        IOException e = asyncWriteException;
+        if (e != null)
+        {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private void waitForWriteWindow() throws IOException
+    {
+        ackLock.lock();
+        try
+        {
+            while (numInFlightWrites >= maxInFlightWrites && asyncWriteException == null)
+            {
+                try
+                {
+                    ackStateChanged.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for outstanding writes to be acknowledged", e);
+                }
+            }
+        }
+        finally
+        {
+            ackLock.unlock();
+        }
+
+        throwIfAsyncWriteFailed();
+    }
+
+    private void startAckReader()
+    {
+        Runnable ackReaderTask = new Runnable()
+        {
+            public void run()
+            {
+                readAcknowledgements();
+            }
+        };
+
+        ackReaderThread = DFSThreadFactory.newThread(ackReaderTask, "RowServiceOutputStream-AckReader-" + filePartIndex);
+        ackReaderThread.setDaemon(true);
+        ackReaderThread.start();
+    }
+
+    private void stopAckReader()
+    {
+        if (ackReaderThread == null)
+        {
+            return;
+        }
+
+        ackLock.lock();
+        try
+        {
+            ackReaderExit = true;
+            ackStateChanged.signalAll();
+        }
+        finally
+        {
+            ackLock.unlock();
+        }
+
+        // The ack reader only exits once all outstanding writes have been acknowledged or failed
+        try
+        {
+            ackReaderThread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        ackReaderThread = null;
+    }
+
+    /**
+     * Reads write acknowledgements in the order the writes were sent. Runs on the ack reader thread.
+     */
+    private void readAcknowledgements()
+    {
+        while (true)
+        {
+            ackLock.lock();
+            try
+            {
+                while (numInFlightWrites == 0 && ackReaderExit == false)
+                {
+                    try
+                    {
+                        ackStateChanged.await();
+                    }
+                    catch (InterruptedException e) {/*We don't care about waking early*/}
+                }
+
+                if (numInFlightWrites == 0)
+                {
+                    return;
+                }
+            }
+            finally
+            {
+                ackLock.unlock();
+            }
+
+            IOException failure = null;
+            try
+            {
+                RowServiceResponse response = readResponse();
+                if (response.errorCode != RFCCodes.RFCStreamNoError)
+                {
+                    failure = new IOException(response.errorMessage);
+                }
+                else
+                {
+                    // Subsequent writes will use the most recently acknowledged handle
+                    this.handle = response.handle;
+                }
+            }
+            catch (HpccFileException e)
+            {
+                failure = new IOException("Failed during write operation. Unable to read response with error: ", e);
+            }
+
+            ackLock.lock();
+            try
+            {
+                if (failure != null)
+                {
+                    if (fileWriteSpan != null)
+                    {
+                        fileWriteSpan.recordException(failure, getServerAttributes());
+                    }
+
+                    asyncWriteException = failure;
+                    ackStateChanged.signalAll();
+                    return;
+                }
+
+                numInFlightWrites--;
+                ackStateChanged.signalAll();
+            }
+            finally
+            {
+                ackLock.unlock();
+            }
+        }
     }
 
     /*
@@ -681,6 +1078,11 @@ public class RowServiceOutputStream extends OutputStream
      */
     public void write(byte[] b, int off, int len) throws IOException
     {
+        if (isPipelined())
+        {
+            waitForWriteWindow();
+        }
+
         final String trace = traceContextHeader != null ? "\"_trace\": { \"traceparent\" : \"" + traceContextHeader + "\" },\n" : "";
 
         String request = "{ \"format\" : \"binary\", \"handle\" : \"" + this.handle + "\","
@@ -710,6 +1112,27 @@ public class RowServiceOutputStream extends OutputStream
 
         bytesWritten += len;
 
+        if (isPipelined())
+        {
+            // The data has been sent, the acknowledgement will be read by the ack reader thread
+            ackLock.lock();
+            try
+            {
+                numInFlightWrites++;
+                ackStateChanged.signalAll();
+            }
+            finally
+            {
+                ackLock.unlock();
+            }
+
+            if (ackReaderThread == null)
+            {
+                startAckReader();
+            }
+            return;
+        }
+
         RowServiceResponse response = null;
         try
         {
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(org.hpccsystems.commons.annotations.BaseTests.class)
+public class AdaptiveReadSizeControllerTest
+{
+    private static final long MS = 1000000L;
+
+    // Simulates a request on a connection with the provided round trip time and throughput
+    private boolean completeRequest(AdaptiveReadSizeController controller, long roundTripNS, double bytesPerNS,
+                                    long producerStallNS, long consumerStallNS)
+    {
+        long bytes = controller.getReadSizeKB() * 1024L;
+        long requestSentNS = 0;
+        long responseStartNS = requestSentNS + roundTripNS;
+        long responseEndNS = responseStartNS + (long) (bytes / bytesPerNS) + producerStallNS;
+        return controller.onRequestComplete(requestSentNS, responseStartNS, responseEndNS, bytes, producerStallNS, consumerStallNS);
+    }
+
+    @Test
+    public void growsToBandwidthDelayProductTest()
+    {
+        // 100MB/s with a 20ms round trip, a BDP of 2MB
+        AdaptiveReadSizeController controller = new AdaptiveReadSizeController(256, 64, 16384, 1);
+        for (int i = 0; i < 20; i++)
+        {
+            completeRequest(controller, 20 * MS, 0.1, 0, 10 * MS);
+        }
+
+        long bdp = controller.getBandwidthDelayProduct();
+        Assert.assertEquals(2000000, bdp, 1000);
+        Assert.assertTrue(controller.getReadSizeKB() * 1024L >= bdp);
+        Assert.assertTrue(controller.getNumIncreases() > 0);
+        Assert.assertEquals(0, controller.getNumDecreases());
+    }
+
+    @Test
+    public void noGrowthWithoutConsumerWaitsTest()
+    {
+        // The consumer is keeping up, larger requests would only use more memory
+        AdaptiveReadSizeController controller = new AdaptiveReadSizeController(256, 64, 16384, 1);
+        for (int i = 0; i < 20; i++)
+        {
+            completeRequest(controller, 20 * MS, 0.1, 0, 0);
+        }
+
+        Assert.assertEquals(256, controller.getReadSizeKB());
+    }
+
+    @Test
+    public void shrinksWhenConsumerBoundTest()
+    {
+        AdaptiveReadSizeController controller = new AdaptiveReadSizeController(4096, 64, 16384, 1);
+        Assert.assertTrue(completeRequest(controller, 1 * MS, 1.0, 100 * MS, 0));
+        Assert.assertEquals(2048, controller.getReadSizeKB());
+
+        for (int i = 0; i < 20; i++)
+        {
+            completeRequest(controller, 1 * MS, 1.0, 100 * MS, 0);
+        }
+
+        Assert.assertEquals(64, controller.getReadSizeKB());
+        Assert.assertEquals(0, controller.getNumIncreases());
+    }
+
+    @Test
+    public void shrinksToBandwidthDelayProductTest()
+    {
+        // 10MB/s with a 1ms round trip, a BDP of 10KB, so the min read size is used
+        AdaptiveReadSizeController controller = new AdaptiveReadSizeController(4096, 64, 16384, 1);
+        for (int i = 0; i < 5; i++)
+        {
+            completeRequest(controller, 1 * MS, 0.01, 0, 0);
+        }
+
+        Assert.assertEquals(64, controller.getReadSizeKB());
+    }
+
+    @Test
+    public void pipelinedTest()
+    {
+        // The requests in flight cover the round trip, no idle time between responses
+        AdaptiveReadSizeController controller = new AdaptiveReadSizeController(256, 64, 16384, 2);
+        for (int i = 0; i < 20; i++)
+        {
+            completeRequest(controller, 0, 0.1, 0, 10 * MS);
+        }
+        Assert.assertEquals(256, controller.getReadSizeKB());
+
+        // Idle time between responses, grow to cover it
+        for (int i = 0; i < 20; i++)
+        {
+            completeRequest(controller, 5 * MS, 0.1, 0, 10 * MS);
+        }
+        Assert.assertTrue(controller.getReadSizeKB() > 256);
+        Assert.assertEquals(0, controller.getNumDecreases());
+    }
+
+    @Test
+    public void stalledSamplesIgnoredTest()
+    {
+        // Requests that waited on buffer space don't update the estimates, but are used to detect the consumer bottleneck
+        AdaptiveReadSizeController controller = new AdaptiveReadSizeController(4096, 64, 16384, 1);
+        Assert.assertTrue(completeRequest(controller, 1 * MS, 100.0, 100 * MS, 0));
+        Assert.assertEquals(0, controller.getBandwidthDelayProduct());
+        Assert.assertEquals(2048, controller.getReadSizeKB());
+
+        // A small stall without samples leaves the read size unchanged
+        Assert.assertFalse(completeRequest(controller, 20 * MS, 0.1, 1 * MS, 10 * MS));
+        Assert.assertEquals(2048, controller.getReadSizeKB());
+    }
+
+    @Test
+    public void invalidSampleTest()
+    {
+        AdaptiveReadSizeController controller = new AdaptiveReadSizeController(256, 64, 16384, 1);
+        Assert.assertFalse(controller.onRequestComplete(10, 0, 20, 1024, 0, 0));
+        Assert.assertFalse(controller.onRequestComplete(0, 10, 5, 1024, 0, 0));
+        Assert.assertFalse(controller.onRequestComplete(0, 10, 20, 0, 0, 0));
+        Assert.assertEquals(256, controller.getReadSizeKB());
+        Assert.assertEquals(0, controller.getBandwidthDelayProduct());
+    }
+}
@@ -0,0 +1,1492 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.ecl.FieldType;
+import org.hpccsystems.commons.ecl.HpccSrcType;
+import org.hpccsystems.commons.errors.HpccFileException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(org.hpccsystems.commons.annotations.BaseTests.class)
+public class BinaryRecordReaderTest
+{
+    private static final int NUM_RECORDS = 1000;
+
+    // Provides windows into a heap buffer that end at multiples of windowSize, so records can straddle windows
+    private static class HeapWindowInputStream extends ByteArrayInputStream implements IByteBufferInputStream
+    {
+        private int windowSize = 0;
+
+        HeapWindowInputStream(byte[] data, int windowSize)
+        {
+            super(data);
+            this.windowSize = windowSize;
+        }
+
+        public synchronized ByteBuffer getReadableByteBuffer(int maxLength)
+        {
+            if (pos >= count)
+            {
+                return null;
+            }
+
+            int windowEnd = Math.min(count, (pos / windowSize + 1) * windowSize);
+            return ByteBuffer.wrap(buf, pos, Math.min(windowEnd - pos, maxLength));
+        }
+    }
+
+    private byte[] writeRecords(FieldDef recordDef, List<Object> records) throws Exception
+    {
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        BinaryRecordWriter writer = new BinaryRecordWriter(outStream);
+        writer.initialize(new HPCCRecordAccessor(recordDef));
+        for (Object record : records)
+        {
+            writer.writeRecord(record);
+        }
+        writer.finalize();
+        return outStream.toByteArray();
+    }
+
+    private List<Object> readRecords(FieldDef recordDef, byte[] data, boolean useDecoderPlan, int stringProcessingFlags,
+                                     boolean useDecimalForUnsigned8) throws Exception
+    {
+        return readRecords(recordDef, new ByteArrayInputStream(data), data.length, useDecoderPlan, stringProcessingFlags, useDecimalForUnsigned8);
+    }
+
+    private List<Object> readRecords(FieldDef recordDef, ByteArrayInputStream inputStream, int dataLen, boolean useDecoderPlan,
+                                     int stringProcessingFlags, boolean useDecimalForUnsigned8) throws Exception
+    {
+        BinaryRecordReader reader = new BinaryRecordReader(inputStream);
+        reader.setUseDecoderPlan(useDecoderPlan);
+        reader.initialize(new HPCCRecordBuilder(recordDef));
+
+        // Settings changed after initialize() must be used by the decoder plan
+        reader.setStringProcessingFlags(stringProcessingFlags);
+        reader.setUseDecimalForUnsigned8(useDecimalForUnsigned8);
+
+        List<Object> records = new ArrayList<Object>();
+        while (reader.hasNext())
+        {
+            records.add(reader.getNext());
+        }
+
+        Assert.assertEquals(dataLen, reader.getStreamPosAfterLastRecord());
+        return records;
+    }
+
+    private static String randomString(Random random, String chars, int maxLength)
+    {
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(maxLength + 1);
+        for (int i = 0; i < length; i++)
+        {
+            sb.append(chars.charAt(random.nextInt(chars.length())));
+        }
+        return sb.toString();
+    }
+
+    // A record with every flat field type, a child record, a child dataset and sets
+    private static FieldDef createTestRecordDefinition()
+    {
+        FieldDef[] int2SetElemFD = new FieldDef[] { new FieldDef("int2", FieldType.INTEGER, "INTEGER2", 2, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]) };
+        FieldDef[] stringSetElemFD = new FieldDef[] { new FieldDef("str", FieldType.STRING, "UTF8", 0, false, false, HpccSrcType.UTF8, new FieldDef[0]) };
+
+        FieldDef childRecordDef = null;
+        {
+            FieldDef[] fieldDefs = new FieldDef[3];
+            fieldDefs[0] = new FieldDef("int2", FieldType.INTEGER, "INTEGER2", 2, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+            fieldDefs[1] = new FieldDef("varstr", FieldType.VAR_STRING, "VARSTRING", 0, false, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]);
+            fieldDefs[2] = new FieldDef("int2Set", FieldType.SET, "SET", 0, false, false, HpccSrcType.LITTLE_ENDIAN, int2SetElemFD);
+            childRecordDef = new FieldDef("ChildRecord", FieldType.RECORD, "rec", 4, false, false, HpccSrcType.LITTLE_ENDIAN, fieldDefs);
+        }
+
+        FieldDef[] fieldDefs = new FieldDef[17];
+        fieldDefs[0] = new FieldDef("int4", FieldType.INTEGER, "INTEGER4", 4, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[1] = new FieldDef("uint8", FieldType.INTEGER, "UNSIGNED8", 8, true, true, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[2] = new FieldDef("real8", FieldType.REAL, "REAL8", 8, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[3] = new FieldDef("dec10", FieldType.DECIMAL, "DECIMAL10_2", 0, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[3].setPrecision(10);
+        fieldDefs[3].setScale(2);
+        fieldDefs[4] = new FieldDef("udec8", FieldType.DECIMAL, "UDECIMAL8_3", 0, true, true, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[4].setPrecision(8);
+        fieldDefs[4].setScale(3);
+        fieldDefs[5] = new FieldDef("str10", FieldType.STRING, "STRING10", 10, true, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]);
+        fieldDefs[6] = new FieldDef("utf8", FieldType.STRING, "UTF8", 0, false, false, HpccSrcType.UTF8, new FieldDef[0]);
+        fieldDefs[7] = new FieldDef("uni5", FieldType.STRING, "UNICODE5", 5, true, false, HpccSrcType.UTF16LE, new FieldDef[0]);
+        fieldDefs[8] = new FieldDef("qstr", FieldType.STRING, "QSTRING", 0, false, false, HpccSrcType.QSTRING, new FieldDef[0]);
+        fieldDefs[9] = new FieldDef("varstr", FieldType.VAR_STRING, "VARSTRING", 0, false, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]);
+        fieldDefs[10] = new FieldDef("bool", FieldType.BOOLEAN, "BOOLEAN", 1, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[11] = new FieldDef("data4", FieldType.BINARY, "DATA4", 4, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[12] = new FieldDef("data", FieldType.BINARY, "DATA", 0, false, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[13] = new FieldDef(childRecordDef);
+        fieldDefs[13].setFieldName("childRecord");
+        fieldDefs[14] = new FieldDef("childDataset", FieldType.DATASET, "DATASET", 0, false, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[] { childRecordDef });
+        fieldDefs[15] = new FieldDef("stringSet", FieldType.SET, "SET", 0, false, false, HpccSrcType.LITTLE_ENDIAN, stringSetElemFD);
+        fieldDefs[16] = new FieldDef("int2Set", FieldType.SET, "SET", 0, false, false, HpccSrcType.LITTLE_ENDIAN, int2SetElemFD);
+        return new FieldDef("RootRecord", FieldType.RECORD, "rec", 4, false, false, HpccSrcType.LITTLE_ENDIAN, fieldDefs);
+    }
+
+    private static List<Object> createTestRecords(FieldDef recordDef, Random random)
+    {
+        FieldDef childRecordDef = recordDef.getDef(14).getDef(0);
+
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ";
+        List<Object> records = new ArrayList<Object>();
+        for (int i = 0; i < NUM_RECORDS; i++)
+        {
+            List<Object> childDataset = new ArrayList<Object>();
+            int numChildRecords = random.nextInt(4);
+            for (int j = 0; j < numChildRecords; j++)
+            {
+                List<Object> int2Set = new ArrayList<Object>();
+                int numSetElements = random.nextInt(4);
+                for (int k = 0; k < numSetElements; k++)
+                {
+                    int2Set.add(Long.valueOf((short) random.nextInt()));
+                }
+                childDataset.add(new HPCCRecord(new Object[] { Long.valueOf((short) random.nextInt()), randomString(random, chars, 8), int2Set }, childRecordDef));
+            }
+
+            List<Object> stringSet = new ArrayList<Object>();
+            int numSetElements = random.nextInt(4);
+            for (int j = 0; j < numSetElements; j++)
+            {
+                stringSet.add(randomString(random, chars, 8) + "\u00e9");
+            }
+
+            byte[] data4 = new byte[4];
+            random.nextBytes(data4);
+            byte[] data = new byte[random.nextInt(16)];
+            random.nextBytes(data);
+
+            Object[] fields = new Object[17];
+            fields[0] = Long.valueOf(random.nextInt());
+            fields[1] = Long.valueOf(random.nextLong());
+            fields[2] = Double.valueOf(random.nextDouble());
+            fields[3] = BigDecimal.valueOf(random.nextInt(), 2);
+            fields[4] = BigDecimal.valueOf(random.nextInt(100000000), 3);
+            fields[5] = randomString(random, chars, 10);
+            fields[6] = randomString(random, chars, 20) + "\u4e2d ";
+            fields[7] = randomString(random, chars, 5);
+            fields[8] = randomString(random, chars, 20);
+            fields[9] = randomString(random, chars, 20);
+            fields[10] = Boolean.valueOf(random.nextBoolean());
+            fields[11] = data4;
+            fields[12] = data;
+            fields[13] = new HPCCRecord(new Object[] { Long.valueOf((short) random.nextInt()), randomString(random, chars, 8), new ArrayList<Object>() }, childRecordDef);
+            fields[14] = childDataset;
+            fields[15] = stringSet;
+            fields[16] = new ArrayList<Object>();
+            records.add(new HPCCRecord(fields, recordDef));
+        }
+        return records;
+    }
+
+    @Test
+    public void decoderPlanTest() throws Exception
+    {
+        FieldDef recordDef = createTestRecordDefinition();
+        List<Object> records = createTestRecords(recordDef, new Random(12345));
+        byte[] encodedRecords = writeRecords(recordDef, records);
+
+        int allFlags = BinaryRecordReader.TRIM_STRINGS | BinaryRecordReader.TRIM_FIXED_LEN_STRINGS | BinaryRecordReader.CONVERT_EMPTY_STRINGS_TO_NULL;
+        for (int flags = BinaryRecordReader.NO_STRING_PROCESSING; flags <= allFlags; flags++)
+        {
+            for (boolean useDecimalForUnsigned8 : new boolean[] { false, true })
+            {
+                List<Object> expectedRecords = readRecords(recordDef, encodedRecords, false, flags, useDecimalForUnsigned8);
+                List<Object> decodedRecords = readRecords(recordDef, encodedRecords, true, flags, useDecimalForUnsigned8);
+
+                Assert.assertEquals(NUM_RECORDS, expectedRecords.size());
+                Assert.assertEquals(NUM_RECORDS, decodedRecords.size());
+                // Compared as strings, empty strings may have been converted to nulls
+                for (int i = 0; i < NUM_RECORDS; i++)
+                {
+                    Assert.assertEquals("String processing flags: " + flags + " record: " + i + " did not match",
+                                        expectedRecords.get(i).toString(), decodedRecords.get(i).toString());
+                }
+            }
+        }
+    }
+
+    private static FieldDef createFixedRecordDefinition()
+    {
+        FieldDef[] fieldDefs = new FieldDef[16];
+        fieldDefs[0] = new FieldDef("int1", FieldType.INTEGER, "INTEGER1", 1, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[1] = new FieldDef("int2", FieldType.INTEGER, "INTEGER2", 2, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[2] = new FieldDef("int3", FieldType.INTEGER, "INTEGER3", 3, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[3] = new FieldDef("int4", FieldType.INTEGER, "INTEGER4", 4, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[4] = new FieldDef("int8", FieldType.INTEGER, "INTEGER8", 8, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[5] = new FieldDef("uint2", FieldType.INTEGER, "UNSIGNED2", 2, true, true, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[6] = new FieldDef("uint8", FieldType.INTEGER, "UNSIGNED8", 8, true, true, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[7] = new FieldDef("real4", FieldType.REAL, "REAL4", 4, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[8] = new FieldDef("real8", FieldType.REAL, "REAL8", 8, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[9] = new FieldDef("bool", FieldType.BOOLEAN, "BOOLEAN", 1, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[10] = new FieldDef("dec10", FieldType.DECIMAL, "DECIMAL10_2", 0, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[10].setPrecision(10);
+        fieldDefs[10].setScale(2);
+        fieldDefs[11] = new FieldDef("udec7", FieldType.DECIMAL, "UDECIMAL7_3", 0, true, true, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[11].setPrecision(7);
+        fieldDefs[11].setScale(3);
+        fieldDefs[12] = new FieldDef("str8", FieldType.STRING, "STRING8", 8, true, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]);
+        fieldDefs[13] = new FieldDef("uni4", FieldType.STRING, "UNICODE4", 4, true, false, HpccSrcType.UTF16LE, new FieldDef[0]);
+        fieldDefs[14] = new FieldDef("unibe3", FieldType.STRING, "UNICODE3", 3, true, false, HpccSrcType.UTF16BE, new FieldDef[0]);
+        fieldDefs[15] = new FieldDef("data5", FieldType.BINARY, "DATA5", 5, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        return new FieldDef("FixedRecord", FieldType.RECORD, "rec", 4, false, false, HpccSrcType.LITTLE_ENDIAN, fieldDefs);
+    }
+
+    private static HPCCRecord createFixedRecord(Random random, FieldDef recordDef)
+    {
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 ";
+
+        byte[] data = new byte[5];
+        random.nextBytes(data);
+
+        Object[] fields = new Object[16];
+        fields[0] = Long.valueOf((byte) random.nextInt());
+        fields[1] = Long.valueOf((short) random.nextInt());
+        fields[2] = Long.valueOf(random.nextInt() >> 8);
+        fields[3] = Long.valueOf(random.nextInt());
+        fields[4] = Long.valueOf(random.nextLong());
+        fields[5] = Long.valueOf(random.nextInt(65536));
+        fields[6] = Long.valueOf(random.nextLong());
+        fields[7] = Double.valueOf(random.nextFloat());
+        fields[8] = Double.valueOf(random.nextDouble());
+        fields[9] = Boolean.valueOf(random.nextBoolean());
+        fields[10] = BigDecimal.valueOf(random.nextInt(), 2);
+        fields[11] = BigDecimal.valueOf(random.nextInt(10000000), 3);
+        fields[12] = randomString(random, chars, 8);
+        fields[13] = randomString(random, chars, 4);
+        fields[14] = randomString(random, chars, 3);
+        fields[15] = data;
+        return new HPCCRecord(fields, recordDef);
+    }
+
+    // Compares values without depending on the scale of decimals or padding of fixed length strings
+    private static void assertFieldsEqual(HPCCRecord expected, HPCCRecord actual)
+    {
+        Assert.assertEquals(expected.getNumFields(), actual.getNumFields());
+        for (int i = 0; i < expected.getNumFields(); i++)
+        {
+            Object expectedValue = expected.getField(i);
+            Object actualValue = actual.getField(i);
+            if (expectedValue instanceof BigDecimal)
+            {
+                Assert.assertEquals(0, ((BigDecimal) expectedValue).compareTo((BigDecimal) actualValue));
+            }
+            else if (expectedValue instanceof byte[])
+            {
+                Assert.assertTrue(Arrays.equals((byte[]) expectedValue, (byte[]) actualValue));
+            }
+            else if (expectedValue instanceof String)
+            {
+                Assert.assertEquals(expectedValue, ((String) actualValue).replace("\0", ""));
+            }
+            else
+            {
+                Assert.assertEquals(expectedValue, actualValue);
+            }
+        }
+    }
+
+    @Test
+    public void fixedRecordLayoutTest() throws Exception
+    {
+        FieldDef recordDef = createFixedRecordDefinition();
+        FixedRecordLayout layout = FixedRecordLayout.create(recordDef);
+        Assert.assertNotNull(layout);
+
+        int[] expectedSizes = {1, 2, 3, 4, 8, 2, 8, 4, 8, 1, 6, 4, 8, 8, 6, 5};
+        int expectedOffset = 0;
+        for (int i = 0; i < expectedSizes.length; i++)
+        {
+            Assert.assertEquals(expectedOffset, layout.getFieldOffset(i));
+            Assert.assertEquals(expectedSizes[i], layout.getFieldSize(i));
+            expectedOffset += expectedSizes[i];
+        }
+        Assert.assertEquals(expectedOffset, layout.getRecordSize());
+
+        // The record size matches the serialized size
+        List<Object> records = new ArrayList<Object>();
+        records.add(createFixedRecord(new Random(1), recordDef));
+        Assert.assertEquals(layout.getRecordSize(), writeRecords(recordDef, records).length);
+
+        // Variable length fields and nested records don't have a fixed layout
+        FieldDef[] fieldDefs = new FieldDef[] { new FieldDef("int4", FieldType.INTEGER, "INTEGER4", 4, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]),
+                                                new FieldDef("str", FieldType.STRING, "STRING", 0, false, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]) };
+        Assert.assertNull(FixedRecordLayout.create(fieldDefs));
+
+        fieldDefs[1] = new FieldDef(recordDef);
+        Assert.assertNull(FixedRecordLayout.create(fieldDefs));
+
+        fieldDefs[1] = new FieldDef("utf8", FieldType.STRING, "UTF8_8", 8, true, false, HpccSrcType.UTF8, new FieldDef[0]);
+        Assert.assertNull(FixedRecordLayout.create(fieldDefs));
+    }
+
+    @Test
+    public void fixedLengthRecordTest() throws Exception
+    {
+        FieldDef fixedRecordDef = createFixedRecordDefinition();
+
+        // A variable length record containing fixed length child records and a set with fixed length elements
+        FieldDef recordDef = null;
+        {
+            FieldDef[] int4SetElemFD = new FieldDef[] { new FieldDef("int4", FieldType.INTEGER, "INTEGER4", 4, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]) };
+
+            FieldDef[] fieldDefs = new FieldDef[4];
+            fieldDefs[0] = new FieldDef("str", FieldType.STRING, "STRING", 0, false, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]);
+            fieldDefs[1] = new FieldDef(fixedRecordDef);
+            fieldDefs[1].setFieldName("childRecord");
+            fieldDefs[2] = new FieldDef("childDataset", FieldType.DATASET, "DATASET", 0, false, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[] { fixedRecordDef });
+            fieldDefs[3] = new FieldDef("int4Set", FieldType.SET, "SET", 0, false, false, HpccSrcType.LITTLE_ENDIAN, int4SetElemFD);
+            recordDef = new FieldDef("RootRecord", FieldType.RECORD, "rec", 4, false, false, HpccSrcType.LITTLE_ENDIAN, fieldDefs);
+        }
+
+        Random random = new Random(54321);
+        List<Object> fixedRecords = new ArrayList<Object>();
+        List<Object> records = new ArrayList<Object>();
+        for (int i = 0; i < NUM_RECORDS; i++)
+        {
+            fixedRecords.add(createFixedRecord(random, fixedRecordDef));
+
+            List<Object> childDataset = new ArrayList<Object>();
+            List<Object> int4Set = new ArrayList<Object>();
+            int numChildRecords = random.nextInt(4);
+            for (int j = 0; j < numChildRecords; j++)
+            {
+                childDataset.add(createFixedRecord(random, fixedRecordDef));
+                int4Set.add(Long.valueOf(random.nextInt()));
+            }
+
+            Object[] fields = new Object[] { "Record " + i, createFixedRecord(random, fixedRecordDef), childDataset, int4Set };
+            records.add(new HPCCRecord(fields, recordDef));
+        }
+
+        FieldDef[] recordDefs = { fixedRecordDef, recordDef };
+        List<List<Object>> recordLists = new ArrayList<List<Object>>();
+        recordLists.add(fixedRecords);
+        recordLists.add(records);
+        for (int i = 0; i < recordDefs.length; i++)
+        {
+            byte[] encodedRecords = writeRecords(recordDefs[i], recordLists.get(i));
+
+            // The records written with the fixed length fast path are read back by the interpreted path
+            List<Object> expectedRecords = readRecords(recordDefs[i], encodedRecords, false, BinaryRecordReader.NO_STRING_PROCESSING, false);
+            Assert.assertEquals(NUM_RECORDS, expectedRecords.size());
+            for (int j = 0; j < NUM_RECORDS; j++)
+            {
+                HPCCRecord expected = (HPCCRecord) recordLists.get(i).get(j);
+                HPCCRecord actual = (HPCCRecord) expectedRecords.get(j);
+                if (i == 0)
+                {
+                    assertFieldsEqual(expected, actual);
+                }
+                else
+                {
+                    assertFieldsEqual((HPCCRecord) expected.getField(1), (HPCCRecord) actual.getField(1));
+                    Assert.assertEquals(((List<?>) expected.getField(2)).size(), ((List<?>) actual.getField(2)).size());
+                    Assert.assertEquals(expected.getField(3), actual.getField(3));
+                }
+            }
+
+            // Read from the stream, and from windows of different sizes so records straddle windows
+            int[] windowSizes = {0, 7, 61, 4096, encodedRecords.length};
+            for (int windowSize : windowSizes)
+            {
+                int allFlags = BinaryRecordReader.TRIM_STRINGS | BinaryRecordReader.TRIM_FIXED_LEN_STRINGS | BinaryRecordReader.CONVERT_EMPTY_STRINGS_TO_NULL;
+                for (int flags = BinaryRecordReader.NO_STRING_PROCESSING; flags <= allFlags; flags++)
+                {
+                    expectedRecords = readRecords(recordDefs[i], encodedRecords, false, flags, true);
+
+                    ByteArrayInputStream inputStream = new ByteArrayInputStream(encodedRecords);
+                    if (windowSize > 0)
+                    {
+                        inputStream = new HeapWindowInputStream(encodedRecords, windowSize);
+                    }
+                    List<Object> decodedRecords = readRecords(recordDefs[i], inputStream, encodedRecords.length, true, flags, true);
+
+                    Assert.assertEquals(NUM_RECORDS, decodedRecords.size());
+                    for (int j = 0; j < NUM_RECORDS; j++)
+                    {
+                        Assert.assertEquals("Window size: " + windowSize + " flags: " + flags + " record: " + j + " did not match",
+                                            expectedRecords.get(j).toString(), decodedRecords.get(j).toString());
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertColumnValue(String msg, ColumnVector column, int row, Object expected)
+    {
+        switch (column.getType())
+        {
+            case LONG:
+                Assert.assertEquals(msg, ((Long) expected).longValue(), column.getLong(row));
+                break;
+            case DOUBLE:
+                Assert.assertEquals(msg, ((Double) expected).doubleValue(), column.getDouble(row), 0.0);
+                break;
+            case BOOLEAN:
+                Assert.assertEquals(msg, ((Boolean) expected).booleanValue(), column.getBoolean(row));
+                break;
+            case DECIMAL:
+                Assert.assertEquals(msg, 0, ((BigDecimal) expected).compareTo(column.getDecimal(row)));
+                break;
+            case STRING:
+                Assert.assertEquals(msg, expected == null, column.isNull(row));
+                Assert.assertEquals(msg, expected, column.getString(row));
+                break;
+            case BINARY:
+                Assert.assertTrue(msg, Arrays.equals((byte[]) expected, column.getBytes(row)));
+                break;
+            case STRUCT:
+            {
+                HPCCRecord record = (HPCCRecord) expected;
+                Assert.assertEquals(msg, record.getNumFields(), column.getNumChildren());
+                for (int i = 0; i < record.getNumFields(); i++)
+                {
+                    assertColumnValue(msg + "." + column.getChild(i).getFieldDef().getFieldName(), column.getChild(i), row, record.getField(i));
+                }
+                break;
+            }
+            case LIST:
+            {
+                List<?> elements = (List<?>) expected;
+                Assert.assertEquals(msg, elements.size(), column.getLength(row));
+                int start = column.getOffsets()[row];
+                for (int i = 0; i < elements.size(); i++)
+                {
+                    assertColumnValue(msg + "[" + i + "]", column.getChild(0), start + i, elements.get(i));
+                }
+                break;
+            }
+        }
+    }
+
+    @Test
+    public void columnarBatchTest() throws Exception
+    {
+        FieldDef recordDef = createTestRecordDefinition();
+        byte[] encodedRecords = writeRecords(recordDef, createTestRecords(recordDef, new Random(6789)));
+
+        int batchSize = 37;
+        int allFlags = BinaryRecordReader.TRIM_STRINGS | BinaryRecordReader.TRIM_FIXED_LEN_STRINGS | BinaryRecordReader.CONVERT_EMPTY_STRINGS_TO_NULL;
+        for (int flags = BinaryRecordReader.NO_STRING_PROCESSING; flags <= allFlags; flags++)
+        {
+            List<Object> expectedRecords = readRecords(recordDef, encodedRecords, true, flags, false);
+
+            BinaryRecordReader reader = new BinaryRecordReader(new HeapWindowInputStream(encodedRecords, 61));
+            reader.initialize(new HPCCRecordBuilder(recordDef));
+            reader.setStringProcessingFlags(flags);
+
+            // The batch is reused, so nulls and offsets from previous batches must not leak into the next batch
+            ColumnarBatch batch = new ColumnarBatch(recordDef);
+            Assert.assertEquals(recordDef.getNumDefs(), batch.getNumColumns());
+
+            int recordIndex = 0;
+            while (reader.hasNext())
+            {
+                batch.reset();
+                while (batch.getNumRows() < batchSize && reader.hasNext())
+                {
+                    reader.getNext(batch);
+                }
+
+                for (int row = 0; row < batch.getNumRows(); row++, recordIndex++)
+                {
+                    HPCCRecord expected = (HPCCRecord) expectedRecords.get(recordIndex);
+                    assertColumnValue("flags: " + flags + " record: " + recordIndex, batch.getRootColumn(), row, expected);
+                }
+            }
+            Assert.assertEquals(NUM_RECORDS, recordIndex);
+            Assert.assertEquals(encodedRecords.length, reader.getStreamPosAfterLastRecord());
+        }
+
+        // Fixed length records are decoded from a single region, which may straddle windows
+        FieldDef fixedRecordDef = createFixedRecordDefinition();
+        Random random = new Random(2468);
+        List<Object> fixedRecords = new ArrayList<Object>();
+        for (int i = 0; i < NUM_RECORDS; i++)
+        {
+            fixedRecords.add(createFixedRecord(random, fixedRecordDef));
+        }
+        byte[] encodedFixedRecords = writeRecords(fixedRecordDef, fixedRecords);
+
+        for (int flags = BinaryRecordReader.NO_STRING_PROCESSING; flags <= allFlags; flags++)
+        {
+            List<Object> expectedRecords = readRecords(fixedRecordDef, encodedFixedRecords, false, flags, false);
+            for (ByteArrayInputStream inputStream : new ByteArrayInputStream[] { new ByteArrayInputStream(encodedFixedRecords),
+                                                                                 new HeapWindowInputStream(encodedFixedRecords, 7) })
+            {
+                BinaryRecordReader reader = new BinaryRecordReader(inputStream);
+                reader.initialize(new HPCCRecordBuilder(fixedRecordDef));
+                reader.setStringProcessingFlags(flags);
+
+                ColumnarBatch batch = new ColumnarBatch(fixedRecordDef);
+                while (reader.hasNext())
+                {
+                    reader.getNext(batch);
+                }
+
+                Assert.assertEquals(NUM_RECORDS, batch.getNumRows());
+                for (int row = 0; row < NUM_RECORDS; row++)
+                {
+                    assertColumnValue("flags: " + flags + " fixed record: " + row, batch.getRootColumn(), row, expectedRecords.get(row));
+                }
+            }
+        }
+
+        // Truncating a batch removes the values of the removed rows from nested columns
+        BinaryRecordReader reader = new BinaryRecordReader(new ByteArrayInputStream(encodedRecords));
+        reader.initialize(new HPCCRecordBuilder(recordDef));
+        ColumnarBatch batch = new ColumnarBatch(recordDef);
+        for (int i = 0; i < batchSize; i++)
+        {
+            reader.getNext(batch);
+        }
+
+        batch.truncate(10);
+        Assert.assertEquals(10, batch.getNumRows());
+        ColumnVector childDataset = batch.getColumn("childDataset");
+        Assert.assertEquals(childDataset.getOffsets()[10], childDataset.getChild(0).size());
+        Assert.assertEquals(10, batch.getColumn("childRecord").getChild("int2Set").size());
+
+        List<Object> expectedRecords = readRecords(recordDef, encodedRecords, true, BinaryRecordReader.NO_STRING_PROCESSING, false);
+        reader = new BinaryRecordReader(new ByteArrayInputStream(encodedRecords));
+        reader.initialize(new HPCCRecordBuilder(recordDef));
+        for (int i = 0; i < 10; i++)
+        {
+            reader.getNext();
+        }
+        reader.getNext(batch);
+        assertColumnValue("record: 10", batch.getRootColumn(), 10, expectedRecords.get(10));
+    }
+
+    @Test
+    public void columnVectorStringEncodingTest() throws Exception
+    {
+        FieldDef stringDef = new FieldDef("str", FieldType.STRING, "STRING", 0, false, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]);
+        ColumnVector column = new ColumnVector(stringDef);
+
+        String[] values = { "abc", "\u00e9t\u00e9", "\u4e2d\u6587", "\ud83d\ude00 emoji", "" };
+        for (String value : values)
+        {
+            byte[] utf16le = value.getBytes("UTF-16LE");
+            byte[] utf16be = value.getBytes("UTF-16BE");
+            byte[] utf8 = value.getBytes("UTF-8");
+            column.appendString(utf16le, 0, utf16le.length, HpccSrcType.UTF16LE);
+            column.appendString(utf16be, 0, utf16be.length, HpccSrcType.UTF16BE);
+            column.appendString(utf8, 0, utf8.length, HpccSrcType.UTF8);
+        }
+
+        byte[] latin1 = "caf\u00e9".getBytes("ISO-8859-1");
+        column.appendString(latin1, 0, latin1.length, HpccSrcType.SINGLE_BYTE_CHAR);
+        column.appendNull();
+
+        for (int i = 0; i < values.length; i++)
+        {
+            for (int j = 0; j < 3; j++)
+            {
+                Assert.assertEquals(values[i], column.getString(i * 3 + j));
+            }
+        }
+        Assert.assertEquals("caf\u00e9", column.getString(values.length * 3));
+        Assert.assertTrue(column.isNull(values.length * 3 + 1));
+        Assert.assertNull(column.getString(values.length * 3 + 1));
+        Assert.assertFalse(column.isNull(0));
+    }
+
+    private List<HPCCRecordView> readRecordViews(FieldDef recordDef, ByteArrayInputStream inputStream, int dataLen, int stringProcessingFlags,
+                                                 boolean useDecimalForUnsigned8, List<Object> expectedRecords) throws Exception
+    {
+        BinaryRecordReader reader = new BinaryRecordReader(inputStream);
+        reader.initialize(new HPCCRecordViewBuilder(recordDef));
+        reader.setStringProcessingFlags(stringProcessingFlags);
+        reader.setUseDecimalForUnsigned8(useDecimalForUnsigned8);
+
+        List<HPCCRecordView> copies = new ArrayList<HPCCRecordView>();
+        HPCCRecordView previousView = null;
+        int recordIndex = 0;
+        while (reader.hasNext())
+        {
+            HPCCRecordView view = (HPCCRecordView) reader.getNext();
+            if (previousView != null)
+            {
+                Assert.assertSame("The record view should be reused", previousView, view);
+            }
+            previousView = view;
+
+            // Half of the records are copied before any field is decoded
+            HPCCRecord expected = (HPCCRecord) expectedRecords.get(recordIndex);
+            if (recordIndex % 2 == 0)
+            {
+                copies.add(view.copy());
+            }
+
+            // Fields are decoded in reverse order of the record layout
+            for (int i = view.getNumFields() - 1; i >= 0; i--)
+            {
+                Object value = view.getField(i);
+                Assert.assertSame("Decoded fields should be cached", value, view.getField(i));
+            }
+            Assert.assertEquals("flags: " + stringProcessingFlags + " record: " + recordIndex, expected.toString(), view.toHPCCRecord().toString());
+
+            if (recordIndex % 2 == 1)
+            {
+                copies.add(view.copy());
+            }
+            recordIndex++;
+        }
+
+        Assert.assertEquals(expectedRecords.size(), recordIndex);
+        Assert.assertEquals(dataLen, reader.getStreamPosAfterLastRecord());
+        return copies;
+    }
+
+    @Test
+    public void recordViewTest() throws Exception
+    {
+        FieldDef recordDef = createTestRecordDefinition();
+        byte[] encodedRecords = writeRecords(recordDef, createTestRecords(recordDef, new Random(97531)));
+
+        FieldDef fixedRecordDef = createFixedRecordDefinition();
+        Random random = new Random(8642);
+        List<Object> fixedRecords = new ArrayList<Object>();
+        for (int i = 0; i < NUM_RECORDS; i++)
+        {
+            fixedRecords.add(createFixedRecord(random, fixedRecordDef));
+        }
+        byte[] encodedFixedRecords = writeRecords(fixedRecordDef, fixedRecords);
+
+        int allFlags = BinaryRecordReader.TRIM_STRINGS | BinaryRecordReader.TRIM_FIXED_LEN_STRINGS | BinaryRecordReader.CONVERT_EMPTY_STRINGS_TO_NULL;
+        for (int flags = BinaryRecordReader.NO_STRING_PROCESSING; flags <= allFlags; flags++)
+        {
+            boolean useDecimalForUnsigned8 = (flags % 2) == 0;
+            for (Object[] testCase : new Object[][] { { recordDef, encodedRecords }, { fixedRecordDef, encodedFixedRecords } })
+            {
+                FieldDef def = (FieldDef) testCase[0];
+                byte[] data = (byte[]) testCase[1];
+                List<Object> expectedRecords = readRecords(def, data, false, flags, useDecimalForUnsigned8);
+
+                // Records are copied into the view buffer from windows that split fields
+                for (ByteArrayInputStream inputStream : new ByteArrayInputStream[] { new ByteArrayInputStream(data),
+                                                                                     new HeapWindowInputStream(data, 61) })
+                {
+                    List<HPCCRecordView> copies = readRecordViews(def, inputStream, data.length, flags, useDecimalForUnsigned8, expectedRecords);
+
+                    // Copies remain valid after the reader has moved on to later records
+                    for (int i = 0; i < copies.size(); i++)
+                    {
+                        HPCCRecordView copy = copies.get(i);
+                        Assert.assertEquals("copy: " + i, expectedRecords.get(i).toString(), copy.toHPCCRecord().toString());
+                    }
+                }
+            }
+        }
+
+        // Fields can be looked up by name and only the fields that are accessed are decoded
+        BinaryRecordReader reader = new BinaryRecordReader(new ByteArrayInputStream(encodedRecords));
+        reader.initialize(new HPCCRecordViewBuilder(recordDef));
+        List<Object> expectedRecords = readRecords(recordDef, encodedRecords, false, BinaryRecordReader.NO_STRING_PROCESSING, false);
+        for (int i = 0; reader.hasNext(); i++)
+        {
+            HPCCRecordView view = (HPCCRecordView) reader.getNext();
+            HPCCRecord expected = (HPCCRecord) expectedRecords.get(i);
+            Assert.assertEquals(expected.getField(6), view.getField("utf8"));
+            Assert.assertEquals(expected.getField(14).toString(), view.getField("childDataset").toString());
+        }
+
+        try
+        {
+            new HPCCRecordView(recordDef).getField("notAField");
+            Assert.fail("Expected an exception for an unknown field");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // Expected
+        }
+    }
+
+    @Test
+    public void mutableRecordTest() throws Exception
+    {
+        FieldDef recordDef = createTestRecordDefinition();
+        byte[] encodedRecords = writeRecords(recordDef, createTestRecords(recordDef, new Random(13579)));
+
+        FieldDef fixedRecordDef = createFixedRecordDefinition();
+        Random random = new Random(24680);
+        List<Object> fixedRecords = new ArrayList<Object>();
+        for (int i = 0; i < NUM_RECORDS; i++)
+        {
+            fixedRecords.add(createFixedRecord(random, fixedRecordDef));
+        }
+        byte[] encodedFixedRecords = writeRecords(fixedRecordDef, fixedRecords);
+
+        for (boolean useDecimalForUnsigned8 : new boolean[] { false, true })
+        {
+            for (Object[] testCase : new Object[][] { { recordDef, encodedRecords }, { fixedRecordDef, encodedFixedRecords } })
+            {
+                FieldDef def = (FieldDef) testCase[0];
+                byte[] data = (byte[]) testCase[1];
+                List<Object> expectedRecords = readRecords(def, data, false, BinaryRecordReader.NO_STRING_PROCESSING, useDecimalForUnsigned8);
+
+                for (boolean useDecoderPlan : new boolean[] { false, true })
+                {
+                    BinaryRecordReader reader = new BinaryRecordReader(new HeapWindowInputStream(data, 61));
+                    reader.setUseDecoderPlan(useDecoderPlan);
+                    reader.initialize(new HPCCMutableRecordBuilder(def));
+                    reader.setUseDecimalForUnsigned8(useDecimalForUnsigned8);
+
+                    HPCCMutableRecord firstRecord = null;
+                    List<HPCCRecord> copies = new ArrayList<HPCCRecord>();
+                    int recordIndex = 0;
+                    while (reader.hasNext())
+                    {
+                        HPCCMutableRecord record = (HPCCMutableRecord) reader.getNext();
+                        if (firstRecord == null)
+                        {
+                            firstRecord = record;
+                        }
+                        Assert.assertSame("The record should be reused", firstRecord, record);
+
+                        HPCCRecord expected = (HPCCRecord) expectedRecords.get(recordIndex);
+                        String msg = "useDecoderPlan: " + useDecoderPlan + " record: " + recordIndex;
+                        Assert.assertEquals(msg, expected.toString(), record.toString());
+
+                        for (int i = 0; i < record.getNumFields(); i++)
+                        {
+                            Object expectedValue = expected.getField(i);
+                            if (expectedValue instanceof Long)
+                            {
+                                Assert.assertEquals(msg, ((Long) expectedValue).longValue(), record.getLong(i));
+                            }
+                            else if (expectedValue instanceof Double)
+                            {
+                                Assert.assertEquals(msg, ((Double) expectedValue).doubleValue(), record.getDouble(i), 0.0);
+                            }
+                            else if (expectedValue instanceof Boolean)
+                            {
+                                Assert.assertEquals(msg, ((Boolean) expectedValue).booleanValue(), record.getBoolean(i));
+                            }
+                        }
+
+                        copies.add(record.toHPCCRecord());
+                        recordIndex++;
+                    }
+
+                    // Copied records are not changed by reading later records
+                    Assert.assertEquals(NUM_RECORDS, copies.size());
+                    for (int i = 0; i < copies.size(); i++)
+                    {
+                        Assert.assertEquals("copy: " + i, expectedRecords.get(i).toString(), copies.get(i).toString());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void primitiveFieldValuesTest() throws Exception
+    {
+        FieldDef recordDef = createTestRecordDefinition();
+        byte[] encodedRecords = writeRecords(recordDef, createTestRecords(recordDef, new Random(11235)));
+        List<Object> expectedRecords = readRecords(recordDef, encodedRecords, false, BinaryRecordReader.NO_STRING_PROCESSING, false);
+
+        // The default primitive setters box the values and call setFieldValue()
+        final HPCCRecordBuilder delegate = new HPCCRecordBuilder(recordDef);
+        IRecordBuilder boxingRecordBuilder = new IRecordBuilder()
+        {
+            public void setRecordDefinition(FieldDef fieldDef)
+            {
+                delegate.setRecordDefinition(fieldDef);
+            }
+
+            public FieldDef getRecordDefinition()
+            {
+                return delegate.getRecordDefinition();
+            }
+
+            public void startRecord() throws InstantiationException
+            {
+                delegate.startRecord();
+            }
+
+            public Object finalizeRecord() throws InstantiationException
+            {
+                return delegate.finalizeRecord();
+            }
+
+            public void setFieldValue(int index, Object value) throws IllegalArgumentException, IllegalAccessException
+            {
+                delegate.setFieldValue(index, value);
+            }
+
+            public boolean supportsPrimitiveFieldValues()
+            {
+                return true;
+            }
+
+            public IRecordBuilder getChildRecordBuilder(int index)
+            {
+                return delegate.getChildRecordBuilder(index);
+            }
+        };
+
+        BinaryRecordReader reader = new BinaryRecordReader(new ByteArrayInputStream(encodedRecords));
+        reader.initialize(boxingRecordBuilder);
+        for (int i = 0; reader.hasNext(); i++)
+        {
+            Assert.assertEquals("record: " + i, expectedRecords.get(i).toString(), reader.getNext().toString());
+        }
+
+        // Mutable records are written with the primitive getters and produce the same bytes
+        reader = new BinaryRecordReader(new HeapWindowInputStream(encodedRecords, 61));
+        reader.initialize(new HPCCMutableRecordBuilder(recordDef));
+
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        BinaryRecordWriter writer = new BinaryRecordWriter(outStream);
+        writer.initialize(new HPCCRecordAccessor(recordDef));
+        while (reader.hasNext())
+        {
+            writer.writeRecord(reader.getNext());
+        }
+        writer.finalize();
+        Assert.assertArrayEquals(encodedRecords, outStream.toByteArray());
+
+        // Sets of integers can be read as arrays, and the default accessor getters unbox the values
+        HPCCRecord expected = (HPCCRecord) expectedRecords.get(0);
+        reader = new BinaryRecordReader(new ByteArrayInputStream(encodedRecords));
+        reader.initialize(new HPCCMutableRecordBuilder(recordDef));
+        HPCCMutableRecord record = (HPCCMutableRecord) reader.getNext();
+        List<?> expectedSet = (List<?>) expected.getField(16);
+        long[] setValues = record.getLongArray(16);
+        Assert.assertEquals(expectedSet.size(), setValues.length);
+        for (int i = 0; i < setValues.length; i++)
+        {
+            Assert.assertEquals(((Long) expectedSet.get(i)).longValue(), setValues[i]);
+        }
+
+        HPCCRecordAccessor accessor = new HPCCRecordAccessor(recordDef);
+        accessor.setRecord(expected);
+        Assert.assertFalse(accessor.supportsPrimitiveFieldValues());
+        Assert.assertEquals(((Long) expected.getField(0)).longValue(), accessor.getLongFieldValue(0));
+        Assert.assertEquals(((Double) expected.getField(2)).doubleValue(), accessor.getDoubleFieldValue(2), 0.0);
+        Assert.assertEquals(((Boolean) expected.getField(10)).booleanValue(), accessor.getBooleanFieldValue(10));
+        Assert.assertArrayEquals(setValues, accessor.getLongArrayFieldValue(16));
+    }
+
+    private static FieldDef createDecimalField(String name, int precision, int scale, boolean isUnsigned)
+    {
+        FieldDef fd = new FieldDef(name, FieldType.DECIMAL, (isUnsigned ? "UDECIMAL" : "DECIMAL") + precision + "_" + scale, 0, true, isUnsigned,
+                                   HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fd.setPrecision(precision);
+        fd.setScale(scale);
+        return fd;
+    }
+
+    private static BigDecimal randomDecimal(Random random, FieldDef fd)
+    {
+        // Include the largest and smallest values and zero along with random numbers of digits
+        int numDigits = random.nextInt(fd.getPrecision() + 1);
+        BigInteger maxValue = BigInteger.TEN.pow(fd.getPrecision()).subtract(BigInteger.ONE);
+        BigInteger unscaledValue;
+        switch (random.nextInt(8))
+        {
+            case 0:
+                unscaledValue = maxValue;
+                break;
+            case 1:
+                unscaledValue = BigInteger.ZERO;
+                break;
+            default:
+                unscaledValue = new BigInteger(fd.getPrecision() * 4, random).mod(BigInteger.TEN.pow(numDigits));
+                break;
+        }
+
+        if (fd.isUnsigned() == false && random.nextBoolean())
+        {
+            unscaledValue = unscaledValue.negate();
+        }
+        return new BigDecimal(unscaledValue, fd.getScale());
+    }
+
+    @Test
+    public void unscaledDecimalTest() throws Exception
+    {
+        FieldDef[] decimalFields = new FieldDef[] { createDecimalField("dec18", 18, 4, false), createDecimalField("udec18", 18, 0, true),
+                                                    createDecimalField("dec3", 3, 1, false), createDecimalField("udec5", 5, 2, true),
+                                                    createDecimalField("dec1", 1, 0, false), createDecimalField("dec32", 32, 10, false) };
+        FieldDef fixedRecordDef = new FieldDef("RootRecord", FieldType.RECORD, "rec", 4, false, false, HpccSrcType.LITTLE_ENDIAN, decimalFields);
+
+        // A trailing variable length field prevents the fixed length fast path
+        FieldDef[] variableFields = Arrays.copyOf(decimalFields, decimalFields.length + 1);
+        variableFields[decimalFields.length] = new FieldDef("varstr", FieldType.VAR_STRING, "VARSTRING", 0, false, false, HpccSrcType.SINGLE_BYTE_CHAR,
+                                                            new FieldDef[0]);
+        FieldDef variableRecordDef = new FieldDef("RootRecord", FieldType.RECORD, "rec", 4, false, false, HpccSrcType.LITTLE_ENDIAN, variableFields);
+
+        for (FieldDef recordDef : new FieldDef[] { fixedRecordDef, variableRecordDef })
+        {
+            Random random = new Random(31415);
+            List<Object> records = new ArrayList<Object>();
+            for (int i = 0; i < NUM_RECORDS; i++)
+            {
+                Object[] fields = new Object[recordDef.getNumDefs()];
+                for (int j = 0; j < decimalFields.length; j++)
+                {
+                    fields[j] = randomDecimal(random, decimalFields[j]);
+                }
+                if (fields.length > decimalFields.length)
+                {
+                    fields[decimalFields.length] = randomString(random, "ABC", 4);
+                }
+                records.add(new HPCCRecord(fields, recordDef));
+            }
+
+            // Decimals that fit in a long are encoded from the unscaled value, check them with the BigDecimal decoder
+            byte[] data = writeRecords(recordDef, records);
+            List<Object> expectedRecords = readRecords(recordDef, data, false, BinaryRecordReader.NO_STRING_PROCESSING, false);
+            for (int i = 0; i < NUM_RECORDS; i++)
+            {
+                assertFieldsEqual((HPCCRecord) records.get(i), (HPCCRecord) expectedRecords.get(i));
+            }
+
+            for (boolean useDecoderPlan : new boolean[] { false, true })
+            {
+                BinaryRecordReader reader = new BinaryRecordReader(new HeapWindowInputStream(data, 61));
+                reader.setUseDecoderPlan(useDecoderPlan);
+                reader.initialize(new HPCCRecordBuilder(recordDef));
+                reader.setUseUnscaledDecimals(true);
+                Assert.assertTrue(reader.getUseUnscaledDecimals());
+                for (int i = 0; reader.hasNext(); i++)
+                {
+                    HPCCRecord record = (HPCCRecord) reader.getNext();
+                    assertFieldsEqual((HPCCRecord) expectedRecords.get(i), record);
+
+                    // Decimals decoded from unscaled longs have the scale of the field
+                    for (int j = 0; j < decimalFields.length - 1; j++)
+                    {
+                        Assert.assertEquals(decimalFields[j].getScale(), ((BigDecimal) record.getField(j)).scale());
+                    }
+                }
+
+                // Mutable records keep the unscaled longs and are written with the primitive getters
+                reader = new BinaryRecordReader(new HeapWindowInputStream(data, 61));
+                reader.setUseDecoderPlan(useDecoderPlan);
+                reader.initialize(new HPCCMutableRecordBuilder(recordDef));
+                reader.setUseUnscaledDecimals(true);
+
+                ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+                BinaryRecordWriter writer = new BinaryRecordWriter(outStream);
+                writer.initialize(new HPCCRecordAccessor(recordDef));
+                for (int i = 0; reader.hasNext(); i++)
+                {
+                    HPCCMutableRecord record = (HPCCMutableRecord) reader.getNext();
+                    HPCCRecord expected = (HPCCRecord) expectedRecords.get(i);
+                    for (int j = 0; j < decimalFields.length - 1; j++)
+                    {
+                        BigDecimal expectedValue = ((BigDecimal) expected.getField(j)).setScale(decimalFields[j].getScale());
+                        Assert.assertEquals(expectedValue.unscaledValue(), BigInteger.valueOf(record.getUnscaledDecimal(j)));
+                        Assert.assertEquals(decimalFields[j].getScale(), record.getDecimalScale(j));
+                        Assert.assertEquals(0, expectedValue.compareTo((BigDecimal) record.getField(j)));
+                    }
+                    writer.writeRecord(record);
+                }
+                writer.finalize();
+                Assert.assertArrayEquals("useDecoderPlan: " + useDecoderPlan, data, outStream.toByteArray());
+            }
+
+            // The default accessor getter rescales BigDecimals
+            HPCCRecordAccessor accessor = new HPCCRecordAccessor(recordDef);
+            accessor.setRecord(records.get(0));
+            BigDecimal value = ((BigDecimal) ((HPCCRecord) records.get(0)).getField(2)).setScale(3);
+            Assert.assertEquals(value.unscaledValue().longValueExact(), accessor.getUnscaledDecimalFieldValue(2, 3));
+        }
+    }
+
+    @Test
+    public void recordBatchTest() throws Exception
+    {
+        FieldDef recordDef = createTestRecordDefinition();
+        byte[] data = writeRecords(recordDef, createTestRecords(recordDef, new Random(16180)));
+
+        // Stream positions after each record, read one record at a time
+        List<Object> expectedRecords = new ArrayList<Object>();
+        long[] streamPositions = new long[NUM_RECORDS];
+        BinaryRecordReader reader = new BinaryRecordReader(new ByteArrayInputStream(data));
+        reader.initialize(new HPCCRecordBuilder(recordDef));
+        while (reader.hasNext())
+        {
+            expectedRecords.add(reader.getNext());
+            streamPositions[expectedRecords.size() - 1] = reader.getStreamPosAfterLastRecord();
+        }
+        Assert.assertEquals(NUM_RECORDS, expectedRecords.size());
+
+        for (boolean useDecoderPlan : new boolean[] { false, true })
+        {
+            for (int batchSize : new int[] { 1, 7, NUM_RECORDS * 2 })
+            {
+                String msg = "useDecoderPlan: " + useDecoderPlan + " batchSize: " + batchSize;
+                reader = new BinaryRecordReader(new HeapWindowInputStream(data, 61));
+                reader.setUseDecoderPlan(useDecoderPlan);
+                reader.initialize(new HPCCRecordBuilder(recordDef));
+
+                List<Object> records = new ArrayList<Object>();
+                int numRecords = 0;
+                while ((numRecords = reader.getNextBatch(records, batchSize)) > 0)
+                {
+                    Assert.assertTrue(msg, numRecords <= batchSize);
+                    Assert.assertEquals(msg, streamPositions[records.size() - 1], reader.getStreamPosAfterLastRecord());
+                }
+
+                Assert.assertEquals(msg, 0, reader.getNextBatch(records, batchSize));
+                Assert.assertEquals(msg, data.length, reader.getStreamPosAfterLastRecord());
+                Assert.assertEquals(msg, NUM_RECORDS, records.size());
+                for (int i = 0; i < NUM_RECORDS; i++)
+                {
+                    Assert.assertEquals(msg + " record: " + i, expectedRecords.get(i).toString(), records.get(i).toString());
+                }
+            }
+        }
+
+        // Record views are reused by the reader, each row of a batch is a copy that keeps its own values
+        for (int batchSize : new int[] { 7, NUM_RECORDS * 2 })
+        {
+            String msg = "views batchSize: " + batchSize;
+            reader = new BinaryRecordReader(new HeapWindowInputStream(data, 61));
+            reader.initialize(new HPCCRecordViewBuilder(recordDef));
+
+            List<Object> records = new ArrayList<Object>();
+            while (reader.getNextBatch(records, batchSize) > 0);
+
+            Assert.assertEquals(msg, NUM_RECORDS, records.size());
+            for (int i = 0; i < NUM_RECORDS; i++)
+            {
+                HPCCRecordView view = (HPCCRecordView) records.get(i);
+                Assert.assertEquals(msg + " record: " + i, expectedRecords.get(i).toString(), view.toHPCCRecord().toString());
+                if (i > 0)
+                {
+                    Assert.assertNotSame(msg + " record: " + i, records.get(i - 1), view);
+                }
+            }
+        }
+
+        // Records decoded before a failure are kept and the stream position refers to the last complete record
+        byte[] truncatedData = Arrays.copyOf(data, data.length - 3);
+        reader = new BinaryRecordReader(new ByteArrayInputStream(truncatedData));
+        reader.initialize(new HPCCRecordBuilder(recordDef));
+        List<Object> records = new ArrayList<Object>();
+        try
+        {
+            reader.getNextBatch(records, NUM_RECORDS * 2);
+            Assert.fail("Expected the truncated record to fail");
+        }
+        catch (HpccFileException e)
+        {
+            Assert.assertEquals(NUM_RECORDS - 1, records.size());
+            Assert.assertEquals(streamPositions[NUM_RECORDS - 2], reader.getStreamPosAfterLastRecord());
+        }
+    }
+
+    // Evaluates a predicate on a decoded record with SQL semantics, null if the result is unknown
+    private static Boolean evaluatePredicate(RecordPredicate predicate, FieldDef recordDef, HPCCRecord record) throws Exception
+    {
+        switch (predicate.getOperator())
+        {
+            case AND:
+            case OR:
+            {
+                boolean isAnd = predicate.getOperator() == RecordPredicate.Operator.AND;
+                Boolean result = isAnd;
+                for (RecordPredicate child : predicate.getChildren())
+                {
+                    Boolean childResult = evaluatePredicate(child, recordDef, record);
+                    if (childResult == null)
+                    {
+                        result = null;
+                    }
+                    else if (childResult != isAnd)
+                    {
+                        return childResult;
+                    }
+                }
+                return result;
+            }
+            case NOT:
+            {
+                Boolean childResult = evaluatePredicate(predicate.getChildren()[0], recordDef, record);
+                return (childResult == null) ? null : !childResult;
+            }
+            default:
+                break;
+        }
+
+        Object value = record.getField(RecordPredicate.findFieldIndex(recordDef, predicate.getFieldName()));
+        Object[] literals = predicate.getValues();
+        switch (predicate.getOperator())
+        {
+            case IS_NULL:
+                return value == null;
+            case IS_NOT_NULL:
+                return value != null;
+            default:
+                break;
+        }
+
+        if (value == null)
+        {
+            return null;
+        }
+
+        switch (predicate.getOperator())
+        {
+            case IN:
+            {
+                for (Object literal : literals)
+                {
+                    if (compareDecodedValue(value, literal) == 0)
+                    {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            case STARTS_WITH:
+                return value.toString().startsWith((String) literals[0]);
+            case ENDS_WITH:
+                return value.toString().endsWith((String) literals[0]);
+            case CONTAINS:
+                return value.toString().contains((String) literals[0]);
+            case EQUAL:
+                return compareDecodedValue(value, literals[0]) == 0;
+            case NOT_EQUAL:
+                return compareDecodedValue(value, literals[0]) != 0;
+            case LESS_THAN:
+                return compareDecodedValue(value, literals[0]) < 0;
+            case LESS_THAN_OR_EQUAL:
+                return compareDecodedValue(value, literals[0]) <= 0;
+            case GREATER_THAN:
+                return compareDecodedValue(value, literals[0]) > 0;
+            default:
+                return compareDecodedValue(value, literals[0]) >= 0;
+        }
+    }
+
+    // Values are converted as FileFilter values are, strings compare without trailing whitespace
+    @SuppressWarnings("unchecked")
+    private static int compareDecodedValue(Object value, Object literal) throws Exception
+    {
+        Object converted = literal;
+        if (value instanceof Long)
+        {
+            converted = Long.valueOf(literal.toString());
+        }
+        else if (value instanceof BigDecimal)
+        {
+            converted = CompiledFieldFilter.convertValue(literal.toString(), FieldType.DECIMAL);
+        }
+        else if (value instanceof String)
+        {
+            value = ((String) value).replaceAll("\\s+$", "");
+            converted = CompiledFieldFilter.convertValue(literal.toString(), FieldType.STRING);
+        }
+        else if (value instanceof Double)
+        {
+            converted = Double.valueOf(literal.toString());
+        }
+        else if (value instanceof Boolean)
+        {
+            converted = Boolean.valueOf(literal.toString());
+        }
+        return ((Comparable<Object>) value).compareTo(converted);
+    }
+
+    // The first non null value of a field, starting from a record
+    private static Object sampleValue(List<Object> records, FieldDef recordDef, String fieldName, int recordIndex)
+    {
+        int fieldIndex = RecordPredicate.findFieldIndex(recordDef, fieldName);
+        for (int i = recordIndex; i < records.size(); i++)
+        {
+            Object value = ((HPCCRecord) records.get(i)).getField(fieldIndex);
+            if (value != null)
+            {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static RecordPredicate[] createTestPredicates(FieldDef recordDef, List<Object> records)
+    {
+        if (recordDef.getDefIndexWithFieldName("utf8") >= 0)
+        {
+            return new RecordPredicate[] {
+                RecordPredicate.greaterThan("int4", 0),
+                RecordPredicate.greaterThan("UINT8", Long.MAX_VALUE / 2),
+                RecordPredicate.lessThan("real8", 0.25),
+                RecordPredicate.in("dec10", sampleValue(records, recordDef, "dec10", 3), sampleValue(records, recordDef, "dec10", 10), "1.5"),
+                RecordPredicate.greaterThanOrEqual("udec8", "50000.5"),
+                RecordPredicate.equalTo("str10", sampleValue(records, recordDef, "str10", 3)),
+                RecordPredicate.notEqualTo("str10", sampleValue(records, recordDef, "str10", 3)),
+                RecordPredicate.lessThan("str10", sampleValue(records, recordDef, "str10", 10)),
+                RecordPredicate.equalTo("str10", "'" + sampleValue(records, recordDef, "str10", 5) + "'"),
+                RecordPredicate.in("varstr", sampleValue(records, recordDef, "varstr", 5) + " \t "),
+                RecordPredicate.in("utf8", sampleValue(records, recordDef, "utf8", 3), sampleValue(records, recordDef, "utf8", 10)),
+                RecordPredicate.startsWith("utf8", "A"),
+                RecordPredicate.endsWith("utf8", "Z中 "),
+                RecordPredicate.contains("utf8", "AB"),
+                RecordPredicate.greaterThanOrEqual("utf8", sampleValue(records, recordDef, "utf8", 3)),
+                RecordPredicate.equalTo("uni5", sampleValue(records, recordDef, "uni5", 3)),
+                RecordPredicate.startsWith("qstr", "B"),
+                RecordPredicate.greaterThan("varstr", sampleValue(records, recordDef, "varstr", 10)),
+                RecordPredicate.endsWith("varstr", "Q"),
+                RecordPredicate.equalTo("bool", true),
+                RecordPredicate.isNull("str10"),
+                RecordPredicate.isNotNull("varstr"),
+                RecordPredicate.and(RecordPredicate.greaterThan("int4", 0),
+                                    RecordPredicate.or(RecordPredicate.startsWith("str10", "A"), RecordPredicate.not(RecordPredicate.equalTo("bool", false)))),
+                RecordPredicate.or(RecordPredicate.isNull("utf8"), RecordPredicate.lessThan("int4", -1000000)),
+                RecordPredicate.not(RecordPredicate.startsWith("str10", "B")),
+            };
+        }
+
+        return new RecordPredicate[] {
+            RecordPredicate.lessThan("int1", -5),
+            RecordPredicate.greaterThanOrEqual("int3", 0),
+            RecordPredicate.in("uint2", sampleValue(records, recordDef, "uint2", 3), 7, 65535),
+            RecordPredicate.lessThan("uint8", 0),
+            RecordPredicate.greaterThan("real4", 0.5),
+            RecordPredicate.notEqualTo("bool", "true"),
+            RecordPredicate.lessThanOrEqual("dec10", "-1000.25"),
+            RecordPredicate.equalTo("udec7", sampleValue(records, recordDef, "udec7", 3)),
+            RecordPredicate.startsWith("str8", "C"),
+            RecordPredicate.greaterThan("str8", sampleValue(records, recordDef, "str8", 3)),
+            RecordPredicate.equalTo("uni4", sampleValue(records, recordDef, "uni4", 3)),
+            RecordPredicate.contains("unibe3", "A"),
+            RecordPredicate.and(RecordPredicate.greaterThan("int8", 0), RecordPredicate.isNotNull("str8"), RecordPredicate.lessThan("real8", 0.5)),
+        };
+    }
+
+    @Test
+    public void recordPredicateTest() throws Exception
+    {
+        FieldDef recordDef = createTestRecordDefinition();
+        byte[] encodedRecords = writeRecords(recordDef, createTestRecords(recordDef, new Random(24680)));
+
+        FieldDef fixedRecordDef = createFixedRecordDefinition();
+        Random random = new Random(13579);
+        List<Object> fixedRecords = new ArrayList<Object>();
+        for (int i = 0; i < NUM_RECORDS; i++)
+        {
+            fixedRecords.add(createFixedRecord(random, fixedRecordDef));
+        }
+        byte[] encodedFixedRecords = writeRecords(fixedRecordDef, fixedRecords);
+
+        int allFlags = BinaryRecordReader.TRIM_STRINGS | BinaryRecordReader.TRIM_FIXED_LEN_STRINGS | BinaryRecordReader.CONVERT_EMPTY_STRINGS_TO_NULL;
+        int numPredicates = 0;
+        int numSelectivePredicates = 0;
+        for (Object[] testCase : new Object[][] { { recordDef, encodedRecords }, { fixedRecordDef, encodedFixedRecords } })
+        {
+            FieldDef def = (FieldDef) testCase[0];
+            byte[] data = (byte[]) testCase[1];
+
+            // The first fields of the record, the remaining fields are only read to evaluate predicates
+            FieldDef[] projectedFields = new FieldDef[3];
+            for (int i = 0; i < projectedFields.length; i++)
+            {
+                projectedFields[i] = new FieldDef(def.getDef(i));
+            }
+            FieldDef projectedDef = new FieldDef("ProjectedRecord", FieldType.RECORD, "rec", 4, false, false, HpccSrcType.LITTLE_ENDIAN, projectedFields);
+
+            for (int flags : new int[] { BinaryRecordReader.NO_STRING_PROCESSING, allFlags })
+            {
+                boolean useDecimalForUnsigned8 = flags != BinaryRecordReader.NO_STRING_PROCESSING;
+                List<Object> decodedRecords = readRecords(def, data, false, flags, useDecimalForUnsigned8);
+                for (RecordPredicate predicate : createTestPredicates(def, decodedRecords))
+                {
+                    List<Object> expectedRecords = new ArrayList<Object>();
+                    for (Object record : decodedRecords)
+                    {
+                        if (Boolean.TRUE.equals(evaluatePredicate(predicate, def, (HPCCRecord) record)))
+                        {
+                            expectedRecords.add(record);
+                        }
+                    }
+
+                    numPredicates++;
+                    if (expectedRecords.size() > 0 && expectedRecords.size() < NUM_RECORDS)
+                    {
+                        numSelectivePredicates++;
+                    }
+
+                    for (boolean useDecoderPlan : new boolean[] { false, true })
+                    {
+                        String msg = def.getFieldName() + " flags: " + flags + " useDecoderPlan: " + useDecoderPlan + " predicate: " + predicate;
+                        BinaryRecordReader reader = new BinaryRecordReader(new HeapWindowInputStream(data, 61));
+                        reader.setUseDecoderPlan(useDecoderPlan);
+                        reader.initialize(new HPCCRecordBuilder(def));
+                        reader.setStringProcessingFlags(flags);
+                        reader.setUseDecimalForUnsigned8(useDecimalForUnsigned8);
+                        reader.setRecordPredicate(predicate);
+
+                        List<Object> records = new ArrayList<Object>();
+                        while (reader.hasNext())
+                        {
+                            records.add(reader.getNext());
+                        }
+
+                        Assert.assertEquals(msg, expectedRecords.size(), records.size());
+                        for (int i = 0; i < records.size(); i++)
+                        {
+                            Assert.assertEquals(msg + " record: " + i, expectedRecords.get(i).toString(), records.get(i).toString());
+                        }
+                        Assert.assertEquals(msg, NUM_RECORDS - expectedRecords.size(), reader.getFilteredRecordCount());
+                        Assert.assertEquals(msg, data.length, reader.getStreamPosAfterLastRecord());
+                    }
+
+                    String msg = def.getFieldName() + " flags: " + flags + " predicate: " + predicate;
+
+                    // Batches
+                    BinaryRecordReader reader = new BinaryRecordReader(new HeapWindowInputStream(data, 61));
+                    reader.initialize(new HPCCRecordBuilder(def));
+                    reader.setStringProcessingFlags(flags);
+                    reader.setUseDecimalForUnsigned8(useDecimalForUnsigned8);
+                    reader.setRecordPredicate(predicate);
+
+                    List<Object> records = new ArrayList<Object>();
+                    while (reader.getNextBatch(records, 7) > 0);
+                    Assert.assertEquals(msg, expectedRecords.size(), records.size());
+                    for (int i = 0; i < records.size(); i++)
+                    {
+                        Assert.assertEquals(msg + " record: " + i, expectedRecords.get(i).toString(), records.get(i).toString());
+                    }
+                    Assert.assertEquals(msg, data.length, reader.getStreamPosAfterLastRecord());
+
+                    // Record views
+                    reader = new BinaryRecordReader(new ByteArrayInputStream(data));
+                    reader.initialize(new HPCCRecordViewBuilder(def));
+                    reader.setStringProcessingFlags(flags);
+                    reader.setUseDecimalForUnsigned8(useDecimalForUnsigned8);
+                    reader.setRecordPredicate(predicate);
+
+                    int numRecords = 0;
+                    while (reader.hasNext())
+                    {
+                        HPCCRecordView view = (HPCCRecordView) reader.getNext();
+                        Assert.assertEquals(msg + " view: " + numRecords, expectedRecords.get(numRecords).toString(), view.toHPCCRecord().toString());
+                        numRecords++;
+                    }
+                    Assert.assertEquals(msg, expectedRecords.size(), numRecords);
+
+                    // Record view batches, the predicate reads ahead to the next matching record after each row
+                    reader = new BinaryRecordReader(new HeapWindowInputStream(data, 61));
+                    reader.initialize(new HPCCRecordViewBuilder(def));
+                    reader.setStringProcessingFlags(flags);
+                    reader.setUseDecimalForUnsigned8(useDecimalForUnsigned8);
+                    reader.setRecordPredicate(predicate);
+
+                    records.clear();
+                    while (reader.getNextBatch(records, 7) > 0);
+                    Assert.assertEquals(msg, expectedRecords.size(), records.size());
+                    for (int i = 0; i < records.size(); i++)
+                    {
+                        HPCCRecordView view = (HPCCRecordView) records.get(i);
+                        Assert.assertEquals(msg + " view batch: " + i, expectedRecords.get(i).toString(), view.toHPCCRecord().toString());
+                    }
+
+                    // Predicates on fields that are not part of the records returned
+                    reader = new BinaryRecordReader(new ByteArrayInputStream(data));
+                    reader.initialize(new HPCCRecordBuilder(projectedDef));
+                    reader.setStringProcessingFlags(flags);
+                    reader.setUseDecimalForUnsigned8(useDecimalForUnsigned8);
+                    reader.setRecordPredicate(predicate, def);
+
+                    numRecords = 0;
+                    while (reader.hasNext())
+                    {
+                        HPCCRecord record = (HPCCRecord) reader.getNext();
+                        HPCCRecord expected = (HPCCRecord) expectedRecords.get(numRecords);
+                        Assert.assertEquals(msg + " projected: " + numRecords, projectedFields.length, record.getNumFields());
+                        for (int i = 0; i < projectedFields.length; i++)
+                        {
+                            Assert.assertEquals(msg + " projected: " + numRecords, String.valueOf(expected.getField(i)), String.valueOf(record.getField(i)));
+                        }
+                        numRecords++;
+                    }
+                    Assert.assertEquals(msg, expectedRecords.size(), numRecords);
+                }
+            }
+        }
+
+        // Most predicates match some but not all of the records
+        Assert.assertTrue(numSelectivePredicates + " of " + numPredicates, numSelectivePredicates > numPredicates * 3 / 4);
+
+        // Predicates that cannot be evaluated are rejected, and the previous predicate is kept
+        BinaryRecordReader reader = new BinaryRecordReader(new ByteArrayInputStream(encodedRecords));
+        reader.initialize(new HPCCRecordBuilder(recordDef));
+        RecordPredicate[] invalidPredicates = new RecordPredicate[] { RecordPredicate.equalTo("int4", "abc"),
+                                                                      RecordPredicate.startsWith("int4", "1"),
+                                                                      RecordPredicate.equalTo("notAField", 1),
+                                                                      RecordPredicate.equalTo("data4", "abcd"),
+                                                                      RecordPredicate.and(RecordPredicate.equalTo("bool", true), RecordPredicate.lessThan("dec10", "1.x")) };
+        for (RecordPredicate invalidPredicate : invalidPredicates)
+        {
+            try
+            {
+                reader.setRecordPredicate(invalidPredicate);
+                Assert.fail("Expected an exception for predicate: " + invalidPredicate);
+            }
+            catch (HpccFileException e)
+            {
+                // Expected
+            }
+
+            try
+            {
+                invalidPredicate.validate(recordDef);
+                Assert.fail("Expected validation to fail for predicate: " + invalidPredicate);
+            }
+            catch (Exception e)
+            {
+                // Expected
+            }
+        }
+        Assert.assertNull(reader.getRecordPredicate());
+        createTestPredicates(recordDef, readRecords(recordDef, encodedRecords, true, BinaryRecordReader.NO_STRING_PROCESSING, false))[0].validate(recordDef);
+
+        int numRecords = 0;
+        while (reader.hasNext())
+        {
+            reader.getNext();
+            numRecords++;
+        }
+        Assert.assertEquals(NUM_RECORDS, numRecords);
+    }
+}
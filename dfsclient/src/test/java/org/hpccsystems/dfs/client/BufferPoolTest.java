@@ -0,0 +1,125 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteOrder;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(org.hpccsystems.commons.annotations.BaseTests.class)
+public class BufferPoolTest
+{
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void reuseTest()
+    {
+        BufferPool pool = new BufferPool();
+
+        byte[] buffer = pool.borrow(4 * MB);
+        Assert.assertEquals(4 * MB, buffer.length);
+        pool.release(buffer);
+        Assert.assertEquals(4 * MB, pool.getPooledBytes());
+
+        // Buffers are only reused for the same size class
+        byte[] other = pool.borrow(2 * MB);
+        Assert.assertNotSame(buffer, other);
+        Assert.assertSame(buffer, pool.borrow(4 * MB));
+        Assert.assertEquals(0, pool.getPooledBytes());
+        Assert.assertEquals(2, pool.getNumAllocations());
+        Assert.assertEquals(1, pool.getNumAllocationsAvoided());
+
+        // Sizes outside of the size classes are not pooled
+        byte[] unpooled = pool.borrow(3 * MB);
+        Assert.assertEquals(3 * MB, unpooled.length);
+        pool.release(unpooled);
+        pool.release(pool.borrow(1024));
+        Assert.assertEquals(0, pool.getPooledBytes());
+        Assert.assertEquals(2, pool.getNumAllocations());
+    }
+
+    @Test
+    public void maxPooledBytesTest()
+    {
+        BufferPool pool = new BufferPool();
+        pool.setMaxPooledBytes(6 * MB);
+
+        byte[] first = pool.borrow(4 * MB);
+        byte[] second = pool.borrow(4 * MB);
+        byte[] small = pool.borrow(MB);
+        pool.release(first);
+        pool.release(second);
+        pool.release(small);
+        Assert.assertEquals(5 * MB, pool.getPooledBytes());
+
+        // Reducing the limit evicts the largest buffers first
+        pool.setMaxPooledBytes(2 * MB);
+        Assert.assertEquals(MB, pool.getPooledBytes());
+
+        pool.clear();
+        Assert.assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void leakDetectionTest() throws Exception
+    {
+        BufferPool pool = new BufferPool();
+        pool.setLeakDetectionEnabled(true);
+
+        // Released and discarded buffers are not leaks
+        pool.release(pool.borrow(BufferPool.MIN_POOLED_SIZE));
+        pool.discard(pool.borrow(2 * BufferPool.MIN_POOLED_SIZE));
+
+        // A double release is ignored
+        byte[] buffer = pool.borrow(BufferPool.MIN_POOLED_SIZE);
+        pool.release(buffer);
+        pool.release(buffer);
+        Assert.assertEquals(BufferPool.MIN_POOLED_SIZE, pool.getPooledBytes());
+        pool.clear();
+        buffer = null;
+
+        pool.borrow(4 * BufferPool.MIN_POOLED_SIZE);
+
+        long deadlineMS = System.currentTimeMillis() + 10000;
+        while (pool.getNumLeaks() == 0 && System.currentTimeMillis() < deadlineMS)
+        {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, pool.getNumLeaks());
+    }
+
+    @Test
+    public void pooledWriterTest() throws Exception
+    {
+        BufferPool pool = BufferPool.getInstance();
+        long numAllocationsAvoided = pool.getNumAllocationsAvoided();
+
+        for (int i = 0; i < 2; i++)
+        {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            BinaryRecordWriter writer = new BinaryRecordWriter(output, ByteOrder.nativeOrder(), true);
+            writer.enableAsyncFlush();
+            writer.finalize();
+        }
+
+        // The second writer reuses both buffers of the first
+        Assert.assertTrue(pool.getNumAllocationsAvoided() - numAllocationsAvoided >= 2);
+    }
+}
@@ -239,6 +239,183 @@ public class CircularByteBufferTest extends BaseRemoteTest
         }
     }
 
+    @Test
+    public void resizeTest()
+    {
+        byte[] expectedData = (new String("Lorem ipsum dolor sit amet, consectetur adipiscing elit.")).getBytes();
+
+        // Wrap the data around the end of the buffer before resizing
+        CircularByteBuffer cbb = new CircularByteBuffer(40);
+        cbb.add(expectedData, 0, 30);
+        byte[] readData = new byte[expectedData.length];
+        cbb.read(readData, 0, 20);
+        cbb.add(expectedData, 30, 20);
+        assertEquals(30, cbb.getBytesAvailable());
+
+        // Bytes retained by the mark must be preserved
+        cbb.mark(20);
+        cbb.skip(5);
+
+        // Too small for the retained bytes
+        assertEquals(false, cbb.resize(20));
+        assertEquals(40, cbb.getCapacity());
+
+        assertEquals(true, cbb.resize(64));
+        assertEquals(64, cbb.getCapacity());
+        assertEquals(25, cbb.getBytesAvailable());
+        assertEquals(34, cbb.getFreeSpace());
+        assertEquals(34, cbb.getContiguousFreeSpace());
+
+        cbb.reset();
+        assertEquals(30, cbb.getBytesAvailable());
+
+        cbb.add(expectedData, 50, expectedData.length - 50);
+        assertEquals(true, cbb.resize(cbb.getBytesAvailable()));
+        assertEquals(0, cbb.getFreeSpace());
+
+        cbb.read(readData, 20, cbb.getBytesAvailable());
+        if (!Arrays.equals(expectedData, readData))
+        {
+            fail();
+        }
+    }
+
+    @Test
+    public void contiguousReadTest()
+    {
+        byte[] expectedData = (new String("Lorem ipsum dolor sit amet, consectetur adipiscing elit.")).getBytes();
+
+        // Wrap the data around the end of the buffer
+        CircularByteBuffer cbb = new CircularByteBuffer(40);
+        cbb.add(expectedData, 0, 30);
+        cbb.skip(20);
+        cbb.add(expectedData, 30, 20);
+        assertEquals(30, cbb.getBytesAvailable());
+
+        // Only the bytes up to the end of the buffer are contiguous
+        assertEquals(20, cbb.getContiguousBytesAvailable());
+        assertEquals(20, cbb.getReadOffset());
+        byte[] readData = Arrays.copyOfRange(cbb.getReadableBuffer(), cbb.getReadOffset(), cbb.getReadOffset() + 20);
+        Assert.assertArrayEquals(Arrays.copyOfRange(expectedData, 20, 40), readData);
+        assertEquals(20, cbb.incrementReadOffset(20));
+
+        assertEquals(10, cbb.getContiguousBytesAvailable());
+        assertEquals(0, cbb.getReadOffset());
+        readData = Arrays.copyOfRange(cbb.getReadableBuffer(), cbb.getReadOffset(), cbb.getReadOffset() + 10);
+        Assert.assertArrayEquals(Arrays.copyOfRange(expectedData, 40, 50), readData);
+
+        // Contiguous reads follow the buffer after a resize
+        cbb.mark(10);
+        assertEquals(true, cbb.resize(16));
+        assertEquals(10, cbb.getContiguousBytesAvailable());
+        assertEquals(0, cbb.getReadOffset());
+        cbb.incrementReadOffset(10);
+        assertEquals(0, cbb.getContiguousBytesAvailable());
+
+        cbb.reset();
+        assertEquals(10, cbb.getContiguousBytesAvailable());
+        readData = Arrays.copyOfRange(cbb.getReadableBuffer(), cbb.getReadOffset(), cbb.getReadOffset() + 10);
+        Assert.assertArrayEquals(Arrays.copyOfRange(expectedData, 40, 50), readData);
+    }
+
+    @Test
+    public void lockFreeReaderWriterTest()
+    {
+        // Same as the concurrent test without any synchronization, the writer also resizes the buffer while the reader uses mark / reset
+        CircularByteBuffer cbb = new CircularByteBuffer(61);
+
+        int numIterations = 10000;
+        byte[] expectedData = (new String("Lorem ipsum dolor sit amet, consectetur adipiscing elit. Phasellus mauris nulla, semper a vehicula sed, pulvinar non purus quam.")).getBytes();
+
+        Exception[] workerExceptions = new Exception[2];
+        Thread writer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < numIterations; i++)
+                {
+                    if (i % 100 == 0)
+                    {
+                        cbb.resize((i % 200 == 0) ? 61 : 97);
+                    }
+
+                    int numBytesRemaining = expectedData.length;
+                    while (numBytesRemaining > 0 && workerExceptions[1] == null)
+                    {
+                        int offset = expectedData.length - numBytesRemaining;
+                        int bytesToWrite = Math.min(cbb.getContiguousFreeSpace(), numBytesRemaining);
+                        System.arraycopy(expectedData, offset, cbb.getInternalBuffer(), cbb.getWriteOffset(), bytesToWrite);
+                        cbb.incrementWriteOffset(bytesToWrite);
+                        numBytesRemaining -= bytesToWrite;
+
+                        if (bytesToWrite == 0)
+                        {
+                            Thread.yield();
+                        }
+                    }
+                }
+            }
+        });
+
+        Thread reader = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (int i = 0; i < numIterations; i++)
+                {
+                    byte[] readData = new byte[expectedData.length];
+                    int numBytesRemaining = readData.length;
+                    while (numBytesRemaining > 0)
+                    {
+                        int offset = readData.length - numBytesRemaining;
+
+                        // Read the data twice using mark / reset
+                        cbb.mark(32);
+                        int bytesToRead = Math.min(cbb.getBytesAvailable(), Math.min(numBytesRemaining, 32));
+                        cbb.skip(bytesToRead);
+                        cbb.reset();
+
+                        bytesToRead = cbb.read(readData, offset, bytesToRead);
+                        numBytesRemaining -= bytesToRead;
+
+                        if (bytesToRead == 0)
+                        {
+                            Thread.yield();
+                        }
+                    }
+
+                    if (!Arrays.equals(expectedData, readData))
+                    {
+                        workerExceptions[1] = new Exception("Data mismatch in iteration: " + i);
+                        return;
+                    }
+                }
+            }
+        });
+
+        writer.start();
+        reader.start();
+
+        try
+        {
+            writer.join();
+            reader.join();
+        }
+        catch (InterruptedException e)
+        {
+            e.printStackTrace();
+            fail();
+        }
+
+        if (workerExceptions[1] != null)
+        {
+            workerExceptions[1].printStackTrace();
+            fail();
+        }
+    }
+
     @Test
     public void concurrentReaderWriterTest()
     {
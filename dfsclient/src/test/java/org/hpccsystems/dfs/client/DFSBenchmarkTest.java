@@ -29,6 +29,8 @@ import org.hpccsystems.ws.client.BaseRemoteTest;
 import org.hpccsystems.dfs.client.DataPartition;
 
 import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.ecl.FieldType;
+import org.hpccsystems.commons.ecl.HpccSrcType;
 import org.hpccsystems.commons.errors.HpccFileException;
 import org.json.JSONObject;
 import org.json.JSONArray;
@@ -61,6 +63,18 @@ public class DFSBenchmarkTest extends BaseRemoteTest
     private static final String READ_TIME_METRIC = "readTime";
     private static final String BANDWIDTH_METRIC = "bandwidth";
     private static final String RPS_METRIC = "recordsPerSecond";
+    private static final String PEAK_THREAD_COUNT_METRIC = "peakThreadCount";
+    private static final String ALLOCATED_BYTES_PER_RECORD_METRIC = "allocatedBytesPerRecord";
+
+    // The number of file parts read concurrently by the thread mode benchmark, file parts are read multiple times to reach this count
+    private static final int NUM_CONCURRENT_PARTITIONS = 1024;
+
+    // The number of bytes transferred through the read buffer by the read buffer benchmark
+    private static final long READ_BUFFER_BENCHMARK_BYTES = 1024L * 1024L * 1024L;
+
+    // The number of records decoded by the decoder plan benchmark
+    private static final int DECODER_BENCHMARK_RECORDS = 1000000;
+    private static final int COLUMNAR_BENCHMARK_BATCH_SIZE = 4096;
 
     private static final String[] JENKINS_SELECTED_METRICS = {BANDWIDTH_METRIC, RowServiceInputStream.WAIT_TIME_METRIC, RowServiceInputStream.SLEEP_TIME_METRIC};
 
@@ -259,6 +273,653 @@ public class DFSBenchmarkTest extends BaseRemoteTest
         fileWriter.close();
     }
 
+    @Test
+    public void threadModeBenchmarks() throws Exception
+    {
+        System.out.println("Starting Thread Mode Tests, concurrent partitions: " + NUM_CONCURRENT_PARTITIONS);
+        System.out.println("-------------------------------------------------------------");
+
+        String dataset = datasets[0];
+        boolean[] threadModes = DFSThreadFactory.isVirtualThreadSupported() ? new boolean[] {false, true} : new boolean[] {false};
+        if (threadModes.length == 1)
+        {
+            System.out.println("Virtual threads are not supported by this JVM, only platform threads will be tested.");
+        }
+
+        java.lang.management.ThreadMXBean threadMXBean = java.lang.management.ManagementFactory.getThreadMXBean();
+        try
+        {
+            for (boolean useVirtualThreads : threadModes)
+            {
+                DFSThreadFactory.setUseVirtualThreads(useVirtualThreads);
+                String threadMode = useVirtualThreads ? "virtual" : "platform";
+
+                BenchmarkResult result = new BenchmarkResult("DFSClient: Concurrent Read", dataset + " " + threadMode);
+                setDesiredMetricScales(result);
+                result.addParameter(new BenchmarkParam("dataset", dataset));
+                result.addParameter(new BenchmarkParam("threadMode", threadMode));
+
+                HPCCFile file = new HPCCFile(dataset, connString, hpccUser, hpccPass);
+                file.setFileAccessExpirySecs(1000);
+
+                threadMXBean.resetPeakThreadCount();
+                long readTimeNS = System.nanoTime();
+                long numRecords = readFileConcurrently(file, NUM_CONCURRENT_PARTITIONS);
+                readTimeNS = System.nanoTime() - readTimeNS;
+
+                double readTimeS = readTimeNS / 1e9;
+                result.addMetric(new SimpleMetric((double) readTimeNS, READ_TIME_METRIC, new Units(Units.Type.SECONDS, Units.Scale.NANO)));
+                result.addMetric(new SimpleMetric(numRecords / readTimeS, RPS_METRIC, new Units(Units.Type.COUNT)));
+                result.addMetric(new SimpleMetric((double) threadMXBean.getPeakThreadCount(), PEAK_THREAD_COUNT_METRIC, new Units(Units.Type.COUNT)));
+
+                System.out.println(result.toJson().toString());
+            }
+        }
+        finally
+        {
+            DFSThreadFactory.setUseVirtualThreads(false);
+        }
+    }
+
+    @Test
+    public void readBufferBenchmarks() throws Exception
+    {
+        System.out.println("Starting Read Buffer Tests");
+        System.out.println("-------------------------------------------------------------");
+
+        // Compares the lock free read buffer with the previous access pattern, where every buffer operation took a lock
+        int[] readSizes = {1, 64, 64 * 1024};
+        for (int readSize : readSizes)
+        {
+            for (boolean useLock : new boolean[] {true, false})
+            {
+                String mode = useLock ? "locked" : "lockFree";
+                BenchmarkResult result = new BenchmarkResult("DFSClient: Read Buffer", mode + " readSize: " + readSize);
+                setDesiredMetricScales(result);
+                result.addParameter(new BenchmarkParam("mode", mode));
+                result.addParameter(new BenchmarkParam("readSize", Integer.toString(readSize)));
+
+                // Warm up
+                transferThroughReadBuffer(READ_BUFFER_BENCHMARK_BYTES / 8, readSize, useLock);
+
+                long readTimeNS = System.nanoTime();
+                transferThroughReadBuffer(READ_BUFFER_BENCHMARK_BYTES, readSize, useLock);
+                readTimeNS = System.nanoTime() - readTimeNS;
+
+                double readTimeS = readTimeNS / 1e9;
+                result.addMetric(new SimpleMetric((double) readTimeNS, READ_TIME_METRIC, new Units(Units.Type.SECONDS, Units.Scale.NANO)));
+                result.addMetric(new SimpleMetric(READ_BUFFER_BENCHMARK_BYTES / readTimeS, BANDWIDTH_METRIC, new Units(Units.Type.BYTES)));
+
+                System.out.println(result.toJson().toString());
+            }
+        }
+    }
+
+    /**
+     * Writes numBytes through a read buffer from a producer thread in the same way as the prefetch thread,
+     * and reads them on the calling thread in readSize chunks.
+     */
+    private void transferThroughReadBuffer(long numBytes, int readSize, boolean useLock) throws Exception
+    {
+        CircularByteBuffer readBuffer = new CircularByteBuffer(4 * 1024 * 1024);
+        java.util.concurrent.locks.ReentrantLock lock = new java.util.concurrent.locks.ReentrantLock();
+        java.util.concurrent.atomic.AtomicReference<String> failure = new java.util.concurrent.atomic.AtomicReference<String>(null);
+
+        Thread producer = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                long remainingBytes = numBytes;
+                byte nextValue = 0;
+                while (remainingBytes > 0 && failure.get() == null)
+                {
+                    int writeOffset = 0;
+                    int bytesToWrite = 0;
+                    if (useLock)
+                    {
+                        lock.lock();
+                    }
+                    try
+                    {
+                        writeOffset = readBuffer.getWriteOffset();
+                        bytesToWrite = (int) Math.min(Math.min(readBuffer.getContiguousFreeSpace(), 64 * 1024), remainingBytes);
+                    }
+                    finally
+                    {
+                        if (useLock)
+                        {
+                            lock.unlock();
+                        }
+                    }
+
+                    if (bytesToWrite == 0)
+                    {
+                        Thread.yield();
+                        continue;
+                    }
+
+                    byte[] internalBuffer = readBuffer.getInternalBuffer();
+                    for (int i = 0; i < bytesToWrite; i++)
+                    {
+                        internalBuffer[writeOffset + i] = nextValue++;
+                    }
+
+                    if (useLock)
+                    {
+                        lock.lock();
+                    }
+                    try
+                    {
+                        readBuffer.incrementWriteOffset(bytesToWrite);
+                    }
+                    finally
+                    {
+                        if (useLock)
+                        {
+                            lock.unlock();
+                        }
+                    }
+                    remainingBytes -= bytesToWrite;
+                }
+            }
+        });
+        producer.start();
+
+        byte[] readData = new byte[readSize];
+        byte expectedValue = 0;
+        long remainingBytes = numBytes;
+        while (remainingBytes > 0)
+        {
+            int bytesRead = 0;
+            if (useLock)
+            {
+                lock.lock();
+            }
+            try
+            {
+                if (readSize == 1)
+                {
+                    int b = readBuffer.read();
+                    if (b != -1)
+                    {
+                        readData[0] = (byte) (b - 128);
+                        bytesRead = 1;
+                    }
+                }
+                else
+                {
+                    bytesRead = readBuffer.read(readData, 0, (int) Math.min(readSize, remainingBytes));
+                }
+            }
+            finally
+            {
+                if (useLock)
+                {
+                    lock.unlock();
+                }
+            }
+
+            if (bytesRead == 0)
+            {
+                Thread.yield();
+                continue;
+            }
+
+            // Only the first byte of each read is checked to keep the verification out of the measurement
+            if (readData[0] != expectedValue)
+            {
+                failure.compareAndSet(null, "Unexpected value read from buffer at: " + (numBytes - remainingBytes));
+                break;
+            }
+            expectedValue += bytesRead;
+            remainingBytes -= bytesRead;
+        }
+
+        producer.join();
+        if (failure.get() != null)
+        {
+            Assert.fail(failure.get());
+        }
+    }
+
+    @Test
+    public void decoderPlanBenchmarks() throws Exception
+    {
+        System.out.println("Starting Decoder Plan Tests");
+        System.out.println("-------------------------------------------------------------");
+
+        String[] layouts = {"integer", "string", "mixed"};
+        for (String layout : layouts)
+        {
+            FieldDef recordDef = createDecoderBenchmarkRecordDefinition(layout);
+            byte[] encodedRecords = createDecoderBenchmarkRecords(recordDef, DECODER_BENCHMARK_RECORDS);
+
+            // Compares decoding with a decoder plan compiled from the record definition against interpreting the record definition,
+            // against decoding into column vectors, against record views that only decode the first field of each record,
+            // and against decoding batches of records
+            for (String mode : new String[] {"interpreted", "decoderPlan", "columnar", "recordView", "batched"})
+            {
+                BenchmarkResult result = new BenchmarkResult("DFSClient: Record Decoding", mode + " layout: " + layout);
+                setDesiredMetricScales(result);
+                result.addParameter(new BenchmarkParam("mode", mode));
+                result.addParameter(new BenchmarkParam("layout", layout));
+
+                // Warm up
+                for (int i = 0; i < 3; i++)
+                {
+                    decodeRecords(recordDef, encodedRecords, mode);
+                }
+
+                long readTimeNS = System.nanoTime();
+                long numRecords = decodeRecords(recordDef, encodedRecords, mode);
+                readTimeNS = System.nanoTime() - readTimeNS;
+
+                double readTimeS = readTimeNS / 1e9;
+                result.addMetric(new SimpleMetric((double) readTimeNS, READ_TIME_METRIC, new Units(Units.Type.SECONDS, Units.Scale.NANO)));
+                result.addMetric(new SimpleMetric(encodedRecords.length / readTimeS, BANDWIDTH_METRIC, new Units(Units.Type.BYTES)));
+                result.addMetric(new SimpleMetric(numRecords / readTimeS, RPS_METRIC, new Units(Units.Type.COUNT)));
+
+                System.out.println(result.toJson().toString());
+            }
+        }
+    }
+
+    @Test
+    public void recordReuseBenchmarks() throws Exception
+    {
+        System.out.println("Starting Record Reuse Tests");
+        System.out.println("-------------------------------------------------------------");
+
+        // Allocations are measured per thread, the records are decoded on this thread
+        java.lang.management.ThreadMXBean threadBean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if ((threadBean instanceof com.sun.management.ThreadMXBean) == false)
+        {
+            System.out.println("Thread allocation measurement is not supported by this JVM, skipping.");
+            return;
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        long threadId = Thread.currentThread().getId();
+
+        String[] layouts = {"integer", "string", "mixed"};
+        for (String layout : layouts)
+        {
+            FieldDef recordDef = createDecoderBenchmarkRecordDefinition(layout);
+            byte[] encodedRecords = createDecoderBenchmarkRecords(recordDef, DECODER_BENCHMARK_RECORDS);
+
+            // Compares building a new record per row against reusing a mutable record
+            for (String mode : new String[] {"decoderPlan", "reusedRecords"})
+            {
+                BenchmarkResult result = new BenchmarkResult("DFSClient: Record Reuse", mode + " layout: " + layout);
+                setDesiredMetricScales(result);
+                result.addParameter(new BenchmarkParam("mode", mode));
+                result.addParameter(new BenchmarkParam("layout", layout));
+
+                // Warm up
+                for (int i = 0; i < 3; i++)
+                {
+                    decodeRecords(recordDef, encodedRecords, mode);
+                }
+
+                long allocatedBytes = allocationBean.getThreadAllocatedBytes(threadId);
+                long readTimeNS = System.nanoTime();
+                long numRecords = decodeRecords(recordDef, encodedRecords, mode);
+                readTimeNS = System.nanoTime() - readTimeNS;
+                allocatedBytes = allocationBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+
+                double readTimeS = readTimeNS / 1e9;
+                result.addMetric(new SimpleMetric((double) readTimeNS, READ_TIME_METRIC, new Units(Units.Type.SECONDS, Units.Scale.NANO)));
+                result.addMetric(new SimpleMetric(numRecords / readTimeS, RPS_METRIC, new Units(Units.Type.COUNT)));
+                result.addMetric(new SimpleMetric((double) allocatedBytes / numRecords, ALLOCATED_BYTES_PER_RECORD_METRIC, new Units(Units.Type.BYTES)));
+
+                System.out.println(result.toJson().toString());
+            }
+        }
+    }
+
+    @Test
+    public void unscaledDecimalBenchmarks() throws Exception
+    {
+        System.out.println("Starting Unscaled Decimal Tests");
+        System.out.println("-------------------------------------------------------------");
+
+        java.lang.management.ThreadMXBean threadBean = java.lang.management.ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocationBean = null;
+        if (threadBean instanceof com.sun.management.ThreadMXBean)
+        {
+            allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        }
+        long threadId = Thread.currentThread().getId();
+
+        FieldDef recordDef = createDecoderBenchmarkRecordDefinition("decimal");
+        byte[] encodedRecords = createDecoderBenchmarkRecords(recordDef, DECODER_BENCHMARK_RECORDS);
+
+        // Compares decoding decimals into BigDecimals with BigInteger arithmetic against decoding unscaled longs
+        for (String mode : new String[] {"decoderPlan", "unscaledDecimals", "reusedUnscaledDecimals"})
+        {
+            BenchmarkResult result = new BenchmarkResult("DFSClient: Decimal Decoding", mode);
+            setDesiredMetricScales(result);
+            result.addParameter(new BenchmarkParam("mode", mode));
+
+            // Warm up
+            for (int i = 0; i < 3; i++)
+            {
+                decodeRecords(recordDef, encodedRecords, mode);
+            }
+
+            long allocatedBytes = allocationBean != null ? allocationBean.getThreadAllocatedBytes(threadId) : 0;
+            long readTimeNS = System.nanoTime();
+            long numRecords = decodeRecords(recordDef, encodedRecords, mode);
+            readTimeNS = System.nanoTime() - readTimeNS;
+
+            double readTimeS = readTimeNS / 1e9;
+            result.addMetric(new SimpleMetric((double) readTimeNS, READ_TIME_METRIC, new Units(Units.Type.SECONDS, Units.Scale.NANO)));
+            result.addMetric(new SimpleMetric(encodedRecords.length / readTimeS, BANDWIDTH_METRIC, new Units(Units.Type.BYTES)));
+            result.addMetric(new SimpleMetric(numRecords / readTimeS, RPS_METRIC, new Units(Units.Type.COUNT)));
+            if (allocationBean != null)
+            {
+                allocatedBytes = allocationBean.getThreadAllocatedBytes(threadId) - allocatedBytes;
+                result.addMetric(new SimpleMetric((double) allocatedBytes / numRecords, ALLOCATED_BYTES_PER_RECORD_METRIC, new Units(Units.Type.BYTES)));
+            }
+
+            System.out.println(result.toJson().toString());
+        }
+    }
+
+    @Test
+    public void recordPredicateBenchmarks() throws Exception
+    {
+        System.out.println("Starting Record Predicate Tests");
+        System.out.println("-------------------------------------------------------------");
+
+        FieldDef recordDef = createDecoderBenchmarkRecordDefinition("mixed");
+        byte[] encodedRecords = createDecoderBenchmarkRecords(recordDef, DECODER_BENCHMARK_RECORDS);
+
+        // Compares decoding every record and filtering the records afterwards against filtering with a record predicate
+        // evaluated before records are decoded, for a predicate that matches about 10% of the records
+        int fieldIndex = recordDef.getDefIndexWithFieldName("uint4_0");
+        long threshold = Integer.MAX_VALUE / 10;
+        for (String mode : new String[] {"filteredAfterDecoding", "recordPredicate"})
+        {
+            BenchmarkResult result = new BenchmarkResult("DFSClient: Record Filtering", mode);
+            setDesiredMetricScales(result);
+            result.addParameter(new BenchmarkParam("mode", mode));
+
+            long numMatches = 0;
+            long readTimeNS = 0;
+            for (int i = 0; i < 4; i++)
+            {
+                // The first iterations are warm up
+                readTimeNS = System.nanoTime();
+
+                BinaryRecordReader reader = new BinaryRecordReader(new java.io.ByteArrayInputStream(encodedRecords));
+                reader.initialize(new HPCCRecordBuilder(recordDef));
+                if (mode.equals("recordPredicate"))
+                {
+                    reader.setRecordPredicate(RecordPredicate.lessThan("uint4_0", threshold));
+                }
+
+                numMatches = 0;
+                while (reader.hasNext())
+                {
+                    HPCCRecord record = (HPCCRecord) reader.getNext();
+                    if (mode.equals("recordPredicate") || (Long) record.getField(fieldIndex) < threshold)
+                    {
+                        numMatches++;
+                    }
+                }
+
+                readTimeNS = System.nanoTime() - readTimeNS;
+            }
+
+            double readTimeS = readTimeNS / 1e9;
+            result.addParameter(new BenchmarkParam("matches", String.valueOf(numMatches)));
+            result.addMetric(new SimpleMetric((double) readTimeNS, READ_TIME_METRIC, new Units(Units.Type.SECONDS, Units.Scale.NANO)));
+            result.addMetric(new SimpleMetric(encodedRecords.length / readTimeS, BANDWIDTH_METRIC, new Units(Units.Type.BYTES)));
+            result.addMetric(new SimpleMetric(DECODER_BENCHMARK_RECORDS / readTimeS, RPS_METRIC, new Units(Units.Type.COUNT)));
+
+            System.out.println(result.toJson().toString());
+        }
+    }
+
+    private FieldDef createDecoderBenchmarkRecordDefinition(String layout)
+    {
+        ArrayList<FieldDef> fieldDefs = new ArrayList<FieldDef>();
+        if (layout.equals("decimal"))
+        {
+            for (int i = 0; i < 6; i++)
+            {
+                FieldDef decimalDef = new FieldDef("dec18_" + i, FieldType.DECIMAL, "DECIMAL18_4", 0, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+                decimalDef.setPrecision(18);
+                decimalDef.setScale(4);
+                fieldDefs.add(decimalDef);
+
+                FieldDef unsignedDecimalDef = new FieldDef("udec12_" + i, FieldType.DECIMAL, "UDECIMAL12_2", 0, true, true, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+                unsignedDecimalDef.setPrecision(12);
+                unsignedDecimalDef.setScale(2);
+                fieldDefs.add(unsignedDecimalDef);
+            }
+        }
+
+        if (layout.equals("integer") || layout.equals("mixed"))
+        {
+            for (int i = 0; i < 4; i++)
+            {
+                fieldDefs.add(new FieldDef("int8_" + i, FieldType.INTEGER, "INTEGER8", 8, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]));
+                fieldDefs.add(new FieldDef("uint4_" + i, FieldType.INTEGER, "UNSIGNED4", 4, true, true, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]));
+            }
+        }
+
+        if (layout.equals("string") || layout.equals("mixed"))
+        {
+            fieldDefs.add(new FieldDef("str16", FieldType.STRING, "STRING16", 16, true, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]));
+            fieldDefs.add(new FieldDef("str", FieldType.STRING, "STRING", 0, false, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]));
+            fieldDefs.add(new FieldDef("utf8", FieldType.STRING, "UTF8", 0, false, false, HpccSrcType.UTF8, new FieldDef[0]));
+            fieldDefs.add(new FieldDef("varstr", FieldType.VAR_STRING, "VARSTRING", 0, false, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]));
+        }
+
+        if (layout.equals("mixed"))
+        {
+            fieldDefs.add(new FieldDef("real8", FieldType.REAL, "REAL8", 8, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]));
+            fieldDefs.add(new FieldDef("bool", FieldType.BOOLEAN, "BOOLEAN", 1, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]));
+            FieldDef decimalDef = new FieldDef("dec16", FieldType.DECIMAL, "DECIMAL16_4", 0, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+            decimalDef.setPrecision(16);
+            decimalDef.setScale(4);
+            fieldDefs.add(decimalDef);
+
+            FieldDef[] childDefs = { new FieldDef("int4", FieldType.INTEGER, "INTEGER4", 4, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]),
+                                     new FieldDef("str", FieldType.STRING, "STRING", 0, false, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]) };
+            FieldDef childRecordDef = new FieldDef("ChildRecord", FieldType.RECORD, "rec", 4, false, false, HpccSrcType.LITTLE_ENDIAN, childDefs);
+            fieldDefs.add(new FieldDef("childDataset", FieldType.DATASET, "DATASET", 0, false, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[] {childRecordDef}));
+        }
+
+        return new FieldDef("RootRecord", FieldType.RECORD, "rec", 4, false, false, HpccSrcType.LITTLE_ENDIAN, fieldDefs.toArray(new FieldDef[0]));
+    }
+
+    private byte[] createDecoderBenchmarkRecords(FieldDef recordDef, int numRecords) throws Exception
+    {
+        java.util.Random random = new java.util.Random(42);
+        java.io.ByteArrayOutputStream outStream = new java.io.ByteArrayOutputStream();
+        BinaryRecordWriter writer = new BinaryRecordWriter(outStream);
+        writer.initialize(new HPCCRecordAccessor(recordDef));
+
+        for (int i = 0; i < numRecords; i++)
+        {
+            Object[] fields = new Object[recordDef.getNumDefs()];
+            for (int j = 0; j < recordDef.getNumDefs(); j++)
+            {
+                FieldDef fd = recordDef.getDef(j);
+                switch (fd.getFieldType())
+                {
+                    case INTEGER:
+                        fields[j] = Long.valueOf(fd.isUnsigned() ? random.nextInt(Integer.MAX_VALUE) : random.nextLong());
+                        break;
+                    case REAL:
+                        fields[j] = Double.valueOf(random.nextDouble());
+                        break;
+                    case BOOLEAN:
+                        fields[j] = Boolean.valueOf(random.nextBoolean());
+                        break;
+                    case DECIMAL:
+                        fields[j] = java.math.BigDecimal.valueOf(fd.isUnsigned() ? random.nextInt(Integer.MAX_VALUE) : random.nextInt(), fd.getScale());
+                        break;
+                    case STRING:
+                    case VAR_STRING:
+                        fields[j] = "Record " + i + " field " + j;
+                        break;
+                    case DATASET:
+                    {
+                        FieldDef childRecordDef = fd.getDef(0);
+                        List<Object> childRecords = new ArrayList<Object>();
+                        for (int k = 0; k < 2; k++)
+                        {
+                            childRecords.add(new HPCCRecord(new Object[] {Long.valueOf(k), "Child " + k}, childRecordDef));
+                        }
+                        fields[j] = childRecords;
+                        break;
+                    }
+                    default:
+                        throw new Exception("Unexpected benchmark field type: " + fd.getFieldType());
+                }
+            }
+            writer.writeRecord(new HPCCRecord(fields, recordDef));
+        }
+        writer.finalize();
+        return outStream.toByteArray();
+    }
+
+    private long decodeRecords(FieldDef recordDef, byte[] encodedRecords, String mode) throws Exception
+    {
+        BinaryRecordReader reader = new BinaryRecordReader(new java.io.ByteArrayInputStream(encodedRecords));
+        reader.setUseDecoderPlan(!mode.equals("interpreted"));
+        if (mode.equals("recordView"))
+        {
+            reader.initialize(new HPCCRecordViewBuilder(recordDef));
+        }
+        else if (mode.equals("reusedRecords") || mode.equals("reusedUnscaledDecimals"))
+        {
+            reader.initialize(new HPCCMutableRecordBuilder(recordDef));
+        }
+        else
+        {
+            reader.initialize(new HPCCRecordBuilder(recordDef));
+        }
+        reader.setUseUnscaledDecimals(mode.equals("unscaledDecimals") || mode.equals("reusedUnscaledDecimals"));
+
+        long numRecords = 0;
+        if (mode.equals("recordView"))
+        {
+            while (reader.hasNext())
+            {
+                HPCCRecordView view = (HPCCRecordView) reader.getNext();
+                view.getField(0);
+                numRecords++;
+            }
+            return numRecords;
+        }
+
+        if (mode.equals("batched"))
+        {
+            List<Object> batch = new ArrayList<Object>(HpccRemoteFileReader.DEFAULT_RECORD_BATCH_SIZE);
+            int batchSize = 0;
+            while ((batchSize = reader.getNextBatch(batch, HpccRemoteFileReader.DEFAULT_RECORD_BATCH_SIZE)) > 0)
+            {
+                numRecords += batchSize;
+                batch.clear();
+            }
+            return numRecords;
+        }
+
+        if (mode.equals("columnar"))
+        {
+            ColumnarBatch batch = new ColumnarBatch(recordDef);
+            while (reader.hasNext())
+            {
+                if (batch.getNumRows() == COLUMNAR_BENCHMARK_BATCH_SIZE)
+                {
+                    batch.reset();
+                }
+                reader.getNext(batch);
+                numRecords++;
+            }
+            return numRecords;
+        }
+
+        while (reader.hasNext())
+        {
+            reader.getNext();
+            numRecords++;
+        }
+        return numRecords;
+    }
+
+    /**
+     * Reads numConcurrentPartitions file parts at the same time, cycling through the file parts of the file.
+     * Both the consuming threads and the prefetch threads are created by the DFSThreadFactory.
+     */
+    public long readFileConcurrently(HPCCFile file, int numConcurrentPartitions) throws Exception
+    {
+        DataPartition[] fileParts = file.getFileParts();
+        if (fileParts == null || fileParts.length == 0)
+        {
+            Assert.fail("No file parts found");
+        }
+
+        FieldDef originalRD = file.getRecordDefinition();
+        if (originalRD == null || originalRD.getNumDefs() == 0)
+        {
+            Assert.fail("Invalid or null record definition");
+        }
+
+        java.util.concurrent.atomic.AtomicLong recordCount = new java.util.concurrent.atomic.AtomicLong(0);
+        java.util.concurrent.atomic.AtomicReference<String> failure = new java.util.concurrent.atomic.AtomicReference<String>(null);
+
+        Thread[] readThreads = new Thread[numConcurrentPartitions];
+        for (int i = 0; i < numConcurrentPartitions; i++)
+        {
+            final DataPartition filePart = fileParts[i % fileParts.length];
+            Runnable readTask = new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        HPCCRecordBuilder recordBuilder = new HPCCRecordBuilder(file.getProjectedRecordDefinition());
+                        HpccRemoteFileReader<HPCCRecord> fileReader = new HpccRemoteFileReader<HPCCRecord>(filePart, originalRD, recordBuilder);
+
+                        long filePartRecordCount = 0;
+                        while (fileReader.hasNext())
+                        {
+                            fileReader.next();
+                            filePartRecordCount++;
+                        }
+                        fileReader.close();
+
+                        recordCount.addAndGet(filePartRecordCount);
+                    }
+                    catch (Exception e)
+                    {
+                        failure.compareAndSet(null, "Error reading file part: " + filePart.getThisPart() + ": " + e.getMessage());
+                    }
+                }
+            };
+
+            readThreads[i] = DFSThreadFactory.newThread(readTask, null);
+            readThreads[i].start();
+        }
+
+        for (Thread readThread : readThreads)
+        {
+            readThread.join();
+        }
+
+        if (failure.get() != null)
+        {
+            Assert.fail(failure.get());
+        }
+
+        return recordCount.get();
+    }
+
     public void readRawFileData(HPCCFile file, List<IMetric> metrics) throws Exception
     {
         if (file == null)
@@ -28,6 +28,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 
 import org.hpccsystems.dfs.cluster.*;
@@ -235,6 +236,123 @@ public class DFSReadWriteTest extends BaseRemoteTest
         assertEquals(record, readRecord);
     }
 
+    /**
+     * Exposes its data as a direct ByteBuffer in small windows, so that fields straddle the end of the windows
+     * in the same way they straddle the wrap point of the RowServiceInputStream read buffer.
+     */
+    private static class WindowedInputStream extends ByteArrayInputStream implements IByteBufferInputStream
+    {
+        private final ByteBuffer directBuffer;
+        private final int windowSize;
+
+        WindowedInputStream(byte[] data, int windowSize)
+        {
+            super(data);
+            this.directBuffer = ByteBuffer.allocateDirect(data.length);
+            this.directBuffer.put(data);
+            this.windowSize = windowSize;
+        }
+
+        public ByteBuffer getReadableByteBuffer(int maxLength)
+        {
+            if (pos >= count)
+            {
+                return null;
+            }
+
+            // Windows end on multiples of the window size like the end of a ring buffer
+            int windowEnd = Math.min(count, (pos / windowSize + 1) * windowSize);
+            ByteBuffer window = directBuffer.duplicate();
+            window.limit(Math.min(windowEnd, pos + maxLength));
+            window.position(pos);
+            return window;
+        }
+    }
+
+    @Test
+    public void byteBufferDecodingTest() throws Exception
+    {
+        FieldDef[] fieldDefs = new FieldDef[22];
+        for (int i = 0; i < 8; i++)
+        {
+            fieldDefs[i * 2] = new FieldDef("int" + (i + 1), FieldType.INTEGER, "INTEGER" + (i + 1), i + 1, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+            fieldDefs[i * 2 + 1] = new FieldDef("uint" + (i + 1), FieldType.INTEGER, "UNSIGNED" + (i + 1), i + 1, true, true, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        }
+        fieldDefs[16] = new FieldDef("real8", FieldType.REAL, "REAL8", 8, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[17] = new FieldDef("real4", FieldType.REAL, "REAL4", 4, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[18] = new FieldDef("bool", FieldType.BOOLEAN, "BOOLEAN", 1, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        fieldDefs[19] = new FieldDef("str", FieldType.STRING, "UTF8", 0, false, false, HpccSrcType.UTF8, new FieldDef[0]);
+        fieldDefs[20] = new FieldDef("varstr", FieldType.VAR_STRING, "VARSTRING", 0, false, false, HpccSrcType.SINGLE_BYTE_CHAR, new FieldDef[0]);
+        fieldDefs[21] = new FieldDef("data", FieldType.BINARY, "DATA", 0, false, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]);
+        FieldDef recordDef = new FieldDef("RootRecord", FieldType.RECORD, "rec", 4, false, false, HpccSrcType.LITTLE_ENDIAN, fieldDefs);
+
+        List<HPCCRecord> records = new ArrayList<HPCCRecord>();
+        for (int i = 0; i < 1000; i++)
+        {
+            Object[] fields = new Object[22];
+            for (int j = 0; j < 8; j++)
+            {
+                int numBits = (j + 1) * 8;
+                long signedValue = RANDOM.nextLong() >> (64 - numBits);
+                long unsignedValue = RANDOM.nextLong() >>> (65 - numBits);
+                fields[j * 2] = Long.valueOf(signedValue);
+                fields[j * 2 + 1] = Long.valueOf(unsignedValue);
+            }
+            fields[16] = Double.valueOf(RANDOM.nextDouble() * Long.MAX_VALUE);
+            fields[17] = Double.valueOf(RANDOM.nextFloat());
+            fields[18] = Boolean.valueOf(RANDOM.nextBoolean());
+            fields[19] = generateRandomString(RANDOM.nextInt(20)) + "\u00e9\u4e2d";
+            fields[20] = generateRandomString(RANDOM.nextInt(40));
+
+            byte[] data = new byte[RANDOM.nextInt(16)];
+            RANDOM.nextBytes(data);
+            fields[21] = data;
+
+            records.add(new HPCCRecord(fields, recordDef));
+        }
+
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+        BinaryRecordWriter writer = new BinaryRecordWriter(outStream);
+        writer.initialize(new HPCCRecordAccessor(recordDef));
+        for (HPCCRecord record : records)
+        {
+            writer.writeRecord(record);
+        }
+        writer.finalize();
+        byte[] encodedRecords = outStream.toByteArray();
+
+        // Read once through the InputStream and then through windows of different sizes
+        BinaryRecordReader reader = new BinaryRecordReader(new ByteArrayInputStream(encodedRecords));
+        reader.initialize(new HPCCRecordBuilder(recordDef));
+        List<HPCCRecord> expectedRecords = new ArrayList<HPCCRecord>();
+        while (reader.hasNext())
+        {
+            expectedRecords.add((HPCCRecord) reader.getNext());
+        }
+        assertEquals(records.size(), expectedRecords.size());
+
+        int[] windowSizes = {3, 7, 61, 4096, encodedRecords.length};
+        for (int windowSize : windowSizes)
+        {
+            reader = new BinaryRecordReader(new WindowedInputStream(encodedRecords, windowSize));
+            reader.initialize(new HPCCRecordBuilder(recordDef));
+
+            int numRecords = 0;
+            while (reader.hasNext())
+            {
+                HPCCRecord record = (HPCCRecord) reader.getNext();
+                if (record.equals(expectedRecords.get(numRecords)) == false)
+                {
+                    Assert.fail("Window size: " + windowSize + " record: " + numRecords + " did not match\n" + expectedRecords.get(numRecords) + "\n" + record);
+                }
+                numRecords++;
+            }
+
+            assertEquals(records.size(), numRecords);
+            assertEquals(encodedRecords.length, reader.getStreamPosAfterLastRecord());
+        }
+    }
+
     @Test
     public void integrationReadWriteBackTest() throws Exception
     {
@@ -452,6 +570,109 @@ public class DFSReadWriteTest extends BaseRemoteTest
         assertEquals("Number of records did not match during read.", expectedCounts[0], records.size());
     }
 
+    @Test
+    public void columnarReadTest() throws Exception
+    {
+        HPCCFile file = new HPCCFile(datasets[0], connString , hpccUser, hpccPass);
+        DataPartition[] fileParts = file.getFileParts();
+        if (fileParts == null || fileParts.length == 0)
+        {
+            Assert.fail("No file parts found");
+        }
+
+        FieldDef originalRD = file.getRecordDefinition();
+        if (originalRD == null || originalRD.getNumDefs() == 0)
+        {
+            Assert.fail("Invalid or null record definition");
+        }
+
+        List<HPCCRecord> records = readFile(file, null, false);
+
+        int recordIndex = 0;
+        for (int i = 0; i < fileParts.length; i++)
+        {
+            HpccRemoteFileReader.FileReadContext readContext = new HpccRemoteFileReader.FileReadContext();
+            readContext.originalRD = originalRD;
+
+            HpccColumnarFileReader columnarReader = new HpccColumnarFileReader(readContext, fileParts[i], file.getProjectedRecordDefinition());
+            ColumnarBatch batch = columnarReader.nextBatch(1000);
+            while (batch != null)
+            {
+                Assert.assertEquals(originalRD.getNumDefs(), batch.getNumColumns());
+                for (int row = 0; row < batch.getNumRows(); row++, recordIndex++)
+                {
+                    HPCCRecord record = records.get(recordIndex);
+                    for (int col = 0; col < batch.getNumColumns(); col++)
+                    {
+                        ColumnVector column = batch.getColumn(col);
+                        if (column.getType() == ColumnVector.ColumnType.LONG)
+                        {
+                            assertEquals(((Long) record.getField(col)).longValue(), column.getLong(row));
+                        }
+                        else if (column.getType() == ColumnVector.ColumnType.STRING)
+                        {
+                            assertEquals(record.getField(col), column.getString(row));
+                        }
+                    }
+                }
+                batch = columnarReader.nextBatch(1000);
+            }
+            columnarReader.close();
+        }
+
+        assertEquals("Number of records did not match during columnar read.", records.size(), recordIndex);
+    }
+
+    @Test
+    public void batchReadTest() throws Exception
+    {
+        HPCCFile file = new HPCCFile(datasets[0], connString , hpccUser, hpccPass);
+        DataPartition[] fileParts = file.getFileParts();
+        if (fileParts == null || fileParts.length == 0)
+        {
+            Assert.fail("No file parts found");
+        }
+
+        FieldDef originalRD = file.getRecordDefinition();
+        if (originalRD == null || originalRD.getNumDefs() == 0)
+        {
+            Assert.fail("Invalid or null record definition");
+        }
+
+        List<HPCCRecord> records = readFile(file, null, false);
+
+        List<HPCCRecord> batchRecords = new ArrayList<HPCCRecord>();
+        List<HPCCRecord> forEachRecords = new ArrayList<HPCCRecord>();
+        for (int i = 0; i < fileParts.length; i++)
+        {
+            HpccRemoteFileReader.FileReadContext readContext = new HpccRemoteFileReader.FileReadContext();
+            readContext.originalRD = originalRD;
+
+            HpccRemoteFileReader<HPCCRecord> fileReader = new HpccRemoteFileReader<HPCCRecord>(readContext, fileParts[i], new HPCCRecordBuilder(file.getProjectedRecordDefinition()));
+            List<HPCCRecord> batch = new ArrayList<HPCCRecord>();
+            while (fileReader.nextBatch(batch, 100) > 0)
+            {
+                Assert.assertTrue(batch.size() <= 100);
+                batchRecords.addAll(batch);
+                batch.clear();
+            }
+            Assert.assertFalse(fileReader.hasNext());
+            fileReader.close();
+
+            fileReader = new HpccRemoteFileReader<HPCCRecord>(readContext, fileParts[i], new HPCCRecordBuilder(file.getProjectedRecordDefinition()));
+            fileReader.forEachRemaining(forEachRecords::add);
+            fileReader.close();
+        }
+
+        assertEquals("Number of records did not match during batch read.", records.size(), batchRecords.size());
+        assertEquals("Number of records did not match during forEachRemaining read.", records.size(), forEachRecords.size());
+        for (int i = 0; i < records.size(); i++)
+        {
+            assertEquals(records.get(i).toString(), batchRecords.get(i).toString());
+            assertEquals(records.get(i).toString(), forEachRecords.get(i).toString());
+        }
+    }
+
     @Test
     public void readResumeTest() throws Exception
     {
@@ -1482,7 +1703,7 @@ public class DFSReadWriteTest extends BaseRemoteTest
     @Test
     public void readRetryOptionsPreservationTest()
     {
-        // Test that string processing and decimal processing options are preserved during read retries
+        // Test that string processing, decimal processing and unscaled decimal options are preserved during read retries
         HPCCFile readFile = null;
         try
         {
@@ -1501,19 +1722,17 @@ public class DFSReadWriteTest extends BaseRemoteTest
                 Assert.fail("Invalid or null record definition");
             }
 
-            // Create a file reader with specific string processing and decimal options
+            // Create a file reader with specific string processing and decimal options, unscaled decimals are set on the read context
+            HpccRemoteFileReader.FileReadContext context = new HpccRemoteFileReader.FileReadContext();
+            context.originalRD = originalRD;
+            context.connectTimeout = HpccRemoteFileReader.DEFAULT_CONNECT_TIMEOUT_OPTION;
+            context.socketOpTimeoutMS = 15000; // 15 second socket timeout
+            context.recordReadLimit = NO_RECORD_LIMIT;
+            context.readSizeKB = DEFAULT_READ_SIZE_OPTION;
+            context.useUnscaledDecimals = true;
+
             HPCCRecordBuilder recordBuilder = new HPCCRecordBuilder(readFile.getProjectedRecordDefinition());
-            HpccRemoteFileReader<HPCCRecord> fileReader = new HpccRemoteFileReader<HPCCRecord>(
-                fileParts[0], 
-                originalRD, 
-                recordBuilder, 
-                HpccRemoteFileReader.DEFAULT_CONNECT_TIMEOUT_OPTION, 
-                NO_RECORD_LIMIT, 
-                true, 
-                DEFAULT_READ_SIZE_OPTION,
-                null,
-                15000  // 15 second socket timeout
-            );
+            HpccRemoteFileReader<HPCCRecord> fileReader = new HpccRemoteFileReader<HPCCRecord>(context, fileParts[0], recordBuilder);
 
             // Set specific processing options
             int expectedStringFlags = BinaryRecordReader.TRIM_STRINGS | BinaryRecordReader.CONVERT_EMPTY_STRINGS_TO_NULL;
@@ -1529,6 +1748,8 @@ public class DFSReadWriteTest extends BaseRemoteTest
             assertEquals("Initial decimal processing option should be set", 
                 expectedUseDecimal, 
                 fileReader.getRecordReader().getUseDecimalForUnsigned8());
+            assertTrue("Initial unscaled decimal option should be set from the read context",
+                fileReader.getRecordReader().getUseUnscaledDecimals());
 
             // Force a retry to test option preservation
             boolean retryResult = fileReader.forceReadRetry();
@@ -1542,6 +1763,8 @@ public class DFSReadWriteTest extends BaseRemoteTest
             assertEquals("Decimal processing option should be preserved after retry", 
                 expectedUseDecimal, 
                 fileReader.getRecordReader().getUseDecimalForUnsigned8());
+            assertTrue("Unscaled decimal option should be preserved after retry",
+                fileReader.getRecordReader().getUseUnscaledDecimals());
 
             // Read some records to verify the reader still works correctly
             int recordsRead = 0;
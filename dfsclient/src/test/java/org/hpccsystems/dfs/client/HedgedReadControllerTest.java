@@ -0,0 +1,118 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(org.hpccsystems.commons.annotations.BaseTests.class)
+public class HedgedReadControllerTest
+{
+    private static final long MS = 1000000L;
+
+    @Test
+    public void firstByteThresholdTest()
+    {
+        HedgedReadController controller = new HedgedReadController(90.0, 1.0, 10);
+        for (int i = 1; i < 10; i++)
+        {
+            controller.onResponseStarted(i * MS);
+        }
+
+        // Not enough samples to hedge
+        Assert.assertEquals(-1, controller.getFirstByteThresholdNS());
+
+        controller.onResponseStarted(10 * MS);
+        Assert.assertEquals(9 * MS, controller.getFirstByteThresholdNS());
+
+        // Only the most recent samples are used
+        for (int i = 0; i < 1000; i++)
+        {
+            controller.onResponseStarted(100 * MS);
+        }
+        Assert.assertEquals(100 * MS, controller.getFirstByteThresholdNS());
+
+        controller.setMaxHedgeRate(0.0);
+        Assert.assertEquals(-1, controller.getFirstByteThresholdNS());
+    }
+
+    @Test
+    public void slowThroughputTest()
+    {
+        HedgedReadController controller = new HedgedReadController(90.0, 1.0, 10);
+        long bytes = 1024 * 1024;
+
+        // 1MB/ms to 10MB/ms
+        for (int i = 1; i <= 10; i++)
+        {
+            Assert.assertFalse(controller.onResponseComplete(bytes * i, MS));
+        }
+
+        Assert.assertFalse(controller.onResponseComplete(bytes * 5, MS));
+        Assert.assertTrue(controller.onResponseComplete(bytes / 2, MS));
+
+        // Small responses are ignored
+        Assert.assertFalse(controller.onResponseComplete(1024, MS));
+    }
+
+    @Test
+    public void maxHedgeRateTest()
+    {
+        HedgedReadController controller = new HedgedReadController(95.0, 0.1, 1);
+        Assert.assertFalse(controller.tryStartHedge());
+
+        for (int i = 0; i < 100; i++)
+        {
+            controller.onResponseStarted(MS);
+        }
+
+        int numHedges = 0;
+        while (controller.tryStartHedge())
+        {
+            controller.onHedgeComplete(numHedges % 2 == 0);
+            numHedges++;
+        }
+
+        Assert.assertEquals(10, numHedges);
+        Assert.assertEquals(10, controller.getNumHedges());
+        Assert.assertEquals(5, controller.getNumHedgeWins());
+        Assert.assertEquals(2, controller.getNumHedgesSkipped());
+        Assert.assertEquals(0.1, controller.getHedgeRate(), 1e-9);
+    }
+
+    @Test
+    public void invalidSettingsTest()
+    {
+        HedgedReadController controller = new HedgedReadController(95.0, 0.1, 1);
+        try
+        {
+            controller.setHedgePercentile(101.0);
+            Assert.fail("Expected an exception for an invalid percentile");
+        }
+        catch (IllegalArgumentException e) {}
+
+        try
+        {
+            controller.setMaxHedgeRate(-0.1);
+            Assert.fail("Expected an exception for an invalid hedge rate");
+        }
+        catch (IllegalArgumentException e) {}
+
+        Assert.assertEquals(95.0, controller.getHedgePercentile(), 0.0);
+        Assert.assertEquals(0.1, controller.getMaxHedgeRate(), 0.0);
+    }
+}
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.hpccsystems.commons.ecl.FieldDef;
+import org.hpccsystems.commons.ecl.FieldType;
+import org.hpccsystems.commons.ecl.HpccSrcType;
+
+/**
+ * A minimal row service used to test RowServiceInputStream without a cluster.
+ *
+ * Each connection answers its read requests in order with the canned data blocks, followed by an empty reply to
+ * mark the end of the file. The data blocks are sent as is, so they must already be in the reply format requested
+ * by the stream, IE: compressed when the stream requests comm compression.
+ */
+class MockRowService implements Runnable, AutoCloseable
+{
+    private static final String HOST = "127.0.0.1";
+
+    private final ServerSocket server;
+    private final List<byte[]> dataBlocks;
+    private final long         closeReplyDelayMS;
+
+    MockRowService(List<byte[]> dataBlocks) throws IOException
+    {
+        this(dataBlocks, 0);
+    }
+
+    /**
+     * @param closeReplyDelayMS
+     *            how long to wait before replying to close requests, simulating a slow row service
+     */
+    MockRowService(List<byte[]> dataBlocks, long closeReplyDelayMS) throws IOException
+    {
+        this.dataBlocks = dataBlocks;
+        this.closeReplyDelayMS = closeReplyDelayMS;
+        this.server = new ServerSocket(0, 50, InetAddress.getByName(HOST));
+
+        Thread acceptThread = new Thread(this, "MockRowService-Accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * @return a single record definition of 8 byte integers, the mock doesn't interpret the data so any definition can be used
+     */
+    static FieldDef getRecordDefinition()
+    {
+        FieldDef[] children = { new FieldDef("value", FieldType.INTEGER, "INTEGER8", 8, true, false, HpccSrcType.LITTLE_ENDIAN, new FieldDef[0]) };
+        return new FieldDef("root", FieldType.RECORD, "rec", 8, true, false, HpccSrcType.LITTLE_ENDIAN, children);
+    }
+
+    /**
+     * @return a stream context for the mock, with the default options
+     */
+    static RowServiceInputStream.StreamContext createStreamContext()
+    {
+        RowServiceInputStream.StreamContext context = new RowServiceInputStream.StreamContext();
+        context.recordDefinition = getRecordDefinition();
+        context.projectedRecordDefinition = getRecordDefinition();
+        return context;
+    }
+
+    /**
+     * @return a file part served by the mock
+     */
+    DataPartition getDataPartition()
+    {
+        return new DataPartition(new String[] { HOST }, new String[] { "/mock" }, 1, 1, server.getLocalPort(), false, "blob");
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        server.close();
+    }
+
+    @Override
+    public void run()
+    {
+        while (true)
+        {
+            try
+            {
+                Socket socket = server.accept();
+                Thread connectionThread = new Thread(() -> serve(socket), "MockRowService-Connection");
+                connectionThread.setDaemon(true);
+                connectionThread.start();
+            }
+            catch (IOException e)
+            {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket)
+    {
+        try
+        {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            int nextBlock = 0;
+            while (true)
+            {
+                byte[] request = new byte[input.readInt()];
+                input.readFully(request);
+                String requestStr = new String(request, StandardCharsets.ISO_8859_1);
+
+                if (requestStr.contains("\"version\""))
+                {
+                    byte[] version = "DFS Server 9.8.0".getBytes(StandardCharsets.ISO_8859_1);
+                    output.writeInt(8 + version.length);
+                    output.writeInt(RFCCodes.RFCStreamNoError);
+                    output.writeInt(0);
+                    output.write(version);
+                    output.flush();
+                    continue;
+                }
+
+                if (requestStr.contains("\"close\""))
+                {
+                    if (closeReplyDelayMS > 0)
+                    {
+                        Thread.sleep(closeReplyDelayMS);
+                    }
+
+                    output.writeInt(8);
+                    output.writeInt(RFCCodes.RFCStreamNoError);
+                    output.writeInt(1);
+                    output.flush();
+                    socket.close();
+                    return;
+                }
+
+                // Reply: length, error code, handle, data length, data, token length, token. The end of the file is an empty reply
+                byte[] data = (nextBlock < dataBlocks.size()) ? dataBlocks.get(nextBlock) : new byte[0];
+                byte[] token = (data.length > 0) ? Integer.toString(nextBlock).getBytes(StandardCharsets.ISO_8859_1) : new byte[0];
+                nextBlock++;
+
+                output.writeInt(16 + data.length + token.length);
+                output.writeInt(RFCCodes.RFCStreamNoError);
+                output.writeInt(1);
+                output.writeInt(data.length);
+                output.write(data);
+                output.writeInt(token.length);
+                output.write(token);
+                output.flush();
+            }
+        }
+        catch (IOException | InterruptedException e)
+        {
+            // The stream closed the connection
+        }
+    }
+}
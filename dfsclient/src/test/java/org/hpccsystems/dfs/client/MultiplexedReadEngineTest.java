@@ -0,0 +1,165 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(org.hpccsystems.commons.annotations.BaseTests.class)
+public class MultiplexedReadEngineTest
+{
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int NUM_BLOCKS = 8;
+
+    private static byte expectedByte(long pos)
+    {
+        return (byte) (pos % 251);
+    }
+
+    private static List<byte[]> createDataBlocks()
+    {
+        List<byte[]> blocks = new ArrayList<byte[]>();
+        for (int i = 0; i < NUM_BLOCKS; i++)
+        {
+            byte[] block = new byte[BLOCK_SIZE];
+            for (int j = 0; j < BLOCK_SIZE; j++)
+            {
+                block[j] = expectedByte((long) i * BLOCK_SIZE + j);
+            }
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
+    // A failure that stops a selector thread hangs the streams on that thread, so fail on a timeout instead
+    @Test(timeout = 60000)
+    public void failedStreamTest() throws Exception
+    {
+        try (MockRowService service = new MockRowService(createDataBlocks()))
+        {
+            RowServiceInputStream.StreamContext context = MockRowService.createStreamContext();
+            context.useMultiplexedReads = true;
+            context.readBufferSizeKB = 16;
+
+            RowServiceInputStream failingStream = new RowServiceInputStream(context, service.getDataPartition(), null)
+            {
+                @Override
+                int processMultiplexedIO(SocketChannel channel)
+                {
+                    throw new IllegalStateException("Injected failure");
+                }
+            };
+
+            // The failure ends the stream, the consumer sees the end of the stream and the prefetch exception
+            byte[] buffer = new byte[BLOCK_SIZE];
+            while (failingStream.read(buffer, 0, buffer.length) >= 0)
+            {
+            }
+            Assert.assertNotNull(failingStream.getPrefetchException());
+            Assert.assertTrue(failingStream.getPrefetchException().getMessage().contains("Injected failure"));
+            failingStream.close();
+
+            // Register one stream per selector thread, the small read buffer keeps each registered until it is read
+            MultiplexedReadEngine engine = MultiplexedReadEngine.getInstance();
+            List<RowServiceInputStream> streams = new ArrayList<RowServiceInputStream>();
+            for (int i = 0; i < engine.getNumSelectorThreads(); i++)
+            {
+                streams.add(new RowServiceInputStream(context, service.getDataPartition(), null));
+            }
+
+            for (RowServiceInputStream stream : streams)
+            {
+                Assert.assertTrue(stream.isUsingMultiplexedReads());
+
+                long pos = 0;
+                int bytesRead = 0;
+                while ((bytesRead = stream.read(buffer, 0, buffer.length)) >= 0)
+                {
+                    for (int i = 0; i < bytesRead; i++)
+                    {
+                        Assert.assertEquals("Unexpected byte at " + (pos + i), expectedByte(pos + i), buffer[i]);
+                    }
+                    pos += bytesRead;
+                }
+
+                Assert.assertEquals(NUM_BLOCKS * BLOCK_SIZE, pos);
+                stream.close();
+            }
+
+            Assert.assertEquals(0, engine.getNumRegisteredStreams());
+        }
+    }
+
+    private static long readToEnd(RowServiceInputStream stream) throws Exception
+    {
+        byte[] buffer = new byte[BLOCK_SIZE];
+        long pos = 0;
+        int bytesRead = 0;
+        while ((bytesRead = stream.read(buffer, 0, buffer.length)) >= 0)
+        {
+            pos += bytesRead;
+        }
+        return pos;
+    }
+
+    @Test(timeout = 60000)
+    public void slowCloseTest() throws Exception
+    {
+        final long closeReplyDelayMS = 5000;
+        try (MockRowService slowCloseService = new MockRowService(createDataBlocks(), closeReplyDelayMS);
+             MockRowService service = new MockRowService(createDataBlocks()))
+        {
+            RowServiceInputStream.StreamContext context = MockRowService.createStreamContext();
+            context.useMultiplexedReads = true;
+            context.readBufferSizeKB = 16;
+
+            // One stream per selector thread, the small read buffer keeps each registered until it is read
+            MultiplexedReadEngine engine = MultiplexedReadEngine.getInstance();
+            List<RowServiceInputStream> slowCloseStreams = new ArrayList<RowServiceInputStream>();
+            for (int i = 0; i < engine.getNumSelectorThreads(); i++)
+            {
+                slowCloseStreams.add(new RowServiceInputStream(context, slowCloseService.getDataPartition(), null));
+            }
+
+            // Each stream is closed by the engine at the end of the file, waiting on the slow close reply
+            for (RowServiceInputStream stream : slowCloseStreams)
+            {
+                Assert.assertEquals(NUM_BLOCKS * BLOCK_SIZE, readToEnd(stream));
+            }
+
+            // The pending close requests must not stall the selector threads
+            long startNS = System.nanoTime();
+            RowServiceInputStream stream = new RowServiceInputStream(context, service.getDataPartition(), null);
+            Assert.assertTrue(stream.isUsingMultiplexedReads());
+            Assert.assertEquals(NUM_BLOCKS * BLOCK_SIZE, readToEnd(stream));
+            long elapsedMS = (System.nanoTime() - startNS) / 1000000;
+            Assert.assertTrue("Stream stalled by pending close requests for " + elapsedMS + "ms", elapsedMS < closeReplyDelayMS / 2);
+            Assert.assertNull(stream.getPrefetchException());
+            stream.close();
+
+            for (RowServiceInputStream slowCloseStream : slowCloseStreams)
+            {
+                Assert.assertNull(slowCloseStream.getPrefetchException());
+                slowCloseStream.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(org.hpccsystems.commons.annotations.BaseTests.class)
+public class ReadAdmissionControllerTest
+{
+    private static final String HOST = "127.0.0.1";
+    private static final int    PORT = 7100;
+
+    private static final long   MS = 1000000L;
+
+    private static void awaitWaiting(Thread thread) throws Exception
+    {
+        long deadlineMS = System.currentTimeMillis() + 5000;
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadlineMS)
+        {
+            Thread.sleep(1);
+        }
+        Assert.assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    @Test
+    public void streamLimitTest() throws Exception
+    {
+        ReadAdmissionController controller = new ReadAdmissionController();
+        controller.setMaxActiveStreamsPerHost(1);
+
+        controller.admitStream(HOST, PORT);
+        Assert.assertEquals(1, controller.getNumActiveStreams(HOST, PORT));
+
+        // Other hosts are not limited by the streams on this host
+        controller.admitStream(HOST, PORT + 1);
+        controller.releaseStream(HOST, PORT + 1);
+
+        // Waiting streams are admitted in the order they arrived
+        final List<Integer> admissionOrder = Collections.synchronizedList(new ArrayList<Integer>());
+        Thread[] waiters = new Thread[3];
+        for (int i = 0; i < waiters.length; i++)
+        {
+            final int index = i;
+            waiters[i] = new Thread(() ->
+            {
+                try
+                {
+                    controller.admitStream(HOST, PORT);
+                    admissionOrder.add(index);
+                    controller.releaseStream(HOST, PORT);
+                }
+                catch (InterruptedException e) {}
+            });
+            waiters[i].start();
+            awaitWaiting(waiters[i]);
+        }
+
+        Assert.assertTrue(admissionOrder.isEmpty());
+        controller.releaseStream(HOST, PORT);
+
+        for (Thread waiter : waiters)
+        {
+            waiter.join(5000);
+        }
+
+        Assert.assertEquals(3, admissionOrder.size());
+        for (int i = 0; i < admissionOrder.size(); i++)
+        {
+            Assert.assertEquals(i, admissionOrder.get(i).intValue());
+        }
+        Assert.assertEquals(0, controller.getNumActiveStreams(HOST, PORT));
+        Assert.assertEquals(3, controller.getNumStreamWaits());
+        Assert.assertTrue(controller.getStreamWaitTimeNS() > 0);
+    }
+
+    @Test
+    public void interruptedAdmissionTest() throws Exception
+    {
+        ReadAdmissionController controller = new ReadAdmissionController();
+        controller.setMaxActiveStreamsPerHost(1);
+        controller.admitStream(HOST, PORT);
+
+        final boolean[] wasInterrupted = new boolean[] {false};
+        Thread waiter = new Thread(() ->
+        {
+            try
+            {
+                controller.admitStream(HOST, PORT);
+            }
+            catch (InterruptedException e)
+            {
+                wasInterrupted[0] = true;
+            }
+        });
+        waiter.start();
+        awaitWaiting(waiter);
+        waiter.interrupt();
+        waiter.join(5000);
+
+        Assert.assertTrue(wasInterrupted[0]);
+
+        // The interrupted stream gave up its place in the queue
+        controller.releaseStream(HOST, PORT);
+        controller.admitStream(HOST, PORT);
+        Assert.assertEquals(1, controller.getNumActiveStreams(HOST, PORT));
+    }
+
+    @Test(timeout = 120000)
+    public void virtualThreadAdmissionTest() throws Exception
+    {
+        Assume.assumeTrue("Virtual threads are not supported by this JVM", DFSThreadFactory.isVirtualThreadSupported());
+
+        ReadAdmissionController controller = new ReadAdmissionController();
+        controller.setMaxActiveStreamsPerHost(1);
+        controller.admitStream(HOST, PORT);
+
+        // Far more waiting streams than carrier threads, including the threads the scheduler adds to compensate for pinning
+        final int numStreams = Math.max(2048, Runtime.getRuntime().availableProcessors() * 64);
+        final CountDownLatch streamsDone = new CountDownLatch(numStreams);
+        final AtomicInteger numAdmitted = new AtomicInteger(0);
+
+        ThreadFactory previousFactory = DFSThreadFactory.getThreadFactory();
+        DFSThreadFactory.setUseVirtualThreads(true);
+        try
+        {
+            for (int i = 0; i < numStreams; i++)
+            {
+                Thread stream = DFSThreadFactory.newThread(() ->
+                {
+                    try
+                    {
+                        controller.admitStream(HOST, PORT);
+                        numAdmitted.incrementAndGet();
+                        Thread.sleep(0, 1000);
+                        controller.releaseStream(HOST, PORT);
+                    }
+                    catch (InterruptedException e) {}
+                    streamsDone.countDown();
+                }, null);
+                stream.start();
+            }
+        }
+        finally
+        {
+            DFSThreadFactory.setThreadFactory(previousFactory);
+        }
+
+        // Let the streams queue up behind the admitted stream before releasing it
+        Thread.sleep(500);
+        Assert.assertEquals(0, numAdmitted.get());
+        controller.releaseStream(HOST, PORT);
+
+        Assert.assertTrue("Waiting streams deadlocked, admitted " + numAdmitted.get() + " of " + numStreams,
+                          streamsDone.await(60, TimeUnit.SECONDS));
+        Assert.assertEquals(numStreams, numAdmitted.get());
+        Assert.assertEquals(0, controller.getNumActiveStreams(HOST, PORT));
+    }
+
+    @Test
+    public void tokenBucketTest()
+    {
+        ReadAdmissionController.TokenBucket bucket = new ReadAdmissionController.TokenBucket();
+        long bytesPerSecond = 1000;
+
+        // A full bucket allows a burst of a second of data
+        Assert.assertEquals(0, bucket.reserve(1000, bytesPerSecond, 0));
+
+        // Requests beyond the burst put the bucket into debt
+        Assert.assertEquals(500 * MS, bucket.reserve(500, bytesPerSecond, 0));
+        Assert.assertEquals(1000 * MS, bucket.reserve(500, bytesPerSecond, 0));
+
+        // Tokens are refilled at the rate, later requests wait behind the debt
+        Assert.assertEquals(500 * MS, bucket.reserve(0, bytesPerSecond, 500 * MS));
+        Assert.assertEquals(0, bucket.reserve(100, bytesPerSecond, 1100 * MS));
+
+        // The bucket never holds more than the burst
+        Assert.assertEquals(0, bucket.reserve(1000, bytesPerSecond, 100000 * MS));
+        Assert.assertEquals(100 * MS, bucket.reserve(100, bytesPerSecond, 100000 * MS));
+
+        // Unlimited buckets never wait and refill once limited again
+        Assert.assertEquals(0, bucket.reserve(1000000, ReadAdmissionController.UNLIMITED, 0));
+        Assert.assertEquals(0, bucket.reserve(1000, bytesPerSecond, 0));
+    }
+
+    @Test
+    public void bandwidthLimitTest() throws Exception
+    {
+        ReadAdmissionController controller = new ReadAdmissionController();
+
+        controller.acquireBytes(HOST, PORT, 100000000);
+        Assert.assertEquals(0, controller.getNumBandwidthWaits());
+
+        // The host budget is shared by all streams reading from the host
+        controller.setMaxBytesPerSecondPerHost(10000);
+        controller.acquireBytes(HOST, PORT, 10000);
+        Assert.assertEquals(0, controller.getNumBandwidthWaits());
+
+        long startNS = System.nanoTime();
+        controller.acquireBytes(HOST, PORT, 500);
+        Assert.assertTrue(System.nanoTime() - startNS >= 40 * MS);
+        Assert.assertEquals(1, controller.getNumBandwidthWaits());
+
+        // Other hosts have their own budget
+        controller.acquireBytes(HOST, PORT + 1, 10000);
+        Assert.assertEquals(1, controller.getNumBandwidthWaits());
+
+        // The global budget is shared by all hosts
+        controller.setMaxBytesPerSecondPerHost(ReadAdmissionController.UNLIMITED);
+        controller.setMaxBytesPerSecond(10000);
+        controller.acquireBytes(HOST, PORT, 10000);
+        startNS = System.nanoTime();
+        controller.acquireBytes(HOST, PORT + 1, 500);
+        Assert.assertTrue(System.nanoTime() - startNS >= 40 * MS);
+        Assert.assertEquals(2, controller.getNumBandwidthWaits());
+        Assert.assertTrue(controller.getBandwidthWaitTimeNS() >= 80 * MS);
+    }
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(org.hpccsystems.commons.annotations.BaseTests.class)
+public class ReadBufferMemoryManagerTest
+{
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void unlimitedTest()
+    {
+        ReadBufferMemoryManager manager = new ReadBufferMemoryManager();
+        Assert.assertEquals(4 * MB, manager.allocate(4 * MB));
+        Assert.assertEquals(4 * MB, manager.allocate(4 * MB));
+        Assert.assertTrue(manager.tryGrow(8 * MB));
+        Assert.assertEquals(16 * MB, manager.getReservedBytes());
+
+        manager.release(16 * MB);
+        Assert.assertEquals(0, manager.getReservedBytes());
+        Assert.assertEquals(16 * MB, manager.getPeakReservedBytes());
+        Assert.assertEquals(0, manager.getNumReducedAllocations());
+    }
+
+    @Test
+    public void budgetTest()
+    {
+        ReadBufferMemoryManager manager = new ReadBufferMemoryManager();
+        manager.setMaxBytes(10 * MB);
+
+        Assert.assertEquals(4 * MB, manager.allocate(4 * MB));
+        Assert.assertEquals(4 * MB, manager.allocate(4 * MB));
+
+        // The remaining budget is given to the next stream
+        Assert.assertEquals(2 * MB, manager.allocate(4 * MB));
+        Assert.assertEquals(1, manager.getNumReducedAllocations());
+
+        // Once exhausted streams are still given the minimum buffer size, or less if requested
+        Assert.assertEquals(ReadBufferMemoryManager.MIN_BUFFER_SIZE, manager.allocate(4 * MB));
+        Assert.assertEquals(1024, manager.allocate(1024));
+        Assert.assertEquals(10 * MB + ReadBufferMemoryManager.MIN_BUFFER_SIZE + 1024, manager.getReservedBytes());
+
+        Assert.assertFalse(manager.tryGrow(1));
+        Assert.assertEquals(1, manager.getNumDeniedGrowths());
+
+        // Released memory can be used to grow
+        manager.release(4 * MB);
+        Assert.assertTrue(manager.tryGrow(2 * MB));
+        Assert.assertFalse(manager.tryGrow(2 * MB));
+        Assert.assertEquals(2, manager.getNumDeniedGrowths());
+        Assert.assertEquals(10 * MB + ReadBufferMemoryManager.MIN_BUFFER_SIZE + 1024, manager.getPeakReservedBytes());
+    }
+
+    @Test
+    public void stallTimeTest()
+    {
+        ReadBufferMemoryManager manager = new ReadBufferMemoryManager();
+        manager.recordStallTime(100);
+        manager.recordStallTime(50);
+        Assert.assertEquals(150, manager.getStallTimeNS());
+    }
+}
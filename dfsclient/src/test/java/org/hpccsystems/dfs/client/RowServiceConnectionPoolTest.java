@@ -0,0 +1,190 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(org.hpccsystems.commons.annotations.BaseTests.class)
+public class RowServiceConnectionPoolTest
+{
+    private static final String HOST = "127.0.0.1";
+
+    private ServerSocket server = null;
+    private RowServiceConnectionPool pool = null;
+
+    @Before
+    public void setup() throws Exception
+    {
+        server = new ServerSocket(0, 50, InetAddress.getByName(HOST));
+        pool = new RowServiceConnectionPool();
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        pool.clear();
+        server.close();
+    }
+
+    private Socket connect() throws Exception
+    {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(HOST, server.getLocalPort()), 1000);
+        return socket;
+    }
+
+    @Test
+    public void reuseTest() throws Exception
+    {
+        int port = server.getLocalPort();
+        Assert.assertNull(pool.acquire(HOST, port, false));
+
+        Socket socket = connect();
+        Socket serverSide = server.accept();
+        socket.setSoTimeout(5000);
+        pool.release(HOST, port, false, socket);
+        Assert.assertEquals(1, pool.getNumIdleConnections());
+
+        // Connections are only reused for the same endpoint
+        Assert.assertNull(pool.acquire(HOST, port, true));
+        Assert.assertNull(pool.acquire(HOST, port + 1, false));
+
+        Assert.assertSame(socket, pool.acquire(HOST, port, false));
+        Assert.assertEquals(5000, socket.getSoTimeout());
+        Assert.assertEquals(0, pool.getNumIdleConnections());
+        Assert.assertEquals(1, pool.getNumHits());
+        Assert.assertEquals(3, pool.getNumMisses());
+
+        socket.close();
+        serverSide.close();
+    }
+
+    @Test
+    public void closedConnectionTest() throws Exception
+    {
+        int port = server.getLocalPort();
+
+        pool.setValidationIdleThresholdMS(0);
+
+        Socket socket = connect();
+        Socket serverSide = server.accept();
+        pool.release(HOST, port, false, socket);
+
+        // The server closing an idle connection is detected when it is acquired
+        serverSide.close();
+        Thread.sleep(50);
+
+        Assert.assertNull(pool.acquire(HOST, port, false));
+        Assert.assertTrue(socket.isClosed());
+        Assert.assertEquals(1, pool.getNumValidationFailures());
+        Assert.assertEquals(0, pool.getNumHits());
+    }
+
+    @Test
+    public void validationThresholdTest() throws Exception
+    {
+        int port = server.getLocalPort();
+        pool.setValidationIdleThresholdMS(60000);
+
+        // Recently released connections are reused without the blocking read, so a server side close is not detected
+        Socket socket = connect();
+        Socket serverSide = server.accept();
+        pool.release(HOST, port, false, socket);
+        serverSide.close();
+        Thread.sleep(50);
+
+        Assert.assertSame(socket, pool.acquire(HOST, port, false));
+        Assert.assertEquals(0, pool.getNumValidationFailures());
+        socket.close();
+
+        // Unexpected data is still detected
+        socket = connect();
+        serverSide = server.accept();
+        serverSide.getOutputStream().write(1);
+        serverSide.getOutputStream().flush();
+        Thread.sleep(50);
+        pool.release(HOST, port, false, socket);
+
+        Assert.assertNull(pool.acquire(HOST, port, false));
+        Assert.assertTrue(socket.isClosed());
+        Assert.assertEquals(1, pool.getNumValidationFailures());
+        serverSide.close();
+
+        try
+        {
+            pool.setValidationIdleThresholdMS(-1);
+            Assert.fail("Expected an exception for an invalid validation idle threshold");
+        }
+        catch (IllegalArgumentException e) {}
+    }
+
+    @Test
+    public void evictionTest() throws Exception
+    {
+        int port = server.getLocalPort();
+        pool.setMaxIdleConnectionsPerHost(2);
+
+        Socket[] sockets = new Socket[3];
+        for (int i = 0; i < sockets.length; i++)
+        {
+            sockets[i] = connect();
+            server.accept();
+            pool.release(HOST, port, false, sockets[i]);
+        }
+
+        // Connections released beyond the max idle connections are closed
+        Assert.assertEquals(2, pool.getNumIdleConnections());
+        Assert.assertTrue(sockets[2].isClosed());
+
+        // Evicted connections are closed after they have been removed from the pool, so wait for the sockets to be closed
+        pool.setIdleTimeoutMS(50);
+        long deadlineMS = System.currentTimeMillis() + 5000;
+        while ((!sockets[0].isClosed() || !sockets[1].isClosed()) && System.currentTimeMillis() < deadlineMS)
+        {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(0, pool.getNumIdleConnections());
+        Assert.assertEquals(2, pool.getNumEvictions());
+        Assert.assertTrue(sockets[0].isClosed());
+        Assert.assertTrue(sockets[1].isClosed());
+    }
+
+    @Test
+    public void versionCacheTest()
+    {
+        Assert.assertNull(pool.getRowServiceVersion(HOST, 7100, false));
+
+        pool.setRowServiceVersion(HOST, 7100, false, "DS V2.8");
+        pool.setRowServiceVersion(HOST, 7600, true, "");
+        Assert.assertEquals("DS V2.8", pool.getRowServiceVersion(HOST, 7100, false));
+        Assert.assertEquals("", pool.getRowServiceVersion(HOST, 7600, true));
+        Assert.assertNull(pool.getRowServiceVersion(HOST, 7100, true));
+        Assert.assertEquals(2, pool.getNumVersionCacheHits());
+
+        pool.clear();
+        Assert.assertNull(pool.getRowServiceVersion(HOST, 7100, false));
+    }
+}
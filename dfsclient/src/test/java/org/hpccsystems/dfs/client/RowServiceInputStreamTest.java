@@ -0,0 +1,227 @@
+/*******************************************************************************
+ *     HPCC SYSTEMS software Copyright (C) 2024 HPCC Systems®.
+ *
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *******************************************************************************/
+package org.hpccsystems.dfs.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hpccsystems.commons.errors.HpccFileException;
+import org.hpccsystems.commons.fastlz4j.FastLZ4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category(org.hpccsystems.commons.annotations.BaseTests.class)
+public class RowServiceInputStreamTest
+{
+    private static byte[] createData(int offset, int length)
+    {
+        // Repetitive enough to compress, without being a single run
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            data[i] = (byte) (((offset + i) / 7) % 251);
+        }
+        return data;
+    }
+
+    private static void writeLittleEndian(ByteArrayOutputStream output, int value)
+    {
+        output.write(value);
+        output.write(value >> 8);
+        output.write(value >> 16);
+        output.write(value >> 24);
+    }
+
+    private static void writeCompressedBlock(ByteArrayOutputStream output, byte[] data)
+    {
+        byte[] compressed = new byte[data.length * 2 + 64];
+        int compressedLen = FastLZ4j.compress(data, compressed);
+        Assert.assertTrue(compressedLen < data.length);
+
+        writeLittleEndian(output, compressedLen);
+        output.write(compressed, 0, compressedLen);
+    }
+
+    private static void writeRawBlock(ByteArrayOutputStream output, byte[] data)
+    {
+        writeLittleEndian(output, data.length);
+        output.write(data, 0, data.length);
+    }
+
+    /**
+     * Reads the stream until the end of the stream or an error.
+     *
+     * @return the data read
+     */
+    private static byte[] readAll(RowServiceInputStream stream)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7777];
+        try
+        {
+            int bytesRead = 0;
+            while ((bytesRead = stream.read(buffer, 0, buffer.length)) >= 0)
+            {
+                output.write(buffer, 0, bytesRead);
+            }
+        }
+        catch (IOException e)
+        {
+            // Reported through the prefetch exception
+        }
+        return output.toByteArray();
+    }
+
+    private static RowServiceInputStream openCompressedStream(MockRowService service) throws Exception
+    {
+        RowServiceInputStream.StreamContext context = MockRowService.createStreamContext();
+        context.useCommCompression = true;
+        context.readBufferSizeKB = 64;
+        return new RowServiceInputStream(context, service.getDataPartition(), null);
+    }
+
+    private static void assertReadsData(List<byte[]> replies, byte[] expected) throws Exception
+    {
+        try (MockRowService service = new MockRowService(replies))
+        {
+            RowServiceInputStream stream = openCompressedStream(service);
+            Assert.assertFalse(stream.isUsingMultiplexedReads());
+
+            byte[] data = readAll(stream);
+            Assert.assertNull(stream.getPrefetchException());
+            Assert.assertArrayEquals(expected, data);
+            stream.close();
+        }
+    }
+
+    private static void assertFailsCleanly(byte[] reply, String expectedMessage) throws Exception
+    {
+        try (MockRowService service = new MockRowService(Arrays.asList(reply)))
+        {
+            RowServiceInputStream stream = openCompressedStream(service);
+            readAll(stream);
+
+            HpccFileException e = stream.getPrefetchException();
+            Assert.assertNotNull("Expected the stream to fail with: " + expectedMessage, e);
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+            stream.close();
+        }
+    }
+
+    @Test
+    public void compressedBlockTest() throws Exception
+    {
+        byte[] data = createData(0, 200000);
+
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        writeLittleEndian(reply, data.length);
+        writeCompressedBlock(reply, data);
+
+        assertReadsData(Arrays.asList(reply.toByteArray()), data);
+    }
+
+    @Test
+    public void multipleBlocksTest() throws Exception
+    {
+        // A compressed block followed by the remaining data stored uncompressed
+        byte[] first = createData(0, 100000);
+        byte[] second = createData(first.length, 50000);
+
+        ByteArrayOutputStream firstReply = new ByteArrayOutputStream();
+        writeLittleEndian(firstReply, first.length + second.length);
+        writeCompressedBlock(firstReply, first);
+        writeRawBlock(firstReply, second);
+
+        // Followed by a reply of two compressed blocks
+        byte[] third = createData(first.length + second.length, 70000);
+        byte[] fourth = createData(first.length + second.length + third.length, 90000);
+
+        ByteArrayOutputStream secondReply = new ByteArrayOutputStream();
+        writeLittleEndian(secondReply, third.length + fourth.length);
+        writeCompressedBlock(secondReply, third);
+        writeCompressedBlock(secondReply, fourth);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        expected.write(third);
+        expected.write(fourth);
+
+        assertReadsData(Arrays.asList(firstReply.toByteArray(), secondReply.toByteArray()), expected.toByteArray());
+    }
+
+    @Test
+    public void rawBlockTest() throws Exception
+    {
+        byte[] data = createData(0, 150000);
+
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        writeLittleEndian(reply, data.length);
+        writeRawBlock(reply, data);
+
+        assertReadsData(Arrays.asList(reply.toByteArray()), data);
+    }
+
+    @Test
+    public void truncatedReplyTest() throws Exception
+    {
+        // The uncompressed length is cut short
+        assertFailsCleanly(new byte[] { 1, 0 }, "Compressed reply ended before uncompressed reply length could be read");
+
+        // The blocks are missing
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        writeLittleEndian(reply, 1000);
+        assertFailsCleanly(reply.toByteArray(), "Compressed reply ended with 1000 bytes of uncompressed data remaining");
+
+        // The block length is cut short
+        reply.write(new byte[] { 1, 0 }, 0, 2);
+        assertFailsCleanly(reply.toByteArray(), "Compressed reply ended before compressed block length could be read");
+
+        // The blocks end before the uncompressed length is reached
+        byte[] data = createData(0, 100000);
+        reply = new ByteArrayOutputStream();
+        writeLittleEndian(reply, data.length + 1000);
+        writeCompressedBlock(reply, data);
+        assertFailsCleanly(reply.toByteArray(), "Compressed reply ended with 1000 bytes of uncompressed data remaining");
+    }
+
+    @Test
+    public void oversizedLengthTest() throws Exception
+    {
+        byte[] data = createData(0, 100000);
+
+        // A block length beyond the end of the reply
+        ByteArrayOutputStream reply = new ByteArrayOutputStream();
+        writeLittleEndian(reply, Integer.MAX_VALUE);
+        writeLittleEndian(reply, Integer.MAX_VALUE - 1);
+        reply.write(data);
+        assertFailsCleanly(reply.toByteArray(), "Invalid compressed block length");
+
+        // An uncompressed length far beyond what the block can expand to, must not be allocated up front
+        reply = new ByteArrayOutputStream();
+        writeLittleEndian(reply, Integer.MAX_VALUE);
+        writeCompressedBlock(reply, data);
+        assertFailsCleanly(reply.toByteArray(), "Compressed reply ended with " + (Integer.MAX_VALUE - data.length));
+
+        // Lengths that don't fit in a signed int
+        reply = new ByteArrayOutputStream();
+        writeLittleEndian(reply, -1);
+        assertFailsCleanly(reply.toByteArray(), "Invalid uncompressed reply length: 4294967295");
+    }
+}
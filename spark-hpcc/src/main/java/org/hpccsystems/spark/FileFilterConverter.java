@@ -36,11 +36,13 @@ import org.apache.spark.sql.sources.StringStartsWith;
 import org.hpccsystems.commons.ecl.FieldFilter;
 import org.hpccsystems.commons.ecl.FieldFilterRange;
 import org.hpccsystems.commons.ecl.FileFilter;
+import org.hpccsystems.dfs.client.RecordPredicate;
 
 /**
  * A helper class that translates Spark Filters into an HPCC Systems FileFilter.
  * 
- * HPCC Systems FileFilter does not support all possible Spark Filters. In these cases an exception will be thrown.
+ * HPCC Systems FileFilter does not support all possible Spark Filters. In these cases an exception will be thrown,
+ * the filter can instead be translated into a RecordPredicate that is evaluated by the client as records are read.
  */
 public class FileFilterConverter
 {
@@ -229,5 +231,124 @@ public class FileFilterConverter
         log.debug("Converted SPARK filter: '" + sparkfilter.toString() + "' to HPCC filter: '" + hpccfilter);
         return hpccfilter;
     }
-}
 
+    /**
+     * Translates Spark Filters into a RecordPredicate evaluated by the client while records are read,
+     * for filters that cannot be translated into an HPCC Systems FileFilter.
+     *
+     * @param sparkfilters the filters, all of which must match
+     * @return the record predicate
+     * @throws Exception if a filter cannot be translated
+     */
+    public static RecordPredicate ConvertToRecordPredicate(Filter [] sparkfilters) throws Exception
+    {
+        RecordPredicate[] predicates = new RecordPredicate[sparkfilters.length];
+        for (int i = 0; i < sparkfilters.length; i++)
+        {
+            predicates[i] = ConvertToRecordPredicate(sparkfilters[i]);
+        }
+
+        return (predicates.length == 1) ? predicates[0] : RecordPredicate.and(predicates);
+    }
+
+    /**
+     * Translates a Spark Filter into a RecordPredicate evaluated by the client while records are read.
+     * Only filters on top level fields are supported, nested attributes will fail when the predicate is validated.
+     *
+     * @param sparkfilter the filter
+     * @return the record predicate
+     * @throws Exception if the filter cannot be translated
+     */
+    public static RecordPredicate ConvertToRecordPredicate(Filter sparkfilter) throws Exception
+    {
+        RecordPredicate predicate = null;
+        if (sparkfilter instanceof EqualTo)
+        {
+            final EqualTo filter = (EqualTo) sparkfilter;
+            predicate = RecordPredicate.equalTo(filter.attribute(), filter.value());
+        }
+        else if (sparkfilter instanceof EqualNullSafe)
+        {
+            // False rather than unknown when the attribute is null
+            final EqualNullSafe filter = (EqualNullSafe) sparkfilter;
+            if (filter.value() == null)
+            {
+                predicate = RecordPredicate.isNull(filter.attribute());
+            }
+            else
+            {
+                predicate = RecordPredicate.and(RecordPredicate.isNotNull(filter.attribute()), RecordPredicate.equalTo(filter.attribute(), filter.value()));
+            }
+        }
+        else if (sparkfilter instanceof GreaterThan)
+        {
+            final GreaterThan filter = (GreaterThan) sparkfilter;
+            predicate = RecordPredicate.greaterThan(filter.attribute(), filter.value());
+        }
+        else if (sparkfilter instanceof GreaterThanOrEqual)
+        {
+            final GreaterThanOrEqual filter = (GreaterThanOrEqual) sparkfilter;
+            predicate = RecordPredicate.greaterThanOrEqual(filter.attribute(), filter.value());
+        }
+        else if (sparkfilter instanceof LessThan)
+        {
+            final LessThan filter = (LessThan) sparkfilter;
+            predicate = RecordPredicate.lessThan(filter.attribute(), filter.value());
+        }
+        else if (sparkfilter instanceof LessThanOrEqual)
+        {
+            final LessThanOrEqual filter = (LessThanOrEqual) sparkfilter;
+            predicate = RecordPredicate.lessThanOrEqual(filter.attribute(), filter.value());
+        }
+        else if (sparkfilter instanceof In)
+        {
+            // IN with a null value is unknown instead of false when nothing matches, which isn't supported
+            final In filter = (In) sparkfilter;
+            predicate = RecordPredicate.in(filter.attribute(), filter.values());
+        }
+        else if (sparkfilter instanceof IsNull)
+        {
+            predicate = RecordPredicate.isNull(((IsNull) sparkfilter).attribute());
+        }
+        else if (sparkfilter instanceof IsNotNull)
+        {
+            predicate = RecordPredicate.isNotNull(((IsNotNull) sparkfilter).attribute());
+        }
+        else if (sparkfilter instanceof StringStartsWith)
+        {
+            final StringStartsWith filter = (StringStartsWith) sparkfilter;
+            predicate = RecordPredicate.startsWith(filter.attribute(), filter.value());
+        }
+        else if (sparkfilter instanceof StringEndsWith)
+        {
+            final StringEndsWith filter = (StringEndsWith) sparkfilter;
+            predicate = RecordPredicate.endsWith(filter.attribute(), filter.value());
+        }
+        else if (sparkfilter instanceof StringContains)
+        {
+            final StringContains filter = (StringContains) sparkfilter;
+            predicate = RecordPredicate.contains(filter.attribute(), filter.value());
+        }
+        else if (sparkfilter instanceof And)
+        {
+            final And filter = (And) sparkfilter;
+            predicate = RecordPredicate.and(ConvertToRecordPredicate(filter.left()), ConvertToRecordPredicate(filter.right()));
+        }
+        else if (sparkfilter instanceof Or)
+        {
+            final Or filter = (Or) sparkfilter;
+            predicate = RecordPredicate.or(ConvertToRecordPredicate(filter.left()), ConvertToRecordPredicate(filter.right()));
+        }
+        else if (sparkfilter instanceof Not)
+        {
+            predicate = RecordPredicate.not(ConvertToRecordPredicate(((Not) sparkfilter).child()));
+        }
+        else
+        {
+            throw new UnsupportedOperationException("Filter '" + sparkfilter.getClass().getSimpleName() + "' not supported");
+        }
+
+        log.debug("Converted SPARK filter: '" + sparkfilter.toString() + "' to record predicate: '" + predicate + "'");
+        return predicate;
+    }
+}
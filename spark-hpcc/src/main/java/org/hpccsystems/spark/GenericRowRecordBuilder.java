@@ -112,6 +112,39 @@ public class GenericRowRecordBuilder implements IRecordBuilder
         }
     }
 
+    /**
+     * Row fields are boxed, but sets of integers are built directly from the decoded values.
+     */
+    public boolean supportsPrimitiveFieldValues()
+    {
+        return true;
+    }
+
+    public void setLongFieldValue(int index, long value)
+    {
+        this.fields[index] = Long.valueOf(value);
+    }
+
+    public void setDoubleFieldValue(int index, double value)
+    {
+        this.fields[index] = Double.valueOf(value);
+    }
+
+    public void setBooleanFieldValue(int index, boolean value)
+    {
+        this.fields[index] = Boolean.valueOf(value);
+    }
+
+    public void setLongArrayFieldValue(int index, long[] values, int length)
+    {
+        Object[] arrayValue = new Object[length];
+        for (int i = 0; i < length; i++)
+        {
+            arrayValue[i] = Long.valueOf(values[i]);
+        }
+        this.fields[index] = arrayValue;
+    }
+
     public IRecordBuilder getChildRecordBuilder(int index)
     {
         return this.childRecordBuilders[index];
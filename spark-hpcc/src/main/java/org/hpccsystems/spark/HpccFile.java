@@ -30,6 +30,7 @@ import org.apache.spark.sql.types.StructType;
 import org.apache.spark.sql.execution.python.EvaluatePython;
 import org.hpccsystems.dfs.cluster.RemapInfo;
 import org.hpccsystems.dfs.client.DataPartition;
+import org.hpccsystems.dfs.client.RecordPredicate;
 import org.hpccsystems.commons.ecl.FieldDef;
 import org.hpccsystems.commons.errors.HpccFileException;
 import org.hpccsystems.ws.client.utils.Connection;
@@ -57,6 +58,8 @@ public class HpccFile extends org.hpccsystems.dfs.client.HPCCFile implements Ser
     private long recordSamplingSeed = USE_RANDOM_SEED;
     private int stringProcessingFlags = org.hpccsystems.dfs.client.BinaryRecordReader.NO_STRING_PROCESSING;
     private boolean unsignedEightToDecimal = false;
+    private boolean useUnscaledDecimals = false;
+    private RecordPredicate recordPredicate = null;
 
     // Make sure Python picklers have been registered
     static { EvaluatePython.registerPicklers(); }
@@ -234,6 +237,43 @@ public class HpccFile extends org.hpccsystems.dfs.client.HPCCFile implements Ser
         return this.unsignedEightToDecimal;
     }
 
+    /**
+    * Set whether to decode decimals of up to 18 digits from an unscaled long instead of through BigInteger arithmetic
+    * @param useUnscaled true to decode unscaled decimals, false to not
+    */
+    public void setUseUnscaledDecimals(boolean useUnscaled)
+    {
+        this.useUnscaledDecimals = useUnscaled;
+    }
+
+    /**
+    * Get whether decimals of up to 18 digits are decoded from an unscaled long
+    * @return true if decoding unscaled decimals, false if not
+    */
+    public boolean getUseUnscaledDecimals()
+    {
+        return this.useUnscaledDecimals;
+    }
+
+    /**
+    * Set a predicate evaluated by the client on each record read, records that do not match are skipped.
+    * Used for filters that cannot be applied by the row service, see setFilter()
+    * @param predicate the record predicate, null to read every record
+    */
+    public void setRecordPredicate(RecordPredicate predicate)
+    {
+        this.recordPredicate = predicate;
+    }
+
+    /**
+    * Get the predicate evaluated by the client on each record read
+    * @return the record predicate, null if every record is read
+    */
+    public RecordPredicate getRecordPredicate()
+    {
+        return this.recordPredicate;
+    }
+
     /**
     * Make a Spark Resilient Distributed Dataset (RDD) that provides access
     * to THOR based datasets. Uses existing SparkContext, allows this function
@@ -260,6 +300,8 @@ public class HpccFile extends org.hpccsystems.dfs.client.HPCCFile implements Ser
         rdd.setTraceContext(parentTraceID, parentSpanID);
         rdd.setStringProcessingFlags(stringProcessingFlags);
         rdd.setUnsignedEightToDecimal(unsignedEightToDecimal);
+        rdd.setUseUnscaledDecimals(useUnscaledDecimals);
+        rdd.setRecordPredicate(recordPredicate);
         return rdd;
     }
 
@@ -297,6 +339,8 @@ public class HpccFile extends org.hpccsystems.dfs.client.HPCCFile implements Ser
         rdd.setTraceContext(parentTraceID, parentSpanID);
         rdd.setStringProcessingFlags(stringProcessingFlags);
         rdd.setUnsignedEightToDecimal(unsignedEightToDecimal);
+        rdd.setUseUnscaledDecimals(useUnscaledDecimals);
+        rdd.setRecordPredicate(recordPredicate);
         return rdd;
     }
     
@@ -316,6 +360,8 @@ public class HpccFile extends org.hpccsystems.dfs.client.HPCCFile implements Ser
         hpccRDD.setTraceContext(parentTraceID, parentSpanID);
         hpccRDD.setStringProcessingFlags(stringProcessingFlags);
         hpccRDD.setUnsignedEightToDecimal(unsignedEightToDecimal);
+        hpccRDD.setUseUnscaledDecimals(useUnscaledDecimals);
+        hpccRDD.setRecordPredicate(recordPredicate);
         JavaRDD<Row > rdd = (hpccRDD).toJavaRDD();
 
         StructType schema = null;
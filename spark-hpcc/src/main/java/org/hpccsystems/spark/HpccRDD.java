@@ -36,6 +36,7 @@ import org.apache.logging.log4j.LogManager;
 import org.hpccsystems.dfs.client.BinaryRecordReader;
 import org.hpccsystems.dfs.client.DataPartition;
 import org.hpccsystems.dfs.client.HpccRemoteFileReader;
+import org.hpccsystems.dfs.client.RecordPredicate;
 
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.StatusCode;
@@ -73,6 +74,8 @@ public class HpccRDD extends RDD<Row> implements Serializable
     private long                       recordSamplingSeed = HpccFile.USE_RANDOM_SEED;
     private int                        stringProcessingFlags = BinaryRecordReader.NO_STRING_PROCESSING;
     private boolean                    unsignedEightToDecimal = false;
+    private boolean                    useUnscaledDecimals = false;
+    private RecordPredicate            recordPredicate = null;
 
     private static void registerPicklingFunctions()
     {
@@ -205,6 +208,24 @@ public class HpccRDD extends RDD<Row> implements Serializable
         this.unsignedEightToDecimal = convert;
     }
 
+    /**
+     * Set whether to decode decimals of up to 18 digits from an unscaled long
+     * @param useUnscaled true to decode unscaled decimals, false to not
+     */
+    public void setUseUnscaledDecimals(boolean useUnscaled)
+    {
+        this.useUnscaledDecimals = useUnscaled;
+    }
+
+    /**
+     * Set a predicate evaluated on each record read, records that do not match are skipped
+     * @param predicate the record predicate, null to read every record
+     */
+    public void setRecordPredicate(RecordPredicate predicate)
+    {
+        this.recordPredicate = predicate;
+    }
+
     /**
      * Wrap this RDD as a JavaRDD so the Java API can be used.
      * @return a JavaRDD wrapper of the HpccRDD.
@@ -264,6 +285,8 @@ public class HpccRDD extends RDD<Row> implements Serializable
             context.parentSpan = sparkPartReadSpan;
             context.recordSamplingRate = recordSamplingRate;
             context.recordSamplingSeed = recordSamplingSeed;
+            context.recordPredicate = recordPredicate;
+            context.useUnscaledDecimals = useUnscaledDecimals;
             final HpccRemoteFileReader<Row> fileReader = new HpccRemoteFileReader<Row>(context, this_part.partition, new GenericRowRecordBuilder(projectedRD));
             fileReader.getRecordReader().setStringProcessingFlags(stringProcessingFlags);
             fileReader.getRecordReader().setUseDecimalForUnsigned8(unsignedEightToDecimal);
@@ -301,7 +324,8 @@ public class HpccRDD extends RDD<Row> implements Serializable
                 sparkPartReadSpan.setStatus(StatusCode.ERROR);
             });
 
-            iter = JavaConverters.asScalaIteratorConverter(fileReader).asScala();
+            // Rows are decoded in batches, Spark consumes them one at a time
+            iter = JavaConverters.asScalaIteratorConverter(fileReader.batchIterator(HpccRemoteFileReader.DEFAULT_RECORD_BATCH_SIZE)).asScala();
         }
         catch (Exception e)
         {
@@ -15,6 +15,7 @@ import org.apache.spark.sql.sources.Filter;
 import org.apache.spark.sql.sources.PrunedFilteredScan;
 import org.apache.spark.sql.types.StructType;
 import org.hpccsystems.commons.ecl.FileFilter;
+import org.hpccsystems.dfs.client.RecordPredicate;
 import org.hpccsystems.spark.FileFilterConverter;
 import org.hpccsystems.spark.HpccFile;
 import org.hpccsystems.spark.SparkSchemaTranslator;
@@ -169,6 +170,9 @@ public class HpccRelation extends BaseRelation implements PrunedFilteredScan
             {
                 log.warn("Unsupported filter: " + filter.toString() + " with error: " + e.getMessage());
             }
+
+            // Filters evaluated by the client as a RecordPredicate are only a prefilter, their null, string and
+            // decimal semantics don't match Spark's exactly, so Spark evaluates them again. See buildScan
             unhandledFilters.add(filter);
         }
 
@@ -187,10 +191,41 @@ public class HpccRelation extends BaseRelation implements PrunedFilteredScan
 
             if (filters != null && filters.length != 0)
             {
+                // Filters the row service can't apply are evaluated by the client as records are read to skip
+                // decoding most of the records that don't match, Spark still evaluates them. See unhandledFilters
+                FileFilter filefilter = new FileFilter();
+                List<RecordPredicate> predicates = new ArrayList<RecordPredicate>();
+                for (Filter filter : filters)
+                {
+                    try
+                    {
+                        FileFilter converted = FileFilterConverter.ConvertToHPCCFileFilterString(filter);
+                        if (converted != null && !converted.isEmpty())
+                        {
+                            filefilter.andFilter(converted);
+                            continue;
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        log.debug("Filter: " + filter.toString() + " not supported by HPCC filter with error: " + e.getMessage());
+                    }
+
+                    try
+                    {
+                        RecordPredicate predicate = FileFilterConverter.ConvertToRecordPredicate(filter);
+                        predicate.validate(file.getRecordDefinition());
+                        predicates.add(predicate);
+                    }
+                    catch (Exception e)
+                    {
+                        log.warn("Filter: " + filter.toString() + " not applied to File '" + file.getFileName() + "': " + e.getLocalizedMessage());
+                    }
+                }
+
                 try
                 {
-                    FileFilter filefilter = FileFilterConverter.CovertToHPCCFileFilter(filters);
-                    if (filefilter != null && !filefilter.isEmpty())
+                    if (!filefilter.isEmpty())
                         file.setFilter(filefilter);
                 }
                 catch (Exception e)
@@ -198,6 +233,23 @@ public class HpccRelation extends BaseRelation implements PrunedFilteredScan
                     log.error("Could not apply filter(s) to File '" + file.getFileName() + "': " + e.getLocalizedMessage() );
                     throw new RuntimeException("Could not apply filter(s) to File '" + file.getFileName() + "': " + e.getLocalizedMessage());
                 }
+
+                if (predicates.isEmpty())
+                {
+                    file.setRecordPredicate(null);
+                }
+                else if (predicates.size() == 1)
+                {
+                    file.setRecordPredicate(predicates.get(0));
+                }
+                else
+                {
+                    file.setRecordPredicate(RecordPredicate.and(predicates.toArray(new RecordPredicate[0])));
+                }
+            }
+            else
+            {
+                file.setRecordPredicate(null);
             }
 
             if (options.projectList != null)
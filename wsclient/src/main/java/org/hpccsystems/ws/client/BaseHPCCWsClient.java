@@ -1,10 +1,12 @@
 package org.hpccsystems.ws.client;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 
+import javax.net.ssl.SSLContext;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
@@ -22,6 +24,7 @@ import org.apache.axis2.transport.http.impl.httpclient5.HttpTransportPropertiesI
 import org.apache.hc.client5.http.auth.UsernamePasswordCredentials;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hpccsystems.commons.network.SharedSSLContext;
 import org.hpccsystems.ws.client.platform.Version;
 import org.hpccsystems.ws.client.utils.Connection;
 import org.hpccsystems.ws.client.utils.DataSingleton;
@@ -712,6 +715,21 @@ public abstract class BaseHPCCWsClient extends DataSingleton
 
         //getPreemptiveHTTPAuthenticate no longer needed due to httpclient v5 upgrade
 
+        // The transport creates its HTTPS connection manager from this SSLContext, sharing it allows TLS sessions to be resumed across stubs.
+        // The transport default is kept unless a custom or dedicated context has been set up
+        if (connection.getIsHttps() && !SharedSSLContext.getInstance().isUsingDefaultContext())
+        {
+            try
+            {
+                thestub._getServiceClient().getServiceContext().getConfigurationContext()
+                        .setProperty(SSLContext.class.getName(), SharedSSLContext.getInstance().getSSLContext());
+            }
+            catch (IOException e)
+            {
+                log.warn("Unable to use the shared SSLContext, falling back to the transport default: " + e.getMessage());
+            }
+        }
+
         thestub._getServiceClient().setOptions(opt);
 
         return thestub;
@@ -15,8 +15,11 @@ import java.util.Base64.Encoder;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javax.net.ssl.HttpsURLConnection;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hpccsystems.commons.network.SharedSSLContext;
 import org.hpccsystems.ws.client.BaseHPCCWsClient;
 
 import io.opentelemetry.api.GlobalOpenTelemetry;
@@ -804,6 +807,13 @@ public class Connection
             HttpURLConnection.setFollowRedirects(false);
         }
 
+        // Use the shared SSLContext so the TLS session is resumed by later connections, the JVM default context is
+        // used through the default socket factory, which may have been replaced by the application
+        if (urlConn instanceof HttpsURLConnection && !SharedSSLContext.getInstance().isUsingDefaultContext())
+        {
+            ((HttpsURLConnection) urlConn).setSSLSocketFactory(SharedSSLContext.getInstance().getSocketFactory());
+        }
+
         urlConn.setDoOutput(true);
         urlConn.setDoInput(true);
         urlConn.setUseCaches(false);
@@ -1066,6 +1076,10 @@ public class Connection
         URL url = new URL (getBaseUrl() + (uri != null && uri.startsWith("/") ? "" : "/") + uri);
 
         HttpURLConnection httpURLConnection = (HttpURLConnection) url.openConnection(); //throws IOException
+        if (httpURLConnection instanceof HttpsURLConnection && !SharedSSLContext.getInstance().isUsingDefaultContext())
+        {
+            ((HttpsURLConnection) httpURLConnection).setSSLSocketFactory(SharedSSLContext.getInstance().getSocketFactory());
+        }
 
         Connection.log.info("Sending HTTP " + method + "Request to:" + url.toString());
 
@@ -21,6 +21,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.net.ssl.HttpsURLConnection;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -35,6 +36,7 @@ import javax.xml.xpath.XPathExpressionException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hpccsystems.commons.network.SharedSSLContext;
 import org.w3c.dom.CharacterData;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -792,6 +794,11 @@ public class Utils
             HttpURLConnection httpConn = (HttpURLConnection) urlConn;
             httpConn.setRequestMethod("POST");
         }
+        // The JVM default context is used through the default socket factory, which may have been replaced by the application
+        if (urlConn instanceof HttpsURLConnection && !SharedSSLContext.getInstance().isUsingDefaultContext())
+        {
+            ((HttpsURLConnection) urlConn).setSSLSocketFactory(SharedSSLContext.getInstance().getSocketFactory());
+        }
         urlConn.setDoOutput(true);
         urlConn.setDoInput(true);
         urlConn.setUseCaches(false);